@@ -5,12 +5,17 @@
  */
 package com.yahoo.bullet.rest;
 
+import com.yahoo.bullet.rest.service.DisconnectService;
+import com.yahoo.bullet.rest.service.RateLimitService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.security.oauth2.client.EnableOAuth2Sso;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
@@ -34,6 +39,41 @@ public class APIConfiguration extends WebSecurityConfigurerAdapter {
         };
     }
 
+    /**
+     * Tells the {@link DisconnectService} when asynchronous requests complete so it can cancel their queries.
+     *
+     * @param disconnectService The {@link DisconnectService} to use.
+     * @return A {@link WebMvcConfigurer} instance that registers the service for asynchronous requests.
+     */
+    @Bean
+    public WebMvcConfigurer asyncConfigurer(DisconnectService disconnectService) {
+        return new WebMvcConfigurerAdapter() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.registerDeferredResultInterceptors(disconnectService);
+            }
+        };
+    }
+
+    /**
+     * Limits the rate at which each user can submit and validate queries with the {@link RateLimitService}. Only the
+     * endpoints that take queries are limited. Getting and deleting asynchronous queries are not.
+     *
+     * @param rateLimitService The {@link RateLimitService} to use.
+     * @param paths The paths of the endpoints to limit.
+     * @return A {@link WebMvcConfigurer} instance that registers the service for the endpoints.
+     */
+    @Bean
+    public WebMvcConfigurer rateLimitConfigurer(RateLimitService rateLimitService,
+                                                @Value("${bullet.endpoint.validate},${bullet.endpoint.http},${bullet.endpoint.sse},${bullet.endpoint.batch},${bullet.endpoint.async}") String[] paths) {
+        return new WebMvcConfigurerAdapter() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(rateLimitService).addPathPatterns(paths);
+            }
+        };
+    }
+
     @Override
     public void configure(HttpSecurity http) throws Exception {
         // Disable CSRF
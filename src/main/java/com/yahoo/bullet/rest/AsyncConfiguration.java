@@ -8,6 +8,7 @@ package com.yahoo.bullet.rest;
 import com.yahoo.bullet.common.BulletConfig;
 import com.yahoo.bullet.common.Utilities;
 import com.yahoo.bullet.pubsub.PubSubResponder;
+import com.yahoo.bullet.rest.common.ResultStore;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
@@ -65,4 +66,25 @@ public class AsyncConfiguration {
     public ResponderClasses responderClasses(@Value("${bullet.async.config}") String config) {
         return new ResponderClasses(new BulletConfig(config));
     }
+
+    /**
+     * Creates the {@link ResultStore} that keeps the results of asynchronous queries for clients to fetch.
+     *
+     * @param maxWindows The maximum number of windows to keep for each query.
+     * @param maxMemory The byte budget for the results in memory.
+     * @param directory The directory to spill results to once the memory budget is used up. May be empty.
+     * @param maxDisk The byte budget for the spilled results.
+     * @param ttl The time in ms to keep the results of a query for after it was last updated.
+     * @return The created instance.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "bullet.async.store", name = "enabled", havingValue = "true")
+    public ResultStore resultStore(@Value("${bullet.async.store.max.windows}") int maxWindows,
+                                   @Value("${bullet.async.store.memory.max.bytes}") long maxMemory,
+                                   @Value("${bullet.async.store.disk.dir}") String directory,
+                                   @Value("${bullet.async.store.disk.max.bytes}") long maxDisk,
+                                   @Value("${bullet.async.store.ttl.ms}") long ttl) {
+        log.info("Keeping the results of asynchronous queries in memory and in {}", directory);
+        return new ResultStore(maxWindows, maxMemory, directory, maxDisk, ttl);
+    }
 }
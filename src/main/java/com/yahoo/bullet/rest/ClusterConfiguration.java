@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest;
+
+import com.yahoo.bullet.pubsub.PubSubResponder;
+import com.yahoo.bullet.rest.common.IsolatedResponder;
+import com.yahoo.bullet.rest.common.ResponseForwarder;
+import com.yahoo.bullet.rest.common.ResponseRouter;
+import com.yahoo.bullet.rest.common.Utils;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration @Slf4j
+@ConditionalOnProperty(prefix = "bullet.cluster", name = "enabled", havingValue = "true")
+public class ClusterConfiguration {
+    @RequiredArgsConstructor @Slf4j
+    public static class Cluster {
+        @Getter
+        private final String instance;
+        @Getter
+        private final String token;
+        private final int timeout;
+        @Getter @Setter
+        private Map<String, String> peers = new HashMap<>();
+
+        /**
+         * Creates a {@link ResponseRouter} that routes the responses for queries owned by the other instances to them.
+         *
+         * @param local The {@link List} of {@link PubSubResponder} for the queries owned by this instance.
+         * @param queueSize The maximum number of responses that can be waiting to be forwarded to each instance.
+         * @param failureThreshold The consecutive failures after which forwarding to an instance is skipped.
+         * @param coolDown The time in ms to skip forwarding to a failing instance for.
+         * @return The created router.
+         */
+        ResponseRouter create(List<PubSubResponder> local, int queueSize, int failureThreshold, long coolDown) {
+            Map<String, PubSubResponder> forwarders = new HashMap<>();
+            peers.forEach((peer, url) -> {
+                if (peer.equals(instance)) {
+                    // The same peers can be configured for every instance
+                    return;
+                }
+                log.info("Forwarding responses for queries owned by {} to {}", peer, url);
+                ResponseForwarder forwarder = new ResponseForwarder(url, token, timeout);
+                forwarders.put(peer, new IsolatedResponder("cluster.peer." + peer, forwarder, queueSize, timeout,
+                                                           failureThreshold, coolDown));
+            });
+            return new ResponseRouter(instance, local, forwarders);
+        }
+    }
+
+    /**
+     * Creates the {@link Cluster} settings for this instance and tags the IDs of the queries submitted to it.
+     *
+     * @param instance The tag of this instance. It can only have letters, digits and hyphens.
+     * @param token The token that forwarded responses must have. It cannot be empty.
+     * @param timeout The time in ms that forwarding a response to another instance can take.
+     * @return The created instance.
+     * @throws IllegalArgumentException if the token is empty, since anyone could then send responses to this instance.
+     */
+    @Bean
+    @ConfigurationProperties("bullet.cluster")
+    public Cluster cluster(@Value("${bullet.cluster.instance.id}") String instance,
+                           @Value("${bullet.cluster.token}") String token,
+                           @Value("${bullet.cluster.timeout.ms}") int timeout) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("A token must be set for the instances of the cluster to forward responses with");
+        }
+        Utils.setInstanceTag(instance);
+        log.info("Tagging the IDs of the queries submitted to this instance with {}", instance);
+        return new Cluster(instance, token, timeout);
+    }
+}
@@ -7,6 +7,7 @@ package com.yahoo.bullet.rest;
 
 import com.yahoo.bullet.common.BulletConfig;
 import com.yahoo.bullet.common.metrics.MetricPublisher;
+import com.yahoo.bullet.rest.common.MetricRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -15,16 +16,29 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @Configuration
 @EnableScheduling
 public class MetricConfiguration {
+    /**
+     * Creates the {@link MetricRegistry} that the metrics of the service are collected in.
+     *
+     * @param isEnabled A boolean denoting if the metric module is enabled.
+     * @return A {@link MetricRegistry} or null if the metric module is not enabled.
+     */
+    @Bean
+    public MetricRegistry metricRegistry(@Value("${bullet.metric.enabled}") boolean isEnabled) {
+        return isEnabled ? new MetricRegistry() : null;
+    }
+
     /**
      * Creates a {@link MetricPublisher} instance from a provided config.
      *
      * @param isEnabled A boolean denoting if the metric module is enabled.
+     * @param isPublishEnabled A boolean denoting if the metrics are published or only served for scraping.
      * @param config The String path to the config file.
-     * @return An instance of the particular {@link MetricPublisher}.
+     * @return An instance of the particular {@link MetricPublisher} or null if metrics are not published.
      */
     @Bean
-    public MetricPublisher metricPublisher(@Value("${bullet.metric.enabled}") boolean isEnabled,
-                                           @Value("${bullet.metric.config}") String config) {
-        return isEnabled ? MetricPublisher.from(new BulletConfig(config)) : null;
+    public MetricPublisher<?> metricPublisher(@Value("${bullet.metric.enabled}") boolean isEnabled,
+                                              @Value("${bullet.metric.publish.enabled}") boolean isPublishEnabled,
+                                              @Value("${bullet.metric.config}") String config) {
+        return isEnabled && isPublishEnabled ? MetricPublisher.from(new BulletConfig(config)) : null;
     }
 }
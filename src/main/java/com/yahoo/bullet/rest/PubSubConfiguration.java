@@ -13,7 +13,10 @@ import com.yahoo.bullet.pubsub.PubSubMessageSerDe;
 import com.yahoo.bullet.pubsub.PubSubResponder;
 import com.yahoo.bullet.pubsub.Publisher;
 import com.yahoo.bullet.pubsub.Subscriber;
+import com.yahoo.bullet.rest.common.IsolatedResponder;
+import com.yahoo.bullet.rest.common.ResultStore;
 import com.yahoo.bullet.rest.service.HandlerService;
+import com.yahoo.bullet.rest.service.PriorityService;
 import com.yahoo.bullet.rest.service.QueryService;
 import com.yahoo.bullet.storage.StorageManager;
 import lombok.extern.slf4j.Slf4j;
@@ -22,10 +25,12 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static com.yahoo.bullet.rest.AsyncConfiguration.ResponderClasses;
+import static com.yahoo.bullet.rest.ClusterConfiguration.Cluster;
 
 @Configuration @Slf4j
 public class PubSubConfiguration {
@@ -35,31 +40,69 @@ public class PubSubConfiguration {
         return null;
     }
 
+    @Bean @ConditionalOnMissingBean
+    public Cluster cluster() {
+        log.info("This instance is not part of a cluster.");
+        return null;
+    }
+
     /**
      * Creates a {@link QueryService} instance from various necessary components.
      *
      * @param queryStorageManager The non-null {@link StorageManager} to use.
      * @param handlerService The {@link HandlerService} to use.
+     * @param priorityService The {@link PriorityService} to prioritize the publishing of queries with.
      * @param responderClasses The responders to use for asynchronous queries. May be empty.
+     * @param resultStore The optional {@link ResultStore} to keep the results of asynchronous queries in.
+     * @param cluster The settings to route responses to the other instances of the service with. May be null.
      * @param publishers The non-empty {@link List} of {@link Publisher} to use.
      * @param subscribers The non-empty {@link List} of {@link Subscriber} to use.
      * @param pubSubMessageSendSerDe The {@link PubSubMessageSerDe} to use.
      * @param sleep The time to sleep between checking for messages from the pubsub.
+     * @param storageBatchWindow The time in ms to batch writes to the {@link StorageManager} for.
+     * @param cacheSize The maximum number of submitted queries to cache in memory.
+     * @param isolationQueueSize The maximum number of results that can be waiting for each asynchronous responder.
+     * @param isolationTimeout The time in ms that a result can wait for or take in an asynchronous responder.
+     * @param isolationFailureThreshold The consecutive failures after which an asynchronous responder is skipped.
+     * @param isolationCoolDown The time in ms to skip a failing asynchronous responder for.
      * @return The created {@link QueryService} instance.
      */
     @Bean
     public QueryService queryService(StorageManager<PubSubMessage> queryStorageManager, HandlerService handlerService,
-                                     ResponderClasses responderClasses, List<Publisher> publishers,
+                                     PriorityService priorityService, ResponderClasses responderClasses, Optional<ResultStore> resultStore,
+                                     Cluster cluster, List<Publisher> publishers,
                                      List<Subscriber> subscribers, PubSubMessageSerDe pubSubMessageSendSerDe,
-                                     @Value("${bullet.pubsub.sleep-ms}") int sleep) {
-        List<PubSubResponder> responders;
-        if (responderClasses == null) {
-            responders = Collections.singletonList(handlerService);
+                                     @Value("${bullet.pubsub.sleep-ms}") int sleep,
+                                     @Value("${bullet.storage.batch.window.ms}") long storageBatchWindow,
+                                     @Value("${bullet.storage.cache.max.size}") int cacheSize,
+                                     @Value("${bullet.async.isolation.queue.size}") int isolationQueueSize,
+                                     @Value("${bullet.async.isolation.timeout.ms}") long isolationTimeout,
+                                     @Value("${bullet.async.isolation.failure.threshold}") int isolationFailureThreshold,
+                                     @Value("${bullet.async.isolation.cooldown.ms}") long isolationCoolDown) {
+        List<PubSubResponder> responders = new ArrayList<>();
+        if (responderClasses != null) {
+            List<PubSubResponder> asyncResponders = responderClasses.create();
+            for (int i = 0; i < asyncResponders.size(); ++i) {
+                PubSubResponder responder = asyncResponders.get(i);
+                String name = responder.getClass().getSimpleName() + "." + i;
+                responders.add(new IsolatedResponder(name, responder, isolationQueueSize, isolationTimeout,
+                                                     isolationFailureThreshold, isolationCoolDown));
+            }
+        }
+        // These only have the queries submitted to this instance
+        List<PubSubResponder> local = new ArrayList<>();
+        resultStore.ifPresent(store -> local.add(new IsolatedResponder(ResultStore.class.getSimpleName(), store,
+                                                                       isolationQueueSize, isolationTimeout,
+                                                                       isolationFailureThreshold, isolationCoolDown)));
+        // The handlers for the synchronous queries are cheap and run inline
+        local.add(handlerService);
+        if (cluster == null) {
+            responders.addAll(local);
         } else {
-            responders = responderClasses.create();
-            responders.add(handlerService);
+            responders.add(cluster.create(local, isolationQueueSize, isolationFailureThreshold, isolationCoolDown));
         }
-        return new QueryService(queryStorageManager, responders, publishers, subscribers, pubSubMessageSendSerDe, sleep);
+        return new QueryService(queryStorageManager, responders, publishers, subscribers, pubSubMessageSendSerDe, sleep,
+                                storageBatchWindow, cacheSize, priorityService);
     }
 
     /**
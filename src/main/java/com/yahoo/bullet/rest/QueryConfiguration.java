@@ -8,6 +8,10 @@ package com.yahoo.bullet.rest;
 import com.yahoo.bullet.bql.BQLConfig;
 import com.yahoo.bullet.bql.BulletQueryBuilder;
 import com.yahoo.bullet.common.BulletConfig;
+import com.yahoo.bullet.rest.common.ConcurrencyLimiter;
+import com.yahoo.bullet.rest.common.CostBudget;
+import com.yahoo.bullet.rest.common.QueryIDGenerator;
+import com.yahoo.bullet.rest.common.Utils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -36,4 +40,60 @@ public class QueryConfiguration {
     public BulletQueryBuilder bulletQueryBuilder(BulletConfig bqlConfig) {
         return new BulletQueryBuilder(bqlConfig);
     }
+
+    /**
+     * Creates the {@link ConcurrencyLimiter} of the synchronous queries. It is fixed at the maximum unless it adapts.
+     *
+     * @param maxConcurrency The hard ceiling of the number of synchronous queries that can run at the same time.
+     * @param adaptive Whether the limit adapts to the latency and failures of the queries.
+     * @param minConcurrency The minimum limit if it adapts.
+     * @param latencyThreshold The time in ms to the acknowledgement of a query above which the limit is backed off.
+     * @param backoffRatio The ratio to multiply the limit by when backing off.
+     * @return The created limiter.
+     */
+    @Bean
+    public ConcurrencyLimiter concurrencyLimiter(@Value("${bullet.query.synchronous.max.concurrency}") int maxConcurrency,
+                                                 @Value("${bullet.query.synchronous.adaptive.enabled}") boolean adaptive,
+                                                 @Value("${bullet.query.synchronous.adaptive.min.concurrency}") int minConcurrency,
+                                                 @Value("${bullet.query.synchronous.adaptive.latency.threshold.ms}") long latencyThreshold,
+                                                 @Value("${bullet.query.synchronous.adaptive.backoff.ratio}") double backoffRatio) {
+        if (!adaptive) {
+            return new ConcurrencyLimiter(maxConcurrency);
+        }
+        log.info("Adapting the limit of synchronous queries between {} and {}", minConcurrency, maxConcurrency);
+        return new ConcurrencyLimiter(minConcurrency, maxConcurrency, latencyThreshold, backoffRatio);
+    }
+
+    /**
+     * Creates the {@link CostBudget} of the synchronous queries. It is unbounded unless cost based admission is enabled.
+     *
+     * @param enabled Whether synchronous queries are admitted by their estimated cost.
+     * @param capacity The total cost of the synchronous queries that can run at the same time.
+     * @return The created budget.
+     */
+    @Bean
+    public CostBudget costBudget(@Value("${bullet.query.synchronous.admission.enabled}") boolean enabled,
+                                 @Value("${bullet.query.synchronous.admission.budget}") double capacity) {
+        if (!enabled) {
+            return new CostBudget();
+        }
+        log.info("Admitting synchronous queries by their cost with a budget of {}", capacity);
+        return new CostBudget(capacity);
+    }
+
+    /**
+     * Creates the {@link QueryIDGenerator} and sets it as the one that new query IDs are generated with.
+     *
+     * @param className The name of a {@link QueryIDGenerator} class with a constructor that takes no arguments.
+     * @return The created generator.
+     * @throws ReflectiveOperationException if the generator could not be created.
+     */
+    @Bean
+    public QueryIDGenerator queryIDGenerator(@Value("${bullet.query.id.generator.class.name}") String className)
+    throws ReflectiveOperationException {
+        QueryIDGenerator generator = (QueryIDGenerator) Class.forName(className).getConstructor().newInstance();
+        Utils.setQueryIDGenerator(generator);
+        log.info("Generating query IDs with {}", className);
+        return generator;
+    }
 }
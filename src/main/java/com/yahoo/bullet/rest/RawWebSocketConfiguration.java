@@ -0,0 +1,30 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest;
+
+import com.yahoo.bullet.rest.controller.RawWebSocketController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class RawWebSocketConfiguration implements WebSocketConfigurer {
+    private static final String ALLOW_ORIGINS = "*";
+
+    @Value("${bullet.endpoint.raw.websocket}")
+    private String endpoint;
+    @Autowired
+    private RawWebSocketController controller;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(controller, endpoint).setAllowedOrigins(ALLOW_ORIGINS);
+    }
+}
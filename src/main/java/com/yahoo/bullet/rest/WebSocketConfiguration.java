@@ -5,9 +5,17 @@
  */
 package com.yahoo.bullet.rest;
 
+import com.yahoo.bullet.rest.common.MeteredTcpClient;
+import com.yahoo.bullet.rest.common.StompTcpClient;
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.messaging.tcp.TcpOperations;
 import org.springframework.web.socket.config.annotation.AbstractWebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
@@ -32,7 +40,76 @@ public class WebSocketConfiguration extends AbstractWebSocketMessageBrokerConfig
     private int messageSizeLimit;
     @Value("${bullet.websocket.message.send.time.limit.secs}")
     private int messageSendTimeLimit;
+    @Value("${bullet.websocket.broker.relay.enabled}")
+    private boolean relayEnabled;
+    @Value("${bullet.websocket.broker.relay.host}")
+    private String relayHost;
+    @Value("${bullet.websocket.broker.relay.port}")
+    private int relayPort;
+    @Value("${bullet.websocket.broker.relay.client.login}")
+    private String clientLogin;
+    @Value("${bullet.websocket.broker.relay.client.passcode}")
+    private String clientPasscode;
+    @Value("${bullet.websocket.broker.relay.system.login}")
+    private String systemLogin;
+    @Value("${bullet.websocket.broker.relay.system.passcode}")
+    private String systemPasscode;
+    @Value("${bullet.websocket.broker.relay.tcp.client.connect.timeout.ms}")
+    private int relayConnectTimeout;
+    @Value("${bullet.websocket.broker.relay.tcp.client.max.connections}")
+    private int relayMaxConnections;
+    @Value("${bullet.websocket.broker.relay.tcp.client.write.timeout.ms}")
+    private long relayWriteTimeout;
+    @Value("${bullet.websocket.broker.relay.metrics.max.connections}")
+    private int relayMaxConnectionMetrics;
 
+    /**
+     * Creates the client that the broker relay uses to connect to the broker, if the relay is enabled. The client is
+     * wrapped so that the throughput of each connection is measured. A {@link StompTcpClient} is also given the
+     * configured timeouts and maximum number of connections.
+     *
+     * @param className The name of a {@link TcpOperations} class with a constructor that takes the host and the port.
+     * @return A {@link MeteredTcpClient} wrapping the configured client.
+     * @throws ReflectiveOperationException if the client could not be created.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "bullet.websocket.broker.relay", name = "enabled", havingValue = "true")
+    @SuppressWarnings("unchecked")
+    public MeteredTcpClient relayTcpClient(@Value("${bullet.websocket.broker.relay.tcp.client.class}") String className)
+    throws ReflectiveOperationException {
+        Class<?> clientClass = Class.forName(className);
+        TcpOperations<byte[]> client;
+        if (clientClass == StompTcpClient.class) {
+            client = new StompTcpClient(relayHost, relayPort, relayConnectTimeout, relayMaxConnections, relayWriteTimeout);
+        } else {
+            client = (TcpOperations<byte[]>) clientClass.getConstructor(String.class, int.class).newInstance(relayHost, relayPort);
+        }
+        return new MeteredTcpClient(client, relayMaxConnectionMetrics);
+    }
+
+    /**
+     * Sets the client from {@link #relayTcpClient(String)} on the broker relay when it is created.
+     *
+     * @param beanFactory The {@link BeanFactory} to get the client from.
+     * @return A {@link BeanPostProcessor} that configures the broker relay.
+     */
+    @Bean
+    public static BeanPostProcessor relayTcpClientPostProcessor(BeanFactory beanFactory) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String name) {
+                if (bean instanceof StompBrokerRelayMessageHandler) {
+                    ((StompBrokerRelayMessageHandler) bean).setTcpClient(beanFactory.getBean(MeteredTcpClient.class));
+                }
+                return bean;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String name) {
+                return bean;
+            }
+        };
+    }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
@@ -42,7 +119,19 @@ public class WebSocketConfiguration extends AbstractWebSocketMessageBrokerConfig
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.setApplicationDestinationPrefixes(serverDestinationPrefix);
-        registry.enableSimpleBroker(clientDestination);
+        if (relayEnabled) {
+            // Responses are sent to the user destination of the session, which resolves without a lookup, so an
+            // instance can send to a session that is connected to another instance through the broker
+            registry.enableStompBrokerRelay(clientDestination)
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(clientLogin)
+                    .setClientPasscode(clientPasscode)
+                    .setSystemLogin(systemLogin)
+                    .setSystemPasscode(systemPasscode);
+        } else {
+            registry.enableSimpleBroker(clientDestination);
+        }
         registry.setUserDestinationPrefix(clientDestinationPrefix);
     }
 
@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A lightweight tokenizer for BQL. It does not build a query. It only splits the text into {@link Token} and finds
+ * the lexical errors. It can resume from the tokens of a previous text that shares a prefix with the new text.
+ */
+public class BQLTokenizer {
+    public enum Kind {
+        IDENTIFIER,
+        QUOTED_IDENTIFIER,
+        STRING,
+        NUMBER,
+        SYMBOL
+    }
+
+    @Getter @AllArgsConstructor
+    public static class Token {
+        private final Kind kind;
+        private final String text;
+        private final int offset;
+
+        /**
+         * Gets the offset just after the end of this token.
+         *
+         * @return The end offset of this token.
+         */
+        public int getEnd() {
+            return offset + text.length();
+        }
+
+        /**
+         * Checks if this token is the given symbol or keyword. Keywords are matched regardless of their case.
+         *
+         * @param value The symbol or keyword.
+         * @return A boolean denoting whether this token is the given value.
+         */
+        public boolean is(String value) {
+            return (kind == Kind.SYMBOL || kind == Kind.IDENTIFIER) && text.equalsIgnoreCase(value);
+        }
+    }
+
+    /**
+     * The result of tokenizing some text. The error, if any, is the first lexical error and tokenizing stops there.
+     */
+    @Getter @AllArgsConstructor
+    public static class Tokens {
+        private final String text;
+        private final List<Token> tokens;
+        private final String error;
+        private final int errorOffset;
+
+        /**
+         * Checks if there was a lexical error.
+         *
+         * @return A boolean denoting whether there was an error.
+         */
+        public boolean hasError() {
+            return error != null;
+        }
+    }
+
+    private static final Set<String> TWO_CHARACTER_SYMBOLS = new HashSet<>(Arrays.asList("!=", "<>", "<=", ">=", "=="));
+    private static final String SYMBOLS = "()[],.*+-/%<>=!:;";
+
+    /**
+     * Tokenizes the given text.
+     *
+     * @param text The non-null text to tokenize.
+     * @return The {@link Tokens} for the text.
+     */
+    public static Tokens tokenize(String text) {
+        return tokenize(text, null);
+    }
+
+    /**
+     * Tokenizes the given text reusing the tokens of a previous text for the prefix they have in common.
+     *
+     * @param text The non-null text to tokenize.
+     * @param previous The {@link Tokens} of a previous text without a lexical error. May be null.
+     * @return The {@link Tokens} for the text.
+     */
+    public static Tokens tokenize(String text, Tokens previous) {
+        List<Token> tokens = new ArrayList<>();
+        int position = 0;
+        if (previous != null && !previous.hasError()) {
+            int common = commonPrefix(text, previous.getText());
+            // A token that ends at the common prefix might continue in the new text, so it is tokenized again
+            for (Token token : previous.getTokens()) {
+                if (token.getEnd() >= common) {
+                    break;
+                }
+                tokens.add(token);
+                position = token.getEnd();
+            }
+        }
+        int length = text.length();
+        while (position < length) {
+            char c = text.charAt(position);
+            if (Character.isWhitespace(c)) {
+                position++;
+            } else if (c == '-' && position + 1 < length && text.charAt(position + 1) == '-') {
+                int end = text.indexOf('\n', position);
+                position = end < 0 ? length : end;
+            } else if (c == '\'' || c == '"') {
+                int end = closingQuote(text, position, c);
+                if (end < 0) {
+                    String what = c == '\'' ? "string" : "quoted identifier";
+                    return new Tokens(text, tokens, "Unterminated " + what, position);
+                }
+                tokens.add(new Token(c == '\'' ? Kind.STRING : Kind.QUOTED_IDENTIFIER, text.substring(position, end + 1), position));
+                position = end + 1;
+            } else if (Character.isDigit(c) || (c == '.' && position + 1 < length && Character.isDigit(text.charAt(position + 1)))) {
+                int end = position + 1;
+                while (end < length && isNumberPart(text, end)) {
+                    end++;
+                }
+                tokens.add(new Token(Kind.NUMBER, text.substring(position, end), position));
+                position = end;
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = position + 1;
+                while (end < length && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '_')) {
+                    end++;
+                }
+                tokens.add(new Token(Kind.IDENTIFIER, text.substring(position, end), position));
+                position = end;
+            } else if (position + 1 < length && TWO_CHARACTER_SYMBOLS.contains(text.substring(position, position + 2))) {
+                tokens.add(new Token(Kind.SYMBOL, text.substring(position, position + 2), position));
+                position += 2;
+            } else if (SYMBOLS.indexOf(c) >= 0) {
+                tokens.add(new Token(Kind.SYMBOL, String.valueOf(c), position));
+                position++;
+            } else {
+                return new Tokens(text, tokens, "Unexpected character " + c, position);
+            }
+        }
+        return new Tokens(text, Collections.unmodifiableList(tokens), null, -1);
+    }
+
+    /**
+     * Converts an offset in the text to a line and column position in the form used by BQL errors.
+     *
+     * @param text The text.
+     * @param offset The offset in the text.
+     * @return The 1-based line and column of the offset separated by a colon.
+     */
+    public static String position(String text, int offset) {
+        int line = 1;
+        int column = 1;
+        for (int i = 0; i < offset && i < text.length(); ++i) {
+            if (text.charAt(i) == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        return line + ":" + column;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int closingQuote(String text, int start, char quote) {
+        int i = start + 1;
+        while (i < text.length()) {
+            if (text.charAt(i) == quote) {
+                // A doubled quote is an escaped quote
+                if (i + 1 < text.length() && text.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static boolean isNumberPart(String text, int i) {
+        char c = text.charAt(i);
+        if (Character.isLetterOrDigit(c) || c == '.') {
+            return true;
+        }
+        // Exponents like 1e-5
+        char previous = text.charAt(i - 1);
+        return (c == '-' || c == '+') && (previous == 'e' || previous == 'E');
+    }
+}
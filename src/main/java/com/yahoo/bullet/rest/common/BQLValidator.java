@@ -0,0 +1,255 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.common.BulletError;
+import com.yahoo.bullet.rest.common.BQLTokenizer.Kind;
+import com.yahoo.bullet.rest.common.BQLTokenizer.Token;
+import com.yahoo.bullet.rest.common.BQLTokenizer.Tokens;
+import com.yahoo.bullet.typesystem.Type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A fast, approximate validator for BQL. It tokenizes the query with {@link BQLTokenizer}, checks its overall
+ * structure and, if given the types of the fields in the schema, checks that the fields exist and are used in
+ * comparisons and accesses that their types allow. It never builds the query, so a query that passes these checks
+ * may still be rejected when it is built.
+ *
+ * The tokens of recently validated queries are kept so that a query that shares a prefix with one of them, like the
+ * next keystroke in an editor, only tokenizes the part that changed. Only the last few of them are searched for the
+ * longest shared prefix. The errors have positions in the form of the
+ * BQL errors: line:column: message.
+ */
+public class BQLValidator {
+    public static final String RESOLUTION = "Please fix the query at the given position";
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+        "SELECT", "DISTINCT", "FROM", "STREAM", "WHERE", "GROUP", "BY", "HAVING", "ORDER", "ASC", "DESC", "WINDOWING",
+        "EVERY", "TUMBLING", "ALL", "FIRST", "LIMIT", "AS", "AND", "OR", "NOT", "XOR", "IS", "NULL", "TRUE", "FALSE",
+        "IN", "BETWEEN", "LIKE", "RLIKE", "ANY", "CAST", "LATERAL", "VIEW", "OUTER", "EXPLODE", "TIME", "RECORD", "MAX",
+        "MIN", "SUM", "AVG", "COUNT", "TOP", "QUANTILE", "FREQ", "CUMFREQ", "LINEAR", "REGION", "MANUAL", "INTEGER",
+        "LONG", "FLOAT", "DOUBLE", "BOOLEAN", "STRING", "MAP", "LIST", "CASE", "WHEN", "THEN", "ELSE", "END"
+    ));
+    private static final Set<String> COMPARISONS = new HashSet<>(Arrays.asList("=", "==", "!=", "<>", "<", "<=", ">", ">="));
+    private static final Set<Type> NUMERIC = new HashSet<>(Arrays.asList(Type.INTEGER, Type.LONG, Type.FLOAT, Type.DOUBLE));
+
+    // The number of the most recently tokenized queries that are searched for a shared prefix
+    static final int CANDIDATES = 16;
+
+    private final Map<String, Tokens> recent;
+    private final Deque<Tokens> latest;
+    private final int cacheSize;
+
+    /**
+     * Constructor that takes the number of recently tokenized queries to keep.
+     *
+     * @param cacheSize The number of recently tokenized queries to keep. If not positive, none are kept.
+     */
+    public BQLValidator(int cacheSize) {
+        recent = new LinkedHashMap<String, Tokens>(16, 0.75f, true) {
+            private static final long serialVersionUID = -5140427932085267203L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tokens> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        latest = new ArrayDeque<>();
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Validates a BQL query.
+     *
+     * @param bql The non-null BQL query.
+     * @param fieldTypes A {@link Function} that returns the {@link Type} of a field in the schema or null if it does
+     *                   not exist. If null, the fields are not checked.
+     * @return A {@link List} of {@link BulletError}. Empty if the query passed the checks.
+     */
+    public List<BulletError> validate(String bql, Function<String, Type> fieldTypes) {
+        Tokens tokens = tokenize(bql);
+        List<BulletError> errors = new ArrayList<>();
+        if (tokens.hasError()) {
+            errors.add(error(bql, tokens.getErrorOffset(), tokens.getError()));
+            return errors;
+        }
+        List<Token> list = tokens.getTokens();
+        checkStructure(bql, list, errors);
+        if (errors.isEmpty() && fieldTypes != null) {
+            checkFields(bql, list, fieldTypes, errors);
+        }
+        return errors;
+    }
+
+    private Tokens tokenize(String bql) {
+        Tokens[] candidates;
+        synchronized (recent) {
+            Tokens previous = recent.get(bql);
+            if (previous != null) {
+                return previous;
+            }
+            candidates = latest.toArray(new Tokens[0]);
+        }
+        Tokens tokens = BQLTokenizer.tokenize(bql, closest(bql, candidates));
+        if (!tokens.hasError() && cacheSize > 0) {
+            synchronized (recent) {
+                recent.put(bql, tokens);
+                latest.addFirst(tokens);
+                if (latest.size() > Math.min(cacheSize, CANDIDATES)) {
+                    latest.removeLast();
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static Tokens closest(String bql, Tokens[] candidates) {
+        Tokens closest = null;
+        int longest = 0;
+        for (Tokens tokens : candidates) {
+            String text = tokens.getText();
+            int length = Math.min(text.length(), bql.length());
+            int common = 0;
+            while (common < length && text.charAt(common) == bql.charAt(common)) {
+                common++;
+            }
+            if (common > longest) {
+                longest = common;
+                closest = tokens;
+            }
+        }
+        return closest;
+    }
+
+    private static void checkStructure(String bql, List<Token> tokens, List<BulletError> errors) {
+        if (tokens.isEmpty()) {
+            errors.add(error(bql, 0, "The query is empty"));
+            return;
+        }
+        if (!tokens.get(0).is("SELECT")) {
+            errors.add(error(bql, tokens.get(0).getOffset(), "The query must start with SELECT"));
+        }
+        boolean hasStream = false;
+        Deque<Token> open = new ArrayDeque<>();
+        for (int i = 0; i < tokens.size(); ++i) {
+            Token token = tokens.get(i);
+            if (token.is("(") || token.is("[")) {
+                open.push(token);
+            } else if (token.is(")") || token.is("]")) {
+                String expected = token.is(")") ? "(" : "[";
+                if (open.isEmpty() || !open.peek().is(expected)) {
+                    errors.add(error(bql, token.getOffset(), "Unmatched " + token.getText()));
+                    return;
+                }
+                open.pop();
+            } else if (token.is("FROM")) {
+                hasStream |= i + 1 < tokens.size() && tokens.get(i + 1).is("STREAM");
+            }
+        }
+        if (!open.isEmpty()) {
+            errors.add(error(bql, open.peek().getOffset(), "Unmatched " + open.peek().getText()));
+        } else if (!hasStream) {
+            errors.add(error(bql, bql.length(), "The query must have a FROM STREAM clause"));
+        }
+    }
+
+    private static void checkFields(String bql, List<Token> tokens, Function<String, Type> fieldTypes, List<BulletError> errors) {
+        Set<String> aliases = aliases(tokens);
+        for (int i = 0; i < tokens.size(); ++i) {
+            Token token = tokens.get(i);
+            if (!isField(tokens, i) || aliases.contains(name(token))) {
+                continue;
+            }
+            String name = name(token);
+            Type type = fieldTypes.apply(name);
+            if (type == null) {
+                errors.add(error(bql, token.getOffset(), "The field " + name + " does not exist in the schema"));
+                continue;
+            }
+            Token next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+            if (next != null && (next.is(".") || next.is("[")) && !isMap(type) && !isList(type)) {
+                errors.add(error(bql, next.getOffset(), "The field " + name + " is of type " + type + " and has no subfields"));
+                continue;
+            }
+            Token literal = i + 2 < tokens.size() ? tokens.get(i + 2) : null;
+            if (next != null && literal != null && COMPARISONS.contains(next.getText()) && !comparable(type, literal)) {
+                errors.add(error(bql, literal.getOffset(), "The field " + name + " is of type " + type + " and cannot be compared to " + literal.getText()));
+            }
+        }
+    }
+
+    private static Set<String> aliases(List<Token> tokens) {
+        Set<String> aliases = new HashSet<>();
+        for (int i = 0; i + 1 < tokens.size(); ++i) {
+            if (!tokens.get(i).is("AS")) {
+                continue;
+            }
+            if (!tokens.get(i + 1).is("(")) {
+                aliases.add(name(tokens.get(i + 1)));
+                continue;
+            }
+            // Lateral views can alias many fields: AS (key, value)
+            for (int j = i + 2; j < tokens.size() && !tokens.get(j).is(")"); ++j) {
+                aliases.add(name(tokens.get(j)));
+            }
+        }
+        return aliases;
+    }
+
+    private static boolean isField(List<Token> tokens, int i) {
+        Token token = tokens.get(i);
+        if (token.getKind() == Kind.QUOTED_IDENTIFIER) {
+            return i == 0 || !tokens.get(i - 1).is(".");
+        }
+        if (token.getKind() != Kind.IDENTIFIER || KEYWORDS.contains(token.getText().toUpperCase())) {
+            return false;
+        }
+        boolean isFunction = i + 1 < tokens.size() && tokens.get(i + 1).is("(");
+        boolean isSubField = i > 0 && tokens.get(i - 1).is(".");
+        return !isFunction && !isSubField;
+    }
+
+    private static boolean comparable(Type type, Token literal) {
+        boolean isPrimitive = type == Type.STRING || type == Type.BOOLEAN || NUMERIC.contains(type);
+        if (!isPrimitive) {
+            return true;
+        }
+        if (literal.getKind() == Kind.STRING) {
+            return type == Type.STRING;
+        }
+        if (literal.getKind() == Kind.NUMBER) {
+            return NUMERIC.contains(type);
+        }
+        return true;
+    }
+
+    private static boolean isMap(Type type) {
+        return type.name().contains("_MAP");
+    }
+
+    private static boolean isList(Type type) {
+        return type.name().endsWith("_LIST");
+    }
+
+    private static String name(Token token) {
+        String text = token.getText();
+        return token.getKind() == Kind.QUOTED_IDENTIFIER ? text.substring(1, text.length() - 1) : text;
+    }
+
+    private static BulletError error(String bql, int offset, String message) {
+        return BulletError.makeError(BQLTokenizer.position(bql, offset) + ": " + message, RESOLUTION);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.yahoo.bullet.rest.model.WebSocketResponse;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes the results sent by the service as CBOR (RFC 7049) for clients that ask for it instead of JSON. The results
+ * from Bullet are JSON, so this transcodes them in a single streaming pass without building them as objects first.
+ * Objects and arrays are written with indefinite lengths, integers with the smallest encoding that holds them and
+ * decimals as single precision floats if that does not lose precision or as double precision floats otherwise.
+ */
+public class CBOREncoder {
+    public static final String MEDIA_TYPE_VALUE = "application/cbor";
+    public static final MediaType MEDIA_TYPE = MediaType.valueOf(MEDIA_TYPE_VALUE);
+
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1 << 5;
+    private static final int TEXT = 3 << 5;
+    private static final int MAP = 5 << 5;
+    private static final int ARRAY_START = 0x9F;
+    private static final int MAP_START = 0xBF;
+    private static final int BREAK = 0xFF;
+    private static final int FALSE = 0xF4;
+    private static final int TRUE = 0xF5;
+    private static final int NULL = 0xF6;
+    private static final int FLOAT = 0xFA;
+    private static final int DOUBLE = 0xFB;
+    private static final byte[] TYPE = "type".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+
+    private final ByteArrayOutputStream output;
+
+    private CBOREncoder(int capacity) {
+        output = new ByteArrayOutputStream(capacity);
+    }
+
+    /**
+     * Checks if an Accept header prefers CBOR to JSON. Media types that are neither are ignored.
+     *
+     * @param accept The value of the Accept header. May be null.
+     * @return A boolean denoting whether CBOR should be used.
+     */
+    public static boolean isPreferred(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return false;
+        }
+        List<MediaType> types;
+        try {
+            types = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        MediaType.sortBySpecificityAndQuality(types);
+        for (MediaType type : types) {
+            if (MEDIA_TYPE.includes(type) && type.getQualityValue() > 0.0) {
+                return true;
+            }
+            if (MediaType.APPLICATION_JSON.isCompatibleWith(type)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes a JSON result to CBOR. If the result is not valid JSON, it is encoded as a CBOR text string instead.
+     *
+     * @param json The JSON to encode. May be null.
+     * @return The CBOR bytes.
+     */
+    public static byte[] encode(String json) {
+        CBOREncoder encoder = new CBOREncoder(json == null ? 1 : json.length());
+        encoder.writeJSON(json);
+        return encoder.output.toByteArray();
+    }
+
+    /**
+     * Encodes a {@link WebSocketResponse} to a CBOR map with the type and the content. The content of all responses but
+     * the acknowledgement is a JSON result and is transcoded like {@link #encode(String)} does.
+     *
+     * @param response The non-null {@link WebSocketResponse} to encode.
+     * @return The CBOR bytes.
+     */
+    public static byte[] encode(WebSocketResponse response) {
+        String content = response.getContent();
+        CBOREncoder encoder = new CBOREncoder(content == null ? 32 : content.length() + 32);
+        encoder.writeHead(MAP, 2);
+        encoder.writeText(TYPE);
+        encoder.writeText(response.getType().name());
+        encoder.writeText(CONTENT);
+        if (content == null) {
+            encoder.output.write(NULL);
+        } else if (response.getType() == WebSocketResponse.Type.ACK) {
+            encoder.writeText(content);
+        } else {
+            byte[] bytes = encode(content);
+            encoder.output.write(bytes, 0, bytes.length);
+        }
+        return encoder.output.toByteArray();
+    }
+
+    private void writeJSON(String json) {
+        if (json == null) {
+            output.write(NULL);
+            return;
+        }
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            writeValue(reader);
+            if (reader.peek() == JsonToken.END_DOCUMENT) {
+                return;
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // Not JSON. Falls through to be sent as is
+        }
+        output.reset();
+        writeText(json);
+    }
+
+    private void writeValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                output.write(MAP_START);
+                while (reader.hasNext()) {
+                    writeText(reader.nextName());
+                    writeValue(reader);
+                }
+                reader.endObject();
+                output.write(BREAK);
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                output.write(ARRAY_START);
+                while (reader.hasNext()) {
+                    writeValue(reader);
+                }
+                reader.endArray();
+                output.write(BREAK);
+                break;
+            case STRING:
+                writeText(reader.nextString());
+                break;
+            case NUMBER:
+                writeNumber(reader.nextString());
+                break;
+            case BOOLEAN:
+                output.write(reader.nextBoolean() ? TRUE : FALSE);
+                break;
+            case NULL:
+                reader.nextNull();
+                output.write(NULL);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected " + reader.peek());
+        }
+    }
+
+    private void writeNumber(String number) {
+        if (isInteger(number)) {
+            try {
+                long value = Long.parseLong(number);
+                if (value >= 0) {
+                    writeHead(UNSIGNED, value);
+                } else {
+                    // -1 - n is encoded as n
+                    writeHead(NEGATIVE, -1 - value);
+                }
+                return;
+            } catch (NumberFormatException e) {
+                // Too large for a long. Falls through to be a double
+            }
+        }
+        double value = Double.parseDouble(number);
+        float single = (float) value;
+        if (single == value || Double.isNaN(value)) {
+            output.write(FLOAT);
+            writeBytes(Float.floatToIntBits(single), 4);
+        } else {
+            output.write(DOUBLE);
+            writeBytes(Double.doubleToLongBits(value), 8);
+        }
+    }
+
+    private static boolean isInteger(String number) {
+        for (int i = 0; i < number.length(); ++i) {
+            char c = number.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeText(String text) {
+        writeText(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeText(byte[] bytes) {
+        writeHead(TEXT, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private void writeHead(int majorType, long value) {
+        if (value < 24) {
+            output.write(majorType | (int) value);
+        } else if (value < 0x100) {
+            output.write(majorType | 24);
+            writeBytes(value, 1);
+        } else if (value < 0x10000) {
+            output.write(majorType | 25);
+            writeBytes(value, 2);
+        } else if (value < 0x100000000L) {
+            output.write(majorType | 26);
+            writeBytes(value, 4);
+        } else {
+            output.write(majorType | 27);
+            writeBytes(value, 8);
+        }
+    }
+
+    private void writeBytes(long value, int count) {
+        for (int i = count - 1; i >= 0; --i) {
+            output.write((int) (value >>> (8 * i)));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A simple consecutive failure circuit breaker. The circuit opens after a configured number of consecutive failures
+ * and stays open for a cool down period. After that, a single attempt is let through. Its success closes the circuit
+ * and its failure opens it again for another cool down period.
+ */
+@Slf4j
+public class CircuitBreaker {
+    private final String name;
+    private final int threshold;
+    private final long coolDown;
+    private int failures = 0;
+    private long openedAt = 0L;
+    private boolean open = false;
+    private boolean trying = false;
+
+    /**
+     * Constructor that takes the failures to open at and the cool down period.
+     *
+     * @param name The name of what this circuit breaker protects. Used for logging.
+     * @param threshold The number of consecutive failures to open the circuit at. If not positive, it never opens.
+     * @param coolDown The time in ms to keep the circuit open for before trying again.
+     */
+    public CircuitBreaker(String name, int threshold, long coolDown) {
+        this.name = name;
+        this.threshold = threshold;
+        this.coolDown = coolDown;
+    }
+
+    /**
+     * Checks if an attempt is allowed through. If the circuit is open and the cool down has passed, this lets a single
+     * attempt through.
+     *
+     * @return A boolean denoting if an attempt can be made.
+     */
+    public synchronized boolean allow() {
+        if (!open) {
+            return true;
+        }
+        if (!trying && System.currentTimeMillis() - openedAt >= coolDown) {
+            trying = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a successful attempt.
+     */
+    public synchronized void success() {
+        if (open) {
+            log.info("Closing the circuit for {}", name);
+        }
+        failures = 0;
+        open = false;
+        trying = false;
+    }
+
+    /**
+     * Records a failed attempt.
+     */
+    public synchronized void failure() {
+        failures++;
+        if (threshold > 0 && (trying || failures >= threshold)) {
+            if (!open) {
+                log.error("Opening the circuit for {} after {} consecutive failures", name, failures);
+            }
+            open = true;
+            trying = false;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Checks if the circuit is currently open.
+     *
+     * @return A boolean denoting if the circuit is open.
+     */
+    public synchronized boolean isOpen() {
+        return open;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A limit on the number of synchronous queries that can run at the same time, which adapts to how the backend is
+ * doing with additive increase and multiplicative decrease (AIMD). Each query gives a sample once it is acknowledged
+ * by the backend or fails. A failure or an acknowledgement that is slower than a threshold backs the limit off by a
+ * ratio. Otherwise, the limit grows by one if at least half of it is in use. The
+ * limit stays between a minimum and a hard ceiling.
+ *
+ * If the minimum and the ceiling are the same, the limit is fixed.
+ */
+public class ConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThreshold;
+    private final double backoffRatio;
+    private volatile double limit;
+
+    /**
+     * Creates a fixed limit.
+     *
+     * @param limit The positive limit.
+     */
+    public ConcurrencyLimiter(int limit) {
+        this(limit, limit, Long.MAX_VALUE, 1.0);
+    }
+
+    /**
+     * Creates an adaptive limit that starts at the ceiling.
+     *
+     * @param minLimit The positive minimum limit.
+     * @param maxLimit The hard ceiling of the limit. It must be at least the minimum.
+     * @param latencyThreshold The time in ms to the acknowledgement of a query above which the limit is backed off.
+     * @param backoffRatio The ratio between 0 and 1 to multiply the limit by when backing off.
+     */
+    public ConcurrencyLimiter(int minLimit, int maxLimit, long latencyThreshold, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit || backoffRatio <= 0.0 || backoffRatio > 1.0) {
+            throw new IllegalArgumentException("The limits must be positive and ordered and the ratio in (0, 1]");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThreshold = latencyThreshold == Long.MAX_VALUE ? latencyThreshold : TimeUnit.MILLISECONDS.toNanos(latencyThreshold);
+        this.backoffRatio = backoffRatio;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Gets the current limit.
+     *
+     * @return The number of queries that can run at the same time.
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Checks if the limit is reached.
+     *
+     * @param inFlight The number of queries running.
+     * @return A boolean denoting if no more queries can be run.
+     */
+    public boolean isReached(int inFlight) {
+        return inFlight >= getLimit();
+    }
+
+    /**
+     * Adjusts the limit with a sample from a query.
+     *
+     * @param latency The time in ns from submitting the query to its acknowledgement.
+     * @param inFlight The number of queries running when the sample was taken.
+     * @param failed Whether the query failed instead of getting a response.
+     */
+    public synchronized void onSample(long latency, int inFlight, boolean failed) {
+        if (failed || latency > latencyThreshold) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0);
+        }
+    }
+
+    /**
+     * Adjusts the limit for a failure that is not tied to a query, such as the backend being down.
+     */
+    public void onFailure() {
+        onSample(0L, 0, true);
+    }
+}
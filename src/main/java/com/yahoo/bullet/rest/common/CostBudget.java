@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A budget of the total cost of the queries that can run at the same time. See {@link QueryCostEstimator}. A query
+ * acquires its cost from the budget when it is admitted and releases it when it is done. A query that costs more than
+ * the whole budget can still run if nothing else is, so that it is not locked out forever.
+ */
+public class CostBudget {
+    private final double capacity;
+    private final Map<String, Double> costs = new HashMap<>();
+    private double used = 0.0;
+
+    /**
+     * Creates an unbounded budget that only keeps track of the cost in use.
+     */
+    public CostBudget() {
+        this(Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Creates a budget with the given capacity.
+     *
+     * @param capacity The positive total cost of the queries that can run at the same time.
+     */
+    public CostBudget(double capacity) {
+        if (!(capacity > 0.0)) {
+            throw new IllegalArgumentException("The capacity of the budget must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Acquires the cost of a query if there is room for it in the budget.
+     *
+     * @param id The ID of the query.
+     * @param cost The cost of the query.
+     * @return true if the cost was acquired.
+     */
+    public synchronized boolean tryAcquire(String id, double cost) {
+        if (used + cost > capacity && !costs.isEmpty()) {
+            return false;
+        }
+        Double previous = costs.put(id, cost);
+        used += cost - (previous == null ? 0.0 : previous);
+        return true;
+    }
+
+    /**
+     * Releases the cost of a query, if it has acquired any.
+     *
+     * @param id The ID of the query.
+     */
+    public synchronized void release(String id) {
+        Double cost = costs.remove(id);
+        if (cost != null) {
+            // Resets to avoid drift from rounding
+            used = costs.isEmpty() ? 0.0 : used - cost;
+        }
+    }
+
+    /**
+     * Releases the costs of all the queries.
+     */
+    public synchronized void releaseAll() {
+        costs.clear();
+        used = 0.0;
+    }
+
+    /**
+     * Gets the total cost of the running queries.
+     *
+     * @return The cost in use.
+     */
+    public synchronized double getUsed() {
+        return used;
+    }
+
+    /**
+     * Gets the capacity of this budget.
+     *
+     * @return The total cost of the queries that can run at the same time. It is infinite if the budget is unbounded.
+     */
+    public double getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Checks if this budget has a finite capacity.
+     *
+     * @return A boolean denoting if queries can be rejected by this budget.
+     */
+    public boolean isBounded() {
+        return capacity != Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue for each {@link PriorityClass} that is drained with weighted fair queuing. Each item is tagged with
+ * a virtual finish time when it is added, which is the later of the finish time of the last item of its class and the
+ * finish time of the last item taken, plus the inverse of the weight of its class. The item with the earliest tag is
+ * taken first. With weights of 4 and 1, a busy class gets 4 items for each item of the other. A class that was idle
+ * does not build up credit to catch up with.
+ *
+ * @param <T> The type of the items.
+ */
+public class FairQueue<T> {
+    private static class Entry<T> {
+        private final T item;
+        private final double finish;
+
+        private Entry(T item, double finish) {
+            this.item = item;
+            this.finish = finish;
+        }
+    }
+
+    private final Map<PriorityClass, ArrayDeque<Entry<T>>> queues = new EnumMap<>(PriorityClass.class);
+    private final Map<PriorityClass, Double> costs = new EnumMap<>(PriorityClass.class);
+    private final Map<PriorityClass, Double> lastFinish = new EnumMap<>(PriorityClass.class);
+    private final int capacity;
+    private double virtualTime = 0.0;
+
+    /**
+     * Constructor that takes the weights of the classes and the size of each of their queues.
+     *
+     * @param weights The positive weight of each {@link PriorityClass}.
+     * @param capacity The maximum number of items in the queue of each class.
+     */
+    public FairQueue(Map<PriorityClass, Integer> weights, int capacity) {
+        for (PriorityClass priority : PriorityClass.values()) {
+            Integer weight = weights.get(priority);
+            if (weight == null || weight < 1) {
+                throw new IllegalArgumentException("The weight of every class must be positive");
+            }
+            queues.put(priority, new ArrayDeque<>());
+            costs.put(priority, 1.0 / weight);
+            lastFinish.put(priority, 0.0);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds an item for the given class if its queue is not full.
+     *
+     * @param priority The {@link PriorityClass} of the item.
+     * @param item The non-null item.
+     * @return true if the item was added.
+     */
+    public synchronized boolean offer(PriorityClass priority, T item) {
+        Objects.requireNonNull(item);
+        ArrayDeque<Entry<T>> queue = queues.get(priority);
+        if (queue.size() >= capacity) {
+            return false;
+        }
+        double finish = Math.max(virtualTime, lastFinish.get(priority)) + costs.get(priority);
+        lastFinish.put(priority, finish);
+        queue.addLast(new Entry<>(item, finish));
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Takes the next item, if there is one.
+     *
+     * @return The item with the earliest finish time or null if all the queues are empty.
+     */
+    public synchronized T poll() {
+        ArrayDeque<Entry<T>> next = null;
+        for (ArrayDeque<Entry<T>> queue : queues.values()) {
+            if (!queue.isEmpty() && (next == null || queue.peekFirst().finish < next.peekFirst().finish)) {
+                next = queue;
+            }
+        }
+        if (next == null) {
+            return null;
+        }
+        Entry<T> entry = next.pollFirst();
+        virtualTime = entry.finish;
+        return entry.item;
+    }
+
+    /**
+     * Takes the next item, waiting up to the given time for one.
+     *
+     * @param timeout The time in ms to wait for.
+     * @return The item with the earliest finish time or null if there was none in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized T poll(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T item = poll();
+        while (item == null) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return null;
+            }
+            wait(remaining);
+            item = poll();
+        }
+        return item;
+    }
+
+    /**
+     * Gets the oldest item waiting for the given class without taking it.
+     *
+     * @param priority The {@link PriorityClass}.
+     * @return The first item in the queue of the class or null if it is empty.
+     */
+    public synchronized T peek(PriorityClass priority) {
+        Entry<T> entry = queues.get(priority).peekFirst();
+        return entry == null ? null : entry.item;
+    }
+
+    /**
+     * Gets the number of items waiting for the given class.
+     *
+     * @param priority The {@link PriorityClass}.
+     * @return The size of its queue.
+     */
+    public synchronized int size(PriorityClass priority) {
+        return queues.get(priority).size();
+    }
+}
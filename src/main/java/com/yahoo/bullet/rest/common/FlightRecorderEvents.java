@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.rest.query.QueryHandler;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events behind {@link QueryEvent}. This is the only class that refers to the Flight Recorder
+ * API, so it must only be loaded once {@link QueryEvent} has found that the API is available. The events are passed
+ * around as {@link Object} so that callers do not refer to their types either.
+ */
+final class FlightRecorderEvents {
+    private static final String PREFIX = "com.yahoo.bullet.";
+
+    private FlightRecorderEvents() {
+    }
+
+    @Category("Bullet") @StackTrace(false)
+    abstract static class Base extends Event {
+        @Label("Query ID")
+        String queryID;
+        @Label("Endpoint")
+        String endpoint;
+    }
+
+    @Name(PREFIX + "Compile") @Label("Compile") @Description("Builds a query from BQL")
+    static class Compile extends Base {
+        @Label("Valid")
+        boolean valid;
+    }
+
+    @Name(PREFIX + "Publish") @Label("Publish") @Description("Publishes a query or a signal to the PubSub")
+    static class Publish extends Base {
+    }
+
+    @Name(PREFIX + "StoragePut") @Label("Storage Put") @Description("Stores a query till it is done")
+    static class StoragePut extends Base {
+    }
+
+    @Name(PREFIX + "StorageRemove") @Label("Storage Remove") @Description("Removes a stored query")
+    static class StorageRemove extends Base {
+    }
+
+    @Name(PREFIX + "Receive") @Label("Receive") @Description("Receives a response from the PubSub")
+    static class Receive extends Base {
+    }
+
+    @Name(PREFIX + "Commit") @Label("Commit") @Description("Commits a response received from the PubSub")
+    static class Commit extends Base {
+    }
+
+    @Name(PREFIX + "Respond") @Label("Respond") @Description("Hands a response to the handler of its query")
+    static class Respond extends Base {
+    }
+
+    @Name(PREFIX + "Send") @Label("Send") @Description("Sends a response to the client of its query")
+    static class Send extends Base {
+    }
+
+    static Object compile() {
+        return new Compile();
+    }
+
+    static Object publish() {
+        return new Publish();
+    }
+
+    static Object storagePut() {
+        return new StoragePut();
+    }
+
+    static Object storageRemove() {
+        return new StorageRemove();
+    }
+
+    static Object receive() {
+        return new Receive();
+    }
+
+    static Object commit() {
+        return new Commit();
+    }
+
+    static Object respond() {
+        return new Respond();
+    }
+
+    static Object send() {
+        return new Send();
+    }
+
+    static void begin(Object event) {
+        ((Base) event).begin();
+    }
+
+    static void end(Object event, String queryID, String endpoint) {
+        Base base = (Base) event;
+        base.end();
+        if (base.shouldCommit()) {
+            base.queryID = queryID;
+            base.endpoint = endpoint;
+            base.commit();
+        }
+    }
+
+    static void end(Object event, String queryID, QueryHandler handler) {
+        Base base = (Base) event;
+        base.end();
+        if (base.shouldCommit()) {
+            base.queryID = queryID;
+            base.endpoint = handler.getEndpoint();
+            base.commit();
+        }
+    }
+
+    static void end(Object event, String queryID, String endpoint, boolean valid) {
+        Compile compile = (Compile) event;
+        compile.end();
+        if (compile.shouldCommit()) {
+            compile.queryID = queryID;
+            compile.endpoint = endpoint;
+            compile.valid = valid;
+            compile.commit();
+        }
+    }
+
+    static boolean shouldCommit(Object event) {
+        return ((Base) event).shouldCommit();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import lombok.Getter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+/**
+ * A size-bounded map from the keys that clients submit queries with to the ID of the query and the future of its
+ * response, so that a retry with the same key gets the response of the query that was already submitted. Entries
+ * expire a fixed time after they were added. Since that time is the same for all of them, the oldest entries are the
+ * first to expire. The oldest entry is also evicted when the map is full.
+ */
+public class IdempotencyCache {
+    /**
+     * The query that was submitted with a key.
+     */
+    @Getter
+    public static class Entry {
+        private final String id;
+        private final CompletableFuture<?> result;
+        private final long expiry;
+
+        private Entry(String id, CompletableFuture<?> result, long expiry) {
+            this.id = id;
+            this.result = result;
+            this.expiry = expiry;
+        }
+    }
+
+    private final long ttl;
+    private final LinkedHashMap<String, Entry> entries;
+    private final LongSupplier clock;
+
+    /**
+     * Constructor that takes the maximum number of keys and how long to keep them for.
+     *
+     * @param maxSize The positive maximum number of keys to keep.
+     * @param ttl The time in ms to keep a key for after its query was submitted.
+     */
+    public IdempotencyCache(int maxSize, long ttl) {
+        this(maxSize, ttl, System::currentTimeMillis);
+    }
+
+    IdempotencyCache(int maxSize, long ttl, LongSupplier clock) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum number of keys must be positive");
+        }
+        this.ttl = ttl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<String, Entry>() {
+            private static final long serialVersionUID = 4613470734613380452L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the query for a key or, if there is none, adds the given one for it.
+     *
+     * @param key The non-null key.
+     * @param id The ID of the query to add.
+     * @param result The {@link CompletableFuture} of the response to the query to add.
+     * @return The {@link Entry} that was already there for the key or null if the given query was added.
+     */
+    public synchronized Entry putIfAbsent(String key, String id, CompletableFuture<?> result) {
+        long now = clock.getAsLong();
+        expire(now);
+        Entry existing = entries.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        entries.put(key, new Entry(id, result, now + ttl));
+        return null;
+    }
+
+    /**
+     * Removes the query for a key if it is the given one, such as when it could not be submitted and a retry should
+     * try again.
+     *
+     * @param key The non-null key.
+     * @param id The ID of the query to remove.
+     * @return true if it was removed.
+     */
+    public synchronized boolean remove(String key, String id) {
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.id.equals(id)) {
+            return false;
+        }
+        entries.remove(key);
+        return true;
+    }
+
+    /**
+     * Gets the number of keys that have not expired.
+     *
+     * @return The number of keys.
+     */
+    public synchronized int size() {
+        expire(clock.getAsLong());
+        return entries.size();
+    }
+
+    private void expire(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next().expiry <= now) {
+            iterator.remove();
+        }
+    }
+}
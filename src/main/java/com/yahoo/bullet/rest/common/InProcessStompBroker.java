@@ -0,0 +1,202 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import lombok.AllArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.tcp.ReconnectStrategy;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+import org.springframework.messaging.tcp.TcpOperations;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A STOMP broker that lives in the same process and is connected to like an external one. It is a stand in for an
+ * external broker for tests and local development of the broker relay. It acknowledges connections, keeps the
+ * subscriptions and delivers each sent message to every subscription to its destination, from any connection. It
+ * does not send heartbeats, acknowledge messages or support transactions.
+ */
+public class InProcessStompBroker implements TcpOperations<byte[]> {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong messageIDs = new AtomicLong();
+
+    @AllArgsConstructor
+    private static class Subscription {
+        private final Connection connection;
+        private final String id;
+        private final String destination;
+    }
+
+    /**
+     * Default constructor.
+     */
+    public InProcessStompBroker() {
+    }
+
+    /**
+     * Constructor that takes the broker to connect to like the other clients for the relay. Both are ignored.
+     *
+     * @param host The ignored host.
+     * @param port The ignored port.
+     */
+    public InProcessStompBroker(String host, int port) {
+        this();
+    }
+
+    @Override
+    public ListenableFuture<Void> connect(TcpConnectionHandler<byte[]> handler) {
+        Connection connection = new Connection(handler);
+        connections.add(connection);
+        handler.afterConnected(connection);
+        return done();
+    }
+
+    @Override
+    public ListenableFuture<Void> connect(TcpConnectionHandler<byte[]> handler, ReconnectStrategy strategy) {
+        return connect(handler);
+    }
+
+    @Override
+    public ListenableFuture<Void> shutdown() {
+        connections.forEach(Connection::close);
+        return done();
+    }
+
+    /**
+     * Gets the number of open connections to the broker.
+     *
+     * @return The number of connections.
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Gets the number of subscriptions in the broker.
+     *
+     * @return The number of subscriptions.
+     */
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    private static ListenableFuture<Void> done() {
+        SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+        future.set(null);
+        return future;
+    }
+
+    private class Connection implements TcpConnection<byte[]> {
+        private final TcpConnectionHandler<byte[]> handler;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private Connection(TcpConnectionHandler<byte[]> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public ListenableFuture<Void> send(Message<byte[]> message) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+            StompCommand command = accessor.getCommand();
+            if (command == null) {
+                // Heartbeat
+                return done();
+            }
+            switch (command) {
+                case CONNECT:
+                case STOMP:
+                    StompHeaderAccessor connected = StompHeaderAccessor.create(StompCommand.CONNECTED);
+                    connected.setVersion("1.2");
+                    connected.setHeartbeat(0, 0);
+                    deliver(connected, EMPTY);
+                    break;
+                case SUBSCRIBE:
+                    subscriptions.add(new Subscription(this, accessor.getSubscriptionId(), accessor.getDestination()));
+                    break;
+                case UNSUBSCRIBE:
+                    subscriptions.removeIf(s -> s.connection == this && s.id.equals(accessor.getSubscriptionId()));
+                    break;
+                case SEND:
+                    publish(accessor, message.getPayload());
+                    break;
+                case DISCONNECT:
+                    receipt(accessor);
+                    close();
+                    return done();
+                default:
+                    break;
+            }
+            receipt(accessor);
+            return done();
+        }
+
+        @Override
+        public void onReadInactivity(Runnable runnable, long duration) {
+        }
+
+        @Override
+        public void onWriteInactivity(Runnable runnable, long duration) {
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscriptions.removeIf(s -> s.connection == this);
+                connections.remove(this);
+                handler.afterConnectionClosed();
+            }
+        }
+
+        private void publish(StompHeaderAccessor accessor, byte[] payload) {
+            String destination = accessor.getDestination();
+            for (Subscription subscription : subscriptions) {
+                if (!subscription.destination.equals(destination)) {
+                    continue;
+                }
+                StompHeaderAccessor message = StompHeaderAccessor.create(StompCommand.MESSAGE);
+                message.setDestination(destination);
+                message.setSubscriptionId(subscription.id);
+                message.setMessageId(String.valueOf(messageIDs.incrementAndGet()));
+                if (accessor.getContentType() != null) {
+                    message.setContentType(accessor.getContentType());
+                }
+                subscription.connection.deliver(message, payload);
+            }
+        }
+
+        private void receipt(StompHeaderAccessor accessor) {
+            if (accessor.getReceipt() == null) {
+                return;
+            }
+            StompHeaderAccessor receipt = StompHeaderAccessor.create(StompCommand.RECEIPT);
+            receipt.setReceiptId(accessor.getReceipt());
+            deliver(receipt, EMPTY);
+        }
+
+        private void deliver(StompHeaderAccessor accessor, byte[] payload) {
+            if (closed.get()) {
+                return;
+            }
+            // The relay reads the headers back through the accessor
+            accessor.setLeaveMutable(true);
+            handler.handleMessage(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+        }
+    }
+}
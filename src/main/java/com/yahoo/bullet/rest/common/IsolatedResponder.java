@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.common.metrics.MetricCollector;
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.pubsub.PubSubResponder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps a {@link PubSubResponder} so that it responds on its own thread with a bounded queue of pending responses.
+ * The thread calling {@link #respond(String, PubSubMessage)} never waits on the wrapped responder. Responses are
+ * dropped if the queue is full, if they waited longer than the timeout in the queue or if the {@link CircuitBreaker}
+ * for the responder is open. Responses that throw or take longer than the timeout count as failures for the
+ * circuit breaker.
+ *
+ * The latency and the various drop counts are collected as metrics. See {@link #extractMetrics()}.
+ */
+@Slf4j
+public class IsolatedResponder extends PubSubResponder {
+    public static final String PREFIX = "async.responder.";
+    public static final String LATENCY = "latency";
+    public static final String RESPONDED = "responded";
+    public static final String FAILED = "failed";
+    public static final String TIMED_OUT = "timed.out";
+    public static final String DROPPED = "dropped";
+    public static final String REJECTED = "rejected";
+
+    private final PubSubResponder responder;
+    private final long timeout;
+    private final ThreadPoolExecutor executor;
+    private final CircuitBreaker circuitBreaker;
+    private final MetricCollector metricCollector;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final String latency;
+    private final String responded;
+    private final String failed;
+    private final String timedOut;
+    private final String dropped;
+    private final String rejected;
+
+    /**
+     * Constructor that takes the responder to wrap and the limits for it.
+     *
+     * @param name The name to use for the responder in its metrics.
+     * @param responder The non-null {@link PubSubResponder} to wrap.
+     * @param queueSize The maximum number of responses that can be waiting for the responder.
+     * @param timeout The time in ms that a response can wait for or take in the responder.
+     * @param failureThreshold The number of consecutive failures after which to stop responding for a while.
+     * @param coolDown The time in ms to stop responding for once the failure threshold is reached.
+     */
+    public IsolatedResponder(String name, PubSubResponder responder, int queueSize, long timeout, int failureThreshold,
+                             long coolDown) {
+        super(null);
+        Objects.requireNonNull(responder);
+        this.responder = responder;
+        this.timeout = timeout;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize));
+        this.circuitBreaker = new CircuitBreaker(name, failureThreshold, coolDown);
+        String prefix = PREFIX + name + ".";
+        latency = prefix + LATENCY;
+        responded = prefix + RESPONDED;
+        failed = prefix + FAILED;
+        timedOut = prefix + TIMED_OUT;
+        dropped = prefix + DROPPED;
+        rejected = prefix + REJECTED;
+        metricCollector = new MetricCollector(Arrays.asList(responded, failed, timedOut, dropped, rejected),
+                                              Collections.singletonList(latency));
+    }
+
+    @Override
+    public void respond(String id, PubSubMessage message) {
+        if (!circuitBreaker.allow()) {
+            log.debug("Circuit is open. Not responding to {}", id);
+            metricCollector.increment(rejected);
+            return;
+        }
+        long queued = System.currentTimeMillis();
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> respond(id, message, queued));
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            log.error("Queue is full. Dropping response for {}", id);
+            metricCollector.increment(dropped);
+        }
+    }
+
+    /**
+     * Extracts the metrics collected for this responder since the last extraction.
+     *
+     * @return A {@link Map} of metric names to their values.
+     */
+    public Map<String, Number> extractMetrics() {
+        return metricCollector.extractMetrics();
+    }
+
+    /**
+     * Gets the number of responses waiting for or being handled by the responder.
+     *
+     * @return The number of pending responses.
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops accepting responses and waits up to the timeout for the pending ones before closing the wrapped responder.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for pending responses");
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        responder.close();
+    }
+
+    private void respond(String id, PubSubMessage message, long queued) {
+        try {
+            respondNow(id, message, queued);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private void respondNow(String id, PubSubMessage message, long queued) {
+        long start = System.currentTimeMillis();
+        if (start - queued > timeout) {
+            log.error("Response for {} waited for {} ms. Dropping it", id, start - queued);
+            metricCollector.increment(timedOut);
+            circuitBreaker.failure();
+            return;
+        }
+        try {
+            responder.respond(id, message);
+        } catch (Exception e) {
+            log.error("Error while responding to " + id, e);
+            metricCollector.increment(failed);
+            circuitBreaker.failure();
+            return;
+        }
+        long duration = System.currentTimeMillis() - start;
+        metricCollector.average(latency, duration);
+        if (duration > timeout) {
+            log.error("Response for {} took {} ms", id, duration);
+            metricCollector.increment(timedOut);
+            circuitBreaker.failure();
+        } else {
+            metricCollector.increment(responded);
+            circuitBreaker.success();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.rest.model.WebSocketResponse;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the responses sent by the service straight to UTF-8 JSON bytes. The results from Bullet are already JSON,
+ * so wrapping them in a response only needs them escaped as a JSON string. This measures the encoded size first and
+ * then escapes and encodes into a single array of exactly that size, instead of building the JSON as a String or
+ * going through a general purpose serializer and its growing buffers.
+ */
+public class JSONEncoder {
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TYPE_PREFIX = "{\"type\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT_PREFIX = "\",\"content\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] buffer;
+    private int size = 0;
+
+    private JSONEncoder(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * Encodes a {@link WebSocketResponse} to the same JSON that a general purpose serializer would produce for it.
+     *
+     * @param response The non-null {@link WebSocketResponse} to encode.
+     * @return The UTF-8 bytes of the JSON.
+     */
+    public static byte[] encode(WebSocketResponse response) {
+        String content = response.getContent();
+        byte[] type = response.getType().name().getBytes(StandardCharsets.UTF_8);
+        int length = TYPE_PREFIX.length + type.length + CONTENT_PREFIX.length + 1;
+        length += content == null ? NULL.length : encodedLength(content);
+        JSONEncoder encoder = new JSONEncoder(length);
+        encoder.write(TYPE_PREFIX);
+        encoder.write(type);
+        encoder.write(CONTENT_PREFIX);
+        if (content == null) {
+            encoder.write(NULL);
+        } else {
+            encoder.writeString(content);
+        }
+        encoder.write((byte) '}');
+        return encoder.buffer;
+    }
+
+    /**
+     * Computes the number of bytes that a String takes when written as a quoted and escaped UTF-8 JSON string.
+     *
+     * @param value The non-null String.
+     * @return The number of bytes.
+     */
+    static int encodedLength(String value) {
+        int length = 2;
+        int size = value.length();
+        for (int i = 0; i < size; ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                length += 2;
+            } else if (c < 0x20) {
+                length += isShortEscape(c) ? 2 : 6;
+            } else if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isShortEscape(char c) {
+        return c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f';
+    }
+
+    private void writeString(String value) {
+        write((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                write((byte) '\\');
+                write((byte) c);
+            } else if (c < 0x20) {
+                writeControl(c);
+            } else if (c < 0x80) {
+                write((byte) c);
+            } else if (c < 0x800) {
+                write((byte) (0xC0 | (c >> 6)));
+                write((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                write((byte) (0xF0 | (codePoint >> 18)));
+                write((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                write((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                write((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate cannot be encoded in UTF-8
+                write((byte) '?');
+            } else {
+                write((byte) (0xE0 | (c >> 12)));
+                write((byte) (0x80 | ((c >> 6) & 0x3F)));
+                write((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        write((byte) '"');
+    }
+
+    private void writeControl(char c) {
+        write((byte) '\\');
+        switch (c) {
+            case '\n':
+                write((byte) 'n');
+                break;
+            case '\r':
+                write((byte) 'r');
+                break;
+            case '\t':
+                write((byte) 't');
+                break;
+            case '\b':
+                write((byte) 'b');
+                break;
+            case '\f':
+                write((byte) 'f');
+                break;
+            default:
+                write((byte) 'u');
+                write((byte) '0');
+                write((byte) '0');
+                write(HEX[c >> 4]);
+                write(HEX[c & 0xF]);
+        }
+    }
+
+    private void write(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void write(byte b) {
+        buffer[size++] = b;
+    }
+}
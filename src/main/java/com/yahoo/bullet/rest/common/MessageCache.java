@@ -0,0 +1,199 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.common.SerializerDeserializer;
+import com.yahoo.bullet.pubsub.Metadata;
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded, in-process cache of decoded {@link PubSubMessage} keyed by query ID. The least recently used entry is
+ * evicted when the cache is full. It tracks hits, misses, evictions and an estimate of the memory held by the cached
+ * messages. See {@link #getMetrics()}.
+ *
+ * Messages are copied when they are added and when they are retrieved, since the message being cached may be the one
+ * that was published and messages can change their content, such as when it is read lazily.
+ *
+ * If the maximum size is not positive, nothing is cached.
+ */
+@Slf4j
+public class MessageCache {
+    public static final String HITS = "storage.cache.hits";
+    public static final String MISSES = "storage.cache.misses";
+    public static final String HIT_RATIO = "storage.cache.hit.ratio";
+    public static final String EVICTIONS = "storage.cache.evictions";
+    public static final String SIZE = "storage.cache.size";
+    public static final String MEMORY = "storage.cache.memory.bytes";
+
+    private static final class Entry {
+        private final PubSubMessage message;
+        private final long size;
+
+        private Entry(PubSubMessage message) {
+            this.message = message;
+            this.size = sizeOf(message);
+        }
+    }
+
+    private final int maxSize;
+    private final LinkedHashMap<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long memory = 0L;
+
+    /**
+     * Constructor that takes the maximum number of messages to hold.
+     *
+     * @param maxSize The maximum number of messages to cache. If not positive, nothing is cached.
+     */
+    public MessageCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = -2346432498227436537L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= MessageCache.this.maxSize) {
+                    return false;
+                }
+                memory -= eldest.getValue().size;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Adds a decoded {@link PubSubMessage} to the cache, replacing any existing one for the ID.
+     *
+     * @param id The ID of the message.
+     * @param message The non-null message to cache.
+     */
+    public void put(String id, PubSubMessage message) {
+        if (!isEnabled() || message == null) {
+            return;
+        }
+        Entry entry = new Entry(copy(message));
+        synchronized (entries) {
+            Entry previous = entries.put(id, entry);
+            memory += entry.size - (previous == null ? 0L : previous.size);
+        }
+    }
+
+    /**
+     * Retrieves the cached {@link PubSubMessage} for an ID.
+     *
+     * @param id The ID of the message.
+     * @return The cached message or null if it was not cached.
+     */
+    public PubSubMessage get(String id) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(id);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(entry.message);
+    }
+
+    /**
+     * Removes the cached {@link PubSubMessage} for an ID, if it exists.
+     *
+     * @param id The ID of the message.
+     */
+    public void invalidate(String id) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.remove(id);
+            memory -= previous == null ? 0L : previous.size;
+        }
+    }
+
+    /**
+     * Gets the number of cached messages.
+     *
+     * @return The number of messages in the cache.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Gets the current statistics of this cache as metrics.
+     *
+     * @return A {@link Map} of the metric names to their values.
+     */
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new HashMap<>();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        metrics.put(HITS, hitCount);
+        metrics.put(MISSES, missCount);
+        metrics.put(HIT_RATIO, total == 0 ? 0.0 : (double) hitCount / total);
+        metrics.put(EVICTIONS, evictions.get());
+        synchronized (entries) {
+            metrics.put(SIZE, entries.size());
+            metrics.put(MEMORY, memory);
+        }
+        return metrics;
+    }
+
+    private boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    private static PubSubMessage copy(PubSubMessage message) {
+        Serializable content = message.getContent();
+        if (content instanceof byte[]) {
+            content = ((byte[]) content).clone();
+        }
+        Metadata metadata = message.hasMetadata() ? message.getMetadata().copy() : null;
+        return new PubSubMessage(message.getId(), content, metadata);
+    }
+
+    private static long sizeOf(PubSubMessage message) {
+        long size = sizeOf(message.getId());
+        Serializable content = message.getContent();
+        if (content instanceof byte[]) {
+            size += ((byte[]) content).length;
+        } else if (content instanceof String) {
+            size += sizeOf((String) content);
+        } else if (content != null) {
+            try {
+                size += SerializerDeserializer.toBytes(content).length;
+            } catch (Exception e) {
+                log.debug("Could not estimate the size of {}", content);
+            }
+        }
+        if (message.hasMetadata() && message.getMetadata().getContent() instanceof String) {
+            size += sizeOf((String) message.getMetadata().getContent());
+        }
+        return size;
+    }
+
+    private static long sizeOf(String string) {
+        return string == null ? 0L : 2L * string.length();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.tcp.ReconnectStrategy;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+import org.springframework.messaging.tcp.TcpOperations;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps the {@link TcpOperations} used by the broker relay to count the messages and payload bytes sent and received
+ * on each of its connections. A connection is named by the WebSocket session it relays for, or by a sequence number
+ * until its first message with a session is sent. The totals across all connections are always published but only the
+ * busiest few connections are published by name so that the number of metrics does not grow with the number of
+ * sessions. See {@link #extractMetrics()}.
+ */
+public class MeteredTcpClient implements TcpOperations<byte[]> {
+    public static final String PREFIX = "websocket.relay.";
+    public static final String MESSAGES_SENT = "messages.sent";
+    public static final String MESSAGES_RECEIVED = "messages.received";
+    public static final String BYTES_SENT = "bytes.sent";
+    public static final String BYTES_RECEIVED = "bytes.received";
+    public static final String TOTAL = "total";
+
+    private final TcpOperations<byte[]> client;
+    private final int maxConnectionMetrics;
+    private final Set<Counters> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong ids = new AtomicLong();
+
+    private static class Counters {
+        private final LongAdder messagesSent = new LongAdder();
+        private final LongAdder messagesReceived = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private volatile String name;
+        private volatile boolean closed = false;
+
+        private Counters(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Counts {
+        private final String name;
+        private final long messagesSent;
+        private final long messagesReceived;
+        private final long bytesSent;
+        private final long bytesReceived;
+
+        private Counts(Counters counters) {
+            name = counters.name;
+            messagesSent = counters.messagesSent.sumThenReset();
+            messagesReceived = counters.messagesReceived.sumThenReset();
+            bytesSent = counters.bytesSent.sumThenReset();
+            bytesReceived = counters.bytesReceived.sumThenReset();
+        }
+
+        private long activity() {
+            return messagesSent + messagesReceived + bytesSent + bytesReceived;
+        }
+
+        private void addTo(Map<String, Number> metrics, String name) {
+            String prefix = PREFIX + name + ".";
+            metrics.merge(prefix + MESSAGES_SENT, messagesSent, Counts::sum);
+            metrics.merge(prefix + MESSAGES_RECEIVED, messagesReceived, Counts::sum);
+            metrics.merge(prefix + BYTES_SENT, bytesSent, Counts::sum);
+            metrics.merge(prefix + BYTES_RECEIVED, bytesReceived, Counts::sum);
+        }
+
+        private static Number sum(Number a, Number b) {
+            return a.longValue() + b.longValue();
+        }
+    }
+
+    /**
+     * Constructor that takes the client to wrap and the number of connections to publish the metrics of by name.
+     *
+     * @param client The non-null {@link TcpOperations} to wrap.
+     * @param maxConnectionMetrics The maximum number of connections to publish the metrics of by name each time.
+     */
+    public MeteredTcpClient(TcpOperations<byte[]> client, int maxConnectionMetrics) {
+        Objects.requireNonNull(client);
+        this.client = client;
+        this.maxConnectionMetrics = maxConnectionMetrics;
+    }
+
+    @Override
+    public ListenableFuture<Void> connect(TcpConnectionHandler<byte[]> handler) {
+        return client.connect(new MeteredHandler(handler));
+    }
+
+    @Override
+    public ListenableFuture<Void> connect(TcpConnectionHandler<byte[]> handler, ReconnectStrategy strategy) {
+        return client.connect(new MeteredHandler(handler), strategy);
+    }
+
+    @Override
+    public ListenableFuture<Void> shutdown() {
+        return client.shutdown();
+    }
+
+    /**
+     * Gets the wrapped client.
+     *
+     * @return The wrapped {@link TcpOperations}.
+     */
+    public TcpOperations<byte[]> getClient() {
+        return client;
+    }
+
+    /**
+     * Extracts the counts since the last extraction. The counts of all the connections are added up under
+     * {@link #TOTAL} and the counts of the busiest connections that had any activity are also added by their names.
+     * Closed connections are counted one last time and then forgotten.
+     *
+     * @return A {@link Map} of metric names to their values.
+     */
+    public Map<String, Number> extractMetrics() {
+        Map<String, Number> metrics = new HashMap<>();
+        List<Counts> active = new ArrayList<>();
+        for (Counters counters : connections) {
+            if (counters.closed) {
+                connections.remove(counters);
+            }
+            Counts counts = new Counts(counters);
+            counts.addTo(metrics, TOTAL);
+            if (counts.activity() > 0) {
+                active.add(counts);
+            }
+        }
+        if (metrics.isEmpty()) {
+            return metrics;
+        }
+        // The same session can be relayed on more than one connection so the names are merged
+        active.stream().sorted(Comparator.comparingLong(Counts::activity).reversed())
+              .limit(maxConnectionMetrics)
+              .forEach(counts -> counts.addTo(metrics, counts.name));
+        return metrics;
+    }
+
+    private static long size(Message<byte[]> message) {
+        byte[] payload = message.getPayload();
+        return payload == null ? 0 : payload.length;
+    }
+
+    private class MeteredHandler implements TcpConnectionHandler<byte[]> {
+        private final TcpConnectionHandler<byte[]> handler;
+        private volatile Counters counters;
+
+        private MeteredHandler(TcpConnectionHandler<byte[]> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void afterConnected(TcpConnection<byte[]> connection) {
+            counters = new Counters(String.valueOf(ids.incrementAndGet()));
+            connections.add(counters);
+            handler.afterConnected(new MeteredConnection(connection, counters));
+        }
+
+        @Override
+        public void afterConnectFailure(Throwable throwable) {
+            handler.afterConnectFailure(throwable);
+        }
+
+        @Override
+        public void handleMessage(Message<byte[]> message) {
+            Counters current = counters;
+            if (current != null) {
+                current.messagesReceived.increment();
+                current.bytesReceived.add(size(message));
+            }
+            handler.handleMessage(message);
+        }
+
+        @Override
+        public void handleFailure(Throwable throwable) {
+            handler.handleFailure(throwable);
+        }
+
+        @Override
+        public void afterConnectionClosed() {
+            Counters current = counters;
+            if (current != null) {
+                current.closed = true;
+            }
+            handler.afterConnectionClosed();
+        }
+    }
+
+    private static class MeteredConnection implements TcpConnection<byte[]> {
+        private final TcpConnection<byte[]> connection;
+        private final Counters counters;
+        private volatile boolean named = false;
+
+        private MeteredConnection(TcpConnection<byte[]> connection, Counters counters) {
+            this.connection = connection;
+            this.counters = counters;
+        }
+
+        @Override
+        public ListenableFuture<Void> send(Message<byte[]> message) {
+            if (!named) {
+                String session = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                if (session != null) {
+                    counters.name = session;
+                    named = true;
+                }
+            }
+            counters.messagesSent.increment();
+            counters.bytesSent.add(size(message));
+            return connection.send(message);
+        }
+
+        @Override
+        public void onReadInactivity(Runnable runnable, long duration) {
+            connection.onReadInactivity(runnable, duration);
+        }
+
+        @Override
+        public void onWriteInactivity(Runnable runnable, long duration) {
+            connection.onWriteInactivity(runnable, duration);
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+        }
+    }
+}
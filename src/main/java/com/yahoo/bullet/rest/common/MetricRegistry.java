@@ -0,0 +1,179 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The central registry of the metrics collected by the service. Components get a {@link Counter} handle for each of
+ * their metrics once and increment it on their hot paths, which only adds to a {@link LongAdder}. Gauges are read when
+ * the metrics are published or scraped. Components that collect their own metrics can be added as sources.
+ *
+ * The metrics are extracted once per interval with {@link #extractMetrics()}, which gives the counts since the last
+ * time, whether or not they are published. They can also be scraped as text with {@link #scrape()}, which gives the
+ * total counts instead. Sources are only read when extracting, so what is scraped for them is what they gave the last
+ * time, which can be counts for the last interval.
+ */
+public class MetricRegistry {
+    public static final String COUNTER = "counter";
+    public static final String GAUGE = "gauge";
+    public static final String UNTYPED = "untyped";
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+    private final List<Supplier<Map<String, Number>>> sources = new CopyOnWriteArrayList<>();
+    private volatile Map<String, Number> sourced = Collections.emptyMap();
+
+    /**
+     * A counter that can be incremented from many threads at once without contending.
+     */
+    public static class Counter {
+        private final LongAdder count = new LongAdder();
+        private long published = 0L;
+
+        /**
+         * Adds one to the count.
+         */
+        public void increment() {
+            count.increment();
+        }
+
+        /**
+         * Adds to the count.
+         *
+         * @param value The value to add.
+         */
+        public void add(long value) {
+            count.add(value);
+        }
+
+        /**
+         * Gets the total count.
+         *
+         * @return The count since this was created.
+         */
+        public long get() {
+            return count.sum();
+        }
+
+        private long extract() {
+            long total = count.sum();
+            long delta = total - published;
+            published = total;
+            return delta;
+        }
+    }
+
+    /**
+     * Gets the {@link Counter} for a metric, creating it if it does not exist. The handle should be kept and reused.
+     *
+     * @param name The non-null name of the metric.
+     * @return The counter for the metric.
+     */
+    public Counter counter(String name) {
+        Objects.requireNonNull(name);
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Adds a gauge that is read when the metrics are published or scraped. It replaces any gauge with the same name.
+     *
+     * @param name The non-null name of the metric.
+     * @param gauge The non-null {@link Supplier} of the current value of the metric.
+     */
+    public void gauge(String name, Supplier<? extends Number> gauge) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(gauge);
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Adds a component that collects its own metrics. It is extracted from when the metrics are published. Its values
+     * from the last time are what is scraped.
+     *
+     * @param source The non-null {@link Supplier} that extracts the metrics of the component.
+     */
+    public void source(Supplier<Map<String, Number>> source) {
+        Objects.requireNonNull(source);
+        sources.add(source);
+    }
+
+    /**
+     * Extracts the metrics to publish. Counters have their counts since the last extraction.
+     *
+     * @return A {@link Map} of metric names to their values.
+     */
+    public synchronized Map<String, Number> extractMetrics() {
+        Map<String, Number> fromSources = new HashMap<>();
+        for (Supplier<Map<String, Number>> source : sources) {
+            Map<String, Number> metrics = source.get();
+            if (metrics != null) {
+                fromSources.putAll(metrics);
+            }
+        }
+        sourced = fromSources;
+        Map<String, Number> metrics = new HashMap<>(fromSources);
+        counters.forEach((name, counter) -> metrics.put(name, counter.extract()));
+        gauges.forEach((name, gauge) -> metrics.put(name, gauge.get()));
+        return metrics;
+    }
+
+    /**
+     * Writes the metrics in a plain text format that metric scrapers understand. Each metric is a line with its name,
+     * where characters other than letters, digits and underscores are underscores, a space and its value. Each is
+     * preceded by a line with its type. Counters have their total counts. The metrics from sources are
+     * {@link #UNTYPED} since they can be gauges or counts for the last interval.
+     *
+     * @return The String metrics.
+     */
+    public String scrape() {
+        Map<String, Number> values = new TreeMap<>();
+        Map<String, String> types = new HashMap<>();
+        sourced.forEach((name, value) -> {
+            values.put(name, value);
+            types.put(name, UNTYPED);
+        });
+        counters.forEach((name, counter) -> {
+            values.put(name, counter.get());
+            types.put(name, COUNTER);
+        });
+        gauges.forEach((name, gauge) -> {
+            values.put(name, gauge.get());
+            types.put(name, GAUGE);
+        });
+        StringBuilder builder = new StringBuilder();
+        values.forEach((name, value) -> {
+            if (value == null) {
+                return;
+            }
+            String metric = toMetricName(name);
+            builder.append("# TYPE ").append(metric).append(' ').append(types.get(name)).append('\n');
+            builder.append(metric).append(' ').append(value).append('\n');
+        });
+        return builder.toString();
+    }
+
+    private static String toMetricName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); ++i) {
+            char c = name.charAt(i);
+            builder.append(Character.isLetterOrDigit(c) && c < 128 ? c : '_');
+        }
+        if (builder.length() == 0 || Character.isDigit(builder.charAt(0))) {
+            builder.insert(0, '_');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+/**
+ * The classes that queries are prioritized in when they are published and admitted.
+ */
+public enum PriorityClass {
+    /** Queries that someone is waiting on, such as from a UI. */
+    INTERACTIVE,
+    /** Queries that nobody is waiting on right away, such as scheduled jobs. */
+    BULK;
+
+    /**
+     * Gets the name of this class to use in settings and metrics.
+     *
+     * @return The lower case name.
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.query.Projection;
+import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.query.Window;
+import com.yahoo.bullet.query.aggregations.Aggregation;
+import com.yahoo.bullet.query.aggregations.AggregationType;
+
+import java.util.List;
+
+/**
+ * Estimates the relative cost of running a compiled {@link Query} on the backend and in this service from its shape.
+ * A one-shot COUNT costs about 1. The estimate is the product of factors for:
+ *
+ * <ul>
+ *   <li>The aggregation. Grouping by fields or sketching costs more than counting and the cost grows with the
+ *       logarithm of the size.</li>
+ *   <li>The projection. Only for a RAW aggregation since the others reduce the records. Passing all the fields through
+ *       costs the most and otherwise the cost grows with the number of fields.</li>
+ *   <li>The emit rate. A query without a window emits once. A time window adds one for each emit per second and a
+ *       record window costs as if the records arrived at {@link #RECORDS_PER_SECOND}.</li>
+ *   <li>The duration. It adds one for each {@link #DURATION_UNIT} ms up to {@link #MAX_DURATION_FACTOR}.</li>
+ * </ul>
+ */
+public class QueryCostEstimator {
+    static final double RECORDS_PER_SECOND = 10.0;
+    static final double PASS_THROUGH_FACTOR = 2.0;
+    static final double FIELDS_PER_UNIT = 10.0;
+    static final double DURATION_UNIT = 600000.0;
+    static final double MAX_DURATION_FACTOR = 10.0;
+
+    /**
+     * Estimates the cost of the given query.
+     *
+     * @param query The compiled {@link Query}.
+     * @return The positive cost of the query.
+     */
+    public double estimate(Query query) {
+        Aggregation aggregation = query.getAggregation();
+        double cost = getAggregationFactor(aggregation);
+        if (aggregation != null && aggregation.getType() == AggregationType.RAW) {
+            cost *= getProjectionFactor(query.getProjection());
+        }
+        return cost * getEmitFactor(query.getWindow()) * getDurationFactor(query.getDuration());
+    }
+
+    static double getAggregationFactor(Aggregation aggregation) {
+        if (aggregation == null) {
+            return 1.0;
+        }
+        List<String> fields = aggregation.getFields();
+        boolean simple = aggregation.getType() == AggregationType.RAW ||
+                         (aggregation.getType() == AggregationType.GROUP && (fields == null || fields.isEmpty()));
+        double weight = simple ? 1.0 : 2.0;
+        Integer size = aggregation.getSize();
+        return size == null || size <= 1 ? weight : weight * (1.0 + Math.log10(size));
+    }
+
+    static double getProjectionFactor(Projection projection) {
+        if (projection == null || projection.getType() == Projection.Type.PASS_THROUGH) {
+            return PASS_THROUGH_FACTOR;
+        }
+        return projection.getFields() == null ? 1.0 : 1.0 + projection.getFields().size() / FIELDS_PER_UNIT;
+    }
+
+    static double getEmitFactor(Window window) {
+        if (window == null || window.getType() == null || window.getEmitEvery() == null || window.getEmitEvery() < 1) {
+            return 1.0;
+        }
+        if (window.getEmitType() == Window.Unit.RECORD) {
+            return 1.0 + RECORDS_PER_SECOND / window.getEmitEvery();
+        }
+        return 1.0 + 1000.0 / window.getEmitEvery();
+    }
+
+    static double getDurationFactor(Long duration) {
+        if (duration == null || duration <= 0) {
+            return 1.0;
+        }
+        return Math.min(MAX_DURATION_FACTOR, 1.0 + duration / DURATION_UNIT);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.rest.query.QueryHandler;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * JDK Flight Recorder events for the phases of the lifecycle of a query. They are recorded when a recording is started,
+ * such as with -XX:StartFlightRecording, and are cheap otherwise. They do not record stack traces so that they are
+ * cheap enough to leave on in a recording. The Flight Recorder API is only in Java 8 from 8u262 on. On older JVMs, it
+ * is checked for once and the events do nothing.
+ *
+ * Each event has the ID of its query. The endpoint the query was submitted to is set on the {@link Compile},
+ * {@link Respond} and {@link Send} events, where it is known from the controller or the {@link QueryHandler}. The
+ * other phases can be joined to them by the query ID. Phases of the same query can run on different threads, such as
+ * when a batch is compiled in parallel or queries are published by a queue, so the query ID is the only way to join
+ * them. A {@link Compile} event for a query that is only validated has no ID or endpoint.
+ *
+ * Each is used by calling {@link #begin()} before the phase and {@link #end(String, String)} after it.
+ */
+@Slf4j
+public abstract class QueryEvent {
+    static final boolean AVAILABLE = isAvailable();
+
+    // The Flight Recorder event or null if it is not available. It is not typed so that the API is not loaded
+    final Object event;
+
+    QueryEvent(Object event) {
+        this.event = event;
+    }
+
+    /**
+     * Starts the event.
+     */
+    public void begin() {
+        if (event != null) {
+            FlightRecorderEvents.begin(event);
+        }
+    }
+
+    /**
+     * Ends the event and commits it if it is being recorded.
+     *
+     * @param queryID The ID of the query. It can be null if it is not known.
+     * @param endpoint The type of the endpoint the query was submitted to. It can be null if it is not known.
+     */
+    public void end(String queryID, String endpoint) {
+        if (event != null) {
+            FlightRecorderEvents.end(event, queryID, endpoint);
+        }
+    }
+
+    /**
+     * Checks whether the event is being recorded.
+     *
+     * @return A boolean denoting whether the event is being recorded.
+     */
+    public boolean isRecorded() {
+        return event != null && FlightRecorderEvents.shouldCommit(event);
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, QueryEvent.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            log.info("The Flight Recorder is not available so query events will not be recorded");
+            return false;
+        }
+    }
+
+    public static class Compile extends QueryEvent {
+        /**
+         * Constructor.
+         */
+        public Compile() {
+            super(AVAILABLE ? FlightRecorderEvents.compile() : null);
+        }
+
+        /**
+         * Ends the event and commits it if it is being recorded.
+         *
+         * @param queryID The ID of the query. It can be null if the query is only validated.
+         * @param endpoint The type of the endpoint the query was submitted to. It can be null if the query is only
+         *                 validated.
+         * @param valid Whether the BQL built into a query.
+         */
+        public void end(String queryID, String endpoint, boolean valid) {
+            if (event != null) {
+                FlightRecorderEvents.end(event, queryID, endpoint, valid);
+            }
+        }
+    }
+
+    public static class Publish extends QueryEvent {
+        /**
+         * Constructor.
+         */
+        public Publish() {
+            super(AVAILABLE ? FlightRecorderEvents.publish() : null);
+        }
+    }
+
+    public static class StoragePut extends QueryEvent {
+        /**
+         * Constructor.
+         */
+        public StoragePut() {
+            super(AVAILABLE ? FlightRecorderEvents.storagePut() : null);
+        }
+    }
+
+    public static class StorageRemove extends QueryEvent {
+        /**
+         * Constructor.
+         */
+        public StorageRemove() {
+            super(AVAILABLE ? FlightRecorderEvents.storageRemove() : null);
+        }
+    }
+
+    public static class Receive extends QueryEvent {
+        /**
+         * Constructor.
+         */
+        public Receive() {
+            super(AVAILABLE ? FlightRecorderEvents.receive() : null);
+        }
+    }
+
+    public static class Commit extends QueryEvent {
+        /**
+         * Constructor.
+         */
+        public Commit() {
+            super(AVAILABLE ? FlightRecorderEvents.commit() : null);
+        }
+    }
+
+    public static class Respond extends QueryEvent {
+        /**
+         * Constructor.
+         */
+        public Respond() {
+            super(AVAILABLE ? FlightRecorderEvents.respond() : null);
+        }
+
+        /**
+         * Ends the event and commits it with the endpoint of the given handler if it is being recorded.
+         *
+         * @param queryID The ID of the query.
+         * @param handler The non-null {@link QueryHandler} of the query.
+         */
+        public void end(String queryID, QueryHandler handler) {
+            if (event != null) {
+                FlightRecorderEvents.end(event, queryID, handler);
+            }
+        }
+    }
+
+    public static class Send extends QueryEvent {
+        /**
+         * Constructor.
+         */
+        public Send() {
+            super(AVAILABLE ? FlightRecorderEvents.send() : null);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+/**
+ * Generates the IDs of new queries. Implementations must be thread-safe and must have a public constructor with no
+ * arguments so that they can be configured by class name. The IDs must not contain {@link Utils#TAG_SEPARATOR}.
+ */
+public interface QueryIDGenerator {
+    /**
+     * Generates a new unique query ID.
+     *
+     * @return The generated ID.
+     */
+    String generate();
+}
@@ -0,0 +1,51 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simple, blocking rate limiter that spaces out permits evenly. It can be shared across threads.
+ *
+ * If the rate is not positive, permits are never limited.
+ */
+public class RateLimiter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    private final long interval;
+    private long next;
+
+    /**
+     * Constructor that takes the rate at which permits are given out.
+     *
+     * @param permitsPerSecond The number of permits to give out per second. If not positive, there is no limit.
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this.interval = permitsPerSecond > 0 ? (long) (NANOS_PER_SECOND / permitsPerSecond) : 0L;
+        this.next = System.nanoTime();
+    }
+
+    /**
+     * Acquires a permit, blocking till it can be given out.
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        if (interval == 0L) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long at = Math.max(next, now);
+            next = at + interval;
+            wait = at - now;
+        }
+        if (wait > 0L) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -57,14 +57,21 @@ public class Reader {
         log.info("Reader thread started, ID: {}", Thread.currentThread().getId());
         while (!Thread.interrupted()) {
             try {
+                QueryEvent.Receive receive = new QueryEvent.Receive();
+                receive.begin();
                 message = subscriber.receive();
                 if (message == null) {
                     Thread.sleep(sleepTimeMS);
                     continue;
                 }
+                String id = message.getId();
+                receive.end(id, null);
                 log.debug("Received message {}", message);
-                responder.respond(message.getId(), message);
-                subscriber.commit(message.getId());
+                responder.respond(id, message);
+                QueryEvent.Commit commit = new QueryEvent.Commit();
+                commit.begin();
+                subscriber.commit(id);
+                commit.end(id, null);
             } catch (InterruptedException ie) {
                 // When the reader is closed, this block also catches InterruptedException from Thread.sleep.
                 // If the service is busy reading messages, the while loop will break instead.
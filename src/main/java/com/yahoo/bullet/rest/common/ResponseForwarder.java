@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.pubsub.PubSubResponder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Objects;
+
+/**
+ * Forwards responses to another instance of the service by POSTing them as JSON to its cluster endpoint. The content
+ * is sent as a String, which is what the handlers of the queries read it as. Failures are thrown, so this is meant to
+ * be wrapped in an {@link IsolatedResponder}.
+ */
+public class ResponseForwarder extends PubSubResponder {
+    public static final String TOKEN_HEADER = "X-Bullet-Cluster-Token";
+
+    private final String url;
+    private final String token;
+    private final RestTemplate client;
+
+    /**
+     * Constructor that takes the endpoint to forward to.
+     *
+     * @param url The non-null URL of the cluster endpoint of the other instance.
+     * @param token The token that the other instance accepts forwarded responses with. It can be null.
+     * @param timeout The time in ms to wait for connecting to and for the response of the other instance.
+     */
+    public ResponseForwarder(String url, String token, int timeout) {
+        this(url, token, createClient(timeout));
+    }
+
+    ResponseForwarder(String url, String token, RestTemplate client) {
+        super(null);
+        Objects.requireNonNull(url);
+        this.url = url;
+        this.token = token;
+        this.client = client;
+    }
+
+    @Override
+    public void respond(String id, PubSubMessage message) {
+        String content = message.hasContent() ? message.getContentAsString() : null;
+        PubSubMessage forwarded = new PubSubMessage(id, content, message.getMetadata());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (token != null && !token.isEmpty()) {
+            headers.set(TOKEN_HEADER, token);
+        }
+        client.postForEntity(url, new HttpEntity<>(forwarded.asJSON(), headers), Void.class);
+    }
+
+    private static RestTemplate createClient(int timeout) {
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(timeout);
+        factory.setReadTimeout(timeout);
+        return new RestTemplate(factory);
+    }
+}
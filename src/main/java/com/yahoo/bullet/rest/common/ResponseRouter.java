@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.common.metrics.MetricCollector;
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.pubsub.PubSubResponder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Routes responses to the instance of the service that owns their query when many instances share a PubSub. The owner
+ * is the instance whose tag starts the query ID. See {@link Utils#getInstanceTag(String)}. Responses for queries owned
+ * by this instance, or with IDs that are not tagged, go to the local responders. Responses for queries owned by a
+ * known peer go to the responder for that peer, such as an isolated {@link ResponseForwarder}. The rest are misrouted
+ * and are dropped.
+ *
+ * The forwarded, misrouted and received counts are collected as metrics. See {@link #extractMetrics()}.
+ */
+@Slf4j
+public class ResponseRouter extends PubSubResponder {
+    public static final String FORWARDED = "cluster.forwarded";
+    public static final String MISROUTED = "cluster.misrouted";
+    public static final String RECEIVED = "cluster.received";
+
+    private final String instance;
+    private final List<PubSubResponder> local;
+    private final Map<String, PubSubResponder> peers;
+    private final MetricCollector metricCollector = new MetricCollector(Arrays.asList(FORWARDED, MISROUTED, RECEIVED));
+
+    /**
+     * Constructor that takes the instance and the responders to route to.
+     *
+     * @param instance The non-null tag of this instance.
+     * @param local The non-null {@link List} of {@link PubSubResponder} for the queries owned by this instance.
+     * @param peers The non-null {@link Map} of the tags of the other instances to the {@link PubSubResponder} for them.
+     */
+    public ResponseRouter(String instance, List<PubSubResponder> local, Map<String, PubSubResponder> peers) {
+        super(null);
+        Objects.requireNonNull(instance);
+        Objects.requireNonNull(local);
+        Objects.requireNonNull(peers);
+        this.instance = instance;
+        this.local = local;
+        this.peers = peers;
+    }
+
+    @Override
+    public void respond(String id, PubSubMessage message) {
+        String owner = Utils.getInstanceTag(id);
+        if (owner == null || owner.equals(instance)) {
+            local.forEach(responder -> responder.respond(id, message));
+            return;
+        }
+        PubSubResponder peer = peers.get(owner);
+        if (peer == null) {
+            log.warn("Dropping response for {} since its owner {} is unknown", id, owner);
+            metricCollector.increment(MISROUTED);
+            return;
+        }
+        metricCollector.increment(FORWARDED);
+        peer.respond(id, message);
+    }
+
+    /**
+     * Responds to a response that was forwarded to this instance by another.
+     *
+     * @param id The ID of the query.
+     * @param message The {@link PubSubMessage} response.
+     */
+    public void respondLocally(String id, PubSubMessage message) {
+        metricCollector.increment(RECEIVED);
+        local.forEach(responder -> responder.respond(id, message));
+    }
+
+    /**
+     * Extracts the metrics collected by this router and by its responders that are {@link IsolatedResponder} since the
+     * last extraction.
+     *
+     * @return A {@link Map} of metric names to their values.
+     */
+    public Map<String, Number> extractMetrics() {
+        Map<String, Number> metrics = new HashMap<>(metricCollector.extractMetrics());
+        local.stream().filter(IsolatedResponder.class::isInstance)
+                      .forEach(responder -> metrics.putAll(((IsolatedResponder) responder).extractMetrics()));
+        peers.values().stream().filter(IsolatedResponder.class::isInstance)
+                               .forEach(responder -> metrics.putAll(((IsolatedResponder) responder).extractMetrics()));
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        local.forEach(PubSubResponder::close);
+        peers.values().forEach(PubSubResponder::close);
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.pubsub.PubSubResponder;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded store of the results of asynchronous queries, so that clients can fetch them from the service instead of
+ * from where the other responders send them. Only the queries that are registered with {@link #register(String)} are
+ * kept, along with the principal that submitted them, and only that principal can get them. The latest windows of each
+ * query are kept in memory, up to a maximum number per query. Once the results in
+ * memory exceed their byte budget, the queries that were least recently updated are spilled to files in a directory.
+ * Once the files exceed their byte budget, the oldest ones are deleted. Queries that have not been updated for longer
+ * than the TTL are evicted from both.
+ *
+ * If no directory is given, queries are evicted instead of spilled. Spilled files are named by their query ID and only
+ * the files that this store spilled are deleted, so files left over from a previous run that did not close the store
+ * are not cleaned up. The memory held is estimated like in {@link MessageCache}. See {@link #getMetrics()} for the
+ * metrics of the store.
+ */
+@Slf4j
+public class ResultStore extends PubSubResponder {
+    public static final String MEMORY_QUERIES = "async.store.memory.queries";
+    public static final String MEMORY_BYTES = "async.store.memory.bytes";
+    public static final String DISK_QUERIES = "async.store.disk.queries";
+    public static final String DISK_BYTES = "async.store.disk.bytes";
+    public static final String SPILLS = "async.store.spills";
+    public static final String EVICTIONS = "async.store.evictions";
+
+    static final String SUFFIX = ".results";
+
+    /**
+     * The stored windows of a query. The windows are in the order they arrived and are the latest ones if more than
+     * the maximum arrived.
+     */
+    @Getter @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Results {
+        private final boolean done;
+        private final long total;
+        private final List<String> windows;
+
+        /**
+         * Gets the latest window.
+         *
+         * @return The latest window or null if there are none yet.
+         */
+        public String getLatest() {
+            return windows.isEmpty() ? null : windows.get(windows.size() - 1);
+        }
+    }
+
+    private static class Entry {
+        private final String owner;
+        private final Deque<String> windows = new ArrayDeque<>();
+        private boolean done = false;
+        private long total = 0L;
+        private long updated;
+        private long size = 0L;
+
+        private Entry(String owner, long updated) {
+            this.owner = owner;
+            this.updated = updated;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Spilled {
+        private final File file;
+        private final long updated;
+        private final long size;
+    }
+
+    private final int maxWindows;
+    private final long maxMemory;
+    private final long maxDisk;
+    private final long ttl;
+    private final File directory;
+    // Both are in the order that their queries were last updated, so the oldest ones are first
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Spilled> disk = new LinkedHashMap<>();
+    private long memoryBytes = 0L;
+    private long diskBytes = 0L;
+    private long spills = 0L;
+    private long evictions = 0L;
+
+    /**
+     * Constructor that takes the limits of the store.
+     *
+     * @param maxWindows The maximum number of windows to keep for each query.
+     * @param maxMemory The byte budget for the results in memory.
+     * @param directory The path to the directory to spill results to. If null or empty, results are not spilled.
+     * @param maxDisk The byte budget for the spilled results.
+     * @param ttl The time in ms to keep the results of a query for after it was last updated.
+     */
+    public ResultStore(int maxWindows, long maxMemory, String directory, long maxDisk, long ttl) {
+        super(null);
+        this.maxWindows = maxWindows;
+        this.maxMemory = maxMemory;
+        this.maxDisk = maxDisk;
+        this.ttl = ttl;
+        this.directory = directory == null || directory.isEmpty() ? null : new File(directory);
+        if (this.directory != null && !this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the directory for results: " + directory);
+        }
+    }
+
+    /**
+     * Starts keeping the results of a query that was submitted without a principal.
+     *
+     * @param id The ID of the query.
+     */
+    public void register(String id) {
+        register(id, null);
+    }
+
+    /**
+     * Starts keeping the results of a query.
+     *
+     * @param id The ID of the query.
+     * @param owner The name of the principal that submitted the query or null if there is none.
+     */
+    public synchronized void register(String id, String owner) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        if (!memory.containsKey(id) && !disk.containsKey(id)) {
+            memory.put(id, new Entry(owner, now));
+        }
+    }
+
+    /**
+     * Stops keeping the results of a query and drops the ones kept so far, such as when it could not be submitted.
+     *
+     * @param id The ID of the query.
+     */
+    public synchronized void remove(String id) {
+        Entry entry = memory.remove(id);
+        if (entry != null) {
+            memoryBytes -= entry.size;
+            return;
+        }
+        Spilled spilled = disk.remove(id);
+        if (spilled != null) {
+            diskBytes -= spilled.size;
+            delete(spilled.file);
+        }
+    }
+
+    @Override
+    public synchronized void respond(String id, PubSubMessage message) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        Entry entry = memory.remove(id);
+        if (entry == null) {
+            Spilled spilled = disk.remove(id);
+            if (spilled == null) {
+                // Not registered or already evicted
+                return;
+            }
+            diskBytes -= spilled.size;
+            entry = load(spilled);
+            // Moved back into memory
+            delete(spilled.file);
+            if (entry == null) {
+                return;
+            }
+        } else {
+            memoryBytes -= entry.size;
+        }
+        add(entry, message, now);
+        memory.put(id, entry);
+        memoryBytes += entry.size;
+        spill();
+    }
+
+    /**
+     * Gets the stored results of a query that was submitted without a principal.
+     *
+     * @param id The ID of the query.
+     * @return The {@link Results} of the query or null if it is not registered, was evicted or has an owner.
+     */
+    public Results get(String id) {
+        return get(id, null);
+    }
+
+    /**
+     * Gets the stored results of a query for the principal that submitted it.
+     *
+     * @param id The ID of the query.
+     * @param owner The name of the principal asking for the results or null if there is none.
+     * @return The {@link Results} of the query or null if it is not registered, was evicted or is not owned by the
+     *         given principal.
+     */
+    public synchronized Results get(String id, String owner) {
+        expire(System.currentTimeMillis());
+        Entry entry = memory.get(id);
+        if (entry == null) {
+            Spilled spilled = disk.get(id);
+            entry = spilled == null ? null : load(spilled);
+        }
+        if (entry == null || !Objects.equals(entry.owner, owner)) {
+            return null;
+        }
+        return new Results(entry.done, entry.total, new ArrayList<>(entry.windows));
+    }
+
+    /**
+     * Gets the current statistics of this store as metrics.
+     *
+     * @return A {@link Map} of the metric names to their values.
+     */
+    public synchronized Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new HashMap<>();
+        metrics.put(MEMORY_QUERIES, memory.size());
+        metrics.put(MEMORY_BYTES, memoryBytes);
+        metrics.put(DISK_QUERIES, disk.size());
+        metrics.put(DISK_BYTES, diskBytes);
+        metrics.put(SPILLS, spills);
+        metrics.put(EVICTIONS, evictions);
+        return metrics;
+    }
+
+    @Override
+    public synchronized void close() {
+        disk.values().forEach(spilled -> delete(spilled.file));
+        memory.clear();
+        disk.clear();
+        memoryBytes = 0L;
+        diskBytes = 0L;
+    }
+
+    private void add(Entry entry, PubSubMessage message, long now) {
+        entry.updated = now;
+        entry.done |= Utils.isDone(message);
+        String content = message.hasContent() ? message.getContentAsString() : null;
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        entry.windows.addLast(content);
+        entry.size += sizeOf(content);
+        entry.total++;
+        while (entry.windows.size() > maxWindows) {
+            entry.size -= sizeOf(entry.windows.removeFirst());
+        }
+    }
+
+    private void expire(long now) {
+        long oldest = now - ttl;
+        Iterator<Map.Entry<String, Entry>> inMemory = memory.entrySet().iterator();
+        while (inMemory.hasNext()) {
+            Entry entry = inMemory.next().getValue();
+            if (entry.updated >= oldest) {
+                break;
+            }
+            memoryBytes -= entry.size;
+            evictions++;
+            inMemory.remove();
+        }
+        Iterator<Map.Entry<String, Spilled>> onDisk = disk.entrySet().iterator();
+        while (onDisk.hasNext()) {
+            Spilled spilled = onDisk.next().getValue();
+            if (spilled.updated >= oldest) {
+                break;
+            }
+            evict(spilled);
+            onDisk.remove();
+        }
+    }
+
+    private void spill() {
+        Iterator<Map.Entry<String, Entry>> inMemory = memory.entrySet().iterator();
+        while (memoryBytes > maxMemory && inMemory.hasNext()) {
+            Map.Entry<String, Entry> oldest = inMemory.next();
+            Entry entry = oldest.getValue();
+            memoryBytes -= entry.size;
+            inMemory.remove();
+            Spilled spilled = directory == null ? null : save(oldest.getKey(), entry);
+            if (spilled == null) {
+                evictions++;
+                continue;
+            }
+            spills++;
+            disk.put(oldest.getKey(), spilled);
+            diskBytes += spilled.size;
+        }
+        Iterator<Map.Entry<String, Spilled>> onDisk = disk.entrySet().iterator();
+        while (diskBytes > maxDisk && onDisk.hasNext()) {
+            evict(onDisk.next().getValue());
+            onDisk.remove();
+        }
+    }
+
+    private void evict(Spilled spilled) {
+        diskBytes -= spilled.size;
+        evictions++;
+        delete(spilled.file);
+    }
+
+    private Spilled save(String id, Entry entry) {
+        File file = new File(directory, id + SUFFIX);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeBoolean(entry.owner != null);
+            if (entry.owner != null) {
+                output.writeUTF(entry.owner);
+            }
+            output.writeBoolean(entry.done);
+            output.writeLong(entry.total);
+            output.writeLong(entry.updated);
+            output.writeInt(entry.windows.size());
+            for (String window : entry.windows) {
+                byte[] bytes = window.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        } catch (IOException e) {
+            log.error("Could not spill the results of query {}", id, e);
+            delete(file);
+            return null;
+        }
+        return new Spilled(file, entry.updated, file.length());
+    }
+
+    private Entry load(Spilled spilled) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(spilled.file)))) {
+            String owner = input.readBoolean() ? input.readUTF() : null;
+            boolean done = input.readBoolean();
+            long total = input.readLong();
+            Entry entry = new Entry(owner, input.readLong());
+            entry.done = done;
+            entry.total = total;
+            int windows = input.readInt();
+            for (int i = 0; i < windows; ++i) {
+                byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                String window = new String(bytes, StandardCharsets.UTF_8);
+                entry.windows.addLast(window);
+                entry.size += sizeOf(window);
+            }
+            return entry;
+        } catch (IOException e) {
+            log.error("Could not read the spilled results in {}", spilled.file, e);
+            return null;
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("Could not delete {}", file);
+        }
+    }
+
+    private static long sizeOf(String string) {
+        return 2L * string.length();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.yahoo.bullet.rest.model.JSONAPIField;
+import com.yahoo.bullet.typesystem.Type;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable index of the fields in a schema sorted by their names. It finds the fields with a name prefix with
+ * a binary search and keeps each field pre-serialized so that a search only copies the fields it returns.
+ */
+public class SchemaIndex {
+    public static final String ATTRIBUTES = "attributes";
+
+    private final String[] names;
+    private final Type[] types;
+    private final JsonObject[] fields;
+
+    /**
+     * The fields found by a search.
+     */
+    @Getter @AllArgsConstructor
+    public static class Result {
+        private final int total;
+        private final JsonArray data;
+    }
+
+    /**
+     * Constructor that indexes the given fields.
+     *
+     * @param fields The non-null {@link List} of {@link JSONAPIField} to index.
+     * @param gson The {@link Gson} to serialize the fields with.
+     */
+    public SchemaIndex(List<JSONAPIField> fields, Gson gson) {
+        JSONAPIField[] sorted = fields.toArray(new JSONAPIField[0]);
+        Arrays.sort(sorted, Comparator.comparing(JSONAPIField::getId));
+        int size = sorted.length;
+        this.names = new String[size];
+        this.types = new Type[size];
+        this.fields = new JsonObject[size];
+        for (int i = 0; i < size; ++i) {
+            names[i] = sorted[i].getId();
+            types[i] = sorted[i].getAttributes().getType();
+            this.fields[i] = gson.toJsonTree(sorted[i]).getAsJsonObject();
+        }
+    }
+
+    /**
+     * Finds the fields that match the given criteria in the order of their names.
+     *
+     * @param prefix The prefix of the field names to find. If null, all names match.
+     * @param types The {@link Set} of {@link Type} of the fields to find. If null, all types match.
+     * @param attributes The {@link Set} of attributes to return for each field. If null, all attributes are returned.
+     * @param offset The number of matching fields to skip.
+     * @param limit The maximum number of matching fields to return.
+     * @return A {@link Result} with the page of matching fields and the total number of matching fields.
+     */
+    public Result search(String prefix, Set<Type> types, Set<String> attributes, int offset, int limit) {
+        int start = 0;
+        int end = names.length;
+        if (prefix != null && !prefix.isEmpty()) {
+            start = lowerBound(prefix);
+            end = start;
+            while (end < names.length && names[end].startsWith(prefix)) {
+                end++;
+            }
+        }
+        JsonArray data = new JsonArray();
+        int total = 0;
+        for (int i = start; i < end; ++i) {
+            if (types != null && !types.contains(this.types[i])) {
+                continue;
+            }
+            if (total >= offset && data.size() < limit) {
+                data.add(attributes == null ? fields[i] : select(fields[i], attributes));
+            }
+            total++;
+        }
+        return new Result(total, data);
+    }
+
+    /**
+     * Gets the type of a field.
+     *
+     * @param name The name of the field.
+     * @return The {@link Type} of the field or null if there is no such field.
+     */
+    public Type getType(String name) {
+        int index = lowerBound(name);
+        return index < names.length && names[index].equals(name) ? types[index] : null;
+    }
+
+    /**
+     * Gets the number of fields in the index.
+     *
+     * @return The number of fields.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = names.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (names[middle].compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static JsonObject select(JsonObject field, Set<String> attributes) {
+        JsonObject selected = new JsonObject();
+        JsonObject selectedAttributes = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : field.entrySet()) {
+            if (!ATTRIBUTES.equals(entry.getKey())) {
+                selected.add(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, JsonElement> entry : field.getAsJsonObject(ATTRIBUTES).entrySet()) {
+            if (attributes.contains(entry.getKey())) {
+                selectedAttributes.add(entry.getKey(), entry.getValue());
+            }
+        }
+        selected.add(ATTRIBUTES, selectedAttributes);
+        return selected;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.tcp.ReconnectStrategy;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+import org.springframework.messaging.tcp.TcpOperations;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A STOMP over TCP client for relaying WebSocket messages to an external broker. It uses plain sockets with a reading
+ * thread per connection and the STOMP codec from Spring, so the relay does not need a separate networking library.
+ *
+ * Since the broker relay opens a connection for each WebSocket session, this costs a thread and its stack for each
+ * session. The number of connections is capped and a connection past the cap fails. Writes block, so a write that
+ * takes longer than the write timeout, such as to a broker that stopped reading, closes its connection.
+ */
+@Slf4j
+public class StompTcpClient implements TcpOperations<byte[]> {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    private static final int DEFAULT_MAX_CONNECTIONS = 1024;
+    private static final long DEFAULT_WRITE_TIMEOUT = 10000L;
+    private static final long IDLE_READER_TIMEOUT = 60000L;
+
+    private final String host;
+    private final int port;
+    private final int connectTimeout;
+    private final long writeTimeout;
+    private final ThreadPoolExecutor readers;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("stomp-tcp-scheduler-"));
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor that takes the broker to connect to.
+     *
+     * @param host The host of the broker.
+     * @param port The STOMP port of the broker.
+     */
+    public StompTcpClient(String host, int port) {
+        this(host, port, DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * Constructor that takes the broker to connect to and the timeout for connecting to it.
+     *
+     * @param host The host of the broker.
+     * @param port The STOMP port of the broker.
+     * @param connectTimeout The time in ms to wait for a connection to the broker.
+     */
+    public StompTcpClient(String host, int port, int connectTimeout) {
+        this(host, port, connectTimeout, DEFAULT_MAX_CONNECTIONS, DEFAULT_WRITE_TIMEOUT);
+    }
+
+    /**
+     * Constructor that takes the broker to connect to, the timeouts and the maximum number of connections.
+     *
+     * @param host The host of the broker.
+     * @param port The STOMP port of the broker.
+     * @param connectTimeout The time in ms to wait for a connection to the broker.
+     * @param maxConnections The positive maximum number of connections, and so reading threads, to have at once.
+     * @param writeTimeout The positive time in ms that a write can take before its connection is closed.
+     */
+    public StompTcpClient(String host, int port, int connectTimeout, int maxConnections, long writeTimeout) {
+        if (maxConnections < 1 || writeTimeout < 1) {
+            throw new IllegalArgumentException("The maximum number of connections and the write timeout must be positive");
+        }
+        this.host = host;
+        this.port = port;
+        this.connectTimeout = connectTimeout;
+        this.writeTimeout = writeTimeout;
+        this.readers = new ThreadPoolExecutor(0, maxConnections, IDLE_READER_TIMEOUT, TimeUnit.MILLISECONDS,
+                                              new SynchronousQueue<>(), daemonThreadFactory("stomp-tcp-reader-"));
+    }
+
+    @Override
+    public ListenableFuture<Void> connect(TcpConnectionHandler<byte[]> handler) {
+        return connect(handler, null);
+    }
+
+    @Override
+    public ListenableFuture<Void> connect(TcpConnectionHandler<byte[]> handler, ReconnectStrategy strategy) {
+        SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+        if (stopped) {
+            future.setException(new IllegalStateException("The client has been shut down"));
+            return future;
+        }
+        execute(handler, strategy, future, 0);
+        return future;
+    }
+
+    @Override
+    public ListenableFuture<Void> shutdown() {
+        stopped = true;
+        connections.forEach(Connection::close);
+        readers.shutdownNow();
+        scheduler.shutdownNow();
+        SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+        future.set(null);
+        return future;
+    }
+
+    private void connect(TcpConnectionHandler<byte[]> handler, ReconnectStrategy strategy, SettableListenableFuture<Void> future, int attempt) {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+        } catch (IOException e) {
+            log.error("Could not connect to {}:{}", host, port);
+            closeQuietly(socket);
+            handler.afterConnectFailure(e);
+            if (!reconnect(handler, strategy, future, attempt + 1)) {
+                future.setException(e);
+            }
+            return;
+        }
+        Connection connection = new Connection(socket, handler);
+        connections.add(connection);
+        future.set(null);
+        handler.afterConnected(connection);
+        connection.read();
+        connections.remove(connection);
+        handler.afterConnectionClosed();
+        if (!connection.closedLocally) {
+            reconnect(handler, strategy, null, 0);
+        }
+    }
+
+    private boolean reconnect(TcpConnectionHandler<byte[]> handler, ReconnectStrategy strategy, SettableListenableFuture<Void> future, int attempt) {
+        Long delay = strategy == null || stopped ? null : strategy.getTimeToNextAttempt(attempt);
+        if (delay == null) {
+            return false;
+        }
+        SettableListenableFuture<Void> next = future == null ? new SettableListenableFuture<>() : future;
+        scheduler.schedule(() -> execute(handler, strategy, next, attempt), delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private void execute(TcpConnectionHandler<byte[]> handler, ReconnectStrategy strategy, SettableListenableFuture<Void> future, int attempt) {
+        try {
+            readers.execute(() -> connect(handler, strategy, future, attempt));
+        } catch (RejectedExecutionException e) {
+            if (!stopped) {
+                log.error("Could not connect to {}:{} since there are already {} connections", host, port, readers.getMaximumPoolSize());
+                handler.afterConnectFailure(e);
+            }
+            future.setException(e);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        CustomizableThreadFactory factory = new CustomizableThreadFactory(prefix);
+        factory.setDaemon(true);
+        return factory;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private class Connection implements TcpConnection<byte[]> {
+        private final Socket socket;
+        private final TcpConnectionHandler<byte[]> handler;
+        private final StompEncoder encoder = new StompEncoder();
+        private final StompDecoder decoder = new StompDecoder();
+        private final Set<ScheduledFuture<?>> checks = ConcurrentHashMap.newKeySet();
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private volatile long lastRead = System.currentTimeMillis();
+        private volatile long lastWrite = System.currentTimeMillis();
+        // The time the write in progress started at or 0 if there is none
+        private volatile long writeStarted = 0L;
+        private volatile boolean closedLocally = false;
+
+        private Connection(Socket socket, TcpConnectionHandler<byte[]> handler) {
+            this.socket = socket;
+            this.handler = handler;
+            // Closing the socket is the only way to unblock a write to it
+            check(() -> writeStarted > 0L && System.currentTimeMillis() - writeStarted > writeTimeout, this::abortWrite, writeTimeout);
+        }
+
+        @Override
+        public ListenableFuture<Void> send(Message<byte[]> message) {
+            SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+            try {
+                byte[] bytes = encoder.encode(message);
+                OutputStream output = socket.getOutputStream();
+                if (!writeLock.tryLock(writeTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Timed out waiting for another write to " + host + ":" + port);
+                }
+                try {
+                    writeStarted = System.currentTimeMillis();
+                    output.write(bytes);
+                    output.flush();
+                } finally {
+                    writeStarted = 0L;
+                    writeLock.unlock();
+                }
+                lastWrite = System.currentTimeMillis();
+                future.set(null);
+            } catch (IOException e) {
+                future.setException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.setException(e);
+            }
+            return future;
+        }
+
+        @Override
+        public void onReadInactivity(Runnable runnable, long duration) {
+            check(() -> System.currentTimeMillis() - lastRead > duration, runnable, duration);
+        }
+
+        @Override
+        public void onWriteInactivity(Runnable runnable, long duration) {
+            check(() -> System.currentTimeMillis() - lastWrite > duration, runnable, duration);
+        }
+
+        @Override
+        public void close() {
+            closedLocally = true;
+            release();
+        }
+
+        private void abortWrite() {
+            log.error("Closing the connection to {}:{} since a write took longer than {} ms", host, port, writeTimeout);
+            closeQuietly(socket);
+        }
+
+        private void release() {
+            checks.forEach(check -> check.cancel(false));
+            closeQuietly(socket);
+        }
+
+        private void check(BooleanSupplier inactive, Runnable runnable, long duration) {
+            long interval = Math.max(duration / 2, 1);
+            checks.add(scheduler.scheduleWithFixedDelay(() -> {
+                if (inactive.getAsBoolean()) {
+                    runnable.run();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS));
+        }
+
+        private void read() {
+            MultiValueMap<String, String> partial = new LinkedMultiValueMap<>();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] chunk = new byte[BUFFER_SIZE];
+            try {
+                InputStream input = socket.getInputStream();
+                int read;
+                while ((read = input.read(chunk)) >= 0) {
+                    lastRead = System.currentTimeMillis();
+                    buffer = ensureCapacity(buffer, read);
+                    buffer.put(chunk, 0, read);
+                    buffer.flip();
+                    List<Message<byte[]>> messages = decoder.decode(buffer, partial);
+                    buffer.compact();
+                    messages.forEach(handler::handleMessage);
+                }
+            } catch (Exception e) {
+                if (!closedLocally) {
+                    handler.handleFailure(e);
+                }
+            } finally {
+                release();
+            }
+        }
+
+        private ByteBuffer ensureCapacity(ByteBuffer buffer, int needed) {
+            if (buffer.remaining() >= needed) {
+                return buffer;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+            buffer.flip();
+            bigger.put(buffer);
+            return bigger;
+        }
+    }
+}
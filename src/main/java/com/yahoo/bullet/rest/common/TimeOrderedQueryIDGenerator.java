@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates 128-bit query IDs that sort in the order they were generated, encoded like ULIDs as 26 Crockford base32
+ * characters. The high 64 bits are a 48-bit timestamp in ms and a 16-bit sequence. The low 64 bits are random and drawn
+ * afresh for each ID, so an ID does not give away the other IDs of the generator.
+ *
+ * The high bits are taken from a single counter with a compare-and-set, so generating does not lock. The counter
+ * starts at the current time and only moves forward, so IDs are unique and ordered within a generator even if the
+ * clock goes back. If more than 65536 IDs are generated in a ms, the timestamp runs ahead of the clock till it catches
+ * up. The random low bits keep the IDs of different generators, such as ones before and after a restart, apart. They
+ * come from a {@link ThreadLocalRandom}, which does not contend across threads but is not cryptographically secure, so
+ * the IDs should not be used as secrets.
+ */
+public class TimeOrderedQueryIDGenerator implements QueryIDGenerator {
+    public static final int LENGTH = 26;
+
+    private static final int SEQUENCE_BITS = 16;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private final LongSupplier clock;
+    private final LongSupplier random;
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * Creates an instance that uses the system clock and a random number for each ID.
+     */
+    public TimeOrderedQueryIDGenerator() {
+        this(System::currentTimeMillis, () -> ThreadLocalRandom.current().nextLong());
+    }
+
+    TimeOrderedQueryIDGenerator(LongSupplier clock, LongSupplier random) {
+        this.clock = clock;
+        this.random = random;
+    }
+
+    @Override
+    public String generate() {
+        long now = clock.getAsLong() << SEQUENCE_BITS;
+        long high = last.updateAndGet(previous -> Math.max(previous + 1, now));
+        return encode(high, random.getAsLong());
+    }
+
+    /**
+     * Gets the timestamp that a query ID generated by this class was created at.
+     *
+     * @param id The non-null query ID without an instance tag.
+     * @return The timestamp in ms.
+     * @throws IllegalArgumentException if the ID was not generated by this class.
+     */
+    public static long getTimestamp(String id) {
+        if (id.length() != LENGTH) {
+            throw new IllegalArgumentException("Not a time ordered query ID: " + id);
+        }
+        long high = 0L;
+        // The first 13 characters hold the top 2 (always 0) bits and the 48 bits of the timestamp and the first 15 of
+        // the 16 bits of the sequence
+        for (int i = 0; i < 13; ++i) {
+            int value = indexOf(id.charAt(i));
+            if (value < 0) {
+                throw new IllegalArgumentException("Not a time ordered query ID: " + id);
+            }
+            high = (high << 5) | value;
+        }
+        return high >>> (SEQUENCE_BITS - 1);
+    }
+
+    private static String encode(long high, long low) {
+        char[] chars = new char[LENGTH];
+        // 130 bits in 26 characters: the top 2 bits are 0, followed by the 64 bits of high and the 64 bits of low
+        for (int i = LENGTH - 1; i >= 0; --i) {
+            chars[i] = ALPHABET[(int) (low & 31L)];
+            low = (low >>> 5) | (high << 59);
+            high >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < ALPHABET.length; ++i) {
+            if (ALPHABET[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket for each key, such as a user, that refills at a fixed rate up to a burst. The buckets are split into
+ * stripes by the hash of their key so that keys in different stripes do not contend on the same lock. A bucket that
+ * has not been used for longer than the idle timeout is removed the next time its stripe is swept. Since the timeout
+ * is at least the time it takes a bucket to refill, a removed bucket would have been full anyway.
+ *
+ * If throttles are counted, the number of times each key was throttled is kept till it is extracted, so a bucket with
+ * throttles that were not extracted yet is not removed. They should only be counted if they are extracted regularly.
+ */
+public class TokenBuckets {
+    private static class Bucket {
+        private double tokens;
+        private long refilled;
+        private long throttled;
+
+        private Bucket(double tokens, long refilled) {
+            this.tokens = tokens;
+            this.refilled = refilled;
+        }
+    }
+
+    private static class Stripe {
+        private final Map<String, Bucket> buckets = new HashMap<>();
+        private long swept;
+
+        private Stripe(long swept) {
+            this.swept = swept;
+        }
+    }
+
+    private final double ratePerMs;
+    private final double burst;
+    private final long idleTimeout;
+    private final Stripe[] stripes;
+    private final boolean countThrottled;
+    private final LongSupplier clock;
+
+    /**
+     * Constructor that takes the rate and burst of each bucket, when to remove them and how many stripes to use.
+     *
+     * @param rate The positive number of tokens added to each bucket per second.
+     * @param burst The maximum number of tokens in each bucket. It must be at least 1.
+     * @param idleTimeout The time in ms after which a bucket that was not used is removed. It is raised to the time it
+     *                    takes a bucket to refill if it is less.
+     * @param stripes The positive number of stripes to split the buckets into.
+     * @param countThrottled Whether to count the throttles of each key for {@link #extractThrottled()}.
+     */
+    public TokenBuckets(double rate, int burst, long idleTimeout, int stripes, boolean countThrottled) {
+        this(rate, burst, idleTimeout, stripes, countThrottled, System::currentTimeMillis);
+    }
+
+    TokenBuckets(double rate, int burst, long idleTimeout, int stripes, boolean countThrottled, LongSupplier clock) {
+        if (rate <= 0.0 || burst < 1 || stripes < 1) {
+            throw new IllegalArgumentException("The rate and number of stripes must be positive and the burst at least 1");
+        }
+        this.ratePerMs = rate / 1000.0;
+        this.burst = burst;
+        this.idleTimeout = Math.max(idleTimeout, (long) Math.ceil(burst / ratePerMs));
+        this.countThrottled = countThrottled;
+        this.clock = clock;
+        this.stripes = new Stripe[stripes];
+        long now = clock.getAsLong();
+        for (int i = 0; i < stripes; ++i) {
+            this.stripes[i] = new Stripe(now);
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of the given key if it has one.
+     *
+     * @param key The non-null key.
+     * @return true if a token was taken, false if the key is throttled.
+     */
+    public boolean tryAcquire(String key) {
+        Stripe stripe = getStripe(key);
+        long now = clock.getAsLong();
+        synchronized (stripe) {
+            if (now - stripe.swept >= idleTimeout) {
+                sweep(stripe, now);
+            }
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(burst, now);
+                stripe.buckets.put(key, bucket);
+            } else if (now > bucket.refilled) {
+                bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.refilled) * ratePerMs);
+                bucket.refilled = now;
+            }
+            if (bucket.tokens >= 1.0) {
+                bucket.tokens -= 1.0;
+                return true;
+            }
+            if (countThrottled) {
+                bucket.throttled++;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Gets and resets the number of times each key was throttled since the last time this was called.
+     *
+     * @return A {@link Map} of the keys that were throttled to the number of times they were. It is empty if throttles
+     *         are not counted.
+     */
+    public Map<String, Long> extractThrottled() {
+        Map<String, Long> throttled = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Map.Entry<String, Bucket> entry : stripe.buckets.entrySet()) {
+                    Bucket bucket = entry.getValue();
+                    if (bucket.throttled > 0) {
+                        throttled.put(entry.getKey(), bucket.throttled);
+                        bucket.throttled = 0;
+                    }
+                }
+            }
+        }
+        return throttled;
+    }
+
+    /**
+     * Gets the number of buckets.
+     *
+     * @return The number of keys that have a bucket.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.buckets.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe getStripe(String key) {
+        int hash = key.hashCode();
+        return stripes[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private void sweep(Stripe stripe, long now) {
+        Iterator<Bucket> iterator = stripe.buckets.values().iterator();
+        while (iterator.hasNext()) {
+            Bucket bucket = iterator.next();
+            if (bucket.throttled == 0 && now - bucket.refilled >= idleTimeout) {
+                iterator.remove();
+            }
+        }
+        stripe.swept = now;
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import java.util.UUID;
+
+/**
+ * Generates random (version 4) UUIDs as query IDs. These are not ordered and every ID reads from a shared
+ * {@link java.security.SecureRandom}.
+ */
+public class UUIDQueryIDGenerator implements QueryIDGenerator {
+    @Override
+    public String generate() {
+        return UUID.randomUUID().toString();
+    }
+}
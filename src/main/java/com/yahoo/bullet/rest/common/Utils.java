@@ -11,20 +11,66 @@ import com.yahoo.bullet.pubsub.PubSubMessage;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
-import java.util.UUID;
+import java.util.regex.Pattern;
 
 public class Utils {
+    public static final char TAG_SEPARATOR = '_';
+
     private static final Set<Metadata.Signal> FINISHED =
         new HashSet<>(Arrays.asList(Metadata.Signal.KILL, Metadata.Signal.COMPLETE, Metadata.Signal.FAIL));
+    private static final Pattern VALID_TAG = Pattern.compile("[A-Za-z0-9-]+");
+
+    private static volatile String instanceTag = null;
+    private static volatile QueryIDGenerator queryIDGenerator = new TimeOrderedQueryIDGenerator();
 
     /**
-     * Get a new unique query ID.
+     * Get a new unique query ID from the {@link QueryIDGenerator}. If an instance tag is set, the ID starts with it.
+     * See {@link #getInstanceTag(String)}.
      *
      * @return A new unique query ID.
      */
     public static String getNewQueryID() {
-        return UUID.randomUUID().toString();
+        String id = queryIDGenerator.generate();
+        String tag = instanceTag;
+        return tag == null ? id : tag + TAG_SEPARATOR + id;
+    }
+
+    /**
+     * Sets the {@link QueryIDGenerator} to generate new query IDs with. It is a {@link TimeOrderedQueryIDGenerator} by
+     * default.
+     *
+     * @param generator The non-null generator to use.
+     */
+    public static void setQueryIDGenerator(QueryIDGenerator generator) {
+        Objects.requireNonNull(generator);
+        queryIDGenerator = generator;
+    }
+
+    /**
+     * Sets the tag of the service instance to start new query IDs with, so that the instance that owns a query can be
+     * found from its ID.
+     *
+     * @param tag The tag of the instance. It can only have letters, digits and hyphens. If null, IDs are not tagged.
+     * @throws IllegalArgumentException if the tag is not valid.
+     */
+    public static void setInstanceTag(String tag) {
+        if (tag != null && !VALID_TAG.matcher(tag).matches()) {
+            throw new IllegalArgumentException("The instance tag can only have letters, digits and hyphens: " + tag);
+        }
+        instanceTag = tag;
+    }
+
+    /**
+     * Gets the tag of the service instance that created a query ID.
+     *
+     * @param id The non-null query ID.
+     * @return The tag of the instance or null if the ID is not tagged.
+     */
+    public static String getInstanceTag(String id) {
+        int index = id.indexOf(TAG_SEPARATOR);
+        return index < 0 ? null : id.substring(0, index);
     }
 
     /**
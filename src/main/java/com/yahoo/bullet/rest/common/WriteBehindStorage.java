@@ -0,0 +1,262 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.storage.StorageManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A write-behind layer in front of a {@link StorageManager} of {@link PubSubMessage}. Puts and removes made within a
+ * window are held and written out together using {@link StorageManager#putAll(Map)} and
+ * {@link StorageManager#clear(Set)}. A put followed by a remove of the same ID within the window cancel each other
+ * out and never reach the storage. Reads see pending and in-flight writes before going to the storage.
+ *
+ * If the window is not positive, this simply passes through to the {@link StorageManager}.
+ */
+@Slf4j
+public class WriteBehindStorage implements AutoCloseable {
+    private enum Type {
+        PUT,
+        REMOVE
+    }
+
+    private static class Operation {
+        private final Type type;
+        private final PubSubMessage message;
+        private final CompletableFuture<Boolean> putResult = new CompletableFuture<>();
+        private final List<CompletableFuture<PubSubMessage>> removeResults = new ArrayList<>();
+
+        private Operation(Type type, PubSubMessage message) {
+            this.type = type;
+            this.message = message;
+        }
+    }
+
+    private final StorageManager<PubSubMessage> storage;
+    private final long window;
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+    private Map<String, Operation> pending = new HashMap<>();
+    private Map<String, Operation> inFlight = Collections.emptyMap();
+
+    private static final CompletableFuture<PubSubMessage> NONE = CompletableFuture.completedFuture(null);
+
+    /**
+     * Constructor that takes the storage to write to and the batching window.
+     *
+     * @param storage The non-null {@link StorageManager} to write to.
+     * @param window The time in ms to batch writes for. If not positive, no batching is done.
+     */
+    public WriteBehindStorage(StorageManager<PubSubMessage> storage, long window) {
+        Objects.requireNonNull(storage);
+        this.storage = storage;
+        this.window = window;
+        if (isBatching()) {
+            flusher = Executors.newSingleThreadScheduledExecutor();
+            flusher.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Stores a {@link PubSubMessage} for an ID.
+     *
+     * @param id The ID to store it for.
+     * @param message The message to store.
+     * @return A {@link CompletableFuture} that resolves to the status of the store once it is actually written.
+     */
+    public CompletableFuture<Boolean> put(String id, PubSubMessage message) {
+        if (!isBatching()) {
+            return storage.put(id, message);
+        }
+        Operation operation = new Operation(Type.PUT, message);
+        synchronized (this) {
+            Operation previous = pending.put(id, operation);
+            // Any pending operation is superseded by this put since the put overwrites anyway
+            if (previous != null) {
+                supersede(previous);
+            }
+        }
+        return operation.putResult;
+    }
+
+    /**
+     * Removes the {@link PubSubMessage} stored for an ID.
+     *
+     * @param id The ID to remove.
+     * @return A {@link CompletableFuture} that resolves to the removed message if it is known or null otherwise.
+     */
+    public CompletableFuture<PubSubMessage> remove(String id) {
+        if (!isBatching()) {
+            return storage.remove(id);
+        }
+        synchronized (this) {
+            Operation previous = pending.get(id);
+            if (previous != null && previous.type == Type.PUT) {
+                // Collapse the put and this remove. Nothing needs to be written
+                log.debug("Collapsing pending put and remove for {}", id);
+                pending.remove(id);
+                previous.putResult.complete(true);
+                return CompletableFuture.completedFuture(previous.message);
+            }
+            Operation operation = previous != null ? previous : new Operation(Type.REMOVE, null);
+            CompletableFuture<PubSubMessage> result = new CompletableFuture<>();
+            operation.removeResults.add(result);
+            pending.put(id, operation);
+            return result;
+        }
+    }
+
+    /**
+     * Retrieves the {@link PubSubMessage} stored for an ID. Pending writes are visible to this.
+     *
+     * @param id The ID to retrieve.
+     * @return A {@link CompletableFuture} that resolves to the stored message or null if there is none.
+     */
+    public CompletableFuture<PubSubMessage> get(String id) {
+        if (isBatching()) {
+            synchronized (this) {
+                Operation operation = pending.get(id);
+                operation = operation != null ? operation : inFlight.get(id);
+                if (operation != null) {
+                    return operation.type == Type.PUT ? CompletableFuture.completedFuture(operation.message) : NONE;
+                }
+            }
+        }
+        return storage.get(id);
+    }
+
+    /**
+     * Gets the number of partitions in the storage. See {@link StorageManager#numberOfPartitions()}.
+     *
+     * @return The number of partitions.
+     */
+    public int numberOfPartitions() {
+        return storage.numberOfPartitions();
+    }
+
+    /**
+     * Retrieves a partition of the stored {@link PubSubMessage}. Any pending writes are flushed first so that they are
+     * visible in the partition.
+     *
+     * @param partition The partition to retrieve.
+     * @return A {@link CompletableFuture} that resolves to the {@link Map} of IDs to messages in the partition.
+     */
+    public CompletableFuture<Map<String, PubSubMessage>> getPartition(int partition) {
+        if (isBatching()) {
+            flush();
+        }
+        return storage.getPartition(partition);
+    }
+
+    /**
+     * Writes out all pending operations to the storage and waits for them to finish.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            flushPending();
+        }
+    }
+
+    /**
+     * Flushes any pending operations and closes the {@link StorageManager}.
+     */
+    @Override
+    public void close() {
+        if (isBatching()) {
+            flusher.shutdownNow();
+            flush();
+        }
+        storage.close();
+    }
+
+    private boolean isBatching() {
+        return window > 0;
+    }
+
+    private void flushPending() {
+        Map<String, Operation> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            inFlight = batch;
+            pending = new HashMap<>();
+        }
+        Map<String, PubSubMessage> puts = new HashMap<>();
+        Set<String> removes = new HashSet<>();
+        batch.forEach((id, operation) -> {
+            if (operation.type == Type.PUT) {
+                puts.put(id, operation.message);
+            } else {
+                removes.add(id);
+            }
+        });
+        log.debug("Flushing {} puts and {} removes to storage", puts.size(), removes.size());
+        try {
+            CompletableFuture<Boolean> putAll = puts.isEmpty() ? CompletableFuture.completedFuture(true) : storage.putAll(puts);
+            CompletableFuture<Boolean> clear = removes.isEmpty() ? CompletableFuture.completedFuture(true) : storage.clear(removes);
+            CompletableFuture.allOf(putAll.whenComplete((s, e) -> onPutAll(batch, puts.size(), s, e)),
+                                    clear.whenComplete((s, e) -> onClear(batch, removes.size(), s, e))).join();
+        } catch (Exception e) {
+            log.error("Error while flushing to storage", e);
+            // Fails the operations that are not done yet, such as when the storage threw instead of returning a future
+            onPutAll(batch, puts.size(), false, e);
+            onClear(batch, removes.size(), false, e);
+        } finally {
+            synchronized (this) {
+                inFlight = Collections.emptyMap();
+            }
+        }
+    }
+
+    private static void onPutAll(Map<String, Operation> batch, int puts, Boolean status, Throwable error) {
+        if (error == null && !status) {
+            log.error("Could not store {} queries in storage", puts);
+        }
+        batch.values().stream().filter(o -> o.type == Type.PUT).forEach(o -> {
+            if (error != null) {
+                o.putResult.completeExceptionally(error);
+            } else {
+                o.putResult.complete(status);
+            }
+        });
+    }
+
+    private static void onClear(Map<String, Operation> batch, int removes, Boolean status, Throwable error) {
+        if (error == null && !status) {
+            log.error("Could not remove {} queries from storage", removes);
+        }
+        batch.values().stream().filter(o -> o.type == Type.REMOVE).flatMap(o -> o.removeResults.stream()).forEach(r -> {
+            if (error != null) {
+                r.completeExceptionally(error);
+            } else {
+                r.complete(null);
+            }
+        });
+    }
+
+    private static void supersede(Operation operation) {
+        operation.putResult.complete(true);
+        operation.removeResults.forEach(r -> r.complete(null));
+    }
+}
@@ -5,39 +5,50 @@
  */
 package com.yahoo.bullet.rest.controller;
 
-import com.yahoo.bullet.common.metrics.MetricCollector;
-import com.yahoo.bullet.common.metrics.MetricPublisher;
 import com.yahoo.bullet.pubsub.Metadata;
 import com.yahoo.bullet.rest.common.Metric;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.model.ReplayStatus;
 import com.yahoo.bullet.rest.service.QueryService;
+import com.yahoo.bullet.rest.service.ReplayService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 @RestController @Slf4j
 public class AdminController extends MetricController {
     private final QueryService queryService;
+    private final ReplayService replayService;
 
     static final String STATUS_PREFIX = "admin.http.status.code.";
 
-    private static final List<String> STATUSES = toMetric(STATUS_PREFIX, Metric.OK, Metric.ERROR);
+    private static final Metric[] STATUSES = { Metric.OK, Metric.TOO_MANY_REQUESTS, Metric.ERROR };
 
     /**
-     * The constructor that takes a {@link QueryService} and a {@link MetricPublisher}.
+     * The constructor that takes a {@link QueryService}, a {@link ReplayService} and a {@link MetricRegistry}. The
+     * metrics for the query cache and the responders are added to the registry.
      *
      * @param queryService The non-null service for dealing with queries.
-     * @param metricPublisher The non-null {@link MetricPublisher} for publishing metrics.
+     * @param replayService The non-null service for replaying stored queries.
+     * @param metricRegistry The {@link MetricRegistry} to use. It can be null.
      */
     @Autowired
-    public AdminController(QueryService queryService, MetricPublisher metricPublisher) {
-        super(metricPublisher, new MetricCollector(STATUSES));
+    public AdminController(QueryService queryService, ReplayService replayService, MetricRegistry metricRegistry) {
+        super(metricRegistry, STATUS_PREFIX, STATUSES);
         this.queryService = queryService;
+        this.replayService = replayService;
+        if (metricRegistry != null) {
+            metricRegistry.source(queryService::getCacheMetrics);
+            metricRegistry.source(queryService::getResponderMetrics);
+        }
     }
 
     @PatchMapping(path = "${bullet.endpoint.replay}")
@@ -52,8 +63,37 @@ public class AdminController extends MetricController {
         }
     }
 
+    /**
+     * Starts replaying the stored queries to Bullet from the service instead of signaling the backend to do it.
+     *
+     * @return A {@link ResponseEntity} with a 200 if the replay was started or a 429 if one is already running.
+     */
+    @PostMapping(path = "${bullet.endpoint.replay}/queries", produces = { MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Object> replayQueries() {
+        try {
+            return respondWith(replayService.replay() ? Metric.OK : Metric.TOO_MANY_REQUESTS, replayService.getStatus());
+        } catch (Exception e) {
+            log.error("Error while trying to replay stored queries", e);
+            return respondWith(Metric.ERROR);
+        }
+    }
+
+    /**
+     * Gets the progress and throughput of the current or the last replay of stored queries.
+     *
+     * @return A {@link ResponseEntity} with the {@link ReplayStatus}.
+     */
+    @GetMapping(path = "${bullet.endpoint.replay}/status", produces = { MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Object> getReplayStatus() {
+        return respondWith(Metric.OK, replayService.getStatus());
+    }
+
     private ResponseEntity<Object> respondWith(Metric metric) {
-        incrementMetric(STATUS_PREFIX, metric);
-        return new ResponseEntity<>(null, metric.toHTTPStatus());
+        return respondWith(metric, null);
+    }
+
+    private ResponseEntity<Object> respondWith(Metric metric, Object body) {
+        incrementMetric(metric);
+        return new ResponseEntity<>(body, metric.toHTTPStatus());
     }
 }
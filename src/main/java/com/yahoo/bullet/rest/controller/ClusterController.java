@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.controller;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.ClusterConfiguration.Cluster;
+import com.yahoo.bullet.rest.common.ResponseForwarder;
+import com.yahoo.bullet.rest.service.QueryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+@RestController @Slf4j
+@ConditionalOnProperty(prefix = "bullet.cluster", name = "enabled", havingValue = "true")
+public class ClusterController {
+    private QueryService queryService;
+    private byte[] token;
+
+    /**
+     * Constructor that takes the services and the cluster settings.
+     *
+     * @param queryService The {@link QueryService} to respond with.
+     * @param cluster The {@link Cluster} settings of this instance.
+     */
+    @Autowired
+    public ClusterController(QueryService queryService, Cluster cluster) {
+        this.queryService = queryService;
+        this.token = cluster.getToken() == null ? new byte[0] : cluster.getToken().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The method that handles responses forwarded by the other instances of the service for queries owned by this one.
+     * See {@link ResponseForwarder}.
+     *
+     * @param response The JSON {@link PubSubMessage} response.
+     * @param token The token of the instance forwarding the response.
+     * @return A {@link ResponseEntity} with no content or forbidden if the token does not match or none is configured.
+     */
+    @PostMapping(path = "${bullet.endpoint.cluster}", consumes = { MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Void> respond(@RequestBody String response,
+                                        @RequestHeader(value = ResponseForwarder.TOKEN_HEADER, required = false) String token) {
+        byte[] given = token == null ? new byte[0] : token.getBytes(StandardCharsets.UTF_8);
+        if (this.token.length == 0 || !MessageDigest.isEqual(this.token, given)) {
+            log.warn("Rejecting a forwarded response with the wrong token");
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        PubSubMessage message = PubSubMessage.fromJSON(response);
+        queryService.respondLocally(message.getId(), message);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+}
@@ -5,34 +5,65 @@
  */
 package com.yahoo.bullet.rest.controller;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import com.yahoo.bullet.bql.BQLResult;
-import com.yahoo.bullet.common.metrics.MetricCollector;
-import com.yahoo.bullet.common.metrics.MetricPublisher;
+import com.yahoo.bullet.common.BulletError;
 import com.yahoo.bullet.pubsub.PubSubMessage;
 import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.rest.common.CBOREncoder;
 import com.yahoo.bullet.rest.common.Metric;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.PriorityClass;
+import com.yahoo.bullet.rest.common.ResultStore;
 import com.yahoo.bullet.rest.common.Utils;
 import com.yahoo.bullet.rest.model.QueryResponse;
 import com.yahoo.bullet.rest.query.HTTPQueryHandler;
+import com.yahoo.bullet.rest.query.MultiplexedSSEQueryHandler;
 import com.yahoo.bullet.rest.query.QueryError;
+import com.yahoo.bullet.rest.query.QueryHandler;
 import com.yahoo.bullet.rest.query.SSEQueryHandler;
+import com.yahoo.bullet.rest.service.AdmissionService;
 import com.yahoo.bullet.rest.service.HandlerService;
 import com.yahoo.bullet.rest.service.BQLService;
+import com.yahoo.bullet.rest.service.DisconnectService;
+import com.yahoo.bullet.rest.service.IdempotencyService;
+import com.yahoo.bullet.rest.service.PriorityService;
 import com.yahoo.bullet.rest.service.QueryService;
 import com.yahoo.bullet.rest.service.StatusService;
+import com.yahoo.bullet.rest.service.ThrottleService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static java.util.concurrent.CompletableFuture.completedFuture;
 
@@ -42,11 +73,20 @@ public class HTTPQueryController extends MetricController {
     private HandlerService handlerService;
     private BQLService bqlService;
     private StatusService statusService;
+    private ThrottleService throttleService;
+    private DisconnectService disconnectService;
+    private AdmissionService admissionService;
+    private IdempotencyService idempotencyService;
+    private ResultStore resultStore;
+    private int maxBatchSize;
 
     static final String STATUS_PREFIX = "api.http.status.code.";
-    private static final List<String> STATUSES =
-        toMetric(STATUS_PREFIX, Metric.OK, Metric.CREATED, Metric.NO_CONTENT, Metric.BAD_REQUEST,
-                 Metric.UNPROCESSABLE_ENTITY, Metric.TOO_MANY_REQUESTS, Metric.ERROR, Metric.UNAVAILABLE);
+    static final String FAST_MODE = "fast";
+    static final String RUNNING_QUERIES = "api.queries.running";
+    static final String QUERY_LIMIT = "api.queries.limit";
+    private static final Metric[] STATUSES = { Metric.OK, Metric.CREATED, Metric.NO_CONTENT, Metric.BAD_REQUEST,
+                                               Metric.NOT_FOUND, Metric.UNPROCESSABLE_ENTITY, Metric.TOO_MANY_REQUESTS,
+                                               Metric.ERROR, Metric.UNAVAILABLE };
 
     /**
      * Constructor that takes various services.
@@ -55,79 +95,191 @@ public class HTTPQueryController extends MetricController {
      * @param queryService The {@link QueryService} to use.
      * @param bqlService The {@link BQLService} to use.
      * @param statusService The {@link StatusService} to use.
-     * @param metricPublisher The {@link MetricPublisher} to use. It can be null.
+     * @param throttleService The {@link ThrottleService} to use.
+     * @param disconnectService The {@link DisconnectService} to cancel the queries of clients that go away with.
+     * @param admissionService The {@link AdmissionService} to admit queries into their priority classes and by their
+     *                         cost with.
+     * @param idempotencyService The {@link IdempotencyService} to attach retries to the queries they retry with.
+     * @param resultStore The optional {@link ResultStore} to keep the results of asynchronous queries in.
+     * @param metricRegistry The {@link MetricRegistry} to use. It can be null.
+     * @param maxBatchSize The maximum number of queries in a batch.
      */
     @Autowired
     public HTTPQueryController(HandlerService handlerService, QueryService queryService,
                                BQLService bqlService, StatusService statusService,
-                               MetricPublisher metricPublisher) {
-        super(metricPublisher, new MetricCollector(STATUSES));
+                               ThrottleService throttleService, DisconnectService disconnectService,
+                               AdmissionService admissionService, IdempotencyService idempotencyService,
+                               Optional<ResultStore> resultStore, MetricRegistry metricRegistry,
+                               @Value("${bullet.query.batch.max.size}") int maxBatchSize) {
+        super(metricRegistry, STATUS_PREFIX, STATUSES);
         this.handlerService = handlerService;
         this.queryService = queryService;
         this.bqlService = bqlService;
         this.statusService = statusService;
+        this.throttleService = throttleService;
+        this.disconnectService = disconnectService;
+        this.admissionService = admissionService;
+        this.idempotencyService = idempotencyService;
+        this.resultStore = resultStore.orElse(null);
+        this.maxBatchSize = maxBatchSize;
+        if (metricRegistry != null) {
+            metricRegistry.gauge(RUNNING_QUERIES, handlerService::count);
+            metricRegistry.gauge(QUERY_LIMIT, statusService::getQueryLimit);
+            metricRegistry.source(bqlService::getMetrics);
+            metricRegistry.source(() -> this.resultStore == null ? null : this.resultStore.getMetrics());
+        }
     }
 
     /**
-     * The method that handles POSTed queries to this endpoint and validates them. Consumes the HTTP request
-     * register and transmit the query to Bullet.
+     * The method that handles POSTed queries to this endpoint and validates them. By default, the query is fully built
+     * to validate it. If the mode is {@link #FAST_MODE}, the query is only checked against the schema without being
+     * built. This is much cheaper and is meant for validating as the query is typed.
      *
-     * @param query The String query to submit.
-     * @return A {@link CompletableFuture} representing the eventual result.
+     * @param query The String query to validate.
+     * @param mode The optional validation mode.
+     * @return A {@link ResponseEntity} with no content if the query is valid or the errors if not.
      */
     @PostMapping(path = "${bullet.endpoint.validate}", consumes = { MediaType.TEXT_PLAIN_VALUE }, produces = { MediaType.APPLICATION_JSON_VALUE })
-    public ResponseEntity<Object> validateQuery(@RequestBody String query) {
-        BQLResult result = bqlService.toQuery(query);
-        if (result.hasErrors()) {
-            return respondWith(Metric.UNPROCESSABLE_ENTITY, new QueryError(result.getErrors()).toString());
+    public ResponseEntity<Object> validateQuery(@RequestBody String query, @RequestParam(value = "mode", required = false) String mode) {
+        List<BulletError> errors;
+        if (FAST_MODE.equalsIgnoreCase(mode)) {
+            errors = bqlService.validate(query);
+        } else {
+            BQLResult result = bqlService.toQuery(query);
+            errors = result.hasErrors() ? result.getErrors() : null;
+        }
+        if (errors != null && !errors.isEmpty()) {
+            return respondWith(Metric.UNPROCESSABLE_ENTITY, new QueryError(errors).toString());
         }
         return respondWith(Metric.NO_CONTENT, null);
     }
 
     /**
-     * The method that handles POSTs to this endpoint. Consumes the HTTP request, invokes {@link HandlerService} to
-     * register and transmit the query to Bullet.
+     * Consumes the HTTP request, invokes {@link HandlerService} to register and transmit the query to Bullet.
      *
      * @param query The String query to submit.
      * @return A {@link CompletableFuture} representing the eventual result.
      */
-    @PostMapping(path = "${bullet.endpoint.http}", consumes = { MediaType.TEXT_PLAIN_VALUE }, produces = { MediaType.APPLICATION_JSON_VALUE })
-    public CompletableFuture<String> submitHTTPQuery(@RequestBody String query) {
+    public CompletableFuture<String> submitHTTPQuery(String query) {
+        return submitHTTPQuery(query, null);
+    }
+
+    /**
+     * The method that handles POSTs to this endpoint. It is the same as {@link #submitHTTPQuery(String, String)} but the
+     * result is encoded as CBOR if the Accept header prefers {@link CBOREncoder#MEDIA_TYPE_VALUE} and as JSON otherwise,
+     * including when the header is missing or accepts anything.
+     *
+     * @param query The String query to submit.
+     * @param key The optional key to retry the query with.
+     * @param accept The optional value of the Accept header.
+     * @return A {@link CompletableFuture} representing the eventual result as JSON or CBOR.
+     */
+    @PostMapping(path = "${bullet.endpoint.http}", consumes = { MediaType.TEXT_PLAIN_VALUE },
+                 produces = { MediaType.APPLICATION_JSON_VALUE, CBOREncoder.MEDIA_TYPE_VALUE })
+    public CompletableFuture<ResponseEntity<Object>> submitHTTPQuery(@RequestBody String query,
+                                                                     @RequestHeader(value = IdempotencyService.HEADER, required = false) String key,
+                                                                     @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        // The content type is set explicitly since the converters would otherwise pick the first type the client accepts
+        if (CBOREncoder.isPreferred(accept)) {
+            return submitHTTPQueryForCBOR(query, key).thenApply(result -> withContentType(CBOREncoder.MEDIA_TYPE, result));
+        }
+        return submitHTTPQuery(query, key).thenApply(result -> withContentType(MediaType.APPLICATION_JSON_UTF8, result));
+    }
+
+    /**
+     * Consumes the HTTP request, invokes {@link HandlerService} to register and transmit the query to Bullet. If the
+     * client sends a key in the {@link IdempotencyService#HEADER} header, a retry with the same key gets the result of
+     * the query already submitted with it. Such a query is not cancelled when its client goes away so that the retry
+     * can still get its result.
+     *
+     * @param query The String query to submit.
+     * @param key The optional key to retry the query with.
+     * @return A {@link CompletableFuture} representing the eventual result.
+     */
+    public CompletableFuture<String> submitHTTPQuery(String query, String key) {
+        return submitHTTP(query, key);
+    }
+
+    /**
+     * It is the same as {@link #submitHTTPQuery(String, String)} but the result is encoded as CBOR instead of JSON.
+     *
+     * @param query The String query to submit.
+     * @param key The optional key to retry the query with.
+     * @return A {@link CompletableFuture} representing the eventual result as CBOR.
+     */
+    public CompletableFuture<byte[]> submitHTTPQueryForCBOR(String query, String key) {
+        return submitHTTP(query, key).thenApply(CBOREncoder::encode);
+    }
+
+    private CompletableFuture<String> submitHTTP(String query, String key) {
         HTTPQueryHandler handler = new HTTPQueryHandler();
+        String id = Utils.getNewQueryID();
+        Principal principal = getPrincipal();
+        String address = getRemoteAddress();
+        CompletableFuture<String> existing = idempotencyService.attach(HTTPQueryHandler.ENDPOINT, principal, address, key, id, handler.getResult());
+        if (existing != null) {
+            return returnWith(Metric.OK, existing);
+        }
+        Metric metric;
+        try {
+            metric = submitHTTP(query, id, handler, key == null);
+        } catch (RuntimeException e) {
+            log.error("Could not submit HTTP query {}", id, e);
+            handlerService.removeHandler(id);
+            handler.fail(QueryError.SERVICE_UNAVAILABLE);
+            metric = Metric.ERROR;
+        }
+        if (metric != Metric.CREATED) {
+            idempotencyService.detach(HTTPQueryHandler.ENDPOINT, principal, address, key, id);
+        }
+        return returnWith(metric, handler.getResult());
+    }
+
+    private Metric submitHTTP(String query, String id, HTTPQueryHandler handler, boolean cancelOnDisconnect) {
         if (!statusService.isBackendStatusOK()) {
             handler.fail(QueryError.SERVICE_UNAVAILABLE);
-            return returnWith(Metric.UNAVAILABLE, handler.getResult());
+            return Metric.UNAVAILABLE;
         }
         if (statusService.queryLimitReached()) {
             handler.fail(QueryError.TOO_MANY_QUERIES);
-            return returnWith(Metric.TOO_MANY_REQUESTS, handler.getResult());
+            return Metric.TOO_MANY_REQUESTS;
         }
-        BQLResult result = bqlService.toQuery(query);
+        BQLResult result = bqlService.toQuery(id, HTTPQueryHandler.ENDPOINT, query);
         if (result.hasErrors()) {
             handler.fail(new QueryError(result.getErrors()));
-            return returnWith(Metric.BAD_REQUEST, handler.getResult());
+            return Metric.BAD_REQUEST;
         }
         Query bulletQuery = result.getQuery();
         if (bulletQuery.getWindow().getType() != null) {
             handler.fail(QueryError.UNSUPPORTED_QUERY);
-            return returnWith(Metric.BAD_REQUEST, handler.getResult());
+            return Metric.BAD_REQUEST;
+        }
+        QueryError rejection = admissionService.admit(id, bulletQuery, classify(HTTPQueryHandler.ENDPOINT));
+        if (rejection != null) {
+            handler.fail(rejection);
+            return Metric.TOO_MANY_REQUESTS;
         }
-        String id = Utils.getNewQueryID();
         log.debug("Submitting HTTP query {}: {}", id, query);
         handlerService.addHandler(id, handler);
+        if (cancelOnDisconnect) {
+            disconnectService.cancelOnDisconnect(Collections.singletonList(id));
+        }
         queryService.submit(id, bulletQuery, result.getBql());
-        return returnWith(Metric.CREATED, handler.getResult());
+        return Metric.CREATED;
     }
 
     /**
      * The method that handles SSE POSTs to this endpoint. Consumes the HTTP request, invokes {@link HandlerService} to
-     * register and transmit the query to Bullet.
+     * register and transmit the query to Bullet. The client can ask for results to be sent at most once per an
+     * interval, in which case they are throttled by the {@link ThrottleService}.
      *
      * @param query The String query to submit.
+     * @param throttle The optional interval in ms between results.
      * @return A {@link SseEmitter} to send streaming results.
      */
     @PostMapping(value = "${bullet.endpoint.sse}", consumes = { MediaType.TEXT_PLAIN_VALUE }, produces = { MediaType.APPLICATION_JSON_VALUE })
-    public SseEmitter submitSSEQuery(@RequestBody String query) {
+    public SseEmitter submitSSEQuery(@RequestBody String query,
+                                     @RequestParam(value = ThrottleService.THROTTLE, required = false) Long throttle) {
         SseEmitter sseEmitter = new SseEmitter();
         String id = Utils.getNewQueryID();
         SSEQueryHandler handler = new SSEQueryHandler(id, sseEmitter, queryService);
@@ -139,34 +291,153 @@ public class HTTPQueryController extends MetricController {
             handler.fail(QueryError.TOO_MANY_QUERIES);
             return returnWith(Metric.TOO_MANY_REQUESTS, sseEmitter);
         }
-        BQLResult result = bqlService.toQuery(query);
+        BQLResult result = bqlService.toQuery(id, SSEQueryHandler.ENDPOINT, query);
         if (result.hasErrors()) {
             handler.fail(new QueryError(result.getErrors()));
             return returnWith(Metric.BAD_REQUEST, sseEmitter);
         }
+        QueryError rejection = admissionService.admit(id, result.getQuery(), classify(SSEQueryHandler.ENDPOINT));
+        if (rejection != null) {
+            handler.fail(rejection);
+            return returnWith(Metric.TOO_MANY_REQUESTS, sseEmitter);
+        }
         log.debug("Submitting SSE query {}: {}", id, query);
-        handlerService.addHandler(id, handler);
+        handlerService.addHandler(id, throttleService.throttle(id, handler, result.getQuery(), throttle));
+        disconnectService.cancelOnDisconnect(id, sseEmitter);
         queryService.submit(id, result.getQuery(), result.getBql());
         return returnWith(Metric.CREATED, sseEmitter);
     }
 
+    /**
+     * The method that handles POSTs of a batch of queries to this endpoint, such as the panels of a dashboard. The
+     * queries are compiled in parallel and submitted together. The response is a JSON array with the result or error
+     * of each query in the same order once they are all done. Like {@link #submitHTTPQuery(String)}, windowed queries
+     * are not supported.
+     *
+     * @param queries The {@link List} of String queries to submit.
+     * @return A {@link CompletableFuture} representing the eventual results.
+     */
+    @PostMapping(path = "${bullet.endpoint.batch}", consumes = { MediaType.APPLICATION_JSON_VALUE }, produces = { MediaType.APPLICATION_JSON_VALUE })
+    public CompletableFuture<String> submitBatchQuery(@RequestBody List<String> queries) {
+        HTTPQueryHandler batchHandler = new HTTPQueryHandler();
+        Metric failure = checkBatch(queries, batchHandler);
+        if (failure != null) {
+            return returnWith(failure, batchHandler.getResult());
+        }
+        List<String> ids = new ArrayList<>(queries.size());
+        List<HTTPQueryHandler> handlers = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); ++i) {
+            ids.add(Utils.getNewQueryID());
+            handlers.add(new HTTPQueryHandler());
+        }
+        Metric metric = submitBatch(queries, ids, handlers, false, null);
+        disconnectService.cancelOnDisconnect(ids);
+        CompletableFuture<?>[] results = handlers.stream().map(HTTPQueryHandler::getResult).toArray(CompletableFuture[]::new);
+        CompletableFuture<String> result =
+            CompletableFuture.allOf(results)
+                             .thenApply(v -> handlers.stream().map(h -> h.getResult().join()).collect(Collectors.joining(",", "[", "]")));
+        return returnWith(metric, result);
+    }
+
+    /**
+     * The method that handles POSTs of a batch of queries to this endpoint from clients that accept SSE. It is the
+     * same as {@link #submitBatchQuery(List)} except that the results of all the queries are streamed as they arrive
+     * and windowed queries are supported. Each event is named by the index of its query in the batch and has the query
+     * ID as its ID. The stream ends once all the queries are done.
+     *
+     * @param queries The {@link List} of String queries to submit.
+     * @param throttle The optional interval in ms between results of each query. See {@link ThrottleService}.
+     * @return A {@link SseEmitter} to send the streaming results.
+     */
+    @PostMapping(path = "${bullet.endpoint.batch}", consumes = { MediaType.APPLICATION_JSON_VALUE }, produces = { MediaType.TEXT_EVENT_STREAM_VALUE })
+    public SseEmitter submitBatchSSEQuery(@RequestBody List<String> queries,
+                                          @RequestParam(value = ThrottleService.THROTTLE, required = false) Long throttle) {
+        SseEmitter sseEmitter = new SseEmitter();
+        Metric failure = checkBatch(queries, new SSEQueryHandler(null, sseEmitter, queryService));
+        if (failure != null) {
+            return returnWith(failure, sseEmitter);
+        }
+        List<String> ids = new ArrayList<>(queries.size());
+        List<MultiplexedSSEQueryHandler> handlers = new ArrayList<>(queries.size());
+        AtomicInteger running = new AtomicInteger(queries.size());
+        for (int i = 0; i < queries.size(); ++i) {
+            String id = Utils.getNewQueryID();
+            ids.add(id);
+            handlers.add(new MultiplexedSSEQueryHandler(id, i, sseEmitter, queryService, running));
+        }
+        disconnectService.cancelOnDisconnect(ids, sseEmitter);
+        return returnWith(submitBatch(queries, ids, handlers, true, throttle), sseEmitter);
+    }
+
+    /**
+     * This method handles POSTs for asynchronous queries to the API. These queries do not wait around for the results.
+     *
+     * @param asyncQuery The String query to submit.
+     * @return A {@link CompletableFuture} that resolves to either a {@link QueryResponse} or a {@link QueryError}.
+     */
+    public CompletableFuture<ResponseEntity<Object>> submitAsyncQuery(String asyncQuery) {
+        return submitAsyncQuery(asyncQuery, null);
+    }
+
     /**
      * This method handles POSTs for asynchronous queries to the API. These queries do not wait around for the results.
+     * If the client sends a key in the {@link IdempotencyService#HEADER} header, a retry with the same key gets the
+     * response of the query already submitted with it instead of submitting a new one.
      *
      * @param asyncQuery The String query to submit.
+     * @param key The optional key to retry the query with.
      * @return A {@link CompletableFuture} that resolves to either a {@link QueryResponse} or a {@link QueryError}.
      */
     @PostMapping(value = "${bullet.endpoint.async}", consumes = { MediaType.TEXT_PLAIN_VALUE }, produces = { MediaType.APPLICATION_JSON_VALUE })
-    public CompletableFuture<ResponseEntity<Object>> submitAsyncQuery(@RequestBody String asyncQuery) {
+    public CompletableFuture<ResponseEntity<Object>> submitAsyncQuery(@RequestBody String asyncQuery,
+                                                                      @RequestHeader(value = IdempotencyService.HEADER, required = false) String key) {
+        final String id = Utils.getNewQueryID();
+        Principal principal = getPrincipal();
+        String address = getRemoteAddress();
+        CompletableFuture<ResponseEntity<Object>> response = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<Object>> existing = idempotencyService.attach(PriorityService.ASYNC, principal, address, key, id, response);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<ResponseEntity<Object>> submitted;
+        try {
+            submitted = submitAsync(asyncQuery, id);
+        } catch (RuntimeException e) {
+            submitted = failWith(internalError(e));
+        }
+        submitted.whenComplete((entity, e) -> {
+            if (e != null || !entity.getStatusCode().is2xxSuccessful()) {
+                idempotencyService.detach(PriorityService.ASYNC, principal, address, key, id);
+                if (resultStore != null) {
+                    resultStore.remove(id);
+                }
+            }
+            if (e != null) {
+                response.completeExceptionally(e);
+            } else {
+                response.complete(entity);
+            }
+        });
+        return response;
+    }
+
+    private CompletableFuture<ResponseEntity<Object>> submitAsync(String asyncQuery, String id) {
         if (!statusService.isBackendStatusOK()) {
             return failWith(unavailable());
         }
-        BQLResult result = bqlService.toQuery(asyncQuery);
+        BQLResult result = bqlService.toQuery(id, PriorityService.ASYNC, asyncQuery);
         if (result.hasErrors()) {
             return failWith(new QueryError(result.getErrors()));
         }
-        final String id = Utils.getNewQueryID();
+        QueryError rejection = admissionService.admitAsync(id, result.getQuery(), classify(PriorityService.ASYNC));
+        if (rejection != null) {
+            return failWith(respondWith(Metric.TOO_MANY_REQUESTS, rejection));
+        }
         log.debug("Submitting Async query {}: {}", id, asyncQuery);
+        // Registered before submitting so that no results are missed. It is removed if the submit fails
+        if (resultStore != null) {
+            resultStore.register(id, getPrincipalName());
+        }
         return queryService.submit(id, result.getQuery(), result.getBql())
                            .thenCompose(message -> createQueryResponse(message, id, asyncQuery))
                            .exceptionally(this::internalError);
@@ -194,6 +465,154 @@ public class HTTPQueryController extends MetricController {
         }
     }
 
+    /**
+     * This method handles GETs for the latest result of an asynchronous query. Results are only available if the
+     * {@link ResultStore} is enabled.
+     *
+     * @param id The ID returned in the {@link QueryResponse} from the previous submit call.
+     * @return A {@link ResponseEntity} with the latest result, no content if there is none yet or a 404 if the query
+     *         is unknown, its results were evicted or it was submitted by another principal.
+     */
+    @GetMapping(path = "${bullet.endpoint.async}/{id}/result", produces = { MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Object> getAsyncResult(@PathVariable String id) {
+        ResultStore.Results results = resultStore == null ? null : resultStore.get(id, getPrincipalName());
+        if (results == null) {
+            return respondWith(Metric.NOT_FOUND, QueryError.RESULT_NOT_FOUND.toString());
+        }
+        String latest = results.getLatest();
+        return latest == null ? respondWith(Metric.NO_CONTENT, null) : respondWith(Metric.OK, latest);
+    }
+
+    /**
+     * This method handles GETs for a page of the window history of an asynchronous query, from the oldest stored
+     * window. The response is a JSON object with the page of windows, whether the query is done and the total number
+     * of windows that the query has had. Only the latest windows, up to a maximum, are stored.
+     *
+     * @param id The ID returned in the {@link QueryResponse} from the previous submit call.
+     * @param page The page to get, starting from 0.
+     * @param size The number of windows in a page.
+     * @return A {@link ResponseEntity} with the page or a 404 if the query is unknown, its results were evicted or it
+     *         was submitted by another principal.
+     */
+    @GetMapping(path = "${bullet.endpoint.async}/{id}/results", produces = { MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Object> getAsyncResults(@PathVariable String id,
+                                                  @RequestParam(value = "page", defaultValue = "0") int page,
+                                                  @RequestParam(value = "size", defaultValue = "10") int size) {
+        if (page < 0 || size < 1) {
+            return respondWith(Metric.BAD_REQUEST, QueryError.INVALID_PAGE.toString());
+        }
+        ResultStore.Results results = resultStore == null ? null : resultStore.get(id, getPrincipalName());
+        if (results == null) {
+            return respondWith(Metric.NOT_FOUND, QueryError.RESULT_NOT_FOUND.toString());
+        }
+        List<String> windows = results.getWindows();
+        long start = Math.min((long) page * size, windows.size());
+        long end = Math.min(start + size, windows.size());
+        JsonArray array = new JsonArray();
+        windows.subList((int) start, (int) end).forEach(w -> array.add(toJSON(w)));
+        JsonObject body = new JsonObject();
+        body.addProperty("id", id);
+        body.addProperty("done", results.isDone());
+        body.addProperty("total", results.getTotal());
+        body.addProperty("page", page);
+        body.addProperty("size", size);
+        body.add("windows", array);
+        return respondWith(Metric.OK, body.toString());
+    }
+
+    private Metric checkBatch(List<String> queries, QueryHandler handler) {
+        if (!statusService.isBackendStatusOK()) {
+            handler.fail(QueryError.SERVICE_UNAVAILABLE);
+            return Metric.UNAVAILABLE;
+        }
+        if (statusService.queryLimitReached()) {
+            handler.fail(QueryError.TOO_MANY_QUERIES);
+            return Metric.TOO_MANY_REQUESTS;
+        }
+        if (queries == null || queries.isEmpty() || queries.size() > maxBatchSize) {
+            handler.fail(QueryError.INVALID_BATCH);
+            return Metric.BAD_REQUEST;
+        }
+        return null;
+    }
+
+    private Metric submitBatch(List<String> queries, List<String> ids, List<? extends QueryHandler> handlers,
+                               boolean allowWindows, Long throttle) {
+        PriorityClass priority = classify(MultiplexedSSEQueryHandler.ENDPOINT);
+        List<BQLResult> results = IntStream.range(0, queries.size()).parallel()
+                                           .mapToObj(i -> bqlService.toQuery(ids.get(i), MultiplexedSSEQueryHandler.ENDPOINT, queries.get(i)))
+                                           .collect(Collectors.toList());
+        List<String> submittedIDs = new ArrayList<>();
+        List<Query> submittedQueries = new ArrayList<>();
+        List<String> submittedBQL = new ArrayList<>();
+        boolean rejected = false;
+        for (int i = 0; i < results.size(); ++i) {
+            BQLResult result = results.get(i);
+            QueryHandler handler = handlers.get(i);
+            if (result.hasErrors()) {
+                handler.fail(new QueryError(result.getErrors()));
+            } else if (!allowWindows && result.getQuery().getWindow().getType() != null) {
+                handler.fail(QueryError.UNSUPPORTED_QUERY);
+            } else if (statusService.queryLimitReached()) {
+                // Each query added counts towards the limit, so only the queries past it are failed
+                handler.fail(QueryError.TOO_MANY_QUERIES);
+                rejected = true;
+            } else {
+                String id = ids.get(i);
+                QueryError rejection = admissionService.admit(id, result.getQuery(), priority);
+                if (rejection != null) {
+                    handler.fail(rejection);
+                    rejected = true;
+                    continue;
+                }
+                handlerService.addHandler(id, throttleService.throttle(id, handler, result.getQuery(), throttle));
+                submittedIDs.add(id);
+                submittedQueries.add(result.getQuery());
+                submittedBQL.add(result.getBql());
+            }
+        }
+        if (submittedIDs.isEmpty()) {
+            return rejected ? Metric.TOO_MANY_REQUESTS : Metric.BAD_REQUEST;
+        }
+        log.debug("Submitting a batch of {} queries", submittedIDs.size());
+        queryService.submit(submittedIDs, submittedQueries, submittedBQL).thenAccept(sent -> failUnsent(submittedIDs, sent));
+        return Metric.CREATED;
+    }
+
+    private void failUnsent(List<String> ids, List<PubSubMessage> sent) {
+        for (int i = 0; i < ids.size(); ++i) {
+            if (sent.get(i) == null) {
+                handlerService.failHandler(ids.get(i));
+            }
+        }
+    }
+
+    private PriorityClass classify(String endpoint) {
+        return admissionService.classify(endpoint, getPrincipal());
+    }
+
+    private static Principal getPrincipal() {
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private static String getRemoteAddress() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes ? ((ServletRequestAttributes) attributes).getRequest().getRemoteAddr() : null;
+    }
+
+    private static String getPrincipalName() {
+        Principal principal = getPrincipal();
+        return principal == null ? null : principal.getName();
+    }
+
+    private static JsonElement toJSON(String window) {
+        try {
+            return new JsonParser().parse(window);
+        } catch (RuntimeException e) {
+            return new JsonPrimitive(window);
+        }
+    }
+
     private CompletableFuture<ResponseEntity<Object>> createQueryResponse(PubSubMessage message, String id, String query) {
         if (message == null) {
             log.error("Unable to create response for id: {}, query: {}", id, query);
@@ -224,12 +643,16 @@ public class HTTPQueryController extends MetricController {
         return respondWith(Metric.OK, null);
     }
 
+    private static ResponseEntity<Object> withContentType(MediaType type, Object body) {
+        return ResponseEntity.ok().contentType(type).body(body);
+    }
+
     private <T> ResponseEntity<T> respondWith(Metric metric, T object) {
         return returnWith(metric, new ResponseEntity<>(object, metric.toHTTPStatus()));
     }
 
     private <T> T returnWith(Metric status, T object) {
-        incrementMetric(STATUS_PREFIX, status);
+        incrementMetric(status);
         return object;
     }
 }
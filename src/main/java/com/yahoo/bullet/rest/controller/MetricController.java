@@ -5,79 +5,49 @@
  */
 package com.yahoo.bullet.rest.controller;
 
-import com.yahoo.bullet.common.metrics.MetricCollector;
-import com.yahoo.bullet.common.metrics.MetricPublisher;
 import com.yahoo.bullet.rest.common.Metric;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.MetricRegistry.Counter;
 import lombok.AccessLevel;
 import lombok.Getter;
-import org.springframework.scheduling.annotation.Scheduled;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.EnumMap;
+import java.util.Map;
 
 @Getter(AccessLevel.PACKAGE)
 public class MetricController {
     private final boolean metricEnabled;
-    private final MetricPublisher metricPublisher;
-    private final MetricCollector metricCollector;
+    private final MetricRegistry metricRegistry;
+    @Getter(AccessLevel.NONE)
+    private final Map<Metric, Counter> counters = new EnumMap<>(Metric.class);
 
     /**
-     * Creates a controller that reports to the given {@link MetricPublisher} the various metrics collected in the
-     * given {@link MetricCollector}.
+     * Creates a controller that counts the given {@link Metric} in the given {@link MetricRegistry}. The counters are
+     * created once here, each named by the prefix and the metric.
      *
-     * @param metricPublisher The {@link MetricPublisher} to use to report metrics.
-     * @param metricCollector The {@link MetricCollector} to use.
+     * @param metricRegistry The {@link MetricRegistry} to use. If null, metrics are not collected.
+     * @param prefix The String prefix to add to each metric.
+     * @param metrics The {@link Metric} that this controller counts.
      */
-    public MetricController(MetricPublisher metricPublisher, MetricCollector metricCollector) {
-        this.metricEnabled = metricPublisher != null;
-        this.metricPublisher = metricPublisher;
-        this.metricCollector = metricCollector;
-    }
-
-    /**
-     * Fires and forgets the metrics using the publisher.
-     */
-    @Scheduled(fixedDelayString = "${bullet.metric.publish.interval.ms}")
-    public void publishMetrics() {
+    public MetricController(MetricRegistry metricRegistry, String prefix, Metric... metrics) {
+        this.metricEnabled = metricRegistry != null;
+        this.metricRegistry = metricRegistry;
         if (metricEnabled) {
-            metricPublisher.fire(metricCollector.extractMetrics());
+            for (Metric metric : metrics) {
+                counters.put(metric, metricRegistry.counter(prefix + metric.toString()));
+            }
         }
     }
 
     /**
-     * Increments the {@link Metric} with a given prefix to attach to it.
+     * Increments the given {@link Metric}. It is ignored if it is not one of the metrics counted by this controller.
      *
-     * @param prefix The prefix to attach to the given metric.
-     * @param metric The {@link Metric} name.
+     * @param metric The {@link Metric} to increment.
      */
-    protected void incrementMetric(String prefix, Metric metric) {
-        if (metricEnabled) {
-            // Doesn't call incrementMetric(String) on purpose to avoid the if again
-            metricCollector.increment(prefix + metric.toString());
+    protected void incrementMetric(Metric metric) {
+        Counter counter = counters.get(metric);
+        if (counter != null) {
+            counter.increment();
         }
     }
-
-    /**
-     * Increment the given metric.
-     *
-     * @param metric The String name of the metric.
-     */
-    protected void incrementMetric(String metric) {
-        if (metricEnabled) {
-            metricCollector.increment(metric);
-        }
-    }
-
-    /**
-     * Concatenates a String prefix to the given metrics.
-     *
-     * @param prefix The String prefix to add.
-     * @param metrics The {@link Metric} varargs.
-     * @return A {@link List} of String metrics with the prefix added to each.
-     */
-    public static List<String> toMetric(String prefix, Metric... metrics) {
-        return Arrays.stream(metrics).map(Objects::toString).map(prefix::concat).collect(Collectors.toList());
-    }
 }
@@ -0,0 +1,202 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.controller;
+
+import com.yahoo.bullet.bql.BQLResult;
+import com.yahoo.bullet.rest.common.Metric;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.PriorityClass;
+import com.yahoo.bullet.rest.common.Utils;
+import com.yahoo.bullet.rest.model.WebSocketRequest;
+import com.yahoo.bullet.rest.model.WebSocketResponse;
+import com.yahoo.bullet.rest.query.QueryError;
+import com.yahoo.bullet.rest.query.QueryHandler;
+import com.yahoo.bullet.rest.query.RawWebSocketQueryHandler;
+import com.yahoo.bullet.rest.service.AdmissionService;
+import com.yahoo.bullet.rest.service.BQLService;
+import com.yahoo.bullet.rest.service.StatusService;
+import com.yahoo.bullet.rest.service.ThrottleService;
+import com.yahoo.bullet.rest.service.WebSocketService;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Handles the raw WebSocket endpoint. It has the same requests and responses as the STOMP endpoint but without SockJS
+ * and STOMP. Each request is a text frame with the {@link WebSocketRequest.Type}, a space and the content: the BQL
+ * query for a new query or the optional query ID for a kill. Each response is a text frame framed the same way by
+ * {@link RawWebSocketQueryHandler}. Responses are written straight to the session. Results are throttled for the
+ * connection if it was opened with a {@link ThrottleService#THROTTLE} query parameter with an interval in ms. Queries
+ * are admitted into priority classes and by their cost the same way as on the STOMP endpoint.
+ */
+@Component @Slf4j
+public class RawWebSocketController extends MetricController implements WebSocketHandler {
+    private WebSocketService webSocketService;
+    private BQLService bqlService;
+    private StatusService statusService;
+    private ThrottleService throttleService;
+    private AdmissionService admissionService;
+    private int sendBufferSizeLimit;
+    private int sendTimeLimit;
+    // Exposed for testing only.
+    @Getter(AccessLevel.PACKAGE)
+    private Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    static final String STATUS_PREFIX = "api.websocket.raw.status.code.";
+    static final QueryError INVALID_REQUEST =
+        new QueryError("Failed to parse request", "Please send NEW_QUERY or KILL_QUERY followed by a space and the query or query ID");
+    private static final Metric[] STATUSES = { Metric.CREATED, Metric.BAD_REQUEST, Metric.TOO_MANY_REQUESTS, Metric.UNAVAILABLE };
+
+    /**
+     * Constructor that takes various services.
+     *
+     * @param webSocketService The {@link WebSocketService} to use.
+     * @param bqlService The {@link BQLService} to use.
+     * @param statusService The {@link StatusService} to use.
+     * @param throttleService The {@link ThrottleService} to use.
+     * @param admissionService The {@link AdmissionService} to use. If null, queries are not admitted into priority
+     *                         classes or by their cost.
+     * @param metricRegistry The {@link MetricRegistry} to use. It can be null.
+     * @param sessionBufferSize The maximum amount of data in KB to buffer when sending to a session.
+     * @param messageSendTimeLimit The time limit in seconds when sending to a session.
+     */
+    @Autowired
+    public RawWebSocketController(WebSocketService webSocketService, BQLService bqlService,
+                                  StatusService statusService, ThrottleService throttleService,
+                                  AdmissionService admissionService, MetricRegistry metricRegistry,
+                                  @Value("${bullet.websocket.session.buffer.size.kb}") int sessionBufferSize,
+                                  @Value("${bullet.websocket.message.send.time.limit.secs}") int messageSendTimeLimit) {
+        super(metricRegistry, STATUS_PREFIX, STATUSES);
+        this.webSocketService = webSocketService;
+        this.bqlService = bqlService;
+        this.statusService = statusService;
+        this.throttleService = throttleService;
+        this.admissionService = admissionService;
+        this.sendBufferSizeLimit = sessionBufferSize * 1024;
+        this.sendTimeLimit = messageSendTimeLimit * 1000;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        // Results for a query are sent from other threads, so sends to the session have to be serialized
+        sessions.put(session.getId(), new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, sendBufferSizeLimit));
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) {
+        if (message instanceof PongMessage) {
+            return;
+        }
+        WebSocketSession concurrentSession = sessions.getOrDefault(session.getId(), session);
+        if (!(message instanceof TextMessage)) {
+            reject(concurrentSession);
+            return;
+        }
+        String payload = ((TextMessage) message).getPayload();
+        int separator = payload.indexOf(RawWebSocketQueryHandler.SEPARATOR);
+        String type = separator < 0 ? payload : payload.substring(0, separator);
+        String content = separator < 0 ? null : payload.substring(separator + 1);
+        if (WebSocketRequest.Type.NEW_QUERY.name().equals(type)) {
+            handleNewQuery(content, concurrentSession);
+        } else if (WebSocketRequest.Type.KILL_QUERY.name().equals(type)) {
+            handleKillQuery(content, session);
+        } else {
+            reject(concurrentSession);
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.error("Transport error in session " + session.getId(), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) {
+        sessions.remove(session.getId());
+        webSocketService.killQuery(session.getId(), null);
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return false;
+    }
+
+    private boolean handleNewQuery(String bql, WebSocketSession session) {
+        String queryID = Utils.getNewQueryID();
+        RawWebSocketQueryHandler queryHandler = new RawWebSocketQueryHandler(webSocketService, session, queryID);
+        if (!statusService.isBackendStatusOK()) {
+            return failWith(QueryError.SERVICE_UNAVAILABLE, Metric.UNAVAILABLE, queryHandler);
+        }
+        if (statusService.queryLimitReached()) {
+            return failWith(QueryError.TOO_MANY_QUERIES, Metric.TOO_MANY_REQUESTS, queryHandler);
+        }
+        if (bql == null) {
+            return failWith(QueryError.INVALID_QUERY, Metric.BAD_REQUEST, queryHandler);
+        }
+        BQLResult result = bqlService.toQuery(queryID, RawWebSocketQueryHandler.ENDPOINT, bql);
+        if (result.hasErrors()) {
+            return failWith(new QueryError(result.getErrors()), Metric.BAD_REQUEST, queryHandler);
+        }
+        Long throttle;
+        try {
+            throttle = ThrottleService.parse(getThrottle(session));
+        } catch (NumberFormatException e) {
+            return failWith(QueryError.INVALID_THROTTLE, Metric.BAD_REQUEST, queryHandler);
+        }
+        if (admissionService != null) {
+            PriorityClass priority = admissionService.classify(RawWebSocketQueryHandler.ENDPOINT, session.getPrincipal());
+            QueryError rejection = admissionService.admit(queryID, result.getQuery(), priority);
+            if (rejection != null) {
+                return failWith(rejection, Metric.TOO_MANY_REQUESTS, queryHandler);
+            }
+        }
+        QueryHandler handler = throttleService.throttle(queryID, queryHandler, result.getQuery(), throttle);
+        log.debug("Submitting raw websocket query {}: {}", queryID, bql);
+        webSocketService.submitQuery(queryID, session.getId(), result.getQuery(), result.getBql(), handler);
+        incrementMetric(Metric.CREATED);
+        return true;
+    }
+
+    private void handleKillQuery(String queryID, WebSocketSession session) {
+        log.debug("Killing raw WebSocket query {}", queryID);
+        webSocketService.killQuery(session.getId(), queryID == null || queryID.isEmpty() ? null : queryID);
+    }
+
+    private static String getThrottle(WebSocketSession session) {
+        URI uri = session.getUri();
+        return uri == null ? null : UriComponentsBuilder.fromUri(uri).build().getQueryParams().getFirst(ThrottleService.THROTTLE);
+    }
+
+    private void reject(WebSocketSession session) {
+        incrementMetric(Metric.BAD_REQUEST);
+        try {
+            session.sendMessage(new TextMessage(RawWebSocketQueryHandler.frame(WebSocketResponse.Type.FAIL, INVALID_REQUEST.toString())));
+        } catch (Exception e) {
+            log.error("Could not send to session {}", session.getId());
+        }
+    }
+
+    private boolean failWith(QueryError error, Metric metric, RawWebSocketQueryHandler handler) {
+        handler.fail(error);
+        incrementMetric(metric);
+        return false;
+    }
+}
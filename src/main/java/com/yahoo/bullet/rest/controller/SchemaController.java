@@ -5,16 +5,27 @@
  */
 package com.yahoo.bullet.rest.controller;
 
+import com.yahoo.bullet.rest.model.SchemaRequest;
+import com.yahoo.bullet.rest.query.QueryError;
 import com.yahoo.bullet.rest.service.SchemaService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.nio.charset.StandardCharsets;
+
 @RestController
 public class SchemaController {
     private SchemaService schemaService;
     private static final String JSON_API_HEADER = "application/vnd.api+json";
+    private static final String GZIP = "gzip";
+    private static final String WEAK_PREFIX = "W/";
 
     /**
      * Constructor.
@@ -27,12 +38,93 @@ public class SchemaController {
     }
 
     /**
-     * The GET endpoint that returns the JSON API schema.
+     * The GET endpoint that returns the JSON API schema. The response carries an ETag and is a 304 with no body if the
+     * If-None-Match header matches it. The body is sent gzipped if the client accepts it.
+     *
+     * If any of the query parameters in {@link SchemaRequest} are provided, only the matching fields are returned.
+     * For example, {@code /columns?prefix=demo_&types=STRING,LONG&fields=name,type&offset=0&limit=50}.
      *
-     * @return The JSON API schema.
+     * @param ifNoneMatch The optional If-None-Match header.
+     * @param acceptEncoding The optional Accept-Encoding header.
+     * @param request The {@link SchemaRequest} with the optional query parameters.
+     * @return A {@link ResponseEntity} with the JSON API schema.
      */
     @GetMapping(path = "/columns", produces = { JSON_API_HEADER, MediaType.APPLICATION_JSON_VALUE })
-    public String getJSONSchema() {
-        return schemaService.getSchema();
+    public ResponseEntity<byte[]> getJSONSchema(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                SchemaRequest request) {
+        if (request != null && !request.isEmpty()) {
+            return search(request);
+        }
+        // Read once so that a concurrent reload does not mix two versions of the schema in a response
+        SchemaService.Payload payload = schemaService.getPayload();
+        boolean gzip = acceptsGzip(acceptEncoding);
+        String eTag = gzip ? payload.getGzippedETag() : payload.getETag();
+        if (matches(ifNoneMatch, payload)) {
+            return headers(ResponseEntity.status(HttpStatus.NOT_MODIFIED), eTag).build();
+        }
+        ResponseEntity.BodyBuilder builder = headers(ResponseEntity.ok(), eTag);
+        if (gzip) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, GZIP).body(payload.getGzipped());
+        }
+        return builder.body(payload.getBytes());
+    }
+
+    private ResponseEntity<byte[]> search(SchemaRequest request) {
+        try {
+            return ResponseEntity.ok(schemaService.search(request).getBytes(StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            QueryError error = new QueryError(e.getMessage(), "Please provide valid types and a non-negative offset and limit");
+            return ResponseEntity.badRequest().body(error.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static ResponseEntity.BodyBuilder headers(ResponseEntity.BodyBuilder builder, String eTag) {
+        // Clients must revalidate but can reuse the body they have if it has not changed
+        return builder.eTag(eTag).cacheControl(CacheControl.noCache()).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    private static boolean matches(String ifNoneMatch, SchemaService.Payload payload) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (tag.equals("*") || tag.equals(payload.getETag()) || tag.equals(payload.getGzippedETag())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase(GZIP)) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; ++i) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") && isZero(parameter.substring(2))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isZero(String quality) {
+        try {
+            return Double.parseDouble(quality) == 0.0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 }
@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.controller;
+
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@ConditionalOnProperty(prefix = "bullet.metric", name = "enabled", havingValue = "true")
+public class ScrapeController {
+    private final MetricRegistry metricRegistry;
+
+    /**
+     * Constructor that takes the registry to serve the metrics of.
+     *
+     * @param metricRegistry The non-null {@link MetricRegistry} to use.
+     */
+    @Autowired
+    public ScrapeController(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * The method that serves the metrics of the service as text for scrapers to pull. See
+     * {@link MetricRegistry#scrape()}.
+     *
+     * @return The String metrics.
+     */
+    @GetMapping(path = "${bullet.endpoint.metrics}", produces = { MediaType.TEXT_PLAIN_VALUE })
+    public String scrape() {
+        return metricRegistry.scrape();
+    }
+}
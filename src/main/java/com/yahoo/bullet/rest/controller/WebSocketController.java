@@ -6,15 +6,20 @@
 package com.yahoo.bullet.rest.controller;
 
 import com.yahoo.bullet.bql.BQLResult;
-import com.yahoo.bullet.common.metrics.MetricCollector;
-import com.yahoo.bullet.common.metrics.MetricPublisher;
+import com.yahoo.bullet.rest.common.CBOREncoder;
+import com.yahoo.bullet.rest.common.MeteredTcpClient;
 import com.yahoo.bullet.rest.common.Metric;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.PriorityClass;
 import com.yahoo.bullet.rest.common.Utils;
 import com.yahoo.bullet.rest.model.WebSocketRequest;
 import com.yahoo.bullet.rest.query.QueryError;
+import com.yahoo.bullet.rest.query.QueryHandler;
 import com.yahoo.bullet.rest.query.WebSocketQueryHandler;
+import com.yahoo.bullet.rest.service.AdmissionService;
 import com.yahoo.bullet.rest.service.BQLService;
 import com.yahoo.bullet.rest.service.StatusService;
+import com.yahoo.bullet.rest.service.ThrottleService;
 import com.yahoo.bullet.rest.service.WebSocketService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,38 +27,58 @@ import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
 
-import java.util.List;
+import java.util.Optional;
 
 @Controller @Slf4j
 public class WebSocketController extends MetricController {
     private WebSocketService webSocketService;
     private BQLService bqlService;
     private StatusService statusService;
+    private ThrottleService throttleService;
+    private AdmissionService admissionService;
 
     static final String STATUS_PREFIX = "api.websocket.status.code.";
-    private static final List<String> STATUSES =
-        toMetric(STATUS_PREFIX, Metric.CREATED, Metric.BAD_REQUEST, Metric.TOO_MANY_REQUESTS, Metric.UNAVAILABLE);
+    static final String ACCEPT_HEADER = "accept";
+    private static final Metric[] STATUSES = { Metric.OK, Metric.CREATED, Metric.BAD_REQUEST, Metric.TOO_MANY_REQUESTS,
+                                               Metric.UNAVAILABLE };
 
     /**
-     * Constructor that takes various services.
+     * Constructor that takes various services, including the ones to throttle results and admit queries by their cost
+     * with, and the client of the broker relay, if one is used.
      *
      * @param webSocketService The {@link WebSocketService} to use.
      * @param bqlService The {@link BQLService} to use.
      * @param statusService The {@link StatusService} to use.
-     * @param metricPublisher The {@link MetricPublisher} to use. It can be null.
+     * @param throttleService The {@link ThrottleService} to use. If null, results are not throttled.
+     * @param admissionService The {@link AdmissionService} to use. If null, queries are not admitted into priority
+     *                         classes or by their cost.
+     * @param metricRegistry The {@link MetricRegistry} to use. It can be null.
+     * @param relayTcpClient The {@link MeteredTcpClient} of the broker relay to add the metrics of, if any.
      */
     @Autowired
     public WebSocketController(WebSocketService webSocketService, BQLService bqlService,
-                               StatusService statusService, MetricPublisher metricPublisher) {
-        super(metricPublisher, new MetricCollector(STATUSES));
+                               StatusService statusService, ThrottleService throttleService,
+                               AdmissionService admissionService, MetricRegistry metricRegistry,
+                               Optional<MeteredTcpClient> relayTcpClient) {
+        super(metricRegistry, STATUS_PREFIX, STATUSES);
         this.webSocketService = webSocketService;
         this.bqlService = bqlService;
         this.statusService = statusService;
+        this.throttleService = throttleService;
+        this.admissionService = admissionService;
+        if (metricRegistry != null) {
+            relayTcpClient.ifPresent(client -> metricRegistry.source(client::extractMetrics));
+        }
     }
 
     /**
-     * The method that handles WebSocket messages to this endpoint.
+     * The method that handles WebSocket messages to this endpoint. A new query can have an accept header with
+     * {@link CBOREncoder#MEDIA_TYPE_VALUE} to get its responses as CBOR instead of JSON. It can also have a
+     * {@link ThrottleService#THROTTLE} header with an interval in ms to get at most one result per interval. If the
+     * query can be resumed, it is sent a token that a new session can resume it with if this one disconnects.
      *
      * @param request The {@link WebSocketRequest} object.
      * @param headerAccessor The {@link SimpMessageHeaderAccessor} headers associated with the message.
@@ -67,13 +92,16 @@ public class WebSocketController extends MetricController {
             case KILL_QUERY:
                 handleKillQuery(request, headerAccessor);
                 break;
+            case RESUME_QUERY:
+                handleResumeQuery(request, headerAccessor);
+                break;
         }
     }
 
     private boolean handleNewQuery(WebSocketRequest request, SimpMessageHeaderAccessor headerAccessor) {
         String queryID = Utils.getNewQueryID();
         String sessionID = headerAccessor.getSessionId();
-        WebSocketQueryHandler queryHandler = new WebSocketQueryHandler(webSocketService, sessionID, queryID);
+        WebSocketQueryHandler queryHandler = new WebSocketQueryHandler(webSocketService, sessionID, queryID, getContentType(headerAccessor));
         if (!statusService.isBackendStatusOK()) {
             return failWith(QueryError.SERVICE_UNAVAILABLE, Metric.UNAVAILABLE, queryHandler);
         }
@@ -81,13 +109,31 @@ public class WebSocketController extends MetricController {
             return failWith(QueryError.TOO_MANY_QUERIES, Metric.TOO_MANY_REQUESTS, queryHandler);
         }
         String bql = request.getContent();
-        BQLResult result = bqlService.toQuery(bql);
+        BQLResult result = bqlService.toQuery(queryID, WebSocketQueryHandler.ENDPOINT, bql);
         if (result.hasErrors()) {
             return failWith(new QueryError(result.getErrors()), Metric.BAD_REQUEST, queryHandler);
         }
+        Long throttle;
+        try {
+            throttle = throttleService == null ? null : ThrottleService.parse(headerAccessor.getFirstNativeHeader(ThrottleService.THROTTLE));
+        } catch (NumberFormatException e) {
+            return failWith(QueryError.INVALID_THROTTLE, Metric.BAD_REQUEST, queryHandler);
+        }
+        if (admissionService != null) {
+            PriorityClass priority = admissionService.classify(WebSocketQueryHandler.ENDPOINT, headerAccessor.getUser());
+            QueryError rejection = admissionService.admit(queryID, result.getQuery(), priority);
+            if (rejection != null) {
+                return failWith(rejection, Metric.TOO_MANY_REQUESTS, queryHandler);
+            }
+        }
+        QueryHandler handler = throttleService == null ? queryHandler : throttleService.throttle(queryID, queryHandler, result.getQuery(), throttle);
         log.debug("Submitting websocket query {}: {}", queryID, bql);
-        webSocketService.submitQuery(queryID, sessionID, result.getQuery(), result.getBql(), queryHandler);
-        incrementMetric(STATUS_PREFIX, Metric.CREATED);
+        String token = webSocketService.makeResumable(queryID, queryHandler);
+        if (token != null) {
+            queryHandler.sendResumeToken(token);
+        }
+        webSocketService.submitQuery(queryID, sessionID, result.getQuery(), result.getBql(), handler);
+        incrementMetric(Metric.CREATED);
         return true;
     }
 
@@ -97,9 +143,24 @@ public class WebSocketController extends MetricController {
         webSocketService.killQuery(headerAccessor.getSessionId(), queryID);
     }
 
+    private boolean handleResumeQuery(WebSocketRequest request, SimpMessageHeaderAccessor headerAccessor) {
+        String sessionID = headerAccessor.getSessionId();
+        if (!webSocketService.resumeQuery(request.getContent(), sessionID)) {
+            WebSocketQueryHandler queryHandler = new WebSocketQueryHandler(webSocketService, sessionID, null, getContentType(headerAccessor));
+            return failWith(QueryError.INVALID_RESUME_TOKEN, Metric.BAD_REQUEST, queryHandler);
+        }
+        incrementMetric(Metric.OK);
+        return true;
+    }
+
+    private static MimeType getContentType(SimpMessageHeaderAccessor headerAccessor) {
+        String accept = headerAccessor.getFirstNativeHeader(ACCEPT_HEADER);
+        return CBOREncoder.isPreferred(accept) ? CBOREncoder.MEDIA_TYPE : MimeTypeUtils.APPLICATION_JSON;
+    }
+
     private boolean failWith(QueryError error, Metric metric, WebSocketQueryHandler handler) {
         handler.fail(error);
-        incrementMetric(STATUS_PREFIX, metric);
+        incrementMetric(metric);
         return false;
     }
 }
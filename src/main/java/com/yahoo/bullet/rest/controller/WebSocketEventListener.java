@@ -27,13 +27,14 @@ public class WebSocketEventListener {
     }
 
     /**
-     * This method is the handler when receiving WebSocket disconnect events.
+     * This method is the handler when receiving WebSocket disconnect events. The query of the session is killed unless
+     * it can be resumed. See {@link WebSocketService#disconnect(String)}.
      *
      * @param event The WebSocket disconnect event.
      */
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-        webSocketService.killQuery(headerAccessor.getSessionId(), null);
+        webSocketService.disconnect(headerAccessor.getSessionId());
     }
 }
@@ -0,0 +1,25 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Serializable;
+
+@AllArgsConstructor @Getter
+public class ReplayStatus implements Serializable {
+    private static final long serialVersionUID = -1818424402617357519L;
+
+    private final boolean running;
+    private final int pages;
+    private final int pagesReplayed;
+    private final long queriesReplayed;
+    private final long queriesFailed;
+    private final long startTime;
+    private final long endTime;
+    private final double queriesPerSecond;
+}
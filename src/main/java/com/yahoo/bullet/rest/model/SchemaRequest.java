@@ -0,0 +1,35 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * The optional query parameters for the schema. The fields are the attributes of each field to return, the prefix
+ * is what the field names must start with, the types are the types of the fields to return and the offset and limit
+ * select a page of the matching fields.
+ */
+@NoArgsConstructor @Getter @Setter
+public class SchemaRequest {
+    private List<String> fields;
+    private String prefix;
+    private List<String> types;
+    private Integer offset;
+    private Integer limit;
+
+    /**
+     * Checks if this request asks for anything other than the full schema.
+     *
+     * @return A boolean denoting whether any of the parameters are set.
+     */
+    public boolean isEmpty() {
+        return fields == null && prefix == null && types == null && offset == null && limit == null;
+    }
+}
@@ -13,7 +13,8 @@ import lombok.Setter;
 public class WebSocketRequest {
     public enum Type {
         NEW_QUERY,
-        KILL_QUERY
+        KILL_QUERY,
+        RESUME_QUERY
     }
 
     private Type type;
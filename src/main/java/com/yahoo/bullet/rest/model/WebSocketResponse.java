@@ -14,7 +14,8 @@ public class WebSocketResponse {
         ACK,
         FAIL,
         COMPLETE,
-        MESSAGE
+        MESSAGE,
+        RESUME
     }
 
     private Type type;
@@ -6,6 +6,7 @@
 package com.yahoo.bullet.rest.query;
 
 import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.common.QueryEvent;
 import lombok.NoArgsConstructor;
 
 import java.util.concurrent.CompletableFuture;
@@ -17,16 +18,26 @@ import java.util.concurrent.CompletableFuture;
  */
 @NoArgsConstructor
 public class HTTPQueryHandler extends QueryHandler {
+    public static final String ENDPOINT = "http";
+
     private CompletableFuture<String> result = new CompletableFuture<>();
 
     @Override
     public void send(PubSubMessage message) {
         if (!isComplete()) {
+            QueryEvent.Send event = new QueryEvent.Send();
+            event.begin();
             result.complete(message.getContentAsString());
             complete();
+            event.end(message.getId(), ENDPOINT);
         }
     }
 
+    @Override
+    public String getEndpoint() {
+        return ENDPOINT;
+    }
+
     @Override
     public void fail(QueryError cause) {
         if (!isComplete()) {
@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.query;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.common.QueryEvent;
+import com.yahoo.bullet.rest.service.QueryService;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Query handler that implements results for SSE for one of many queries that share a stream - multiple results per
+ * query. Each result is sent as an event named by the index of the query in its batch with the query ID as the event
+ * ID. The stream is completed once all the queries sharing it are.
+ */
+public class MultiplexedSSEQueryHandler extends QueryHandler {
+    public static final String ENDPOINT = "batch";
+
+    private String queryID;
+    private String index;
+    private SseEmitter emitter;
+    private QueryService queryService;
+    private AtomicInteger running;
+
+    /**
+     * Constructor method.
+     *
+     * @param queryID The query ID.
+     * @param index The index of the query in its batch.
+     * @param emitter The {@link SseEmitter} shared by the queries in the batch.
+     * @param queryService The {@link QueryService} to kill the query with if the client goes away.
+     * @param running The number of queries in the batch that are not complete. Shared by the queries in the batch.
+     */
+    public MultiplexedSSEQueryHandler(String queryID, int index, SseEmitter emitter, QueryService queryService, AtomicInteger running) {
+        this.queryID = queryID;
+        this.index = String.valueOf(index);
+        this.emitter = emitter;
+        this.queryService = queryService;
+        this.running = running;
+    }
+
+    @Override
+    public synchronized void complete() {
+        if (isComplete()) {
+            return;
+        }
+        super.complete();
+        if (running.decrementAndGet() == 0) {
+            emitter.complete();
+        }
+    }
+
+    @Override
+    public void send(PubSubMessage response) {
+        if (!isComplete()) {
+            QueryEvent.Send event = new QueryEvent.Send();
+            event.begin();
+            try {
+                emitter.send(event(response.getContent()));
+            } catch (Exception e) {
+                queryService.kill(queryID);
+                complete();
+            }
+            event.end(queryID, ENDPOINT);
+        }
+    }
+
+    @Override
+    public String getEndpoint() {
+        return ENDPOINT;
+    }
+
+    @Override
+    public void fail(QueryError cause) {
+        if (!isComplete()) {
+            try {
+                emitter.send(event(cause.toString()));
+            } catch (Exception e) {
+                queryService.kill(queryID);
+            }
+            complete();
+        }
+    }
+
+    private SseEmitter.SseEventBuilder event(Serializable data) {
+        return SseEmitter.event().id(queryID).name(index).data(data, MediaType.APPLICATION_JSON);
+    }
+}
@@ -8,6 +8,7 @@ package com.yahoo.bullet.rest.query;
 import com.yahoo.bullet.common.BulletError;
 import com.yahoo.bullet.result.Clip;
 import com.yahoo.bullet.result.Meta;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.util.Collections;
@@ -16,14 +17,32 @@ import java.util.List;
 @Getter
 public class QueryError {
     public static final QueryError TOO_MANY_QUERIES = new QueryError("Too many concurrent queries in the system", "Please try again later");
+    public static final QueryError TOO_COSTLY =
+        new QueryError("Not enough capacity for the cost of this query in the system",
+                       "Please try again later or make the query cheaper with a smaller size, fewer fields, less frequent windows or a shorter duration");
+    public static final QueryError RATE_LIMITED =
+        new QueryError("Too many queries were submitted by you recently", "Please slow down and try again later");
     public static final QueryError INVALID_QUERY = new QueryError("Failed to parse query", "Please provide a valid query");
+    public static final QueryError INVALID_THROTTLE =
+        new QueryError("Failed to parse the throttle", "Please provide the interval between results in ms as a number");
+    public static final QueryError INVALID_BATCH =
+        new QueryError("Failed to parse the batch of queries", "Please provide a JSON array of one or more queries, up to the maximum");
+    public static final QueryError INVALID_PAGE =
+        new QueryError("Failed to parse the page of results", "Please provide a page from 0 and a size from 1");
+    public static final QueryError RESULT_NOT_FOUND =
+        new QueryError("No results were found for the query", "Please provide the ID of an asynchronous query that is not too old");
+    public static final QueryError INVALID_RESUME_TOKEN =
+        new QueryError("No disconnected query was found for the resume token", "Please submit the query again");
     public static final QueryError MISSING_KEY = new QueryError("Asynchronous queries need a unique key", "Please provide a key");
     public static final QueryError UNSUPPORTED_QUERY =
         new QueryError("This particular REST endpoint does not support windowed queries",
                        "Please provide a valid query without a window, or use the SSE or WS endpoints to submit queries with windows");
     public static final QueryError SERVICE_UNAVAILABLE = new QueryError("Service temporarily unavailable", "Please try again later");
 
-    private List<BulletError> errors;
+    private final List<BulletError> errors;
+    // Serialized once, so the constant errors above are only ever serialized when the class loads
+    @Getter(AccessLevel.NONE)
+    private final String json;
 
     /**
      * Constructor that takes an error message and resolution for it.
@@ -32,7 +51,7 @@ public class QueryError {
      * @param resolution The resolution that can be taken.
      */
     public QueryError(String error, String resolution) {
-        this.errors = Collections.singletonList(BulletError.makeError(error, resolution));
+        this(Collections.singletonList(BulletError.makeError(error, resolution)));
     }
 
     /**
@@ -42,10 +61,11 @@ public class QueryError {
      */
     public QueryError(List<BulletError> errors) {
         this.errors = errors;
+        this.json = Clip.of(Meta.of(errors)).asJSON();
     }
 
     @Override
     public String toString() {
-        return Clip.of(Meta.of(errors)).asJSON();
+        return json;
     }
 }
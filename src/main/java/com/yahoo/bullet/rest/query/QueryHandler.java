@@ -19,6 +19,14 @@ public abstract class QueryHandler {
      */
     public abstract void send(PubSubMessage message);
 
+    /**
+     * Gets the type of the endpoint that the query was submitted to, such as http or websocket. See
+     * {@link com.yahoo.bullet.rest.common.QueryEvent}.
+     *
+     * @return The String type of the endpoint.
+     */
+    public abstract String getEndpoint();
+
     /**
      * Completes the query and sets the complete flag. All overrides should do the same or call this.
      */
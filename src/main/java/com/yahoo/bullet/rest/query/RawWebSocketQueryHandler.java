@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.query;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.common.QueryEvent;
+import com.yahoo.bullet.rest.model.WebSocketResponse;
+import com.yahoo.bullet.rest.service.WebSocketService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Query handler that implements results for the raw WebSocket endpoint - multiple results per query. The responses
+ * are written straight to the {@link WebSocketSession} as text frames with the type of the response, a space and the
+ * content. See {@link #frame(WebSocketResponse.Type, String)}.
+ */
+@Slf4j
+public class RawWebSocketQueryHandler extends QueryHandler {
+    public static final String ENDPOINT = "raw.websocket";
+    public static final char SEPARATOR = ' ';
+
+    private WebSocketService webSocketService;
+    private WebSocketSession session;
+    private String queryID;
+
+    /**
+     * Constructor method.
+     *
+     * @param webSocketService The {@link WebSocketService} to handle websocket sessions.
+     * @param session The {@link WebSocketSession} of the client. It must be safe to send to from many threads.
+     * @param queryID The query ID.
+     */
+    public RawWebSocketQueryHandler(WebSocketService webSocketService, WebSocketSession session, String queryID) {
+        this.webSocketService = webSocketService;
+        this.session = session;
+        this.queryID = queryID;
+    }
+
+    @Override
+    public void complete() {
+        super.complete();
+        webSocketService.deleteSession(session.getId());
+    }
+
+    @Override
+    public void send(PubSubMessage response) {
+        if (!isComplete()) {
+            QueryEvent.Send event = new QueryEvent.Send();
+            event.begin();
+            sendResponse(WebSocketQueryHandler.getType(response), response.getContentAsString());
+            event.end(queryID, ENDPOINT);
+        }
+    }
+
+    @Override
+    public String getEndpoint() {
+        return ENDPOINT;
+    }
+
+    @Override
+    public void fail(QueryError cause) {
+        if (!isComplete()) {
+            sendResponse(WebSocketResponse.Type.FAIL, cause.toString());
+            complete();
+        }
+    }
+
+    @Override
+    public void acknowledge() {
+        sendResponse(WebSocketResponse.Type.ACK, queryID);
+    }
+
+    /**
+     * Frames a response for the raw WebSocket endpoint.
+     *
+     * @param type The {@link WebSocketResponse.Type} of the response.
+     * @param content The content of the response. May be null.
+     * @return The text of the frame.
+     */
+    public static String frame(WebSocketResponse.Type type, String content) {
+        String name = type.name();
+        if (content == null) {
+            return name;
+        }
+        return new StringBuilder(name.length() + 1 + content.length()).append(name).append(SEPARATOR).append(content).toString();
+    }
+
+    private void sendResponse(WebSocketResponse.Type type, String content) {
+        try {
+            session.sendMessage(new TextMessage(frame(type, content)));
+        } catch (Exception e) {
+            log.error("Could not send to session {}. Killing query {}", session.getId(), queryID);
+            webSocketService.killQuery(session.getId(), queryID);
+            super.complete();
+        }
+    }
+}
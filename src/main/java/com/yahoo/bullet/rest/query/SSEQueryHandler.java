@@ -6,6 +6,7 @@
 package com.yahoo.bullet.rest.query;
 
 import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.common.QueryEvent;
 import com.yahoo.bullet.rest.service.QueryService;
 import lombok.AllArgsConstructor;
 import org.springframework.http.MediaType;
@@ -16,6 +17,8 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
  */
 @AllArgsConstructor
 public class SSEQueryHandler extends QueryHandler {
+    public static final String ENDPOINT = "sse";
+
     private String queryID;
     private SseEmitter emitter;
     private QueryService queryService;
@@ -29,15 +32,23 @@ public class SSEQueryHandler extends QueryHandler {
     @Override
     public void send(PubSubMessage response) {
         if (!isComplete()) {
+            QueryEvent.Send event = new QueryEvent.Send();
+            event.begin();
             try {
                 emitter.send(response.getContent(), MediaType.APPLICATION_JSON);
             } catch (Exception e) {
                 queryService.kill(queryID);
                 complete();
             }
+            event.end(queryID, ENDPOINT);
         }
     }
 
+    @Override
+    public String getEndpoint() {
+        return ENDPOINT;
+    }
+
     @Override
     public void fail(QueryError cause) {
         if (!isComplete()) {
@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.query;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import lombok.Getter;
+
+/**
+ * Query handler that limits how often results are delivered to another handler, for streaming clients that cannot
+ * keep up with queries that have small windows. Results are held until {@link #flush()} is called, which is done
+ * periodically. A newer result replaces the held one, so only the latest window is delivered. If merging is on, as
+ * for queries with a RAW aggregation, the records of the results are merged instead, up to a maximum. Messages with
+ * signals, such as the final result, are delivered right away.
+ */
+public class ThrottledQueryHandler extends QueryHandler {
+    static final String RECORDS = "records";
+
+    @Getter
+    private final QueryHandler handler;
+    private final boolean merge;
+    private final int maxRecords;
+    private PubSubMessage pending;
+    private JsonObject merged;
+
+    /**
+     * Constructor method.
+     *
+     * @param handler The {@link QueryHandler} to deliver the results to.
+     * @param merge Whether to merge the records of the held results instead of keeping the latest one.
+     * @param maxRecords The maximum number of records to merge into a delivered result.
+     */
+    public ThrottledQueryHandler(QueryHandler handler, boolean merge, int maxRecords) {
+        this.handler = handler;
+        this.merge = merge;
+        this.maxRecords = maxRecords;
+    }
+
+    @Override
+    public synchronized boolean isComplete() {
+        return complete || handler.isComplete();
+    }
+
+    @Override
+    public synchronized void send(PubSubMessage message) {
+        if (isComplete()) {
+            return;
+        }
+        if (message.hasSignal()) {
+            // Held records are not part of the final result but a held window is
+            if (merge) {
+                flush();
+            }
+            clear();
+            handler.send(message);
+        } else if (merge) {
+            hold(message);
+        } else {
+            pending = message;
+        }
+    }
+
+    @Override
+    public String getEndpoint() {
+        return handler.getEndpoint();
+    }
+
+    @Override
+    public synchronized void complete() {
+        clear();
+        super.complete();
+        handler.complete();
+    }
+
+    @Override
+    public synchronized void fail(QueryError cause) {
+        clear();
+        handler.fail(cause);
+    }
+
+    @Override
+    public synchronized void acknowledge() {
+        handler.acknowledge();
+    }
+
+    /**
+     * Delivers the held result, if any, to the handler.
+     */
+    public synchronized void flush() {
+        if (pending == null || isComplete()) {
+            return;
+        }
+        PubSubMessage message = merged == null ? pending : new PubSubMessage(pending.getId(), merged.toString(), pending.getMetadata());
+        clear();
+        handler.send(message);
+    }
+
+    private void hold(PubSubMessage message) {
+        JsonObject result = parse(message);
+        if (result == null) {
+            // Not something that can be merged, so it is kept as is
+            flush();
+            pending = message;
+            return;
+        }
+        if (merged == null) {
+            JsonArray records = new JsonArray();
+            addRecords(records, result.getAsJsonArray(RECORDS));
+            result.add(RECORDS, records);
+            merged = result;
+        } else {
+            addRecords(merged.getAsJsonArray(RECORDS), result.getAsJsonArray(RECORDS));
+            // Everything else, like the metadata, comes from the latest result
+            result.entrySet().stream().filter(e -> !RECORDS.equals(e.getKey())).forEach(e -> merged.add(e.getKey(), e.getValue()));
+        }
+        pending = message;
+    }
+
+    private void addRecords(JsonArray records, JsonArray toAdd) {
+        for (JsonElement record : toAdd) {
+            if (records.size() >= maxRecords) {
+                return;
+            }
+            records.add(record);
+        }
+    }
+
+    private void clear() {
+        pending = null;
+        merged = null;
+    }
+
+    private static JsonObject parse(PubSubMessage message) {
+        try {
+            JsonElement element = new JsonParser().parse(message.getContentAsString());
+            if (element.isJsonObject() && element.getAsJsonObject().get(RECORDS) instanceof JsonArray) {
+                return element.getAsJsonObject();
+            }
+        } catch (RuntimeException ignored) {
+        }
+        return null;
+    }
+}
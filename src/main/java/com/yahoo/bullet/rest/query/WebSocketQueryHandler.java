@@ -7,22 +7,33 @@ package com.yahoo.bullet.rest.query;
 
 import com.yahoo.bullet.pubsub.Metadata;
 import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.common.CBOREncoder;
+import com.yahoo.bullet.rest.common.QueryEvent;
 import com.yahoo.bullet.rest.model.WebSocketResponse;
 import com.yahoo.bullet.rest.service.WebSocketService;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Query handler that implements results for WebSocket - multiple results per query.
+ * Query handler that implements results for WebSocket - multiple results per query. While its session is disconnected,
+ * the responses are buffered till it is resumed in another. See {@link #detach(int)} and {@link #resume(String)}.
  */
 public class WebSocketQueryHandler extends QueryHandler {
+    public static final String ENDPOINT = "websocket";
+
     private WebSocketService webSocketService;
-    private String sessionID;
+    private volatile String sessionID;
     private String queryID;
-    private SimpMessageHeaderAccessor headerAccessor;
+    private volatile SimpMessageHeaderAccessor headerAccessor;
+    private Deque<WebSocketResponse> missed;
+    private int maxMissed;
 
     private static final Map<Metadata.Signal, WebSocketResponse.Type> MESSAGE_TYPE_MAP = new HashMap<>();
     static {
@@ -38,11 +49,22 @@ public class WebSocketQueryHandler extends QueryHandler {
      * @param queryID The query ID.
      */
     public WebSocketQueryHandler(WebSocketService webSocketService, String sessionID, String queryID) {
+        this(webSocketService, sessionID, queryID, MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    /**
+     * Constructor method that takes the format to send the responses in.
+     *
+     * @param webSocketService The {@link WebSocketService} to handle websocket messages.
+     * @param sessionID The session ID to represent the client.
+     * @param queryID The query ID.
+     * @param contentType The {@link MimeType} of the responses. Either JSON or {@link CBOREncoder#MEDIA_TYPE}.
+     */
+    public WebSocketQueryHandler(WebSocketService webSocketService, String sessionID, String queryID, MimeType contentType) {
         this.webSocketService = webSocketService;
         this.sessionID = sessionID;
         this.queryID = queryID;
-        headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
-        headerAccessor.setSessionId(sessionID);
+        this.headerAccessor = createHeaderAccessor(sessionID, contentType);
     }
 
     @Override
@@ -54,27 +76,91 @@ public class WebSocketQueryHandler extends QueryHandler {
     @Override
     public void send(PubSubMessage response) {
         if (!isComplete()) {
-            WebSocketResponse responseMessage = new WebSocketResponse(getType(response), response.getContentAsString());
-            webSocketService.sendResponse(sessionID, responseMessage, headerAccessor);
+            QueryEvent.Send event = new QueryEvent.Send();
+            event.begin();
+            respond(new WebSocketResponse(getType(response), response.getContentAsString()));
+            event.end(queryID, ENDPOINT);
         }
     }
 
+    @Override
+    public String getEndpoint() {
+        return ENDPOINT;
+    }
+
     @Override
     public void fail(QueryError cause) {
         if (!isComplete()) {
-            WebSocketResponse responseMessage = new WebSocketResponse(WebSocketResponse.Type.FAIL, cause.toString());
-            webSocketService.sendResponse(sessionID, responseMessage, headerAccessor);
+            respond(new WebSocketResponse(WebSocketResponse.Type.FAIL, cause.toString()));
             complete();
         }
     }
 
     @Override
     public void acknowledge() {
-        WebSocketResponse response = new WebSocketResponse(WebSocketResponse.Type.ACK, queryID);
-        webSocketService.sendResponse(sessionID, response, headerAccessor);
+        respond(new WebSocketResponse(WebSocketResponse.Type.ACK, queryID));
+    }
+
+    /**
+     * Sends the token that the query can be resumed with if its session disconnects.
+     *
+     * @param token The resume token.
+     */
+    public void sendResumeToken(String token) {
+        respond(new WebSocketResponse(WebSocketResponse.Type.RESUME, token));
+    }
+
+    /**
+     * Buffers the responses from now on since the session is disconnected. Once the buffer is full, the oldest
+     * responses are dropped.
+     *
+     * @param maxMissed The positive maximum number of responses to buffer.
+     */
+    public synchronized void detach(int maxMissed) {
+        this.missed = new ArrayDeque<>();
+        this.maxMissed = maxMissed;
+    }
+
+    /**
+     * Sends the responses to the given session from now on, starting with the buffered ones.
+     *
+     * @param sessionID The session ID of the client that resumed the query.
+     */
+    public synchronized void resume(String sessionID) {
+        this.sessionID = sessionID;
+        headerAccessor = createHeaderAccessor(sessionID, headerAccessor.getContentType());
+        Deque<WebSocketResponse> buffered = missed;
+        missed = null;
+        if (buffered != null) {
+            buffered.forEach(response -> webSocketService.sendResponse(sessionID, response, headerAccessor));
+        }
     }
 
-    private WebSocketResponse.Type getType(PubSubMessage message) {
+    private synchronized void respond(WebSocketResponse response) {
+        if (missed == null) {
+            webSocketService.sendResponse(sessionID, response, headerAccessor);
+            return;
+        }
+        if (missed.size() >= maxMissed) {
+            missed.removeFirst();
+        }
+        missed.addLast(response);
+    }
+
+    private static SimpMessageHeaderAccessor createHeaderAccessor(String sessionID, MimeType contentType) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId(sessionID);
+        headerAccessor.setContentType(contentType);
+        return headerAccessor;
+    }
+
+    /**
+     * Gets the {@link WebSocketResponse.Type} to send a {@link PubSubMessage} from Bullet with.
+     *
+     * @param message The {@link PubSubMessage} from Bullet.
+     * @return The {@link WebSocketResponse.Type} for the message.
+     */
+    static WebSocketResponse.Type getType(PubSubMessage message) {
         if (message.hasSignal()) {
             return MESSAGE_TYPE_MAP.getOrDefault(message.getMetadata().getSignal(), WebSocketResponse.Type.MESSAGE);
         }
@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.rest.common.CostBudget;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.MetricRegistry.Counter;
+import com.yahoo.bullet.rest.common.PriorityClass;
+import com.yahoo.bullet.rest.common.QueryCostEstimator;
+import com.yahoo.bullet.rest.query.QueryError;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.security.Principal;
+
+/**
+ * Admits queries into their {@link PriorityClass}, if there is a {@link PriorityService}, and synchronous queries by
+ * their estimated cost against a {@link CostBudget} so that expensive streaming queries take up more of the capacity
+ * of the service and the backend than cheap one-shot ones. See {@link QueryCostEstimator}. The cost of a query is
+ * released by the {@link HandlerService} once its handler is removed. The number of queries rejected for their cost is
+ * counted as {@link #REJECTED} and the cost in use and the budget are published as {@link #USED} and {@link #BUDGET}.
+ */
+@Service @Slf4j
+public class AdmissionService {
+    public static final String REJECTED = "api.queries.cost.rejected";
+    public static final String USED = "api.queries.cost.used";
+    public static final String BUDGET = "api.queries.cost.budget";
+
+    private final CostBudget budget;
+    private final PriorityService priorityService;
+    private final QueryCostEstimator estimator;
+    private final Counter rejected;
+
+    /**
+     * Constructor that takes the budget, the service for the priority classes and the registry.
+     *
+     * @param budget The {@link CostBudget} to admit synchronous queries against.
+     * @param priorityService The {@link PriorityService} to admit queries into their classes with. It can be null.
+     * @param metricRegistry The {@link MetricRegistry} to publish the rejections and budget usage to. It can be null.
+     */
+    @Autowired
+    public AdmissionService(CostBudget budget, PriorityService priorityService, MetricRegistry metricRegistry) {
+        this.budget = budget;
+        this.priorityService = priorityService;
+        this.estimator = new QueryCostEstimator();
+        if (metricRegistry == null) {
+            this.rejected = null;
+            return;
+        }
+        this.rejected = metricRegistry.counter(REJECTED);
+        metricRegistry.gauge(USED, budget::getUsed);
+        if (budget.isBounded()) {
+            metricRegistry.gauge(BUDGET, budget::getCapacity);
+        }
+    }
+
+    /**
+     * Gets the {@link PriorityClass} of a query from where and by whom it was submitted. See
+     * {@link PriorityService#classify(String, Principal)}.
+     *
+     * @param endpoint The name of the endpoint that the query was submitted to.
+     * @param principal The {@link Principal} that submitted the query. It can be null.
+     * @return The class of the query.
+     */
+    public PriorityClass classify(String endpoint, Principal principal) {
+        return priorityService == null ? PriorityClass.INTERACTIVE : priorityService.classify(endpoint, principal);
+    }
+
+    /**
+     * Admits the given synchronous query if there is room for it in its class and for its cost in the budget.
+     *
+     * @param id The ID of the query.
+     * @param query The compiled {@link Query}.
+     * @param priority The {@link PriorityClass} of the query.
+     * @return null if the query was admitted and can be submitted or the {@link QueryError} to fail it with.
+     */
+    public QueryError admit(String id, Query query, PriorityClass priority) {
+        QueryError error = admitAsync(id, query, priority);
+        if (error != null) {
+            return error;
+        }
+        double cost = estimator.estimate(query);
+        if (budget.tryAcquire(id, cost)) {
+            return null;
+        }
+        log.debug("Rejecting query {} with a cost of {} since {} of {} is in use", id, cost, budget.getUsed(), budget.getCapacity());
+        if (priorityService != null) {
+            priorityService.release(id);
+        }
+        if (rejected != null) {
+            rejected.increment();
+        }
+        return QueryError.TOO_COSTLY;
+    }
+
+    /**
+     * Admits the given asynchronous query if there is room for it in its class. Its cost is not counted since it does
+     * not use up the capacity for synchronous queries.
+     *
+     * @param id The ID of the query.
+     * @param query The compiled {@link Query}.
+     * @param priority The {@link PriorityClass} of the query.
+     * @return null if the query was admitted and can be submitted or the {@link QueryError} to fail it with.
+     */
+    public QueryError admitAsync(String id, Query query, PriorityClass priority) {
+        if (priorityService == null || priorityService.tryAcquire(id, priority, query.getDuration())) {
+            return null;
+        }
+        log.debug("Rejecting query {} since the {} class is full", id, priority.getName());
+        return QueryError.TOO_MANY_QUERIES;
+    }
+}
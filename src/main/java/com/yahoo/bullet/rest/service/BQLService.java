@@ -7,33 +7,106 @@ package com.yahoo.bullet.rest.service;
 
 import com.yahoo.bullet.bql.BQLResult;
 import com.yahoo.bullet.bql.BulletQueryBuilder;
+import com.yahoo.bullet.common.BulletError;
+import com.yahoo.bullet.common.metrics.MetricCollector;
+import com.yahoo.bullet.rest.common.BQLValidator;
+import com.yahoo.bullet.rest.common.QueryEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @Service
 public class BQLService {
+    public static final String BUILD_LATENCY = "bql.build.latency.us";
+    public static final String VALIDATE_LATENCY = "bql.validate.latency.us";
+
     private BulletQueryBuilder bulletQueryBuilder;
+    private SchemaService schemaService;
+    private BQLValidator validator;
+    private MetricCollector metricCollector;
 
     /**
-     * Constructor that takes a BQL query builder.
+     * Constructor that takes a BQL query builder. The fast validation does not check the fields in the queries.
      *
      * @param bulletQueryBuilder The {@link BulletQueryBuilder} to use.
      */
-    @Autowired
     public BQLService(BulletQueryBuilder bulletQueryBuilder) {
+        this(bulletQueryBuilder, null, 0);
+    }
+
+    /**
+     * Constructor that takes a BQL query builder and the schema to validate queries against.
+     *
+     * @param bulletQueryBuilder The {@link BulletQueryBuilder} to use.
+     * @param schemaService The {@link SchemaService} with the fields to validate queries against. May be null.
+     * @param cacheSize The number of recently validated queries to keep the tokens of.
+     */
+    @Autowired
+    public BQLService(BulletQueryBuilder bulletQueryBuilder, SchemaService schemaService,
+                      @Value("${bullet.query.validation.cache.size}") int cacheSize) {
         Objects.requireNonNull(bulletQueryBuilder);
         this.bulletQueryBuilder = bulletQueryBuilder;
+        this.schemaService = schemaService;
+        this.validator = new BQLValidator(cacheSize);
+        this.metricCollector = new MetricCollector(Collections.emptyList(), Arrays.asList(BUILD_LATENCY, VALIDATE_LATENCY));
     }
 
     /**
-     * Convert this BQL query to a valid Bullet Query or error out.
+     * Convert this BQL query to a valid Bullet Query or error out. Use this for queries that are only validated.
      *
      * @param bql The query to convert.
      * @return The {@link BQLResult} containing a query or errors.
      */
     public BQLResult toQuery(String bql) {
-        return bulletQueryBuilder.buildQuery(bql);
+        return toQuery(null, null, bql);
+    }
+
+    /**
+     * Convert this BQL query that is being submitted to a valid Bullet Query or error out.
+     *
+     * @param id The ID of the query. It is only used to record the {@link QueryEvent.Compile} event.
+     * @param endpoint The type of the endpoint the query was submitted to. It is only used to record the
+     *                 {@link QueryEvent.Compile} event.
+     * @param bql The query to convert.
+     * @return The {@link BQLResult} containing a query or errors.
+     */
+    public BQLResult toQuery(String id, String endpoint, String bql) {
+        QueryEvent.Compile event = new QueryEvent.Compile();
+        event.begin();
+        long start = System.nanoTime();
+        BQLResult result = bulletQueryBuilder.buildQuery(bql);
+        metricCollector.average(BUILD_LATENCY, (System.nanoTime() - start) / 1000L);
+        event.end(id, endpoint, !result.hasErrors());
+        return result;
+    }
+
+    /**
+     * Quickly validates this BQL query without building it. See {@link BQLValidator} for what is checked. A query
+     * that passes this may still fail {@link #toQuery(String)}.
+     *
+     * @param bql The query to validate.
+     * @return A {@link List} of {@link BulletError} with positions. Empty if the query passed the checks.
+     */
+    public List<BulletError> validate(String bql) {
+        long start = System.nanoTime();
+        List<BulletError> errors = validator.validate(bql, schemaService == null ? null : schemaService::getFieldType);
+        metricCollector.average(VALIDATE_LATENCY, (System.nanoTime() - start) / 1000L);
+        return errors;
+    }
+
+    /**
+     * Gets the average latencies in microseconds of building and of quickly validating queries since the last time
+     * this was called.
+     *
+     * @return A {@link Map} of metric names to their values.
+     */
+    public Map<String, Number> getMetrics() {
+        return metricCollector.extractMetrics();
     }
 }
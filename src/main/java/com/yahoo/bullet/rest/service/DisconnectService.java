@@ -0,0 +1,191 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.MetricRegistry.Counter;
+import com.yahoo.bullet.rest.query.QueryHandler;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptorAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels the queries of HTTP and SSE clients that go away before their queries are done. The servlet container does
+ * not tell an idle request that its client went away, so a client is only known to be gone once writing to it fails
+ * or its request times out. The number of cancelled queries is counted as {@link #RECLAIMED}.
+ *
+ * For SSE, each {@link SseEmitter} is sent a comment as a heartbeat every bullet.query.sse.heartbeat.ms. A heartbeat
+ * that fails to send means that the client is gone, so its queries are cancelled instead of running till their next
+ * result. They are also cancelled when the emitter completes or times out.
+ *
+ * For HTTP, nothing is written till the result, so the queries are tied to the request and this is registered as a
+ * {@link org.springframework.web.context.request.async.DeferredResultProcessingInterceptor}. The queries of a client
+ * that went away are cancelled once its request times out, which is after spring.mvc.async.request-timeout. If there
+ * is no timeout, they run till they are done.
+ */
+@Service @Slf4j
+public class DisconnectService extends DeferredResultProcessingInterceptorAdapter {
+    public static final String RECLAIMED = "api.queries.reclaimed";
+    static final String QUERY_IDS = DisconnectService.class.getName() + ".QUERY_IDS";
+
+    private final HandlerService handlerService;
+    private final QueryService queryService;
+    private final Counter reclaimed;
+    // Exposed for testing only.
+    @Getter(AccessLevel.PACKAGE)
+    private final Map<SseEmitter, List<String>> emitters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService heartbeats;
+
+    /**
+     * Constructor that takes the services, the registry and the interval to send heartbeats to SSE clients at.
+     *
+     * @param handlerService The {@link HandlerService} that has the handlers of the queries.
+     * @param queryService The {@link QueryService} to kill the queries with.
+     * @param metricRegistry The {@link MetricRegistry} to count cancelled queries in. It can be null.
+     * @param heartbeatInterval The interval in ms to send heartbeats to SSE clients at. If not positive, none are sent.
+     */
+    @Autowired
+    public DisconnectService(HandlerService handlerService, QueryService queryService, MetricRegistry metricRegistry,
+                             @Value("${bullet.query.sse.heartbeat.ms}") long heartbeatInterval) {
+        this.handlerService = handlerService;
+        this.queryService = queryService;
+        this.reclaimed = metricRegistry == null ? null : metricRegistry.counter(RECLAIMED);
+        if (heartbeatInterval > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sse-heartbeat-");
+            threadFactory.setDaemon(true);
+            heartbeats = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            heartbeats.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels the given query if it is still running once a heartbeat to the given emitter fails or it completes or
+     * times out.
+     *
+     * @param id The ID of the query.
+     * @param emitter The {@link SseEmitter} that the results of the query are sent to.
+     */
+    public void cancelOnDisconnect(String id, SseEmitter emitter) {
+        cancelOnDisconnect(Collections.singletonList(id), emitter);
+    }
+
+    /**
+     * Cancels the given queries that are still running once a heartbeat to the given emitter that they share fails or
+     * it completes or times out.
+     *
+     * @param ids The {@link List} of IDs of the queries.
+     * @param emitter The {@link SseEmitter} that the results of the queries are sent to.
+     */
+    public void cancelOnDisconnect(List<String> ids, SseEmitter emitter) {
+        Runnable cancel = () -> {
+            emitters.remove(emitter);
+            ids.forEach(this::cancel);
+        };
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(cancel);
+        if (heartbeats != null) {
+            emitters.put(emitter, ids);
+        }
+    }
+
+    /**
+     * Cancels the given queries that are still running once the current asynchronous request completes. This does
+     * nothing if it is not called while handling a request.
+     *
+     * @param ids The {@link List} of IDs of the queries.
+     */
+    public void cancelOnDisconnect(List<String> ids) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(QUERY_IDS, ids, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void afterCompletion(NativeWebRequest request, DeferredResult<T> deferredResult) {
+        List<String> ids = (List<String>) request.getAttribute(QUERY_IDS, RequestAttributes.SCOPE_REQUEST);
+        if (ids != null) {
+            ids.forEach(this::cancel);
+        }
+    }
+
+    /**
+     * Sends a heartbeat to each SSE client with running queries and cancels the queries of the ones that are gone.
+     */
+    void sendHeartbeats() {
+        emitters.forEach(this::sendHeartbeat);
+    }
+
+    /**
+     * Stops sending heartbeats.
+     */
+    @PreDestroy
+    public void close() {
+        if (heartbeats != null) {
+            heartbeats.shutdownNow();
+        }
+    }
+
+    private void sendHeartbeat(SseEmitter emitter, List<String> ids) {
+        try {
+            // A comment is ignored by SSE clients
+            emitter.send(SseEmitter.event().comment(""));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Could not send a heartbeat for queries {}", ids, e);
+            emitters.remove(emitter);
+            ids.forEach(this::cancel);
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * Cancels a query if it is still running by completing and removing its handler and killing it.
+     *
+     * @param id The ID of the query.
+     * @return true if the query was cancelled.
+     */
+    public boolean cancel(String id) {
+        QueryHandler handler = handlerService.getHandler(id);
+        if (handler == null) {
+            return false;
+        }
+        // Same lock as responding so that a query finishing as its client goes away is not cancelled
+        synchronized (handler) {
+            if (handler.isComplete()) {
+                return false;
+            }
+            handler.complete();
+        }
+        handlerService.removeHandler(id);
+        queryService.kill(id);
+        log.debug("Cancelled query {} since its client went away", id);
+        if (reclaimed != null) {
+            reclaimed.increment();
+        }
+        return true;
+    }
+}
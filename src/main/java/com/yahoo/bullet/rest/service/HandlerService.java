@@ -5,8 +5,12 @@
  */
 package com.yahoo.bullet.rest.service;
 
+import com.yahoo.bullet.pubsub.Metadata;
 import com.yahoo.bullet.pubsub.PubSubMessage;
 import com.yahoo.bullet.pubsub.PubSubResponder;
+import com.yahoo.bullet.rest.common.ConcurrencyLimiter;
+import com.yahoo.bullet.rest.common.CostBudget;
+import com.yahoo.bullet.rest.common.QueryEvent;
 import com.yahoo.bullet.rest.common.Utils;
 import com.yahoo.bullet.rest.query.QueryHandler;
 import lombok.AccessLevel;
@@ -20,28 +24,48 @@ import java.util.concurrent.ConcurrentMap;
 
 /**
  * This is used for synchronous sending and handling of queries. To store and manage {@link QueryHandler} instances.
+ * If it has a {@link ConcurrencyLimiter}, it samples the time from adding the handler of each query to its
+ * acknowledgement, or its failure, for the limiter to adapt to. Data responses are never sampled since the first one
+ * of a windowed query only comes at the end of its first window. If it has a {@link CostBudget}, it releases the cost of each
+ * query once its handler is removed.
  */
 @Service
 public class HandlerService extends PubSubResponder {
     // Exposed for testing only.
     @Getter(AccessLevel.PACKAGE)
     private ConcurrentMap<String, QueryHandler> handlers;
+    private ConcurrencyLimiter limiter;
+    private ConcurrentMap<String, Long> pending;
+    private CostBudget budget;
 
     /**
-     * Constructor that creates a responder.
+     * Constructor that creates a responder that samples the queries for the given limiter and releases their costs
+     * from the given budget.
+     *
+     * @param limiter The {@link ConcurrencyLimiter} to sample the queries for. It can be null.
+     * @param budget The {@link CostBudget} to release the costs of the queries from. It can be null.
      */
     @Autowired
-    public HandlerService() {
+    public HandlerService(ConcurrencyLimiter limiter, CostBudget budget) {
         super(null);
         handlers = new ConcurrentHashMap<>();
+        pending = new ConcurrentHashMap<>();
+        this.limiter = limiter;
+        this.budget = budget;
     }
 
     @Override
     public void respond(String id, PubSubMessage message) {
+        Metadata.Signal signal = message.hasSignal() ? message.getMetadata().getSignal() : null;
+        if (signal == Metadata.Signal.ACKNOWLEDGE || signal == Metadata.Signal.FAIL) {
+            sample(id, signal == Metadata.Signal.FAIL);
+        }
         QueryHandler handler = getHandler(id);
         if (handler == null) {
             return;
         }
+        QueryEvent.Respond event = new QueryEvent.Respond();
+        event.begin();
         synchronized (handler) {
             if (!handler.isComplete()) {
                 handler.send(message);
@@ -53,6 +77,7 @@ public class HandlerService extends PubSubResponder {
                 }
             }
         }
+        event.end(id, handler);
     }
 
     /**
@@ -62,6 +87,9 @@ public class HandlerService extends PubSubResponder {
      * @param handler The {@link QueryHandler} instance to add.
      */
     public void addHandler(String id, QueryHandler handler) {
+        if (limiter != null) {
+            pending.put(id, System.nanoTime());
+        }
         handlers.put(id, handler);
     }
 
@@ -82,6 +110,8 @@ public class HandlerService extends PubSubResponder {
      * @return The {@link QueryHandler} instance or null if the handler does not exist.
      */
     public QueryHandler removeHandler(String id) {
+        pending.remove(id);
+        release(id);
         return handlers.remove(id);
     }
 
@@ -103,6 +133,8 @@ public class HandlerService extends PubSubResponder {
      * @return true if the handler was failed.
      */
     public boolean failHandler(String id) {
+        sample(id, true);
+        release(id);
         QueryHandler handler = handlers.remove(id);
         if (handler == null) {
             return false;
@@ -115,6 +147,13 @@ public class HandlerService extends PubSubResponder {
      * Clears all pending handlers. This does not send anything to Bullet.
      */
     public void failAllHandlers() {
+        if (limiter != null && !handlers.isEmpty()) {
+            limiter.onFailure();
+        }
+        pending.clear();
+        if (budget != null) {
+            budget.releaseAll();
+        }
         handlers.values().forEach(QueryHandler::fail);
         handlers.clear();
     }
@@ -128,6 +167,19 @@ public class HandlerService extends PubSubResponder {
         return handlers.size();
     }
 
+    private void sample(String id, boolean failed) {
+        Long start = pending.remove(id);
+        if (start != null) {
+            limiter.onSample(System.nanoTime() - start, handlers.size(), failed);
+        }
+    }
+
+    private void release(String id) {
+        if (budget != null) {
+            budget.release(id);
+        }
+    }
+
     /**
      * Stop all service threads and clear pending handlers.
      */
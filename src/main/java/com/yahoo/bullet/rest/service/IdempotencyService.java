@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.rest.common.IdempotencyCache;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.MetricRegistry.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.Principal;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lets clients retry submitting a query without starting a new one each time, such as after timing out during an
+ * incident when extra load hurts the most. A client sends a unique key in the {@link #HEADER} header and a retry with
+ * the same key to the same endpoint gets the response of the query that was already submitted, whether it is still
+ * running or done. Keys are kept in an {@link IdempotencyCache} and are separate for each endpoint and client. A client
+ * is its principal or, if there is none, its address, like in {@link RateLimitService#getKey(Principal, String)}. A
+ * query that could not be submitted gives its key back so that a retry tries again.
+ *
+ * The number of retries that were attached to a query is counted as {@link #HITS} and the number of keys is published
+ * as {@link #KEYS}.
+ *
+ * If this is not enabled, the header is ignored.
+ */
+@Service @Slf4j
+public class IdempotencyService {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String HITS = "api.queries.idempotent.hits";
+    public static final String KEYS = "api.queries.idempotent.keys";
+
+    private static final String SEPARATOR = "|";
+    private static final String ESCAPE = "\\";
+
+    private final IdempotencyCache cache;
+    private final Counter hits;
+
+    /**
+     * Constructor that takes the settings of the keys.
+     *
+     * @param enabled Whether retries with the same key are attached to the same query.
+     * @param maxSize The maximum number of keys to keep.
+     * @param ttl The time in ms to keep a key for after its query was submitted.
+     * @param metricRegistry The {@link MetricRegistry} to publish the hits and keys to. It can be null.
+     */
+    @Autowired
+    public IdempotencyService(@Value("${bullet.query.idempotency.enabled}") boolean enabled,
+                              @Value("${bullet.query.idempotency.max.size}") int maxSize,
+                              @Value("${bullet.query.idempotency.ttl.ms}") long ttl,
+                              MetricRegistry metricRegistry) {
+        this.cache = enabled ? new IdempotencyCache(maxSize, ttl) : null;
+        if (metricRegistry == null || cache == null) {
+            this.hits = null;
+            return;
+        }
+        this.hits = metricRegistry.counter(HITS);
+        metricRegistry.gauge(KEYS, cache::size);
+    }
+
+    /**
+     * Gets the response of the query that was already submitted with a key or, if there is none, keeps the given query
+     * for the key.
+     *
+     * @param endpoint The name of the endpoint that the query is submitted to.
+     * @param principal The {@link Principal} that submits the query. It can be null.
+     * @param address The address of the client that submits the query. It is only used if there is no principal. It
+     *                can be null.
+     * @param key The key from the {@link #HEADER} header. It can be null.
+     * @param id The ID of the query being submitted.
+     * @param result The {@link CompletableFuture} of the response to the query being submitted.
+     * @param <T> The type of the response.
+     * @return The {@link CompletableFuture} of the response to the query already submitted with the key or null if the
+     *         given query should be submitted.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> attach(String endpoint, Principal principal, String address, String key, String id,
+                                           CompletableFuture<T> result) {
+        if (cache == null || key == null) {
+            return null;
+        }
+        IdempotencyCache.Entry existing = cache.putIfAbsent(getKey(endpoint, principal, address, key), id, result);
+        if (existing == null) {
+            return null;
+        }
+        log.debug("Attaching a retry with key {} to query {}", key, existing.getId());
+        if (hits != null) {
+            hits.increment();
+        }
+        // The response type is the same for all the queries of an endpoint
+        return (CompletableFuture<T>) existing.getResult();
+    }
+
+    /**
+     * Gives back the key of a query that could not be submitted.
+     *
+     * @param endpoint The name of the endpoint that the query was submitted to.
+     * @param principal The {@link Principal} that submitted the query. It can be null.
+     * @param address The address of the client that submitted the query. It is only used if there is no principal.
+     *                It can be null.
+     * @param key The key from the {@link #HEADER} header. It can be null.
+     * @param id The ID of the query.
+     */
+    public void detach(String endpoint, Principal principal, String address, String key, String id) {
+        if (cache != null && key != null) {
+            cache.remove(getKey(endpoint, principal, address, key), id);
+        }
+    }
+
+    private static String getKey(String endpoint, Principal principal, String address, String key) {
+        // The principal and the address are separate fields so that a principal named like an address is not that client
+        String name = principal == null ? "" : principal.getName();
+        String from = principal != null || address == null ? "" : address;
+        return escape(endpoint) + SEPARATOR + escape(name) + SEPARATOR + escape(from) + SEPARATOR + escape(key);
+    }
+
+    private static String escape(String field) {
+        // Escapes the escape first so that an escaped separator cannot be made up from the field
+        return field.replace(ESCAPE, ESCAPE + ESCAPE).replace(SEPARATOR, ESCAPE + SEPARATOR);
+    }
+}
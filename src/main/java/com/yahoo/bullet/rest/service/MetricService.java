@@ -0,0 +1,50 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.common.metrics.MetricPublisher;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Extracts all the metrics in the {@link MetricRegistry} once per interval and publishes them as one event if there is
+ * a publisher. They are extracted even if there is not, so that the sources are drained and are fresh when scraped.
+ */
+@Service
+public class MetricService {
+    private final MetricRegistry metricRegistry;
+    private final MetricPublisher<?> metricPublisher;
+
+    /**
+     * Constructor that takes the registry and the publisher.
+     *
+     * @param metricRegistry The {@link MetricRegistry} to publish. It can be null.
+     * @param metricPublisher The {@link MetricPublisher} to use. It can be null.
+     */
+    @Autowired
+    public MetricService(MetricRegistry metricRegistry, MetricPublisher<?> metricPublisher) {
+        this.metricRegistry = metricRegistry;
+        this.metricPublisher = metricPublisher;
+    }
+
+    /**
+     * Extracts the metrics if they are collected and fires and forgets them using the publisher if they are published.
+     */
+    @Scheduled(fixedDelayString = "${bullet.metric.publish.interval.ms}")
+    public void publishMetrics() {
+        if (metricRegistry == null) {
+            return;
+        }
+        Map<String, Number> metrics = metricRegistry.extractMetrics();
+        if (metricPublisher != null) {
+            metricPublisher.fire(metrics);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.rest.common.FairQueue;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.MetricRegistry.Counter;
+import com.yahoo.bullet.rest.common.PriorityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Keeps bulk queries, such as the ones from scheduled jobs, from starving interactive ones. Queries are put in a
+ * {@link PriorityClass} by the endpoint they are submitted to or by who submits them. Each class has a limit on the
+ * number of its queries that can run at the same time and its own queue for publishing. The queues are drained by
+ * as many threads as there are publishers with weighted fair queuing. See {@link FairQueue}.
+ *
+ * A query takes a slot in its class when it is admitted and gives it back once it is done or killed. Since the
+ * backend may never say that a query is done, the slot is also given back once the query has run past its duration.
+ *
+ * The number of queries published, dropped because the queue was full and rejected because the class was full are
+ * counted for each class under {@link #PREFIX}. The number queued and running and how long the oldest queued query has
+ * waited to be published are gauges.
+ *
+ * If this is not enabled, all queries are interactive, have no limit and are published right away.
+ */
+@Service @Slf4j
+public class PriorityService {
+    public static final String PREFIX = "api.queries.priority.";
+    public static final String WAIT = ".wait.ms";
+    public static final String PUBLISHED = ".published";
+    public static final String DROPPED = ".dropped";
+    public static final String REJECTED = ".rejected";
+    public static final String QUEUED = ".queued";
+    public static final String RUNNING = ".running";
+    /** The name of the endpoint for asynchronous queries. */
+    public static final String ASYNC = "async";
+
+    static final long EXPIRY_GRACE = TimeUnit.MINUTES.toMillis(1);
+    private static final long POLL_TIMEOUT = 1000L;
+
+    private static class Task<T> {
+        private final PriorityClass priority;
+        private final Supplier<T> publish;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final long queued = System.currentTimeMillis();
+
+        private Task(PriorityClass priority, Supplier<T> publish) {
+            this.priority = priority;
+            this.publish = publish;
+        }
+
+        private void run() {
+            try {
+                result.complete(publish.get());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Slot {
+        private final PriorityClass priority;
+        private final long expiry;
+
+        private Slot(PriorityClass priority, long expiry) {
+            this.priority = priority;
+            this.expiry = expiry;
+        }
+    }
+
+    private final boolean enabled;
+    private final Set<String> bulkEndpoints;
+    private final Set<String> bulkPrincipals;
+    private final Map<PriorityClass, Integer> limits = new EnumMap<>(PriorityClass.class);
+    private final Map<PriorityClass, AtomicInteger> running = new EnumMap<>(PriorityClass.class);
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+    private final FairQueue<Task<?>> queue;
+    private final ExecutorService dispatchers;
+    private final Map<PriorityClass, Counter> published = new EnumMap<>(PriorityClass.class);
+    private final Map<PriorityClass, Counter> dropped = new EnumMap<>(PriorityClass.class);
+    private final Map<PriorityClass, Counter> rejected = new EnumMap<>(PriorityClass.class);
+    private boolean closed = false;
+
+    /**
+     * Constructor that takes the settings of the classes.
+     *
+     * @param enabled Whether queries are prioritized.
+     * @param interactiveWeight The weight of the interactive class when publishing.
+     * @param interactiveConcurrency The number of interactive queries that can run at the same time.
+     * @param bulkWeight The weight of the bulk class when publishing.
+     * @param bulkConcurrency The number of bulk queries that can run at the same time.
+     * @param bulkEndpoints The names of the endpoints whose queries are bulk, such as {@link #ASYNC}.
+     * @param bulkPrincipals The names of the principals whose queries are bulk wherever they are submitted.
+     * @param queueSize The maximum number of queries of each class that can be waiting to be published.
+     * @param threads The number of threads to publish with.
+     * @param metricRegistry The {@link MetricRegistry} to publish the metrics of the classes to. It can be null.
+     */
+    @Autowired
+    public PriorityService(@Value("${bullet.query.priority.enabled}") boolean enabled,
+                           @Value("${bullet.query.priority.interactive.weight}") int interactiveWeight,
+                           @Value("${bullet.query.priority.interactive.max.concurrency}") int interactiveConcurrency,
+                           @Value("${bullet.query.priority.bulk.weight}") int bulkWeight,
+                           @Value("${bullet.query.priority.bulk.max.concurrency}") int bulkConcurrency,
+                           @Value("${bullet.query.priority.bulk.endpoints}") String[] bulkEndpoints,
+                           @Value("${bullet.query.priority.bulk.principals}") String[] bulkPrincipals,
+                           @Value("${bullet.query.priority.queue.size}") int queueSize,
+                           @Value("${bullet.pubsub.publishers}") int threads,
+                           MetricRegistry metricRegistry) {
+        this.enabled = enabled;
+        this.bulkEndpoints = new HashSet<>(Arrays.asList(bulkEndpoints));
+        this.bulkPrincipals = new HashSet<>(Arrays.asList(bulkPrincipals));
+        limits.put(PriorityClass.INTERACTIVE, interactiveConcurrency);
+        limits.put(PriorityClass.BULK, bulkConcurrency);
+        Map<PriorityClass, Integer> weights = new EnumMap<>(PriorityClass.class);
+        weights.put(PriorityClass.INTERACTIVE, interactiveWeight);
+        weights.put(PriorityClass.BULK, bulkWeight);
+        for (PriorityClass priority : PriorityClass.values()) {
+            running.put(priority, new AtomicInteger());
+        }
+        if (!enabled) {
+            queue = null;
+            dispatchers = null;
+            return;
+        }
+        log.info("Prioritizing queries with weights of {} and {} for interactive and bulk", interactiveWeight, bulkWeight);
+        queue = new FairQueue<>(weights, queueSize);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("priority-publisher-");
+        threadFactory.setDaemon(true);
+        dispatchers = Executors.newFixedThreadPool(threads, threadFactory);
+        for (int i = 0; i < threads; ++i) {
+            dispatchers.execute(this::dispatch);
+        }
+        if (metricRegistry != null) {
+            for (PriorityClass priority : PriorityClass.values()) {
+                String prefix = PREFIX + priority.getName();
+                published.put(priority, metricRegistry.counter(prefix + PUBLISHED));
+                dropped.put(priority, metricRegistry.counter(prefix + DROPPED));
+                rejected.put(priority, metricRegistry.counter(prefix + REJECTED));
+                metricRegistry.gauge(prefix + QUEUED, () -> queue.size(priority));
+                metricRegistry.gauge(prefix + RUNNING, () -> getRunning(priority));
+                metricRegistry.gauge(prefix + WAIT, () -> getWait(priority));
+            }
+        }
+    }
+
+    /**
+     * Gets the {@link PriorityClass} of a query from where and by whom it was submitted.
+     *
+     * @param endpoint The name of the endpoint that the query was submitted to.
+     * @param principal The {@link Principal} that submitted the query. It can be null.
+     * @return The class of the query.
+     */
+    public PriorityClass classify(String endpoint, Principal principal) {
+        if (!enabled) {
+            return PriorityClass.INTERACTIVE;
+        }
+        boolean bulk = bulkEndpoints.contains(endpoint) || (principal != null && bulkPrincipals.contains(principal.getName()));
+        return bulk ? PriorityClass.BULK : PriorityClass.INTERACTIVE;
+    }
+
+    /**
+     * Takes a slot in the given class for a query if the class is not full.
+     *
+     * @param id The ID of the query.
+     * @param priority The {@link PriorityClass} of the query.
+     * @param duration The duration in ms of the query. It can be null.
+     * @return true if the query can run.
+     */
+    public boolean tryAcquire(String id, PriorityClass priority, Long duration) {
+        if (!enabled) {
+            return true;
+        }
+        AtomicInteger count = running.get(priority);
+        int limit = limits.get(priority);
+        if (count.get() >= limit) {
+            releaseExpired();
+        }
+        if (count.incrementAndGet() > limit) {
+            count.decrementAndGet();
+            increment(rejected, priority);
+            return false;
+        }
+        long expiry = duration == null || duration < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + duration + EXPIRY_GRACE;
+        Slot previous = slots.put(id, new Slot(priority, expiry));
+        if (previous != null) {
+            running.get(previous.priority).decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the slot of a query, if it has one.
+     *
+     * @param id The ID of the query.
+     */
+    public void release(String id) {
+        Slot slot = slots.remove(id);
+        if (slot != null) {
+            running.get(slot.priority).decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the {@link PriorityClass} that a query was admitted in.
+     *
+     * @param id The ID of the query.
+     * @return The class of the query or {@link PriorityClass#INTERACTIVE} if it was not admitted by this.
+     */
+    public PriorityClass getPriority(String id) {
+        Slot slot = slots.get(id);
+        return slot == null ? PriorityClass.INTERACTIVE : slot.priority;
+    }
+
+    /**
+     * Runs a task to publish something in the queue of the given class. If this is not enabled, it is run right away.
+     *
+     * @param priority The {@link PriorityClass} of the task.
+     * @param task The {@link Supplier} that publishes.
+     * @param <T> The type of the result of the task.
+     * @return A {@link CompletableFuture} that resolves to the result of the task or completes exceptionally with a
+     *         {@link RejectedExecutionException} if the queue was full or publishing was stopped.
+     */
+    public <T> CompletableFuture<T> submit(PriorityClass priority, Supplier<T> task) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(task.get());
+        }
+        Task<T> queued = new Task<>(priority, task);
+        // Checked with the queue held so that nothing is added once it is drained when closing
+        synchronized (queue) {
+            if (closed) {
+                queued.result.completeExceptionally(new RejectedExecutionException("Publishing was stopped"));
+                return queued.result;
+            }
+            if (queue.offer(priority, queued)) {
+                return queued.result;
+            }
+        }
+        log.error("The {} publish queue is full", priority.getName());
+        increment(dropped, priority);
+        queued.result.completeExceptionally(new RejectedExecutionException("The " + priority.getName() + " queue is full"));
+        return queued.result;
+    }
+
+    /**
+     * Stops publishing. Queries still waiting to be published are failed with a {@link RejectedExecutionException}.
+     */
+    @PreDestroy
+    public void close() {
+        if (dispatchers == null) {
+            return;
+        }
+        dispatchers.shutdownNow();
+        synchronized (queue) {
+            closed = true;
+            for (Task<?> task = queue.poll(); task != null; task = queue.poll()) {
+                task.result.completeExceptionally(new RejectedExecutionException("Publishing was stopped"));
+            }
+        }
+    }
+
+    /**
+     * Gets the number of queries running in the given class.
+     *
+     * @param priority The {@link PriorityClass}.
+     * @return The number of queries that have a slot in the class.
+     */
+    int getRunning(PriorityClass priority) {
+        return running.get(priority).get();
+    }
+
+    private long getWait(PriorityClass priority) {
+        Task<?> oldest = queue.peek(priority);
+        return oldest == null ? 0L : System.currentTimeMillis() - oldest.queued;
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Task<?> task = queue.poll(POLL_TIMEOUT);
+                if (task != null) {
+                    increment(published, task.priority);
+                    task.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void increment(Map<PriorityClass, Counter> counters, PriorityClass priority) {
+        Counter counter = counters.get(priority);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private void releaseExpired() {
+        long now = System.currentTimeMillis();
+        slots.forEach((id, slot) -> {
+            if (slot.expiry < now && slots.remove(id, slot)) {
+                log.debug("Giving back the slot of query {} since it ran past its duration", id);
+                running.get(slot.priority).decrementAndGet();
+            }
+        });
+    }
+}
@@ -12,30 +12,42 @@ import com.yahoo.bullet.pubsub.PubSubResponder;
 import com.yahoo.bullet.pubsub.Publisher;
 import com.yahoo.bullet.pubsub.Subscriber;
 import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.rest.common.IsolatedResponder;
+import com.yahoo.bullet.rest.common.MessageCache;
+import com.yahoo.bullet.rest.common.PriorityClass;
 import com.yahoo.bullet.rest.common.PublisherRandomPool;
+import com.yahoo.bullet.rest.common.QueryEvent;
 import com.yahoo.bullet.rest.common.Reader;
+import com.yahoo.bullet.rest.common.ResponseRouter;
 import com.yahoo.bullet.rest.common.Utils;
+import com.yahoo.bullet.rest.common.WriteBehindStorage;
 import com.yahoo.bullet.storage.StorageManager;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class QueryService extends PubSubResponder {
-    private StorageManager<PubSubMessage> storage;
+    private WriteBehindStorage storage;
+    private MessageCache cache;
     private List<PubSubResponder> responders;
     private PublisherRandomPool publishers;
     private List<Reader> readers;
     private PubSubMessageSerDe sendSerDe;
+    private PriorityService priorityService;
 
     private static final CompletableFuture<PubSubMessage> NONE = CompletableFuture.completedFuture(null);
 
     /**
-     * Constructor that takes various necessary components.
+     * Constructor that takes various necessary components, a window to batch writes to the storage in, the size of
+     * the cache of retrieved queries and the service to prioritize the publishing of queries with.
      *
      * @param storageManager The non-null {@link StorageManager} to use.
      * @param responders The non-empty {@link List} of {@link PubSubResponder} to use.
@@ -43,19 +55,26 @@ public class QueryService extends PubSubResponder {
      * @param subscribers The non-empty {@link List} of {@link Subscriber} to use.
      * @param pubSubMessageSendSerDe The {@link PubSubMessageSerDe} to use for sending messages to the PubSub.
      * @param sleep The time to sleep between checking for messages from the pubsub.
+     * @param storageBatchWindow The time in ms to batch puts and removes to the storage for. See {@link WriteBehindStorage}.
+     * @param cacheSize The maximum number of submitted queries to cache for {@link #get(String)}. See {@link MessageCache}.
+     * @param priorityService The {@link PriorityService} to publish queries in the queues of their classes with and to
+     *                        give their slots back to once they are done. If null, they are published right away.
      */
     public QueryService(StorageManager<PubSubMessage> storageManager, List<PubSubResponder> responders,
                         List<Publisher> publishers, List<Subscriber> subscribers,
-                        PubSubMessageSerDe pubSubMessageSendSerDe, int sleep) {
+                        PubSubMessageSerDe pubSubMessageSendSerDe, int sleep, long storageBatchWindow, int cacheSize,
+                        PriorityService priorityService) {
         super(null);
         Objects.requireNonNull(storageManager);
         Objects.requireNonNull(responders);
         Objects.requireNonNull(pubSubMessageSendSerDe);
         Utils.checkNotEmpty(publishers);
         Utils.checkNotEmpty(subscribers);
-        this.storage = storageManager;
+        this.storage = new WriteBehindStorage(storageManager, storageBatchWindow);
+        this.cache = new MessageCache(cacheSize);
         this.responders = responders;
         this.sendSerDe = pubSubMessageSendSerDe;
+        this.priorityService = priorityService;
         this.publishers = new PublisherRandomPool(publishers);
         this.readers = subscribers.stream().map(x -> new Reader(x, this, sleep)).collect(Collectors.toList());
         this.readers.forEach(Reader::start);
@@ -63,6 +82,8 @@ public class QueryService extends PubSubResponder {
 
     /**
      * Submit a query to Bullet and store it in the storage. Unless the publishing succeeds, the query is not stored.
+     * The query is published in the queue of the {@link PriorityClass} that it was admitted in by the
+     * {@link PriorityService}, if there is one.
      *
      * @param id The query ID of the query.
      * @param query The query to send.
@@ -73,11 +94,39 @@ public class QueryService extends PubSubResponder {
         log.debug("Submitting query {}", id);
         PubSubMessage message = sendSerDe.toMessage(id, query, queryString);
         // Publish then store. Publishing might change the message. Store the sent result
-        return publish(message).thenComposeAsync(sent -> store(id, sent))
+        return publishQuery(id, null, message).thenComposeAsync(sent -> store(id, sent))
                                .thenApply(sent -> onSubmit(id, sent))
                                .exceptionally(e -> onSubmitFail(e, id));
     }
 
+    /**
+     * Submits a batch of queries to Bullet and stores them. The queries are published together with the same
+     * {@link Publisher}. Each query is stored only if its publishing succeeds.
+     *
+     * @param ids The non-null {@link List} of query IDs of the queries.
+     * @param queries The non-null {@link List} of queries to send, in the same order as the IDs.
+     * @param queryStrings The non-null {@link List} of the string representations of the queries, in the same order.
+     * @return A {@link CompletableFuture} that resolves to the {@link List} of sent {@link PubSubMessage} in the same
+     *         order, with null for each query that could not be sent.
+     */
+    public CompletableFuture<List<PubSubMessage>> submit(List<String> ids, List<Query> queries, List<String> queryStrings) {
+        if (ids.size() != queries.size() || ids.size() != queryStrings.size()) {
+            throw new IllegalArgumentException("There must be an ID and a string for each query");
+        }
+        log.debug("Submitting a batch of {} queries", ids.size());
+        Publisher publisher = publishers.get();
+        List<CompletableFuture<PubSubMessage>> submitted = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); ++i) {
+            String id = ids.get(i);
+            PubSubMessage message = sendSerDe.toMessage(id, queries.get(i), queryStrings.get(i));
+            submitted.add(publishQuery(id, publisher, message).thenComposeAsync(sent -> store(id, sent))
+                                                     .thenApply(sent -> onSubmit(id, sent))
+                                                     .exceptionally(e -> onSubmitFail(e, id)));
+        }
+        return CompletableFuture.allOf(submitted.toArray(new CompletableFuture<?>[0]))
+                                .thenApply(v -> submitted.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
     /**
      * Submits a {@link Metadata.Signal#KILL} signal to Bullet for the given query ID and removes the query.
      *
@@ -86,7 +135,9 @@ public class QueryService extends PubSubResponder {
      */
     public CompletableFuture<Void> kill(String id) {
         log.debug("Removing metadata for query {} and killing it", id);
-        CompletableFuture<PubSubMessage> removed = storage.remove(id);
+        cache.invalidate(id);
+        release(id);
+        CompletableFuture<PubSubMessage> removed = remove(id);
         return removed.thenAccept(QueryService::onStoredMessageRemove)
                       .exceptionally(e -> onStoredMessageRemoveFail(e, id))
                       .thenAccept(u -> killQuery(id));
@@ -101,13 +152,28 @@ public class QueryService extends PubSubResponder {
     public void respond(String id, PubSubMessage response) {
         log.debug("Received response {} for {}", id, response);
         if (Utils.isDone(response)) {
-            CompletableFuture<PubSubMessage> removed = storage.remove(id);
+            cache.invalidate(id);
+            release(id);
+            CompletableFuture<PubSubMessage> removed = remove(id);
             removed.thenAccept(QueryService::onStoredMessageRemove)
                    .exceptionally(e -> onRespondFail(e, id, response));
         }
         responders.forEach(responder -> responder.respond(id, response));
     }
 
+    /**
+     * Responds to a {@link PubSubMessage} that another instance of the service forwarded to this one since this one owns
+     * its query. Only the responders for the queries owned by this instance are used. See {@link ResponseRouter}.
+     *
+     * @param id The id of the query.
+     * @param response The {@link PubSubMessage} response.
+     */
+    public void respondLocally(String id, PubSubMessage response) {
+        log.debug("Received forwarded response {} for {}", id, response);
+        responders.stream().filter(ResponseRouter.class::isInstance)
+                           .forEach(responder -> ((ResponseRouter) responder).respondLocally(id, response));
+    }
+
     /**
      * Sends a {@link Metadata.Signal} to Bullet without storing it.
      *
@@ -138,11 +204,74 @@ public class QueryService extends PubSubResponder {
      * @return A {@link CompletableFuture} that resolves to the stored {@link PubSubMessage} or null if it could not be found.
      */
     public CompletableFuture<PubSubMessage> get(String id) {
+        PubSubMessage cached = cache.get(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
         return storage.get(id)
                       .thenApply(this::onStoredMessageRetrieve)
                       .exceptionally(e -> onStoredMessageRetrieveFail(e, id));
     }
 
+    /**
+     * Gets the number of pages that the stored queries can be read in using {@link #getStoredPage(int)}.
+     *
+     * @return The number of pages. This is at least 1.
+     */
+    public int numberOfStoredPages() {
+        // Storage that is not partitioned returns everything as its only partition
+        return Math.max(1, storage.numberOfPartitions());
+    }
+
+    /**
+     * Retrieves a page of the stored {@link PubSubMessage} of submitted queries. These are as they were sent.
+     *
+     * @param page The page to retrieve, from 0 to {@link #numberOfStoredPages()} exclusive.
+     * @return A {@link CompletableFuture} that resolves to the {@link Map} of query IDs to their stored messages.
+     */
+    public CompletableFuture<Map<String, PubSubMessage>> getStoredPage(int page) {
+        return storage.getPartition(page);
+    }
+
+    /**
+     * Publishes a stored {@link PubSubMessage} of a submitted query to Bullet again. The message is sent as is since
+     * it was stored as it was sent.
+     *
+     * @param message The non-null {@link PubSubMessage} to send.
+     * @return A {@link CompletableFuture} that resolves to the sent {@link PubSubMessage} or null if it could not be sent.
+     */
+    public CompletableFuture<PubSubMessage> republish(PubSubMessage message) {
+        Objects.requireNonNull(message);
+        return publish(message);
+    }
+
+    /**
+     * Gets the current metrics for the cache of submitted queries used by {@link #get(String)}.
+     *
+     * @return A {@link Map} of metric names to their values.
+     */
+    public Map<String, Number> getCacheMetrics() {
+        return cache.getMetrics();
+    }
+
+    /**
+     * Gets the metrics collected by the {@link IsolatedResponder} and {@link ResponseRouter} instances since the last
+     * time this was called.
+     *
+     * @return A {@link Map} of metric names to their values. Empty if there are no such responders.
+     */
+    public Map<String, Number> getResponderMetrics() {
+        Map<String, Number> metrics = new HashMap<>();
+        for (PubSubResponder responder : responders) {
+            if (responder instanceof IsolatedResponder) {
+                metrics.putAll(((IsolatedResponder) responder).extractMetrics());
+            } else if (responder instanceof ResponseRouter) {
+                metrics.putAll(((ResponseRouter) responder).extractMetrics());
+            }
+        }
+        return metrics;
+    }
+
     /**
      * Stop all service threads and clear pending requests.
      */
@@ -160,18 +289,54 @@ public class QueryService extends PubSubResponder {
             log.error("Could not publish query first. Not storing it {}", message);
             return NONE;
         }
+        // Cache before storing so that a result that arrives quickly still invalidates it
+        cache.put(id, sendSerDe.fromMessage(message));
         // TODO: consider sending a kill if an exception happens here. It's technically a leak to the backend
-        return storage.put(id, message).thenComposeAsync(result -> sendKillIfNecessary(result, id, message));
+        QueryEvent.StoragePut event = new QueryEvent.StoragePut();
+        event.begin();
+        return storage.put(id, message).whenComplete((result, e) -> event.end(id, null))
+                                       .thenComposeAsync(result -> sendKillIfNecessary(result, id, message));
+    }
+
+    private CompletableFuture<PubSubMessage> remove(String id) {
+        QueryEvent.StorageRemove event = new QueryEvent.StorageRemove();
+        event.begin();
+        return storage.remove(id).whenComplete((result, e) -> event.end(id, null));
     }
 
     private CompletableFuture<PubSubMessage> publish(PubSubMessage message) {
-        Publisher publisher = publishers.get();
+        return publish(publishers.get(), message);
+    }
+
+    private static CompletableFuture<PubSubMessage> publish(Publisher publisher, PubSubMessage message) {
+        return CompletableFuture.completedFuture(publishNow(publisher, message));
+    }
+
+    private CompletableFuture<PubSubMessage> publishQuery(String id, Publisher publisher, PubSubMessage message) {
+        if (priorityService == null) {
+            return publish(publisher == null ? publishers.get() : publisher, message);
+        }
+        // Only queries are queued. Signals like kills free up capacity so they are published right away
+        PriorityClass priority = priorityService.getPriority(id);
+        return priorityService.submit(priority, () -> publishNow(publisher == null ? publishers.get() : publisher, message));
+    }
+
+    private static PubSubMessage publishNow(Publisher publisher, PubSubMessage message) {
+        QueryEvent.Publish event = new QueryEvent.Publish();
+        event.begin();
         try {
-            PubSubMessage sent = publisher.send(message);
-            return CompletableFuture.completedFuture(sent);
+            return publisher.send(message);
         } catch (Exception e) {
             log.error("Unable to publish message", e);
-            return NONE;
+            return null;
+        } finally {
+            event.end(message.getId(), null);
+        }
+    }
+
+    private void release(String id) {
+        if (priorityService != null) {
+            priorityService.release(id);
         }
     }
 
@@ -190,6 +355,7 @@ public class QueryService extends PubSubResponder {
 
     private CompletableFuture<PubSubMessage> sendKillIfNecessary(Boolean status, String id, PubSubMessage message) {
         if (!status) {
+            cache.invalidate(id);
             log.error("Error while trying to store query after submitting. Sending a kill for it...");
             log.error("Sending a kill signal for {}", id);
             return send(id, Metadata.Signal.KILL).thenApply(d -> null);
@@ -203,6 +369,7 @@ public class QueryService extends PubSubResponder {
             return message;
         } else {
             log.error("Could not submit message for {}", id);
+            release(id);
             return null;
         }
     }
@@ -212,7 +379,9 @@ public class QueryService extends PubSubResponder {
         return sendSerDe.fromMessage(message);
     }
 
-    private static PubSubMessage onSubmitFail(Throwable error, String id) {
+    private PubSubMessage onSubmitFail(Throwable error, String id) {
+        cache.invalidate(id);
+        release(id);
         log.error("Failed to submit query {} due to failures in storing or publishing the query", id);
         log.error("Received exception", error);
         return null;
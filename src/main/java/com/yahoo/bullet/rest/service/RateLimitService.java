@@ -0,0 +1,157 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.MetricRegistry.Counter;
+import com.yahoo.bullet.rest.common.TokenBuckets;
+import com.yahoo.bullet.rest.query.QueryError;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Limits the rate at which each user can submit and validate queries so that one user, such as a runaway script,
+ * cannot use up the limit on the number of queries for everyone. Users are told apart by their authenticated
+ * {@link Principal} or, if there is none, by their address. Each user has a bucket of tokens in {@link TokenBuckets}
+ * and a request that finds it empty is rejected with a 429 and {@link QueryError#RATE_LIMITED}.
+ *
+ * This is registered as a {@link org.springframework.web.servlet.HandlerInterceptor} for the endpoints it applies to.
+ * The total number of throttled requests is counted as {@link #THROTTLED} and the number for each user that was
+ * throttled since the metrics were last published is published under it as well, along with the number of buckets
+ * as {@link #BUCKETS}. To bound the number of metrics, only the users that were throttled the most are published, and
+ * the characters in their keys other than letters, digits, underscores and hyphens, such as the dots of an address,
+ * are replaced with underscores.
+ *
+ * If this is not enabled, requests are never throttled.
+ */
+@Service @Slf4j
+public class RateLimitService extends HandlerInterceptorAdapter {
+    public static final String THROTTLED = "api.ratelimit.throttled";
+    public static final String BUCKETS = "api.ratelimit.buckets";
+
+    private static final Pattern UNSAFE = Pattern.compile("[^A-Za-z0-9_-]");
+
+    private final TokenBuckets buckets;
+    private final Counter throttled;
+    private final int maxUserMetrics;
+
+    /**
+     * Constructor that takes the settings of the buckets.
+     *
+     * @param enabled Whether requests are limited.
+     * @param rate The number of requests each user can make per second.
+     * @param burst The number of requests each user can make at once after being idle.
+     * @param idleTimeout The time in ms after which the bucket of a user that made no requests is removed.
+     * @param stripes The number of stripes to split the buckets into.
+     * @param maxUserMetrics The maximum number of users to publish the throttles of each time.
+     * @param metricRegistry The {@link MetricRegistry} to publish the throttles to. It can be null.
+     */
+    @Autowired
+    public RateLimitService(@Value("${bullet.query.rate.limit.enabled}") boolean enabled,
+                            @Value("${bullet.query.rate.limit.rate}") double rate,
+                            @Value("${bullet.query.rate.limit.burst}") int burst,
+                            @Value("${bullet.query.rate.limit.idle.timeout.ms}") long idleTimeout,
+                            @Value("${bullet.query.rate.limit.stripes}") int stripes,
+                            @Value("${bullet.query.rate.limit.metrics.max.users}") int maxUserMetrics,
+                            MetricRegistry metricRegistry) {
+        this.maxUserMetrics = maxUserMetrics;
+        if (!enabled) {
+            this.buckets = null;
+            this.throttled = null;
+            return;
+        }
+        log.info("Limiting each user to {} queries per second with bursts of {}", rate, burst);
+        this.buckets = new TokenBuckets(rate, burst, idleTimeout, stripes, metricRegistry != null);
+        if (metricRegistry == null) {
+            this.throttled = null;
+            return;
+        }
+        this.throttled = metricRegistry.counter(THROTTLED);
+        metricRegistry.gauge(BUCKETS, buckets::size);
+        metricRegistry.source(this::extractThrottled);
+    }
+
+    /**
+     * Takes a token for the given user if they have one.
+     *
+     * @param key The key of the user. See {@link #getKey(Principal, String)}.
+     * @return true if the request can go ahead, false if it is throttled.
+     */
+    public boolean tryAcquire(String key) {
+        if (buckets == null || buckets.tryAcquire(key)) {
+            return true;
+        }
+        log.debug("Throttling {}", key);
+        if (throttled != null) {
+            throttled.increment();
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of times each of the users that were throttled the most was throttled since this was last called.
+     * The counts of the other users are dropped.
+     *
+     * @return A {@link Map} of the names of the metrics for the users that were throttled to their counts.
+     */
+    public Map<String, Number> extractThrottled() {
+        Map<String, Number> metrics = new HashMap<>();
+        if (buckets == null) {
+            return metrics;
+        }
+        buckets.extractThrottled().entrySet().stream()
+               .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+               .limit(maxUserMetrics)
+               // Different keys can have the same name once the unsafe characters are replaced
+               .forEach(e -> metrics.merge(THROTTLED + "." + toMetricKey(e.getKey()), e.getValue(), RateLimitService::sum));
+        return metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        // Queries are only submitted with POST. This leaves out CORS preflight requests
+        if (!HttpMethod.POST.matches(request.getMethod()) || tryAcquire(getKey(request.getUserPrincipal(), request.getRemoteAddr()))) {
+            return true;
+        }
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(QueryError.RATE_LIMITED.toString());
+        return false;
+    }
+
+    /**
+     * Gets the key to limit a user by.
+     *
+     * @param principal The authenticated {@link Principal}, if any.
+     * @param address The address of the client.
+     * @return The name of the principal if there is one or the address.
+     */
+    public static String getKey(Principal principal, String address) {
+        return principal == null ? address : principal.getName();
+    }
+
+    private static String toMetricKey(String key) {
+        return UNSAFE.matcher(key).replaceAll("_");
+    }
+
+    private static Number sum(Number a, Number b) {
+        return a.longValue() + b.longValue();
+    }
+}
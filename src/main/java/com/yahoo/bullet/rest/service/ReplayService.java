@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.common.RateLimiter;
+import com.yahoo.bullet.rest.model.ReplayStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays the stored queries to Bullet from the service. The stored queries are read a page at a time from the storage
+ * using {@link QueryService#getStoredPage(int)} and republished with {@link QueryService#republish(PubSubMessage)}
+ * by a configurable number of threads, limited to a configurable rate. Only one replay runs at a time. Use
+ * {@link #getStatus()} to track its progress.
+ */
+@Service @Slf4j
+public class ReplayService {
+    private final QueryService queryService;
+    private final double rate;
+    private final int concurrency;
+    private final ExecutorService coordinator;
+    private final ExecutorService workers;
+
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean running = false;
+    private volatile int pages = 0;
+    private volatile int pagesReplayed = 0;
+    private volatile long startTime = 0L;
+    private volatile long endTime = 0L;
+
+    /**
+     * Constructor that takes the {@link QueryService} to replay through and the limits for replaying.
+     *
+     * @param queryService The non-null {@link QueryService} to use.
+     * @param rate The maximum number of queries to republish per second. If not positive, there is no limit.
+     * @param concurrency The number of queries to republish at the same time. Must be positive.
+     */
+    @Autowired
+    public ReplayService(QueryService queryService, @Value("${bullet.replay.rate.per.sec}") double rate,
+                         @Value("${bullet.replay.concurrency}") int concurrency) {
+        Objects.requireNonNull(queryService);
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("The replay concurrency must be positive");
+        }
+        this.queryService = queryService;
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.coordinator = Executors.newSingleThreadExecutor();
+        this.workers = Executors.newFixedThreadPool(concurrency);
+    }
+
+    /**
+     * Starts replaying the stored queries if a replay is not already running.
+     *
+     * @return A boolean denoting whether a new replay was started.
+     */
+    public synchronized boolean replay() {
+        if (running) {
+            log.warn("A replay is already running. Not starting another");
+            return false;
+        }
+        running = true;
+        replayed.set(0L);
+        failed.set(0L);
+        pages = 0;
+        pagesReplayed = 0;
+        startTime = System.currentTimeMillis();
+        endTime = 0L;
+        coordinator.submit(this::replayPages);
+        return true;
+    }
+
+    /**
+     * Gets the progress of the current or the last replay.
+     *
+     * @return A {@link ReplayStatus} for the replay.
+     */
+    public ReplayStatus getStatus() {
+        long queries = replayed.get();
+        long end = running ? System.currentTimeMillis() : endTime;
+        long elapsed = end - startTime;
+        double throughput = startTime == 0L || elapsed <= 0L ? 0.0 : queries * 1000.0 / elapsed;
+        return new ReplayStatus(running, pages, pagesReplayed, queries, failed.get(), startTime, endTime, throughput);
+    }
+
+    /**
+     * Stops any running replay.
+     */
+    @PreDestroy
+    public void close() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void replayPages() {
+        RateLimiter limiter = new RateLimiter(rate);
+        try {
+            pages = queryService.numberOfStoredPages();
+            log.info("Replaying stored queries in {} pages", pages);
+            for (int i = 0; i < pages && !Thread.currentThread().isInterrupted(); ++i) {
+                Map<String, PubSubMessage> page = queryService.getStoredPage(i).get();
+                replayPage(page, limiter);
+                pagesReplayed = i + 1;
+                log.debug("Replayed page {} of {}", pagesReplayed, pages);
+            }
+        } catch (Exception e) {
+            log.error("Error while replaying stored queries", e);
+        } finally {
+            endTime = System.currentTimeMillis();
+            running = false;
+            log.info("Finished replaying {} queries with {} failures", replayed.get(), failed.get());
+        }
+    }
+
+    private void replayPage(Map<String, PubSubMessage> page, RateLimiter limiter) {
+        if (page == null || page.isEmpty()) {
+            return;
+        }
+        Queue<PubSubMessage> messages = new ConcurrentLinkedQueue<>(page.values());
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < Math.min(concurrency, messages.size()); ++i) {
+            tasks.add(CompletableFuture.runAsync(() -> replayMessages(messages, limiter), workers));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private void replayMessages(Queue<PubSubMessage> messages, RateLimiter limiter) {
+        PubSubMessage message;
+        while ((message = messages.poll()) != null) {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                log.error("Interrupted while replaying");
+                Thread.currentThread().interrupt();
+                return;
+            }
+            PubSubMessage sent = queryService.republish(message).join();
+            if (sent == null) {
+                log.error("Could not replay query {}", message.getId());
+                failed.incrementAndGet();
+            } else {
+                replayed.incrementAndGet();
+            }
+        }
+    }
+}
@@ -7,24 +7,48 @@ package com.yahoo.bullet.rest.service;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.yahoo.bullet.rest.common.SchemaIndex;
 import com.yahoo.bullet.rest.model.JSONAPIDocument;
 import com.yahoo.bullet.rest.model.JSONAPIField;
+import com.yahoo.bullet.rest.model.SchemaRequest;
 import com.yahoo.bullet.typesystem.Schema;
 import com.yahoo.bullet.typesystem.Schema.Field;
+import com.yahoo.bullet.typesystem.Type;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 /**
- * Manages access to and provides the schema for the fields. Use {@link #setSchema(List)} to set the schema.
+ * Manages access to and provides the schema for the fields. The schema is serialized, compressed and tagged once when
+ * it is loaded and served as a {@link Payload}. If enabled, the schema file is watched and the payload is swapped
+ * atomically when the file changes. A schema file that fails to load leaves the current payload in place.
  *
  * The schema is of the form:
  * <pre>
@@ -59,13 +83,56 @@ import static java.util.stream.Collectors.toList;
  * }
  * </pre>
  */
-@Slf4j @Service @Getter
+@Slf4j @Service
 public class SchemaService {
-    private String schema;
-    private String version;
+    /**
+     * The serialized form of a schema. This is immutable and computed once per load.
+     */
+    @Getter
+    public static class Payload {
+        private final String schema;
+        private final byte[] bytes;
+        private final byte[] gzipped;
+        private final String eTag;
+        private final String gzippedETag;
+        private final SchemaIndex index;
+
+        private Payload(String schema, SchemaIndex index) {
+            this.schema = schema;
+            this.index = index;
+            this.bytes = schema.getBytes(StandardCharsets.UTF_8);
+            this.gzipped = gzip(bytes);
+            String hash = hash(bytes);
+            this.eTag = "\"" + hash + "\"";
+            this.gzippedETag = "\"" + hash + GZIP_SUFFIX + "\"";
+        }
+    }
+
+    @Getter
+    private final String version;
+    private final String filePath;
+    private volatile Payload payload;
+    private WatchService watchService;
+    private Thread watcher;
 
     public static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
     public static final String VERSION_KEY = "version";
+    public static final String GZIP_SUFFIX = "-gzip";
+    public static final String TOTAL_KEY = "total";
+    public static final String OFFSET_KEY = "offset";
+    public static final String LIMIT_KEY = "limit";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Constructor that takes in a a string file path and a version string and loads the contents of the file.
+     * The file is expected to contain a JSON array with field entries. The file is not watched for changes.
+     *
+     * @param version The schema version.
+     * @param filePath The filePath to the file.
+     */
+    public SchemaService(String version, String filePath) {
+        this(version, filePath, false);
+    }
 
     /**
      * Constructor that takes in a a string file path and a version string and loads the contents of the file.
@@ -73,11 +140,110 @@ public class SchemaService {
      *
      * @param version The schema version.
      * @param filePath The filePath to the file.
+     * @param watch Whether to watch the file for changes and reload it. Only possible if the file is on the file system.
      */
     @Autowired
-    public SchemaService(@Value("${bullet.schema.version}") String version, @Value("${bullet.schema.file}") String filePath) {
+    public SchemaService(@Value("${bullet.schema.version}") String version, @Value("${bullet.schema.file}") String filePath,
+                         @Value("${bullet.schema.watch.enabled}") boolean watch) {
         this.version = version;
+        this.filePath = filePath;
         setSchema(loadFields(filePath));
+        if (watch) {
+            watch(Paths.get(filePath).toAbsolutePath());
+        }
+    }
+
+    /**
+     * Gets the current schema as a JSON API document.
+     *
+     * @return The current schema.
+     */
+    public String getSchema() {
+        return payload.getSchema();
+    }
+
+    /**
+     * Gets the current serialized schema.
+     *
+     * @return The current {@link Payload}.
+     */
+    public Payload getPayload() {
+        return payload;
+    }
+
+    /**
+     * Gets the type of a field in the current schema.
+     *
+     * @param name The name of the field.
+     * @return The {@link Type} of the field or null if it is not in the schema.
+     */
+    public Type getFieldType(String name) {
+        return payload.getIndex().getType(name);
+    }
+
+    /**
+     * Finds the fields in the current schema that match the given {@link SchemaRequest}. The fields are returned in
+     * the order of their names in a JSON API document whose meta also has the total number of matching fields.
+     *
+     * @param request The non-null {@link SchemaRequest} to use.
+     * @return The matching page of the schema as a JSON API document.
+     * @throws IllegalArgumentException if the request has an unknown type or a negative offset or limit.
+     */
+    public String search(SchemaRequest request) {
+        int offset = request.getOffset() == null ? 0 : request.getOffset();
+        int limit = request.getLimit() == null ? Integer.MAX_VALUE : request.getLimit();
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("The offset and limit must not be negative");
+        }
+        Set<Type> types = null;
+        if (request.getTypes() != null) {
+            types = request.getTypes().stream().map(SchemaService::toType).collect(toSet());
+        }
+        Set<String> attributes = request.getFields() == null ? null : new HashSet<>(request.getFields());
+        SchemaIndex.Result result = payload.getIndex().search(request.getPrefix(), types, attributes, offset, limit);
+
+        JsonObject meta = new JsonObject();
+        meta.addProperty(VERSION_KEY, version);
+        meta.addProperty(TOTAL_KEY, result.getTotal());
+        meta.addProperty(OFFSET_KEY, offset);
+        if (request.getLimit() != null) {
+            meta.addProperty(LIMIT_KEY, limit);
+        }
+        JsonObject document = new JsonObject();
+        document.add("data", result.getData());
+        document.add("meta", meta);
+        return GSON.toJson(document);
+    }
+
+    /**
+     * Reloads the schema file. If the file cannot be loaded, the current schema is kept.
+     *
+     * @return A boolean denoting whether the schema was reloaded.
+     */
+    public boolean reload() {
+        try {
+            setSchema(loadFields(filePath));
+            return true;
+        } catch (Exception e) {
+            log.error("Could not reload the schema from " + filePath + ". Keeping the current schema", e);
+            return false;
+        }
+    }
+
+    /**
+     * Stops watching the schema file if it was being watched.
+     */
+    @PreDestroy
+    public void close() {
+        if (watcher == null) {
+            return;
+        }
+        watcher.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.error("Error while closing the watch service for the schema", e);
+        }
     }
 
     /**
@@ -90,8 +256,8 @@ public class SchemaService {
         Objects.requireNonNull(fields);
         List<JSONAPIField> mapped = fields.stream().map(JSONAPIField::from).collect(toList());
         JSONAPIDocument schema = new JSONAPIDocument(mapped, Collections.singletonMap(VERSION_KEY, getVersion()));
-        this.schema = GSON.toJson(schema);
-        log.info("Schema: {}", this.schema);
+        this.payload = new Payload(GSON.toJson(schema), new SchemaIndex(mapped, GSON));
+        log.info("Schema with ETag {}: {}", payload.getETag(), payload.getSchema());
     }
 
     private List<Field> loadFields(String path) {
@@ -99,4 +265,75 @@ public class SchemaService {
         log.info("Read {} fields", schema.size());
         return schema.getFields();
     }
+
+    private void watch(Path path) {
+        Path directory = path.getParent();
+        if (!Files.isRegularFile(path) || directory == null) {
+            log.warn("The schema file {} is not on the file system. Not watching it for changes", filePath);
+            return;
+        }
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.error("Could not watch the schema file " + filePath, e);
+            return;
+        }
+        Path name = path.getFileName();
+        watcher = new Thread(() -> watchForChanges(name), "schema-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching {} for changes", path);
+    }
+
+    private void watchForChanges(Path name) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= name.equals(event.context());
+                }
+                key.reset();
+                if (changed) {
+                    log.info("The schema file {} changed", filePath);
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.info("Stopped watching the schema file {}", filePath);
+        }
+    }
+
+    private static Type toType(String type) {
+        try {
+            return Type.valueOf(type.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown type " + type);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(bytes.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(stream)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return stream.toByteArray();
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; ++i) {
+                hex[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+                hex[2 * i + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
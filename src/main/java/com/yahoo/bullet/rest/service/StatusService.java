@@ -10,6 +10,7 @@ import com.yahoo.bullet.query.Projection;
 import com.yahoo.bullet.query.Query;
 import com.yahoo.bullet.query.Window;
 import com.yahoo.bullet.query.aggregations.Raw;
+import com.yahoo.bullet.rest.common.ConcurrencyLimiter;
 import com.yahoo.bullet.rest.common.Utils;
 import com.yahoo.bullet.rest.query.QueryError;
 import com.yahoo.bullet.rest.query.QueryHandler;
@@ -41,6 +42,11 @@ public class StatusService implements Runnable {
             }
         }
 
+        @Override
+        public String getEndpoint() {
+            return "status";
+        }
+
         @Override
         public void fail(QueryError cause) {
             if (!isComplete()) {
@@ -69,7 +75,7 @@ public class StatusService implements Runnable {
 
     private QueryService queryService;
     private HandlerService handlerService;
-    private int maxConcurrentQueries;
+    private ConcurrencyLimiter limiter;
     private long period;
     private long retries;
     private long count;
@@ -77,28 +83,28 @@ public class StatusService implements Runnable {
     private boolean backendStatusOK;
 
     /**
-     * Creates an instance with a tick period and number of retries.
+     * Creates an instance with a tick period, number of retries and a limit on the simultaneous synchronous queries.
      *
      * @param queryService The {@link QueryService} to use.
      * @param handlerService The {@link HandlerService} to use.
      * @param period Rate at which to ping backend in ms.
      * @param retries Number of times ping can fail before backend status is considered not ok.
      * @param enabled Whether this backend status service is enabled or not.
-     * @param maxConcurrentQueries Number of maximum simultaneous synchronous queries that can be run.
+     * @param limiter The {@link ConcurrencyLimiter} of the simultaneous synchronous queries that can be run.
      */
     @Autowired
     public StatusService(QueryService queryService, HandlerService handlerService,
                          @Value("${bullet.status.tick-ms}") long period,
                          @Value("${bullet.status.retries}") long retries,
                          @Value("${bullet.status.enabled}") Boolean enabled,
-                         @Value("${bullet.query.synchronous.max.concurrency}") int maxConcurrentQueries) {
+                         ConcurrencyLimiter limiter) {
         this.queryService = queryService;
         this.handlerService = handlerService;
         this.period = period;
         this.retries = retries;
         this.count = 0;
         this.backendStatusOK = true;
-        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.limiter = limiter;
 
         if (enabled != null && enabled) {
             Executors.newScheduledThreadPool(1).scheduleAtFixedRate(this, period, period, TimeUnit.MILLISECONDS);
@@ -127,11 +133,20 @@ public class StatusService implements Runnable {
     }
 
     /**
-     * This checks if the configured max concurrent queries limit has been exceeded.
+     * This checks if the current limit of concurrent queries has been reached. See {@link ConcurrencyLimiter}.
      *
      * @return A boolean indicating whether or not the query limit has been reached.
      */
     public boolean queryLimitReached() {
-        return handlerService.count() >= maxConcurrentQueries;
+        return limiter.isReached(handlerService.count());
+    }
+
+    /**
+     * Gets the current limit of concurrent queries.
+     *
+     * @return The number of synchronous queries that can run at the same time.
+     */
+    public int getQueryLimit() {
+        return limiter.getLimit();
     }
 }
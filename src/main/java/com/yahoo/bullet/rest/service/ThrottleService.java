@@ -0,0 +1,157 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.query.aggregations.AggregationType;
+import com.yahoo.bullet.rest.query.QueryHandler;
+import com.yahoo.bullet.rest.query.ThrottledQueryHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Throttles the results of streaming queries to the rate that their clients ask for. See {@link ThrottledQueryHandler}.
+ * A single thread schedules the queries but their results are sent on a pool of threads, so that a client that is slow
+ * to read only holds up its own query. A query is skipped while its previous result is still being sent.
+ */
+@Service
+public class ThrottleService {
+    /** The name of the request parameter or header that clients ask for an interval in ms between results with. */
+    public static final String THROTTLE = "throttle";
+
+    private HandlerService handlerService;
+    private long minInterval;
+    private int maxRecords;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService flusher;
+
+    private class Ticker implements Runnable {
+        private final String id;
+        private final ThrottledQueryHandler handler;
+        private final AtomicBoolean flushing = new AtomicBoolean(false);
+        private volatile ScheduledFuture<?> future;
+        private boolean added = false;
+
+        private Ticker(String id, ThrottledQueryHandler handler) {
+            this.id = id;
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            // Skips this tick if the previous one is still sending, such as to a client that is slow to read
+            if (!flushing.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                flusher.execute(this::tick);
+            } catch (RejectedExecutionException e) {
+                flushing.set(false);
+            }
+        }
+
+        private void tick() {
+            try {
+                flushOrStop();
+            } finally {
+                flushing.set(false);
+            }
+        }
+
+        private void flushOrStop() {
+            boolean registered = handlerService.getHandler(id) == handler;
+            added |= registered;
+            // Stops once the query is done or has been killed and its handler removed
+            if (handler.isComplete() || (added && !registered)) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                if (registered) {
+                    handlerService.removeHandler(id);
+                }
+                return;
+            }
+            handler.flush();
+        }
+    }
+
+    /**
+     * Constructor that takes the limits for throttling.
+     *
+     * @param handlerService The {@link HandlerService} that the throttled handlers are added to.
+     * @param minInterval The minimum interval in ms between results that a client can ask for.
+     * @param maxRecords The maximum number of records to merge into a result for queries with a RAW aggregation.
+     * @param flushThreads The number of threads to send the throttled results on.
+     */
+    @Autowired
+    public ThrottleService(HandlerService handlerService,
+                           @Value("${bullet.query.throttle.min.interval.ms}") long minInterval,
+                           @Value("${bullet.query.throttle.max.records}") int maxRecords,
+                           @Value("${bullet.query.throttle.flush.threads}") int flushThreads) {
+        this.handlerService = handlerService;
+        this.minInterval = minInterval;
+        this.maxRecords = maxRecords;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("throttle-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        CustomizableThreadFactory flushThreadFactory = new CustomizableThreadFactory("throttle-flush-");
+        flushThreadFactory.setDaemon(true);
+        this.flusher = Executors.newFixedThreadPool(Math.max(flushThreads, 1), flushThreadFactory);
+    }
+
+    /**
+     * Throttles the results of a query if the client asked for it. The returned handler is the one to add to the
+     * {@link HandlerService} for the query.
+     *
+     * @param id The ID of the query.
+     * @param handler The {@link QueryHandler} of the query.
+     * @param query The {@link Query} being run.
+     * @param interval The interval in ms between results that the client asked for. It can be null.
+     * @return The given handler if the client did not ask for throttling or a {@link ThrottledQueryHandler} around it.
+     */
+    public QueryHandler throttle(String id, QueryHandler handler, Query query, Long interval) {
+        if (interval == null || interval <= 0) {
+            return handler;
+        }
+        long period = Math.max(interval, minInterval);
+        boolean isRaw = query.getAggregation() != null && query.getAggregation().getType() == AggregationType.RAW;
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, isRaw, maxRecords);
+        Ticker ticker = new Ticker(id, throttled);
+        ticker.future = scheduler.scheduleWithFixedDelay(ticker, period, period, TimeUnit.MILLISECONDS);
+        return throttled;
+    }
+
+    /**
+     * Parses the interval that a client asked for.
+     *
+     * @param interval The String interval in ms. It can be null.
+     * @return The interval or null if it was not given.
+     * @throws NumberFormatException if the interval is not a number.
+     */
+    public static Long parse(String interval) {
+        return interval == null ? null : Long.valueOf(interval.trim());
+    }
+
+    /**
+     * Stops throttling.
+     */
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+        flusher.shutdownNow();
+    }
+}
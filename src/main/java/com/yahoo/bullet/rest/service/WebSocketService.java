@@ -6,48 +6,108 @@
 package com.yahoo.bullet.rest.service;
 
 import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.rest.common.CBOREncoder;
+import com.yahoo.bullet.rest.common.JSONEncoder;
 import com.yahoo.bullet.rest.model.WebSocketResponse;
+import com.yahoo.bullet.rest.query.QueryHandler;
 import com.yahoo.bullet.rest.query.WebSocketQueryHandler;
 import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
 
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-@Service
+/**
+ * Manages the queries of WebSocket sessions. A session has at most one query, which is killed when the session
+ * disconnects. If a grace period is configured, the query is instead kept running for that long after its session
+ * disconnects and its results are buffered. A client that reconnects can resume it with the token it was sent when it
+ * submitted the query. See {@link #resumeQuery(String, String)}.
+ */
+@Service @Slf4j
 public class WebSocketService {
+    static final char TOKEN_SEPARATOR = '.';
+    private static final int TOKEN_BYTES = 16;
+
+    @RequiredArgsConstructor
+    static class Resumable {
+        private final String token;
+        private final WebSocketQueryHandler handler;
+        private boolean detached = false;
+        private ScheduledFuture<?> expiry;
+
+        private boolean matches(String token) {
+            return MessageDigest.isEqual(this.token.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
     private HandlerService handlerService;
     private QueryService queryService;
     private SimpMessagingTemplate messagingTemplate;
     private String clientDestination;
+    private long resumeGrace;
+    private int resumeBufferSize;
+    private ScheduledExecutorService scheduler;
+    private final SecureRandom random = new SecureRandom();
 
     // Exposed for testing only.
     @Getter(AccessLevel.PACKAGE)
     private Map<String, String> sessionIDMap;
+    @Getter(AccessLevel.PACKAGE)
+    private Map<String, Resumable> resumables;
 
     /**
-     * Constructor.
+     * Constructor that takes the settings for resuming the queries of disconnected sessions.
      *
      * @param queryService The {@link QueryService} to use.
      * @param handlerService The {@link HandlerService} to use.
      * @param messagingTemplate The {@link SimpMessagingTemplate} to use.
      * @param clientDestination The client destination to use for websockets.
+     * @param resumeGrace The time in ms to keep the query of a disconnected session running for. If not positive, it is
+     *                    killed right away and queries cannot be resumed.
+     * @param resumeBufferSize The maximum number of results to buffer for a disconnected session.
      */
     @Autowired
     public WebSocketService(QueryService queryService, HandlerService handlerService,
                             SimpMessagingTemplate messagingTemplate,
-                            @Value("${bullet.websocket.client.destination}") String clientDestination) {
+                            @Value("${bullet.websocket.client.destination}") String clientDestination,
+                            @Value("${bullet.websocket.resume.grace.ms}") long resumeGrace,
+                            @Value("${bullet.websocket.resume.buffer.size}") int resumeBufferSize) {
         this.queryService = queryService;
         this.handlerService = handlerService;
         this.messagingTemplate = messagingTemplate;
         this.clientDestination = clientDestination;
+        this.resumeGrace = resumeGrace;
+        this.resumeBufferSize = Math.max(resumeBufferSize, 1);
         this.sessionIDMap = new ConcurrentHashMap<>();
+        this.resumables = new ConcurrentHashMap<>();
+        if (resumeGrace > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("websocket-resume-");
+            threadFactory.setDaemon(true);
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
     }
+
     /**
      * Kills the query and cleans up.
      *
@@ -69,7 +129,109 @@ public class WebSocketService {
      * @param sessionID The session ID to be deleted.
      */
     public void deleteSession(String sessionID) {
+        String queryID = sessionIDMap.remove(sessionID);
+        if (queryID != null) {
+            resumables.remove(queryID);
+        }
+    }
+
+    /**
+     * Makes a query resumable if its session disconnects. This does nothing if there is no grace period.
+     *
+     * @param queryID The query ID.
+     * @param handler The {@link WebSocketQueryHandler} of the query.
+     * @return The token to resume the query with or null if it cannot be resumed.
+     */
+    public String makeResumable(String queryID, WebSocketQueryHandler handler) {
+        if (scheduler == null) {
+            return null;
+        }
+        byte[] secret = new byte[TOKEN_BYTES];
+        random.nextBytes(secret);
+        String token = queryID + TOKEN_SEPARATOR + Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+        resumables.put(queryID, new Resumable(token, handler));
+        return token;
+    }
+
+    /**
+     * Handles a session disconnecting. Its query is killed unless it is resumable, in which case it keeps running for
+     * the grace period with its results buffered.
+     *
+     * @param sessionID The session ID of the client.
+     */
+    public void disconnect(String sessionID) {
+        String queryID = sessionIDMap.get(sessionID);
+        Resumable resumable = queryID == null ? null : resumables.get(queryID);
+        if (resumable == null) {
+            killQuery(sessionID, null);
+            return;
+        }
         sessionIDMap.remove(sessionID);
+        synchronized (resumable) {
+            resumable.handler.detach(resumeBufferSize);
+            resumable.detached = true;
+            resumable.expiry = scheduler.schedule(() -> expire(queryID, resumable), resumeGrace, TimeUnit.MILLISECONDS);
+        }
+        log.debug("Keeping query {} of disconnected session {} for {} ms", queryID, sessionID, resumeGrace);
+    }
+
+    /**
+     * Resumes the query of a disconnected session in the given session. The results that were buffered while it was
+     * disconnected are sent first. The query keeps running on the backend throughout, so nothing is recomputed.
+     *
+     * @param token The token that was sent with the query. See {@link #makeResumable(String, WebSocketQueryHandler)}.
+     * @param sessionID The session ID of the client resuming the query.
+     * @return true if the query was resumed or false if the token does not match a disconnected query.
+     */
+    public boolean resumeQuery(String token, String sessionID) {
+        int separator = token == null ? -1 : token.lastIndexOf(TOKEN_SEPARATOR);
+        if (separator < 0) {
+            return false;
+        }
+        String queryID = token.substring(0, separator);
+        Resumable resumable = resumables.get(queryID);
+        if (resumable == null || !resumable.matches(token)) {
+            return false;
+        }
+        synchronized (resumable) {
+            if (!resumable.detached) {
+                return false;
+            }
+            resumable.detached = false;
+            resumable.expiry.cancel(false);
+            sessionIDMap.put(sessionID, queryID);
+            resumable.handler.resume(sessionID);
+        }
+        if (resumable.handler.isComplete()) {
+            deleteSession(sessionID);
+        }
+        log.debug("Resumed query {} in session {}", queryID, sessionID);
+        return true;
+    }
+
+    private void expire(String queryID, Resumable resumable) {
+        synchronized (resumable) {
+            if (!resumable.detached) {
+                return;
+            }
+            resumable.detached = false;
+            resumables.remove(queryID);
+        }
+        if (!resumable.handler.isComplete()) {
+            log.debug("Killing query {} since it was not resumed in time", queryID);
+            handlerService.removeHandler(queryID);
+            queryService.kill(queryID);
+        }
+    }
+
+    /**
+     * Stops the expiry of disconnected queries.
+     */
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
     }
 
     /**
@@ -81,20 +243,30 @@ public class WebSocketService {
      * @param queryString The string representation of the query.
      * @param queryHandler The Query Handler to submit the query.
      */
-    public void submitQuery(String queryID, String sessionID, Query query, String queryString, WebSocketQueryHandler queryHandler) {
+    public void submitQuery(String queryID, String sessionID, Query query, String queryString, QueryHandler queryHandler) {
         sessionIDMap.put(sessionID, queryID);
         handlerService.addHandler(queryID, queryHandler);
         queryService.submit(queryID, query, queryString);
     }
 
     /**
-     * Sends a response to the client through WebSocket connection.
+     * Sends a response to the client through WebSocket connection. The response is encoded to JSON bytes with
+     * {@link JSONEncoder} and sent as is, without going through the message converters. If the content type in the
+     * given headers is {@link CBOREncoder#MEDIA_TYPE}, it is encoded with {@link CBOREncoder} instead.
      *
      * @param sessionID The session ID to represent the client.
      * @param response The {@link WebSocketResponse} response to be sent.
      * @param headerAccessor The {@link SimpMessageHeaderAccessor} headers to be associated with the response message.
      */
     public void sendResponse(String sessionID, WebSocketResponse response, SimpMessageHeaderAccessor headerAccessor) {
-        messagingTemplate.convertAndSendToUser(sessionID, clientDestination, response, headerAccessor.getMessageHeaders());
+        boolean isCBOR = CBOREncoder.MEDIA_TYPE.equals(headerAccessor.getContentType());
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.copyHeaders(headerAccessor.getMessageHeaders());
+        accessor.setSessionId(sessionID);
+        accessor.setContentType(isCBOR ? CBOREncoder.MEDIA_TYPE : MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        byte[] payload = isCBOR ? CBOREncoder.encode(response) : JSONEncoder.encode(response);
+        Message<byte[]> message = MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+        messagingTemplate.send(messagingTemplate.getUserDestinationPrefix() + sessionID + clientDestination, message);
     }
 }
@@ -5,11 +5,17 @@
  */
 package com.yahoo.bullet.rest;
 
+import com.yahoo.bullet.rest.service.DisconnectService;
+import com.yahoo.bullet.rest.service.RateLimitService;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.testng.annotations.Test;
 
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -22,4 +28,27 @@ public class APIConfigurationTest {
         corsConfigurer.addCorsMappings(mockRegistry);
         verify(mockRegistry).addMapping(eq("/**"));
     }
+
+    @Test
+    public void testAsyncConfiguration() {
+        APIConfiguration configuration = new APIConfiguration();
+        DisconnectService disconnectService = mock(DisconnectService.class);
+        WebMvcConfigurer asyncConfigurer = configuration.asyncConfigurer(disconnectService);
+        AsyncSupportConfigurer mockConfigurer = mock(AsyncSupportConfigurer.class);
+        asyncConfigurer.configureAsyncSupport(mockConfigurer);
+        verify(mockConfigurer).registerDeferredResultInterceptors(disconnectService);
+    }
+
+    @Test
+    public void testRateLimitConfiguration() {
+        APIConfiguration configuration = new APIConfiguration();
+        RateLimitService rateLimitService = mock(RateLimitService.class);
+        String[] paths = { "/validate", "/http" };
+        WebMvcConfigurer rateLimitConfigurer = configuration.rateLimitConfigurer(rateLimitService, paths);
+        InterceptorRegistry mockRegistry = mock(InterceptorRegistry.class);
+        InterceptorRegistration mockRegistration = mock(InterceptorRegistration.class);
+        doReturn(mockRegistration).when(mockRegistry).addInterceptor(rateLimitService);
+        rateLimitConfigurer.addInterceptors(mockRegistry);
+        verify(mockRegistration).addPathPatterns(paths);
+    }
 }
@@ -9,6 +9,7 @@ import com.yahoo.bullet.common.BulletConfig;
 import com.yahoo.bullet.pubsub.BulletPubSubResponder;
 import com.yahoo.bullet.pubsub.PubSubResponder;
 import com.yahoo.bullet.rest.AsyncConfiguration.ResponderClasses;
+import com.yahoo.bullet.rest.common.ResultStore;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -36,4 +37,11 @@ public class AsyncConfigurationTest {
         responderClasses.setClasses(classes);
         responderClasses.create();
     }
+
+    @Test
+    public void testResultStore() {
+        ResultStore store = new AsyncConfiguration().resultStore(10, 1024L, "", 1024L, 60000L);
+        store.register("id");
+        Assert.assertNotNull(store.get("id"));
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.pubsub.PubSubResponder;
+import com.yahoo.bullet.rest.ClusterConfiguration.Cluster;
+import com.yahoo.bullet.rest.common.IsolatedResponder;
+import com.yahoo.bullet.rest.common.ResponseRouter;
+import com.yahoo.bullet.rest.common.Utils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ClusterConfigurationTest {
+    @AfterMethod
+    public void teardown() {
+        Utils.setInstanceTag(null);
+    }
+
+    @Test
+    public void testTaggingQueryIDs() {
+        Cluster cluster = new ClusterConfiguration().cluster("a", "secret", 100);
+        Assert.assertEquals(cluster.getInstance(), "a");
+        Assert.assertEquals(cluster.getToken(), "secret");
+        Assert.assertEquals(Utils.getInstanceTag(Utils.getNewQueryID()), "a");
+    }
+
+    @Test
+    public void testCreatingARouter() {
+        Cluster cluster = new ClusterConfiguration().cluster("a", "secret", 100);
+        Map<String, String> peers = new HashMap<>();
+        peers.put("a", "http://a/cluster");
+        peers.put("b", "http://b/cluster");
+        cluster.setPeers(peers);
+        PubSubResponder local = mock(PubSubResponder.class);
+
+        ResponseRouter router = cluster.create(Collections.singletonList(local), 10, 0, 0L);
+        PubSubMessage message = new PubSubMessage("a_1", "foo");
+        router.respond("a_1", message);
+        verify(local).respond("a_1", message);
+
+        // Only the other instance has a forwarder
+        Map<String, Number> metrics = router.extractMetrics();
+        Assert.assertTrue(metrics.containsKey(IsolatedResponder.PREFIX + "cluster.peer.b." + IsolatedResponder.RESPONDED));
+        Assert.assertFalse(metrics.containsKey(IsolatedResponder.PREFIX + "cluster.peer.a." + IsolatedResponder.RESPONDED));
+        router.close();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidInstance() {
+        new ClusterConfiguration().cluster("a.b", "secret", 100);
+    }
+
+    @Test
+    public void testRefusingAnEmptyToken() {
+        try {
+            new ClusterConfiguration().cluster("a", "", 100);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            new ClusterConfiguration().cluster("a", null, 100);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        Assert.assertNull(Utils.getInstanceTag(Utils.getNewQueryID()));
+    }
+}
@@ -14,10 +14,19 @@ public class MetricConfigurationTest {
     @Test
     public void testCreatingPublisher() {
         MetricConfiguration configuration = new MetricConfiguration();
-        MetricPublisher publisher;
-        publisher = configuration.metricPublisher(false, null);
+        MetricPublisher<?> publisher;
+        publisher = configuration.metricPublisher(false, true, null);
         Assert.assertNull(publisher);
-        publisher = configuration.metricPublisher(true, "metric_defaults.yaml");
+        publisher = configuration.metricPublisher(true, false, null);
+        Assert.assertNull(publisher);
+        publisher = configuration.metricPublisher(true, true, "metric_defaults.yaml");
         Assert.assertTrue(publisher instanceof HTTPMetricEventPublisher);
     }
+
+    @Test
+    public void testCreatingRegistry() {
+        MetricConfiguration configuration = new MetricConfiguration();
+        Assert.assertNull(configuration.metricRegistry(false));
+        Assert.assertNotNull(configuration.metricRegistry(true));
+    }
 }
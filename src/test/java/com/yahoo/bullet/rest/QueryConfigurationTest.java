@@ -8,6 +8,12 @@ package com.yahoo.bullet.rest;
 import com.yahoo.bullet.bql.BQLConfig;
 import com.yahoo.bullet.bql.BulletQueryBuilder;
 import com.yahoo.bullet.common.BulletConfig;
+import com.yahoo.bullet.rest.common.ConcurrencyLimiter;
+import com.yahoo.bullet.rest.common.CostBudget;
+import com.yahoo.bullet.rest.common.QueryIDGenerator;
+import com.yahoo.bullet.rest.common.TimeOrderedQueryIDGenerator;
+import com.yahoo.bullet.rest.common.UUIDQueryIDGenerator;
+import com.yahoo.bullet.rest.common.Utils;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -37,4 +43,51 @@ public class QueryConfigurationTest {
         BulletQueryBuilder queryBuilder = configuration.bulletQueryBuilder(configuration.bqlConfig(null));
         Assert.assertNotNull(queryBuilder);
     }
+
+    @Test
+    public void testQueryIDGenerator() throws Exception {
+        QueryConfiguration configuration = new QueryConfiguration();
+        QueryIDGenerator generator = configuration.queryIDGenerator(UUIDQueryIDGenerator.class.getName());
+        try {
+            Assert.assertTrue(generator instanceof UUIDQueryIDGenerator);
+            Assert.assertEquals(Utils.getNewQueryID().length(), 36);
+        } finally {
+            Utils.setQueryIDGenerator(new TimeOrderedQueryIDGenerator());
+        }
+    }
+
+    @Test(expectedExceptions = ClassNotFoundException.class)
+    public void testMissingQueryIDGenerator() throws Exception {
+        new QueryConfiguration().queryIDGenerator("does.not.Exist");
+    }
+
+    @Test
+    public void testFixedConcurrencyLimiter() {
+        ConcurrencyLimiter limiter = new QueryConfiguration().concurrencyLimiter(50, false, 10, 100L, 0.5);
+        limiter.onFailure();
+        Assert.assertEquals(limiter.getLimit(), 50);
+    }
+
+    @Test
+    public void testAdaptiveConcurrencyLimiter() {
+        ConcurrencyLimiter limiter = new QueryConfiguration().concurrencyLimiter(50, true, 10, 100L, 0.5);
+        Assert.assertEquals(limiter.getLimit(), 50);
+        limiter.onFailure();
+        Assert.assertEquals(limiter.getLimit(), 25);
+    }
+
+    @Test
+    public void testUnboundedCostBudget() {
+        CostBudget budget = new QueryConfiguration().costBudget(false, 10.0);
+        Assert.assertFalse(budget.isBounded());
+        Assert.assertTrue(budget.tryAcquire("a", 100.0));
+        Assert.assertTrue(budget.tryAcquire("b", 100.0));
+    }
+
+    @Test
+    public void testCostBudget() {
+        CostBudget budget = new QueryConfiguration().costBudget(true, 10.0);
+        Assert.assertTrue(budget.isBounded());
+        Assert.assertEquals(budget.getCapacity(), 10.0);
+    }
 }
@@ -15,11 +15,13 @@ import com.yahoo.bullet.query.Query;
 import com.yahoo.bullet.query.Window;
 import com.yahoo.bullet.query.aggregations.AggregationType;
 import com.yahoo.bullet.query.aggregations.Raw;
+import com.yahoo.bullet.rest.common.MetricRegistry;
 import com.yahoo.bullet.storage.StorageManager;
 import lombok.Getter;
 import org.testng.Assert;
 
 import java.io.Serializable;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import static com.yahoo.bullet.common.SerializerDeserializer.toBytes;
@@ -127,6 +129,18 @@ public class TestHelpers {
         Assert.assertEquals(actualMetadata.getContent(), expectedMetadata.getContent());
     }
 
+    public static void assertOnlyMetricEquals(MetricRegistry registry, String name, long value) {
+        // Only the metrics that share the prefix of the given one, such as the other statuses, have to be 0
+        String prefix = name.substring(0, name.lastIndexOf('.') + 1);
+        Map<String, Number> metrics = registry.extractMetrics();
+        Assert.assertEquals(metrics.get(name).longValue(), value);
+        metrics.forEach((key, metric) -> {
+            if (key.startsWith(prefix) && !key.equals(name)) {
+                Assert.assertEquals(metric.longValue(), 0L);
+            }
+        });
+    }
+
     public static BulletQueryBuilder getQueryBuilder() {
         return QUERY_BUILDER;
     }
@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.rest.common.BQLTokenizer.Kind;
+import com.yahoo.bullet.rest.common.BQLTokenizer.Token;
+import com.yahoo.bullet.rest.common.BQLTokenizer.Tokens;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+public class BQLTokenizerTest {
+    private static List<String> texts(Tokens tokens) {
+        return tokens.getTokens().stream().map(Token::getText).collect(toList());
+    }
+
+    @Test
+    public void testTokenizing() {
+        Tokens tokens = BQLTokenizer.tokenize("SELECT a.b, \"c d\" FROM STREAM(1000, TIME) WHERE e >= 1.5e-3 AND f != 'it''s' -- comment\nLIMIT 1;");
+        Assert.assertFalse(tokens.hasError());
+        Assert.assertEquals(texts(tokens), Arrays.asList("SELECT", "a", ".", "b", ",", "\"c d\"", "FROM", "STREAM", "(", "1000", ",",
+                                                         "TIME", ")", "WHERE", "e", ">=", "1.5e-3", "AND", "f", "!=", "'it''s'",
+                                                         "LIMIT", "1", ";"));
+        Assert.assertEquals(tokens.getTokens().get(5).getKind(), Kind.QUOTED_IDENTIFIER);
+        Assert.assertEquals(tokens.getTokens().get(16).getKind(), Kind.NUMBER);
+        Assert.assertEquals(tokens.getTokens().get(20).getKind(), Kind.STRING);
+        Assert.assertEquals(tokens.getTokens().get(21).getOffset(), tokens.getText().indexOf("LIMIT"));
+        Assert.assertTrue(tokens.getTokens().get(0).is("select"));
+    }
+
+    @Test
+    public void testLexicalErrors() {
+        Tokens tokens = BQLTokenizer.tokenize("SELECT 'foo FROM STREAM()");
+        Assert.assertTrue(tokens.hasError());
+        Assert.assertEquals(tokens.getError(), "Unterminated string");
+        Assert.assertEquals(tokens.getErrorOffset(), 7);
+
+        tokens = BQLTokenizer.tokenize("SELECT a\n  # b");
+        Assert.assertEquals(tokens.getError(), "Unexpected character #");
+        Assert.assertEquals(BQLTokenizer.position(tokens.getText(), tokens.getErrorOffset()), "2:3");
+    }
+
+    @Test
+    public void testReusingPreviousTokens() {
+        Tokens previous = BQLTokenizer.tokenize("SELECT abc FROM STREAM()");
+        Tokens tokens = BQLTokenizer.tokenize("SELECT abcd FROM STREAM()", previous);
+        Assert.assertEquals(texts(tokens), Arrays.asList("SELECT", "abcd", "FROM", "STREAM", "(", ")"));
+        // The tokens before the change are the same instances
+        Assert.assertSame(tokens.getTokens().get(0), previous.getTokens().get(0));
+        Assert.assertNotSame(tokens.getTokens().get(1), previous.getTokens().get(1));
+        Assert.assertEquals(texts(tokens), texts(BQLTokenizer.tokenize(tokens.getText())));
+
+        tokens = BQLTokenizer.tokenize("SELECT 'abc FROM STREAM()", previous);
+        Assert.assertTrue(tokens.hasError());
+        tokens = BQLTokenizer.tokenize("DELETE", previous);
+        Assert.assertEquals(texts(tokens), Arrays.asList("DELETE"));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.common.BulletError;
+import com.yahoo.bullet.typesystem.Type;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BQLValidatorTest {
+    private Map<String, Type> schema;
+    private BQLValidator validator;
+
+    private void assertValid(String bql) {
+        List<BulletError> errors = validator.validate(bql, schema::get);
+        Assert.assertTrue(errors.isEmpty(), errors.isEmpty() ? "" : errors.get(0).getError());
+    }
+
+    private void assertError(String bql, String error) {
+        List<BulletError> errors = validator.validate(bql, schema::get);
+        Assert.assertEquals(errors.size(), 1);
+        Assert.assertEquals(errors.get(0).getError(), error);
+        Assert.assertEquals(errors.get(0).getResolutions().get(0), BQLValidator.RESOLUTION);
+    }
+
+    @BeforeMethod
+    public void setup() {
+        schema = new HashMap<>();
+        schema.put("a", Type.LONG);
+        schema.put("b", Type.STRING);
+        schema.put("c", Type.STRING_MAP);
+        schema.put("d", Type.BOOLEAN);
+        schema.put("e f", Type.DOUBLE);
+        validator = new BQLValidator(10);
+    }
+
+    @Test
+    public void testValidQueries() {
+        assertValid("SELECT * FROM STREAM(1000, TIME) LIMIT 1");
+        assertValid("select a, b AS x, c.y, c['z'], \"e f\" from stream() where a > 5 and b = 'foo' and d order by x limit 5");
+        assertValid("SELECT COUNT(*) AS n, AVG(a) FROM STREAM(30000, TIME) GROUP BY b HAVING n > 1 WINDOWING TUMBLING(1000, TIME)");
+        assertValid("SELECT k, v FROM STREAM() LATERAL VIEW EXPLODE(c) AS (k, v) WHERE CAST(a AS STRING) = 'foo'");
+    }
+
+    @Test
+    public void testStructuralErrors() {
+        assertError("", "1:1: The query is empty");
+        assertError("FROM STREAM()", "1:1: The query must start with SELECT");
+        assertError("SELECT a FROM STREAM(", "1:21: Unmatched (");
+        assertError("SELECT a) FROM STREAM()", "1:9: Unmatched )");
+        assertError("SELECT a FROM b", "1:16: The query must have a FROM STREAM clause");
+        assertError("SELECT a FROM\nSTREAM() WHERE b = 'foo", "2:20: Unterminated string");
+    }
+
+    @Test
+    public void testSchemaErrors() {
+        assertError("SELECT g FROM STREAM()", "1:8: The field g does not exist in the schema");
+        assertError("SELECT \"e g\" FROM STREAM()", "1:8: The field e g does not exist in the schema");
+        assertError("SELECT a.b FROM STREAM()", "1:9: The field a is of type LONG and has no subfields");
+        assertError("SELECT * FROM STREAM() WHERE a = 'foo'", "1:34: The field a is of type LONG and cannot be compared to 'foo'");
+        assertError("SELECT * FROM STREAM() WHERE b > 5", "1:34: The field b is of type STRING and cannot be compared to 5");
+    }
+
+    @Test
+    public void testWithoutSchema() {
+        Assert.assertTrue(validator.validate("SELECT g.h FROM STREAM() WHERE a = 'foo'", null).isEmpty());
+    }
+
+    @Test
+    public void testReusingRecentQueries() {
+        String bql = "SELECT a FROM STREAM()";
+        assertValid(bql);
+        assertValid(bql);
+        assertError(bql + " WHERE g", "1:30: The field g does not exist in the schema");
+        assertValid(bql + " WHERE b = 'foo'");
+        assertError(bql + " WHERE b = 'foo", "1:34: Unterminated string");
+        assertValid(bql + " WHERE b = 'foo'");
+    }
+
+    @Test
+    public void testSearchingOnlyTheLatestQueries() {
+        validator = new BQLValidator(1000);
+        String bql = "SELECT a FROM STREAM()";
+        assertValid(bql);
+        for (int i = 0; i < 2 * BQLValidator.CANDIDATES; ++i) {
+            assertValid("SELECT b FROM STREAM() LIMIT " + i);
+        }
+        // The first query is no longer a candidate for its prefix but is still reused when it is seen again
+        assertValid(bql + " WHERE b = 'foo'");
+        assertValid(bql);
+    }
+
+    @Test
+    public void testWithoutACache() {
+        validator = new BQLValidator(0);
+        String bql = "SELECT a FROM STREAM()";
+        assertValid(bql);
+        assertValid(bql + " WHERE b = 'foo'");
+        assertError(bql + " WHERE g", "1:30: The field g does not exist in the schema");
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.yahoo.bullet.rest.model.WebSocketResponse;
+import com.yahoo.bullet.rest.query.QueryError;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class CBOREncoderTest {
+    private static final String RESULT;
+    static {
+        StringBuilder builder = new StringBuilder("{\"records\":[");
+        for (int i = 0; i < 500; ++i) {
+            builder.append(i == 0 ? "" : ",")
+                   .append("{\"id\":").append(i * 1000003L)
+                   .append(",\"event\":\"page_view\",\"score\":").append(i * 0.25)
+                   .append(",\"ratio\":").append(i / 3.0)
+                   .append(",\"active\":").append(i % 2 == 0)
+                   .append(",\"tags\":{\"region\":\"us-west\",\"device\":null}}");
+        }
+        builder.append("],\"meta\":{\"Query\":{\"ID\":\"foo\",\"Receive Time\":1610000000000},\"Window\":{\"Number\":-1}}}");
+        RESULT = builder.toString();
+    }
+
+    // A decoder for the subset of CBOR that the encoder produces.
+    private static class Decoder {
+        private final ByteBuffer buffer;
+
+        Decoder(byte[] bytes) {
+            buffer = ByteBuffer.wrap(bytes);
+        }
+
+        JsonElement decode() {
+            int head = buffer.get() & 0xFF;
+            switch (head) {
+                case 0x9F:
+                    JsonArray array = new JsonArray();
+                    while (!isBreak()) {
+                        array.add(decode());
+                    }
+                    return array;
+                case 0xBF:
+                    JsonObject map = new JsonObject();
+                    while (!isBreak()) {
+                        map.add(decode().getAsString(), decode());
+                    }
+                    return map;
+                case 0xF4:
+                    return new JsonPrimitive(false);
+                case 0xF5:
+                    return new JsonPrimitive(true);
+                case 0xF6:
+                    return JsonNull.INSTANCE;
+                case 0xFA:
+                    return new JsonPrimitive(buffer.getFloat());
+                case 0xFB:
+                    return new JsonPrimitive(buffer.getDouble());
+            }
+            long value = argument(head & 0x1F);
+            switch (head >> 5) {
+                case 0:
+                    return new JsonPrimitive(value);
+                case 1:
+                    return new JsonPrimitive(-1 - value);
+                case 3:
+                    byte[] text = new byte[(int) value];
+                    buffer.get(text);
+                    return new JsonPrimitive(new String(text, StandardCharsets.UTF_8));
+                case 5:
+                    JsonObject object = new JsonObject();
+                    for (long i = 0; i < value; ++i) {
+                        object.add(decode().getAsString(), decode());
+                    }
+                    return object;
+            }
+            throw new IllegalStateException("Unexpected head " + head);
+        }
+
+        boolean isEnd() {
+            return !buffer.hasRemaining();
+        }
+
+        private boolean isBreak() {
+            if ((buffer.get(buffer.position()) & 0xFF) == 0xFF) {
+                buffer.get();
+                return true;
+            }
+            return false;
+        }
+
+        private long argument(int info) {
+            switch (info) {
+                case 24:
+                    return buffer.get() & 0xFFL;
+                case 25:
+                    return buffer.getShort() & 0xFFFFL;
+                case 26:
+                    return buffer.getInt() & 0xFFFFFFFFL;
+                case 27:
+                    return buffer.getLong();
+                default:
+                    return info;
+            }
+        }
+    }
+
+    private static JsonElement decode(byte[] bytes) {
+        Decoder decoder = new Decoder(bytes);
+        JsonElement element = decoder.decode();
+        Assert.assertTrue(decoder.isEnd());
+        return element;
+    }
+
+    private static void assertRoundTrips(String json) {
+        Assert.assertEquals(normalize(decode(CBOREncoder.encode(json))), normalize(new JsonParser().parse(json)));
+    }
+
+    // Compares numbers by their double values since the encoding does not keep how they were written
+    private static JsonElement normalize(JsonElement element) {
+        if (element.isJsonArray()) {
+            JsonArray array = new JsonArray();
+            element.getAsJsonArray().forEach(e -> array.add(normalize(e)));
+            return array;
+        }
+        if (element.isJsonObject()) {
+            JsonObject object = new JsonObject();
+            element.getAsJsonObject().entrySet().forEach(e -> object.add(e.getKey(), normalize(e.getValue())));
+            return object;
+        }
+        if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber()) {
+            return new JsonPrimitive(element.getAsDouble());
+        }
+        return element;
+    }
+
+    @Test
+    public void testEncodingIntegers() {
+        Assert.assertEquals(CBOREncoder.encode("[0,23,24,255,256,65536,4294967296,-1,-25]"),
+                            new byte[] { (byte) 0x9F, 0x00, 0x17, 0x18, 0x18, 0x18, (byte) 0xFF, 0x19, 0x01, 0x00,
+                                         0x1A, 0x00, 0x01, 0x00, 0x00, 0x1B, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00,
+                                         0x00, 0x20, 0x38, 0x18, (byte) 0xFF });
+    }
+
+    @Test
+    public void testEncodingDecimals() {
+        Assert.assertEquals(CBOREncoder.encode("[1.5,0.1]"),
+                            new byte[] { (byte) 0x9F, (byte) 0xFA, 0x3F, (byte) 0xC0, 0x00, 0x00, (byte) 0xFB, 0x3F,
+                                         (byte) 0xB9, (byte) 0x99, (byte) 0x99, (byte) 0x99, (byte) 0x99, (byte) 0x99,
+                                         (byte) 0x9A, (byte) 0xFF });
+        assertRoundTrips("[1e3, 1.5E-7, 123456789012345678901234567890, -0.0]");
+    }
+
+    @Test
+    public void testEncodingStringsAndLiterals() {
+        Assert.assertEquals(CBOREncoder.encode("{\"a\":[true,false,null,\"\u00e9\"]}"),
+                            new byte[] { (byte) 0xBF, 0x61, 'a', (byte) 0x9F, (byte) 0xF5, (byte) 0xF4, (byte) 0xF6,
+                                         0x62, (byte) 0xC3, (byte) 0xA9, (byte) 0xFF, (byte) 0xFF });
+        assertRoundTrips("{\"escaped\":\"line\\nfeed \\\"quoted\\\" \\u20ac\",\"empty\":\"\",\"nested\":[[],{}]}");
+    }
+
+    @Test
+    public void testEncodingNonJSON() {
+        Assert.assertEquals(CBOREncoder.encode("foo"), new byte[] { 0x63, 'f', 'o', 'o' });
+        Assert.assertEquals(CBOREncoder.encode("{\"a\":1} trailing"), "p{\"a\":1} trailing".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(CBOREncoder.encode("{\"a\":"), new byte[] { 0x65, '{', '"', 'a', '"', ':' });
+        Assert.assertEquals(CBOREncoder.encode((String) null), new byte[] { (byte) 0xF6 });
+    }
+
+    @Test
+    public void testEncodingResults() {
+        assertRoundTrips(RESULT);
+        assertRoundTrips(new QueryError("foo", "bar").toString());
+    }
+
+    @Test
+    public void testEncodedResultsAreSmaller() {
+        byte[] json = RESULT.getBytes(StandardCharsets.UTF_8);
+        byte[] cbor = CBOREncoder.encode(RESULT);
+        Assert.assertTrue(cbor.length < json.length * 0.8, "CBOR was " + cbor.length + " bytes and JSON was " + json.length);
+    }
+
+    @Test
+    public void testEncodingWebSocketResponses() {
+        JsonObject ack = decode(CBOREncoder.encode(new WebSocketResponse(WebSocketResponse.Type.ACK, "123"))).getAsJsonObject();
+        Assert.assertEquals(ack.get("type").getAsString(), "ACK");
+        Assert.assertEquals(ack.get("content").getAsJsonPrimitive(), new JsonPrimitive("123"));
+
+        JsonObject message = decode(CBOREncoder.encode(new WebSocketResponse(WebSocketResponse.Type.MESSAGE, RESULT))).getAsJsonObject();
+        Assert.assertEquals(message.get("type").getAsString(), "MESSAGE");
+        Assert.assertEquals(normalize(message.get("content")), normalize(new JsonParser().parse(RESULT)));
+
+        JsonObject complete = decode(CBOREncoder.encode(new WebSocketResponse(WebSocketResponse.Type.COMPLETE, null))).getAsJsonObject();
+        Assert.assertEquals(complete.get("type").getAsString(), "COMPLETE");
+        Assert.assertTrue(complete.get("content").isJsonNull());
+    }
+
+    @Test
+    public void testPreferringCBOR() {
+        Assert.assertTrue(CBOREncoder.isPreferred("application/cbor"));
+        Assert.assertTrue(CBOREncoder.isPreferred("application/cbor, application/json;q=0.5"));
+        Assert.assertTrue(CBOREncoder.isPreferred("text/plain, application/cbor"));
+        Assert.assertFalse(CBOREncoder.isPreferred("application/json, application/cbor"));
+        Assert.assertFalse(CBOREncoder.isPreferred("application/json;q=1.0, application/cbor;q=0.5"));
+        Assert.assertFalse(CBOREncoder.isPreferred("application/cbor;q=0"));
+        Assert.assertFalse(CBOREncoder.isPreferred("*/*"));
+        Assert.assertFalse(CBOREncoder.isPreferred("not a media type"));
+        Assert.assertFalse(CBOREncoder.isPreferred(""));
+        Assert.assertFalse(CBOREncoder.isPreferred(null));
+    }
+}
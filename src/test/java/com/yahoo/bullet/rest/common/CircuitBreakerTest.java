@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CircuitBreakerTest {
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("foo", 2, 3600000L);
+        Assert.assertTrue(breaker.allow());
+        breaker.failure();
+        breaker.success();
+        breaker.failure();
+        Assert.assertFalse(breaker.isOpen());
+        Assert.assertTrue(breaker.allow());
+        breaker.failure();
+        Assert.assertTrue(breaker.isOpen());
+        Assert.assertFalse(breaker.allow());
+    }
+
+    @Test
+    public void testNeverOpensWithoutThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker("foo", 0, 0L);
+        for (int i = 0; i < 100; ++i) {
+            breaker.failure();
+        }
+        Assert.assertFalse(breaker.isOpen());
+        Assert.assertTrue(breaker.allow());
+    }
+
+    @Test
+    public void testLetsOneAttemptThroughAfterCoolDown() {
+        CircuitBreaker breaker = new CircuitBreaker("foo", 1, 0L);
+        breaker.failure();
+        Assert.assertTrue(breaker.isOpen());
+        Assert.assertTrue(breaker.allow());
+        Assert.assertFalse(breaker.allow());
+
+        breaker.failure();
+        Assert.assertTrue(breaker.isOpen());
+        Assert.assertTrue(breaker.allow());
+        breaker.success();
+        Assert.assertFalse(breaker.isOpen());
+        Assert.assertTrue(breaker.allow());
+        Assert.assertTrue(breaker.allow());
+    }
+}
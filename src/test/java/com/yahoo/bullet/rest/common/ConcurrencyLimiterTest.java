@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrencyLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    @Test
+    public void testFixedLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(5);
+        Assert.assertEquals(limiter.getLimit(), 5);
+        limiter.onFailure();
+        limiter.onSample(Long.MAX_VALUE, 5, false);
+        limiter.onSample(FAST, 5, false);
+        Assert.assertEquals(limiter.getLimit(), 5);
+        Assert.assertFalse(limiter.isReached(4));
+        Assert.assertTrue(limiter.isReached(5));
+    }
+
+    @Test
+    public void testBackingOffOnFailuresAndSlowResponses() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 100, 100L, 0.5);
+        Assert.assertEquals(limiter.getLimit(), 100);
+        limiter.onSample(FAST, 100, true);
+        Assert.assertEquals(limiter.getLimit(), 50);
+        limiter.onSample(SLOW, 50, false);
+        Assert.assertEquals(limiter.getLimit(), 25);
+        limiter.onFailure();
+        Assert.assertEquals(limiter.getLimit(), 12);
+        limiter.onFailure();
+        Assert.assertEquals(limiter.getLimit(), 10);
+        Assert.assertTrue(limiter.isReached(10));
+    }
+
+    @Test
+    public void testGrowingOnlyWhenInUse() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 12, 100L, 0.5);
+        limiter.onFailure();
+        Assert.assertEquals(limiter.getLimit(), 10);
+        limiter.onSample(FAST, 4, false);
+        Assert.assertEquals(limiter.getLimit(), 10);
+        limiter.onSample(FAST, 5, false);
+        Assert.assertEquals(limiter.getLimit(), 11);
+        limiter.onSample(FAST, 11, false);
+        limiter.onSample(FAST, 12, false);
+        Assert.assertEquals(limiter.getLimit(), 12);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidLimits() {
+        new ConcurrencyLimiter(10, 5, 100L, 0.5);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRatio() {
+        new ConcurrencyLimiter(1, 5, 100L, 1.5);
+    }
+}
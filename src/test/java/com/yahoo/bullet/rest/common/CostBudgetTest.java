@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CostBudgetTest {
+    @Test
+    public void testAcquiringUpToTheCapacity() {
+        CostBudget budget = new CostBudget(10.0);
+        Assert.assertTrue(budget.isBounded());
+        Assert.assertTrue(budget.tryAcquire("a", 4.0));
+        Assert.assertTrue(budget.tryAcquire("b", 6.0));
+        Assert.assertEquals(budget.getUsed(), 10.0);
+        Assert.assertFalse(budget.tryAcquire("c", 0.5));
+
+        budget.release("a");
+        Assert.assertEquals(budget.getUsed(), 6.0);
+        Assert.assertTrue(budget.tryAcquire("c", 0.5));
+        Assert.assertEquals(budget.getUsed(), 6.5);
+    }
+
+    @Test
+    public void testAcquiringMoreThanTheCapacityWhenEmpty() {
+        CostBudget budget = new CostBudget(10.0);
+        Assert.assertTrue(budget.tryAcquire("a", 100.0));
+        Assert.assertFalse(budget.tryAcquire("b", 1.0));
+        budget.release("a");
+        Assert.assertEquals(budget.getUsed(), 0.0);
+        Assert.assertTrue(budget.tryAcquire("b", 1.0));
+    }
+
+    @Test
+    public void testReleasing() {
+        CostBudget budget = new CostBudget(10.0);
+        budget.tryAcquire("a", 0.1);
+        budget.tryAcquire("b", 0.2);
+        budget.release("missing");
+        budget.release("a");
+        budget.release("a");
+        Assert.assertEquals(budget.getUsed(), 0.2, 1e-9);
+        budget.release("b");
+        Assert.assertEquals(budget.getUsed(), 0.0);
+        budget.tryAcquire("c", 5.0);
+        budget.releaseAll();
+        Assert.assertEquals(budget.getUsed(), 0.0);
+        Assert.assertTrue(budget.tryAcquire("d", 10.0));
+    }
+
+    @Test
+    public void testUnbounded() {
+        CostBudget budget = new CostBudget();
+        Assert.assertFalse(budget.isBounded());
+        Assert.assertTrue(budget.tryAcquire("a", Double.MAX_VALUE));
+        Assert.assertTrue(budget.tryAcquire("b", 1.0));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new CostBudget(0.0);
+    }
+}
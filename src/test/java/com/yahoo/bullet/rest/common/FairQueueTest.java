@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+public class FairQueueTest {
+    private static Map<PriorityClass, Integer> weights(int interactive, int bulk) {
+        Map<PriorityClass, Integer> weights = new EnumMap<>(PriorityClass.class);
+        weights.put(PriorityClass.INTERACTIVE, interactive);
+        weights.put(PriorityClass.BULK, bulk);
+        return weights;
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingWeight() {
+        new FairQueue<>(Collections.singletonMap(PriorityClass.INTERACTIVE, 1), 10);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNonPositiveWeight() {
+        new FairQueue<>(weights(1, 0), 10);
+    }
+
+    @Test
+    public void testEmptyQueue() throws Exception {
+        FairQueue<String> queue = new FairQueue<>(weights(4, 1), 10);
+        Assert.assertNull(queue.poll());
+        Assert.assertNull(queue.poll(10L));
+    }
+
+    @Test
+    public void testCapacityIsPerClass() {
+        FairQueue<String> queue = new FairQueue<>(weights(4, 1), 2);
+        Assert.assertTrue(queue.offer(PriorityClass.BULK, "a"));
+        Assert.assertTrue(queue.offer(PriorityClass.BULK, "b"));
+        Assert.assertFalse(queue.offer(PriorityClass.BULK, "c"));
+        Assert.assertTrue(queue.offer(PriorityClass.INTERACTIVE, "d"));
+        Assert.assertEquals(queue.size(PriorityClass.BULK), 2);
+        Assert.assertEquals(queue.size(PriorityClass.INTERACTIVE), 1);
+    }
+
+    @Test
+    public void testPeekingAtTheOldestItemOfAClass() {
+        FairQueue<String> queue = new FairQueue<>(weights(4, 1), 10);
+        Assert.assertNull(queue.peek(PriorityClass.BULK));
+        queue.offer(PriorityClass.BULK, "a");
+        queue.offer(PriorityClass.BULK, "b");
+        queue.offer(PriorityClass.INTERACTIVE, "c");
+        Assert.assertEquals(queue.peek(PriorityClass.BULK), "a");
+        Assert.assertEquals(queue.peek(PriorityClass.INTERACTIVE), "c");
+        Assert.assertEquals(queue.size(PriorityClass.BULK), 2);
+    }
+
+    @Test
+    public void testItemsAreTakenByWeight() {
+        FairQueue<String> queue = new FairQueue<>(weights(4, 1), 100);
+        for (int i = 0; i < 10; ++i) {
+            queue.offer(PriorityClass.BULK, "b");
+            queue.offer(PriorityClass.INTERACTIVE, "i");
+        }
+        List<String> taken = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            taken.add(queue.poll());
+        }
+        Assert.assertEquals(Collections.frequency(taken, "i"), 8);
+        Assert.assertEquals(Collections.frequency(taken, "b"), 2);
+        // The rest are all bulk once the interactive ones run out
+        for (int i = 0; i < 8; ++i) {
+            taken.add(queue.poll());
+        }
+        Assert.assertEquals(Collections.frequency(taken, "i"), 10);
+        Assert.assertEquals(queue.poll(), "b");
+        Assert.assertEquals(queue.poll(), "b");
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testIdleClassDoesNotBuildUpCredit() {
+        FairQueue<String> queue = new FairQueue<>(weights(1, 1), 100);
+        for (int i = 0; i < 10; ++i) {
+            queue.offer(PriorityClass.BULK, "b");
+        }
+        for (int i = 0; i < 8; ++i) {
+            Assert.assertEquals(queue.poll(), "b");
+        }
+        queue.offer(PriorityClass.INTERACTIVE, "i");
+        queue.offer(PriorityClass.INTERACTIVE, "i");
+        // With equal weights, the classes take turns instead of the interactive one catching up
+        List<String> taken = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            taken.add(queue.poll());
+        }
+        Assert.assertEquals(Collections.frequency(taken, "i"), 2);
+        Assert.assertNotEquals(taken.subList(0, 2), Collections.nCopies(2, "i"));
+    }
+
+    @Test
+    public void testWaitingForAnItem() throws Exception {
+        FairQueue<String> queue = new FairQueue<>(weights(1, 1), 10);
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException ignored) {
+            }
+            queue.offer(PriorityClass.BULK, "a");
+        });
+        producer.start();
+        Assert.assertEquals(queue.poll(5000L), "a");
+        producer.join();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IdempotencyCacheTest {
+    private AtomicLong clock = new AtomicLong(1000L);
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNonPositiveMaxSize() {
+        new IdempotencyCache(0, 1000L);
+    }
+
+    @Test
+    public void testPuttingIfAbsent() {
+        IdempotencyCache cache = new IdempotencyCache(10, 1000L, clock::get);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        Assert.assertNull(cache.putIfAbsent("key", "a", first));
+
+        IdempotencyCache.Entry existing = cache.putIfAbsent("key", "b", new CompletableFuture<>());
+        Assert.assertNotNull(existing);
+        Assert.assertEquals(existing.getId(), "a");
+        Assert.assertSame(existing.getResult(), first);
+        Assert.assertNull(cache.putIfAbsent("other", "c", new CompletableFuture<>()));
+        Assert.assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void testRemovingOnlyTheGivenQuery() {
+        IdempotencyCache cache = new IdempotencyCache(10, 1000L, clock::get);
+        cache.putIfAbsent("key", "a", new CompletableFuture<>());
+        Assert.assertFalse(cache.remove("key", "b"));
+        Assert.assertFalse(cache.remove("other", "a"));
+        Assert.assertTrue(cache.remove("key", "a"));
+        Assert.assertNull(cache.putIfAbsent("key", "b", new CompletableFuture<>()));
+    }
+
+    @Test
+    public void testExpiring() {
+        IdempotencyCache cache = new IdempotencyCache(10, 1000L, clock::get);
+        cache.putIfAbsent("a", "1", new CompletableFuture<>());
+        clock.addAndGet(500L);
+        cache.putIfAbsent("b", "2", new CompletableFuture<>());
+        clock.addAndGet(499L);
+        Assert.assertEquals(cache.size(), 2);
+        clock.addAndGet(1L);
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertNull(cache.putIfAbsent("a", "3", new CompletableFuture<>()));
+        Assert.assertEquals(cache.putIfAbsent("b", "4", new CompletableFuture<>()).getId(), "2");
+    }
+
+    @Test
+    public void testEvictingTheOldestWhenFull() {
+        IdempotencyCache cache = new IdempotencyCache(2, 1000L, clock::get);
+        cache.putIfAbsent("a", "1", new CompletableFuture<>());
+        cache.putIfAbsent("b", "2", new CompletableFuture<>());
+        cache.putIfAbsent("c", "3", new CompletableFuture<>());
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertNull(cache.putIfAbsent("a", "4", new CompletableFuture<>()));
+        Assert.assertNull(cache.putIfAbsent("b", "5", new CompletableFuture<>()));
+    }
+}
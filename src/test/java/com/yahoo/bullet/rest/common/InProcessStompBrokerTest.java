@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+import org.springframework.util.MimeTypeUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("unchecked")
+public class InProcessStompBrokerTest {
+    private InProcessStompBroker broker;
+
+    private static Message<byte[]> frame(StompCommand command, String destination, String subscription, String receipt, String payload) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        if (subscription != null) {
+            accessor.setSubscriptionId(subscription);
+        }
+        if (receipt != null) {
+            accessor.setReceipt(receipt);
+        }
+        if (payload != null) {
+            accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        }
+        byte[] bytes = payload == null ? new byte[0] : payload.getBytes(StandardCharsets.UTF_8);
+        return MessageBuilder.createMessage(bytes, accessor.getMessageHeaders());
+    }
+
+    private static TcpConnection<byte[]> connect(InProcessStompBroker broker, TcpConnectionHandler<byte[]> handler) {
+        ArgumentCaptor<TcpConnection<byte[]>> captor = ArgumentCaptor.forClass(TcpConnection.class);
+        broker.connect(handler);
+        verify(handler).afterConnected(captor.capture());
+        return captor.getValue();
+    }
+
+    private static List<Message<byte[]>> received(TcpConnectionHandler<byte[]> handler, int count) {
+        ArgumentCaptor<Message<byte[]>> captor = ArgumentCaptor.forClass(Message.class);
+        verify(handler, times(count)).handleMessage(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static StompHeaderAccessor headers(Message<byte[]> message) {
+        return StompHeaderAccessor.wrap(message);
+    }
+
+    @BeforeMethod
+    public void setup() {
+        broker = new InProcessStompBroker("ignored", 0);
+    }
+
+    @Test
+    public void testConnecting() {
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        TcpConnection<byte[]> connection = connect(broker, handler);
+        Assert.assertEquals(broker.getConnectionCount(), 1);
+
+        Assert.assertTrue(connection.send(frame(StompCommand.CONNECT, null, null, null, null)).isDone());
+
+        StompHeaderAccessor connected = headers(received(handler, 1).get(0));
+        Assert.assertEquals(connected.getCommand(), StompCommand.CONNECTED);
+        Assert.assertEquals(connected.getVersion(), "1.2");
+    }
+
+    @Test
+    public void testIgnoringHeartbeats() {
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        TcpConnection<byte[]> connection = connect(broker, handler);
+
+        connection.send(MessageBuilder.createMessage(new byte[0], StompHeaderAccessor.createForHeartbeat().getMessageHeaders()));
+
+        verify(handler, never()).handleMessage(any());
+    }
+
+    @Test
+    public void testDeliveringAcrossConnections() {
+        TcpConnectionHandler<byte[]> subscriber = mock(TcpConnectionHandler.class);
+        TcpConnectionHandler<byte[]> other = mock(TcpConnectionHandler.class);
+        TcpConnectionHandler<byte[]> sender = mock(TcpConnectionHandler.class);
+        TcpConnection<byte[]> subscriberConnection = connect(broker, subscriber);
+        TcpConnection<byte[]> otherConnection = connect(broker, other);
+        TcpConnection<byte[]> senderConnection = connect(broker, sender);
+
+        subscriberConnection.send(frame(StompCommand.SUBSCRIBE, "/topic/response-usera", "sub-0", null, null));
+        otherConnection.send(frame(StompCommand.SUBSCRIBE, "/topic/response-userb", "sub-0", null, null));
+        Assert.assertEquals(broker.getSubscriptionCount(), 2);
+
+        senderConnection.send(frame(StompCommand.SEND, "/topic/response-usera", null, null, "{}"));
+
+        Message<byte[]> message = received(subscriber, 1).get(0);
+        StompHeaderAccessor accessor = headers(message);
+        Assert.assertEquals(accessor.getCommand(), StompCommand.MESSAGE);
+        Assert.assertEquals(accessor.getDestination(), "/topic/response-usera");
+        Assert.assertEquals(accessor.getSubscriptionId(), "sub-0");
+        Assert.assertNotNull(accessor.getMessageId());
+        Assert.assertEquals(accessor.getContentType(), MimeTypeUtils.APPLICATION_JSON);
+        Assert.assertEquals(new String(message.getPayload(), StandardCharsets.UTF_8), "{}");
+        verify(other, never()).handleMessage(any());
+        verify(sender, never()).handleMessage(any());
+    }
+
+    @Test
+    public void testUnsubscribing() {
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        TcpConnection<byte[]> connection = connect(broker, handler);
+        connection.send(frame(StompCommand.SUBSCRIBE, "/topic/response", "sub-0", null, null));
+        connection.send(frame(StompCommand.SUBSCRIBE, "/topic/response", "sub-1", null, null));
+
+        connection.send(frame(StompCommand.UNSUBSCRIBE, null, "sub-0", null, null));
+        Assert.assertEquals(broker.getSubscriptionCount(), 1);
+
+        connection.send(frame(StompCommand.SEND, "/topic/response", null, null, "{}"));
+        Assert.assertEquals(headers(received(handler, 1).get(0)).getSubscriptionId(), "sub-1");
+    }
+
+    @Test
+    public void testReceipts() {
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        TcpConnection<byte[]> connection = connect(broker, handler);
+
+        connection.send(frame(StompCommand.SUBSCRIBE, "/topic/response", "sub-0", "receipt-0", null));
+
+        StompHeaderAccessor receipt = headers(received(handler, 1).get(0));
+        Assert.assertEquals(receipt.getCommand(), StompCommand.RECEIPT);
+        Assert.assertEquals(receipt.getReceiptId(), "receipt-0");
+    }
+
+    @Test
+    public void testDisconnecting() {
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        TcpConnection<byte[]> connection = connect(broker, handler);
+        connection.send(frame(StompCommand.SUBSCRIBE, "/topic/response", "sub-0", null, null));
+
+        connection.send(frame(StompCommand.DISCONNECT, null, null, "receipt-0", null));
+
+        Assert.assertEquals(headers(received(handler, 1).get(0)).getCommand(), StompCommand.RECEIPT);
+        verify(handler).afterConnectionClosed();
+        Assert.assertEquals(broker.getConnectionCount(), 0);
+        Assert.assertEquals(broker.getSubscriptionCount(), 0);
+
+        // Closing again does nothing
+        connection.close();
+        verify(handler).afterConnectionClosed();
+    }
+
+    @Test
+    public void testShutdown() {
+        TcpConnectionHandler<byte[]> first = mock(TcpConnectionHandler.class);
+        TcpConnectionHandler<byte[]> second = mock(TcpConnectionHandler.class);
+        connect(broker, first);
+        connect(broker, second);
+
+        Assert.assertTrue(broker.shutdown().isDone());
+
+        verify(first).afterConnectionClosed();
+        verify(second).afterConnectionClosed();
+        Assert.assertEquals(broker.getConnectionCount(), 0);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.pubsub.PubSubResponder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class IsolatedResponderTest {
+    private static final String PREFIX = IsolatedResponder.PREFIX + "foo.";
+
+    private static PubSubResponder blockingResponder(CountDownLatch latch) {
+        PubSubResponder responder = mock(PubSubResponder.class);
+        doAnswer(invocation -> {
+            latch.await();
+            return null;
+        }).when(responder).respond(anyString(), any());
+        return responder;
+    }
+
+    private static void awaitPending(IsolatedResponder isolated) throws Exception {
+        long deadline = System.currentTimeMillis() + 1000L;
+        while (isolated.pending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        Assert.assertEquals(isolated.pending(), 0);
+    }
+
+    @Test
+    public void testRespondingOnAnotherThread() {
+        CountDownLatch latch = new CountDownLatch(1);
+        PubSubResponder responder = blockingResponder(latch);
+        IsolatedResponder isolated = new IsolatedResponder("foo", responder, 10, 60000L, 0, 0L);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        // Does not wait for the blocked responder
+        isolated.respond("id", message);
+        isolated.respond("id", message);
+        latch.countDown();
+        verify(responder, timeout(1000L).times(2)).respond("id", message);
+
+        isolated.close();
+        verify(responder).close();
+    }
+
+    @Test
+    public void testDroppingWhenQueueIsFull() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        PubSubResponder responder = blockingResponder(latch);
+        IsolatedResponder isolated = new IsolatedResponder("foo", responder, 1, 60000L, 0, 0L);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        isolated.respond("id", message);
+        verify(responder, timeout(1000L)).respond("id", message);
+        isolated.respond("id", message);
+        Assert.assertEquals(isolated.pending(), 2);
+        isolated.respond("id", message);
+        Assert.assertEquals(isolated.pending(), 2);
+        latch.countDown();
+        verify(responder, timeout(1000L).times(2)).respond("id", message);
+
+        isolated.close();
+        Map<String, Number> metrics = isolated.extractMetrics();
+        Assert.assertEquals(metrics.get(PREFIX + IsolatedResponder.DROPPED), 1L);
+    }
+
+    @Test
+    public void testTimingOutWaitingResponses() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        PubSubResponder responder = blockingResponder(latch);
+        IsolatedResponder isolated = new IsolatedResponder("foo", responder, 10, 10L, 0, 0L);
+        PubSubMessage first = new PubSubMessage("a", "foo");
+        PubSubMessage second = new PubSubMessage("b", "foo");
+        isolated.respond("a", first);
+        verify(responder, timeout(1000L)).respond("a", first);
+        isolated.respond("b", second);
+        Thread.sleep(50L);
+        latch.countDown();
+        awaitPending(isolated);
+        verify(responder, times(0)).respond("b", second);
+
+        isolated.close();
+        Map<String, Number> metrics = isolated.extractMetrics();
+        // Both the slow first response and the expired second response time out
+        Assert.assertEquals(metrics.get(PREFIX + IsolatedResponder.TIMED_OUT), 2L);
+    }
+
+    @Test
+    public void testRejectingWhileCircuitIsOpen() throws Exception {
+        PubSubResponder responder = mock(PubSubResponder.class);
+        doThrow(new RuntimeException("Testing")).when(responder).respond(anyString(), any());
+        IsolatedResponder isolated = new IsolatedResponder("foo", responder, 10, 60000L, 2, 3600000L);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        isolated.respond("id", message);
+        isolated.respond("id", message);
+        awaitPending(isolated);
+        verify(responder, times(2)).respond("id", message);
+        Map<String, Number> metrics = isolated.extractMetrics();
+        Assert.assertEquals(metrics.get(PREFIX + IsolatedResponder.FAILED), 2L);
+
+        isolated.respond("id", message);
+        isolated.close();
+        verify(responder, times(2)).respond("id", message);
+        metrics = isolated.extractMetrics();
+        Assert.assertEquals(metrics.get(PREFIX + IsolatedResponder.REJECTED), 1L);
+        Assert.assertEquals(metrics.get(PREFIX + IsolatedResponder.FAILED), 0L);
+    }
+
+    @Test
+    public void testCollectingLatency() throws Exception {
+        PubSubResponder responder = mock(PubSubResponder.class);
+        IsolatedResponder isolated = new IsolatedResponder("foo", responder, 10, 60000L, 0, 0L);
+        isolated.respond("id", new PubSubMessage("id", "foo"));
+        awaitPending(isolated);
+        verify(responder).respond(anyString(), any());
+        isolated.close();
+        Map<String, Number> metrics = isolated.extractMetrics();
+        Assert.assertTrue(metrics.containsKey(PREFIX + IsolatedResponder.LATENCY));
+    }
+}
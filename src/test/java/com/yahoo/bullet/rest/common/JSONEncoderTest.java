@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.bullet.rest.model.WebSocketResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class JSONEncoderTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static void assertEncodedLikeJackson(WebSocketResponse response) throws Exception {
+        byte[] actual = JSONEncoder.encode(response);
+        Assert.assertEquals(new String(actual, StandardCharsets.UTF_8), MAPPER.writeValueAsString(response));
+    }
+
+    @Test
+    public void testEncodingResults() throws Exception {
+        assertEncodedLikeJackson(new WebSocketResponse(WebSocketResponse.Type.MESSAGE, "{\"records\":[{\"a\":\"b\\\\c\"}],\"meta\":{}}"));
+        assertEncodedLikeJackson(new WebSocketResponse(WebSocketResponse.Type.ACK, "queryID"));
+        assertEncodedLikeJackson(new WebSocketResponse(WebSocketResponse.Type.FAIL, ""));
+        assertEncodedLikeJackson(new WebSocketResponse(WebSocketResponse.Type.COMPLETE, null));
+    }
+
+    @Test
+    public void testEncodingSpecialCharacters() throws Exception {
+        assertEncodedLikeJackson(new WebSocketResponse(WebSocketResponse.Type.MESSAGE, "line\nfeed\ttab\r\b\f\u0001\u001f"));
+        assertEncodedLikeJackson(new WebSocketResponse(WebSocketResponse.Type.MESSAGE, "caf\u00e9 \u20ac \ud83d\ude00 </script>"));
+    }
+
+    @Test
+    public void testEncodedLength() {
+        Assert.assertEquals(JSONEncoder.encodedLength(""), 2);
+        Assert.assertEquals(JSONEncoder.encodedLength("a\"\n\u0001"), 2 + 1 + 2 + 2 + 6);
+        Assert.assertEquals(JSONEncoder.encodedLength("\u00e9\u20ac\ud83d\ude00"), 2 + 2 + 3 + 4);
+        Assert.assertEquals(JSONEncoder.encodedLength("\ud83d"), 3);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.pubsub.Metadata;
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static com.yahoo.bullet.rest.TestHelpers.getQuery;
+
+public class MessageCacheTest {
+    @Test
+    public void testDisabledCache() {
+        MessageCache cache = new MessageCache(0);
+        cache.put("id", new PubSubMessage("id", "foo"));
+        Assert.assertNull(cache.get("id"));
+        cache.invalidate("id");
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertEquals(cache.getMetrics().get(MessageCache.MISSES), 0L);
+    }
+
+    @Test
+    public void testPutGetInvalidate() {
+        MessageCache cache = new MessageCache(10);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        cache.put("id", message);
+        cache.put("other", null);
+        Assert.assertEquals(cache.get("id"), message);
+        Assert.assertNull(cache.get("other"));
+        Assert.assertEquals(cache.size(), 1);
+        cache.invalidate("id");
+        Assert.assertNull(cache.get("id"));
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testMessagesAreCopied() {
+        MessageCache cache = new MessageCache(10);
+        byte[] content = { 1, 2, 3 };
+        PubSubMessage message = new PubSubMessage("id", content, new Metadata(null, "query"));
+        cache.put("id", message);
+        content[0] = 0;
+        message.getMetadata().setContent("changed");
+
+        PubSubMessage cached = cache.get("id");
+        Assert.assertNotSame(cached, message);
+        Assert.assertEquals(cached.getContentAsByteArray(), new byte[] { 1, 2, 3 });
+        Assert.assertEquals(cached.getMetadata().getContent(), "query");
+
+        cached.getContentAsByteArray()[0] = 0;
+        cached.setContent("changed");
+        Assert.assertEquals(cache.get("id").getContentAsByteArray(), new byte[] { 1, 2, 3 });
+        Assert.assertNotSame(cache.get("id"), cache.get("id"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        MessageCache cache = new MessageCache(2);
+        cache.put("a", new PubSubMessage("a", "foo"));
+        cache.put("b", new PubSubMessage("b", "foo"));
+        // Touch a so b is the least recently used
+        Assert.assertNotNull(cache.get("a"));
+        cache.put("c", new PubSubMessage("c", "foo"));
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("c"));
+        Assert.assertEquals(cache.getMetrics().get(MessageCache.EVICTIONS), 1L);
+    }
+
+    @Test
+    public void testMetrics() {
+        MessageCache cache = new MessageCache(10);
+        Assert.assertEquals(cache.getMetrics().get(MessageCache.HIT_RATIO), 0.0);
+        cache.put("a", new PubSubMessage("a", new byte[100]));
+        cache.put("b", new PubSubMessage("b", getQuery()));
+        cache.get("a");
+        cache.get("a");
+        cache.get("a");
+        cache.get("c");
+
+        Map<String, Number> metrics = cache.getMetrics();
+        Assert.assertEquals(metrics.get(MessageCache.HITS), 3L);
+        Assert.assertEquals(metrics.get(MessageCache.MISSES), 1L);
+        Assert.assertEquals(metrics.get(MessageCache.HIT_RATIO), 0.75);
+        Assert.assertEquals(metrics.get(MessageCache.SIZE), 2);
+        long memory = metrics.get(MessageCache.MEMORY).longValue();
+        Assert.assertTrue(memory > 100L);
+
+        cache.invalidate("b");
+        Assert.assertEquals(cache.getMetrics().get(MessageCache.MEMORY), 102L);
+        cache.put("a", new PubSubMessage("a", "foo"));
+        Assert.assertEquals(cache.getMetrics().get(MessageCache.MEMORY), 8L);
+        cache.invalidate("a");
+        Assert.assertEquals(cache.getMetrics().get(MessageCache.MEMORY), 0L);
+    }
+}
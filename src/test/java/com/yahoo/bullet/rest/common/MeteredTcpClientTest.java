@@ -0,0 +1,198 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.tcp.ReconnectStrategy;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+import org.springframework.messaging.tcp.TcpOperations;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("unchecked")
+public class MeteredTcpClientTest {
+    private InProcessStompBroker broker;
+    private MeteredTcpClient client;
+
+    private static Message<byte[]> frame(StompCommand command, String destination, String session, String payload) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setDestination(destination);
+        accessor.setSubscriptionId("sub-0");
+        if (session != null) {
+            accessor.setSessionId(session);
+        }
+        return MessageBuilder.createMessage(payload.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    private static TcpConnection<byte[]> getConnection(TcpConnectionHandler<byte[]> handler) {
+        ArgumentCaptor<TcpConnection<byte[]>> captor = ArgumentCaptor.forClass(TcpConnection.class);
+        verify(handler).afterConnected(captor.capture());
+        return captor.getValue();
+    }
+
+    private static TcpConnection<byte[]> connect(MeteredTcpClient client, TcpConnectionHandler<byte[]> handler) {
+        client.connect(handler);
+        return getConnection(handler);
+    }
+
+    private static String metric(String connection, String name) {
+        return MeteredTcpClient.PREFIX + connection + "." + name;
+    }
+
+    @BeforeMethod
+    public void setup() {
+        broker = new InProcessStompBroker();
+        client = new MeteredTcpClient(broker, 10);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testNullClient() {
+        new MeteredTcpClient(null, 10);
+    }
+
+    @Test
+    public void testCountingMessagesAndBytes() {
+        TcpConnectionHandler<byte[]> subscriber = mock(TcpConnectionHandler.class);
+        TcpConnectionHandler<byte[]> sender = mock(TcpConnectionHandler.class);
+        TcpConnection<byte[]> subscriberConnection = connect(client, subscriber);
+        TcpConnection<byte[]> senderConnection = connect(client, sender);
+
+        subscriberConnection.send(frame(StompCommand.SUBSCRIBE, "/topic/response", "session", ""));
+        senderConnection.send(frame(StompCommand.SEND, "/topic/response", null, "{}"));
+        senderConnection.send(frame(StompCommand.SEND, "/topic/response", null, "[1]"));
+
+        Map<String, Number> metrics = client.extractMetrics();
+        Assert.assertEquals(metrics.size(), 12);
+        Assert.assertEquals(metrics.get(metric("session", MeteredTcpClient.MESSAGES_SENT)), 1L);
+        Assert.assertEquals(metrics.get(metric("session", MeteredTcpClient.BYTES_SENT)), 0L);
+        Assert.assertEquals(metrics.get(metric("session", MeteredTcpClient.MESSAGES_RECEIVED)), 2L);
+        Assert.assertEquals(metrics.get(metric("session", MeteredTcpClient.BYTES_RECEIVED)), 5L);
+        Assert.assertEquals(metrics.get(metric("2", MeteredTcpClient.MESSAGES_SENT)), 2L);
+        Assert.assertEquals(metrics.get(metric("2", MeteredTcpClient.BYTES_SENT)), 5L);
+        Assert.assertEquals(metrics.get(metric("2", MeteredTcpClient.MESSAGES_RECEIVED)), 0L);
+        Assert.assertEquals(metrics.get(metric("2", MeteredTcpClient.BYTES_RECEIVED)), 0L);
+        Assert.assertEquals(metrics.get(metric(MeteredTcpClient.TOTAL, MeteredTcpClient.MESSAGES_SENT)), 3L);
+        Assert.assertEquals(metrics.get(metric(MeteredTcpClient.TOTAL, MeteredTcpClient.BYTES_SENT)), 5L);
+        Assert.assertEquals(metrics.get(metric(MeteredTcpClient.TOTAL, MeteredTcpClient.MESSAGES_RECEIVED)), 2L);
+        Assert.assertEquals(metrics.get(metric(MeteredTcpClient.TOTAL, MeteredTcpClient.BYTES_RECEIVED)), 5L);
+
+        // Counts are reset and idle connections are only in the totals
+        metrics = client.extractMetrics();
+        Assert.assertEquals(metrics.size(), 4);
+        Assert.assertEquals(metrics.get(metric(MeteredTcpClient.TOTAL, MeteredTcpClient.MESSAGES_SENT)), 0L);
+        Assert.assertEquals(metrics.get(metric(MeteredTcpClient.TOTAL, MeteredTcpClient.MESSAGES_RECEIVED)), 0L);
+    }
+
+    @Test
+    public void testPublishingOnlyTheBusiestConnections() {
+        client = new MeteredTcpClient(broker, 2);
+        for (int i = 0; i < 5; ++i) {
+            TcpConnection<byte[]> connection = connect(client, mock(TcpConnectionHandler.class));
+            for (int j = 0; j <= i; ++j) {
+                connection.send(frame(StompCommand.SEND, "/topic/foo", "session-" + i, "{}"));
+            }
+        }
+
+        Map<String, Number> metrics = client.extractMetrics();
+        Assert.assertEquals(metrics.size(), 12);
+        Assert.assertEquals(metrics.get(metric("session-4", MeteredTcpClient.MESSAGES_SENT)), 5L);
+        Assert.assertEquals(metrics.get(metric("session-3", MeteredTcpClient.MESSAGES_SENT)), 4L);
+        Assert.assertFalse(metrics.containsKey(metric("session-2", MeteredTcpClient.MESSAGES_SENT)));
+        Assert.assertEquals(metrics.get(metric(MeteredTcpClient.TOTAL, MeteredTcpClient.MESSAGES_SENT)), 15L);
+        Assert.assertEquals(metrics.get(metric(MeteredTcpClient.TOTAL, MeteredTcpClient.BYTES_SENT)), 30L);
+    }
+
+    @Test
+    public void testForgettingClosedConnections() {
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        TcpConnection<byte[]> connection = connect(client, handler);
+        connection.send(frame(StompCommand.SEND, "/topic/response", "session", "{}"));
+
+        connection.close();
+        verify(handler).afterConnectionClosed();
+
+        Map<String, Number> metrics = client.extractMetrics();
+        Assert.assertEquals(metrics.get(metric("session", MeteredTcpClient.MESSAGES_SENT)), 1L);
+        Assert.assertEquals(metrics.get(metric(MeteredTcpClient.TOTAL, MeteredTcpClient.MESSAGES_SENT)), 1L);
+        Assert.assertTrue(client.extractMetrics().isEmpty());
+    }
+
+    @Test
+    public void testDelegating() {
+        TcpOperations<byte[]> wrapped = mock(TcpOperations.class);
+        ReconnectStrategy strategy = mock(ReconnectStrategy.class);
+        client = new MeteredTcpClient(wrapped, 10);
+        Assert.assertSame(client.getClient(), wrapped);
+
+        client.connect(mock(TcpConnectionHandler.class));
+        client.connect(mock(TcpConnectionHandler.class), strategy);
+        client.shutdown();
+
+        verify(wrapped).connect(any());
+        verify(wrapped).connect(any(), eq(strategy));
+        verify(wrapped).shutdown();
+    }
+
+    @Test
+    public void testDelegatingToHandler() {
+        TcpOperations<byte[]> wrapped = mock(TcpOperations.class);
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        client = new MeteredTcpClient(wrapped, 10);
+        client.connect(handler);
+        ArgumentCaptor<TcpConnectionHandler<byte[]>> captor = ArgumentCaptor.forClass(TcpConnectionHandler.class);
+        verify(wrapped).connect(captor.capture());
+        TcpConnectionHandler<byte[]> metered = captor.getValue();
+        Throwable throwable = new RuntimeException();
+
+        // Messages before connecting are not counted
+        metered.handleMessage(frame(StompCommand.MESSAGE, "/topic/response", null, "{}"));
+        metered.afterConnectFailure(throwable);
+        metered.handleFailure(throwable);
+        metered.afterConnectionClosed();
+
+        verify(handler).handleMessage(any());
+        verify(handler).afterConnectFailure(throwable);
+        verify(handler).handleFailure(throwable);
+        verify(handler).afterConnectionClosed();
+        Assert.assertTrue(client.extractMetrics().isEmpty());
+    }
+
+    @Test
+    public void testDelegatingToConnection() {
+        TcpOperations<byte[]> wrapped = mock(TcpOperations.class);
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        TcpConnection<byte[]> connection = mock(TcpConnection.class);
+        client = new MeteredTcpClient(wrapped, 10);
+        client.connect(handler);
+        ArgumentCaptor<TcpConnectionHandler<byte[]>> captor = ArgumentCaptor.forClass(TcpConnectionHandler.class);
+        verify(wrapped).connect(captor.capture());
+        captor.getValue().afterConnected(connection);
+        TcpConnection<byte[]> metered = getConnection(handler);
+        Runnable runnable = mock(Runnable.class);
+
+        metered.onReadInactivity(runnable, 10L);
+        metered.onWriteInactivity(runnable, 20L);
+        metered.close();
+
+        verify(connection).onReadInactivity(runnable, 10L);
+        verify(connection).onWriteInactivity(runnable, 20L);
+        verify(connection).close();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MetricRegistryTest {
+    @Test
+    public void testCountersAreShared() {
+        MetricRegistry registry = new MetricRegistry();
+        MetricRegistry.Counter counter = registry.counter("foo");
+        Assert.assertSame(registry.counter("foo"), counter);
+        counter.increment();
+        counter.add(2L);
+        Assert.assertEquals(registry.counter("foo").get(), 3L);
+    }
+
+    @Test
+    public void testExtractingCountsSinceTheLastTime() {
+        MetricRegistry registry = new MetricRegistry();
+        MetricRegistry.Counter counter = registry.counter("foo");
+        counter.add(5L);
+        Assert.assertEquals(registry.extractMetrics().get("foo"), 5L);
+        Assert.assertEquals(registry.extractMetrics().get("foo"), 0L);
+        counter.increment();
+        Assert.assertEquals(registry.extractMetrics().get("foo"), 1L);
+        Assert.assertEquals(counter.get(), 6L);
+    }
+
+    @Test
+    public void testGaugesAndSources() {
+        MetricRegistry registry = new MetricRegistry();
+        AtomicInteger value = new AtomicInteger(1);
+        registry.gauge("bar", value::get);
+        AtomicInteger extracted = new AtomicInteger();
+        registry.source(() -> Collections.singletonMap("baz", extracted.incrementAndGet()));
+        registry.source(() -> null);
+
+        Map<String, Number> metrics = registry.extractMetrics();
+        Assert.assertEquals(metrics.get("bar"), 1);
+        Assert.assertEquals(metrics.get("baz"), 1);
+        value.set(2);
+        metrics = registry.extractMetrics();
+        Assert.assertEquals(metrics.get("bar"), 2);
+        Assert.assertEquals(metrics.get("baz"), 2);
+    }
+
+    @Test
+    public void testScraping() {
+        MetricRegistry registry = new MetricRegistry();
+        Assert.assertEquals(registry.scrape(), "");
+
+        registry.counter("api.http.status.code.201").add(3L);
+        registry.gauge("queries-running", () -> 2);
+        registry.gauge("missing", () -> null);
+        registry.source(() -> Collections.singletonMap("1.latency", 1.5));
+        // Sources are only scraped after they are extracted from
+        Assert.assertEquals(registry.scrape(), "# TYPE api_http_status_code_201 counter\n" +
+                                               "api_http_status_code_201 3\n" +
+                                               "# TYPE queries_running gauge\n" +
+                                               "queries_running 2\n");
+        registry.extractMetrics();
+        registry.counter("api.http.status.code.201").increment();
+        Assert.assertEquals(registry.scrape(), "# TYPE _1_latency untyped\n" +
+                                               "_1_latency 1.5\n" +
+                                               "# TYPE api_http_status_code_201 counter\n" +
+                                               "api_http_status_code_201 4\n" +
+                                               "# TYPE queries_running gauge\n" +
+                                               "queries_running 2\n");
+    }
+
+    @Test
+    public void testCountingAcrossThreads() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        MetricRegistry.Counter counter = registry.counter("foo");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        long extracted = 0L;
+        for (int i = 0; i < 4; ++i) {
+            executor.submit(() -> {
+                for (int j = 0; j < 10000; ++j) {
+                    counter.increment();
+                }
+            });
+        }
+        extracted += registry.extractMetrics().get("foo").longValue();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        extracted += registry.extractMetrics().get("foo").longValue();
+        Assert.assertEquals(extracted, 40000L);
+    }
+}
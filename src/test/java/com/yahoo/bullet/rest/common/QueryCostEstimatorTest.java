@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.query.Field;
+import com.yahoo.bullet.query.Projection;
+import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.query.Window;
+import com.yahoo.bullet.query.aggregations.CountDistinct;
+import com.yahoo.bullet.query.aggregations.GroupAll;
+import com.yahoo.bullet.query.aggregations.GroupBy;
+import com.yahoo.bullet.query.aggregations.Raw;
+import com.yahoo.bullet.query.expressions.FieldExpression;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+public class QueryCostEstimatorTest {
+    private static final double DELTA = 1e-9;
+
+    private QueryCostEstimator estimator = new QueryCostEstimator();
+
+    private static Projection getProjection(String... fields) {
+        return new Projection(Arrays.stream(fields).map(f -> new Field(f, new FieldExpression(f))).collect(Collectors.toList()), false);
+    }
+
+    @Test
+    public void testOneShotCountCostsAboutOne() {
+        Query query = new Query(new Projection(), null, new GroupAll(new HashSet<>()), null, new Window(), 0L);
+        Assert.assertEquals(estimator.estimate(query), 1.0, DELTA);
+    }
+
+    @Test
+    public void testAggregationFactor() {
+        Assert.assertEquals(QueryCostEstimator.getAggregationFactor(null), 1.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getAggregationFactor(new Raw(1)), 1.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getAggregationFactor(new Raw(100)), 3.0, DELTA);
+        GroupBy groupBy = new GroupBy(10, Collections.singletonMap("a", "a"), new HashSet<>());
+        Assert.assertEquals(QueryCostEstimator.getAggregationFactor(groupBy), 4.0, DELTA);
+        CountDistinct countDistinct = new CountDistinct(Collections.singletonList("a"), "count");
+        Assert.assertEquals(QueryCostEstimator.getAggregationFactor(countDistinct), 2.0, DELTA);
+    }
+
+    @Test
+    public void testProjectionFactorOnlyForRaw() {
+        Assert.assertEquals(QueryCostEstimator.getProjectionFactor(new Projection()), QueryCostEstimator.PASS_THROUGH_FACTOR, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getProjectionFactor(getProjection("a", "b", "c", "d", "e")), 1.5, DELTA);
+
+        Query raw = new Query(getProjection("a", "b", "c", "d", "e"), null, new Raw(1), null, new Window(), 0L);
+        Assert.assertEquals(estimator.estimate(raw), 1.5, DELTA);
+        Query grouped = new Query(new Projection(), null, new GroupAll(new HashSet<>()), null, new Window(), 0L);
+        Assert.assertEquals(estimator.estimate(grouped), 1.0, DELTA);
+    }
+
+    @Test
+    public void testEmitFactor() {
+        Assert.assertEquals(QueryCostEstimator.getEmitFactor(null), 1.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getEmitFactor(new Window()), 1.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getEmitFactor(new Window(1000, Window.Unit.TIME)), 2.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getEmitFactor(new Window(100, Window.Unit.TIME)), 11.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getEmitFactor(new Window(1, Window.Unit.RECORD)), 11.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getEmitFactor(new Window(10, Window.Unit.RECORD)), 2.0, DELTA);
+    }
+
+    @Test
+    public void testDurationFactor() {
+        Assert.assertEquals(QueryCostEstimator.getDurationFactor(null), 1.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getDurationFactor(0L), 1.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getDurationFactor(600000L), 2.0, DELTA);
+        Assert.assertEquals(QueryCostEstimator.getDurationFactor(Long.MAX_VALUE), QueryCostEstimator.MAX_DURATION_FACTOR, DELTA);
+    }
+
+    @Test
+    public void testStreamingRawCostsMoreThanCount() {
+        Query count = new Query(new Projection(), null, new GroupAll(new HashSet<>()), null, new Window(), 30000L);
+        Query stream = new Query(new Projection(), null, new Raw(100), null, new Window(1000, Window.Unit.TIME), 30000L);
+        double countCost = estimator.estimate(count);
+        double streamCost = estimator.estimate(stream);
+        // Aggregation 3, pass through 2 and emitting every second 2
+        Assert.assertEquals(streamCost / countCost, 12.0, DELTA);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.rest.query.MockQueryHandler;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class QueryEventTest {
+    private static List<RecordedEvent> record(Runnable runnable) throws Exception {
+        Path file = Files.createTempFile("bullet", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(FlightRecorderEvents.Compile.class);
+            recording.enable(FlightRecorderEvents.Publish.class);
+            recording.enable(FlightRecorderEvents.Respond.class);
+            recording.enable(FlightRecorderEvents.Send.class);
+            recording.start();
+            runnable.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                                .filter(e -> e.getEventType().getName().startsWith("com.yahoo.bullet."))
+                                .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testRecordingEvents() throws Exception {
+        List<RecordedEvent> events = record(() -> {
+            QueryEvent.Publish publish = new QueryEvent.Publish();
+            publish.begin();
+            publish.end("id", null);
+            QueryEvent.Send send = new QueryEvent.Send();
+            send.begin();
+            send.end("id", "http");
+        });
+        Assert.assertEquals(events.size(), 2);
+
+        RecordedEvent publish = events.get(0);
+        Assert.assertEquals(publish.getEventType().getName(), "com.yahoo.bullet.Publish");
+        Assert.assertEquals(publish.getEventType().getCategoryNames(), Collections.singletonList("Bullet"));
+        Assert.assertEquals(publish.getString("queryID"), "id");
+        Assert.assertNull(publish.getString("endpoint"));
+        Assert.assertNull(publish.getStackTrace());
+
+        RecordedEvent send = events.get(1);
+        Assert.assertEquals(send.getEventType().getName(), "com.yahoo.bullet.Send");
+        Assert.assertEquals(send.getString("queryID"), "id");
+        Assert.assertEquals(send.getString("endpoint"), "http");
+    }
+
+    @Test
+    public void testRecordingCompile() throws Exception {
+        List<RecordedEvent> events = record(() -> {
+            QueryEvent.Compile valid = new QueryEvent.Compile();
+            valid.begin();
+            valid.end("id", "http", true);
+            QueryEvent.Compile invalid = new QueryEvent.Compile();
+            invalid.begin();
+            invalid.end(null, null, false);
+        });
+        Assert.assertEquals(events.size(), 2);
+        Assert.assertTrue(events.get(0).getBoolean("valid"));
+        Assert.assertEquals(events.get(0).getString("queryID"), "id");
+        Assert.assertEquals(events.get(0).getString("endpoint"), "http");
+        Assert.assertFalse(events.get(1).getBoolean("valid"));
+        Assert.assertNull(events.get(1).getString("queryID"));
+        Assert.assertNull(events.get(1).getString("endpoint"));
+    }
+
+    @Test
+    public void testRecordingRespondWithEndpoint() throws Exception {
+        MockQueryHandler handler = new MockQueryHandler();
+        List<RecordedEvent> events = record(() -> {
+            QueryEvent.Respond respond = new QueryEvent.Respond();
+            respond.begin();
+            respond.end("id", handler);
+        });
+        Assert.assertEquals(events.size(), 1);
+        Assert.assertEquals(events.get(0).getString("endpoint"), "mock");
+    }
+
+    @Test
+    public void testNotRecording() {
+        QueryEvent.Send send = new QueryEvent.Send();
+        send.begin();
+        send.end("id", "http");
+        Assert.assertTrue(QueryEvent.AVAILABLE);
+        Assert.assertFalse(send.isRecorded());
+    }
+
+    @Test
+    public void testWithoutTheFlightRecorder() throws Exception {
+        // This is what the events are when the Flight Recorder API is not available
+        QueryEvent.Compile compile = new QueryEvent.Compile();
+        QueryEvent noop = new QueryEvent(null) { };
+        List<RecordedEvent> events = record(() -> {
+            noop.begin();
+            noop.end("id", "http");
+        });
+        Assert.assertTrue(events.isEmpty());
+        Assert.assertFalse(noop.isRecorded());
+        Assert.assertNotNull(compile.event);
+    }
+}
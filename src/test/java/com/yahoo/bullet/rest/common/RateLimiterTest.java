@@ -0,0 +1,32 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RateLimiterTest {
+    @Test
+    public void testNoLimit() throws Exception {
+        RateLimiter limiter = new RateLimiter(0.0);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 100000; ++i) {
+            limiter.acquire();
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000L);
+    }
+
+    @Test
+    public void testLimitSpacesPermits() throws Exception {
+        RateLimiter limiter = new RateLimiter(100.0);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 21; ++i) {
+            limiter.acquire();
+        }
+        // 20 intervals of 10 ms after the first
+        Assert.assertTrue(System.currentTimeMillis() - start >= 190L);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.pubsub.Metadata;
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ResponseForwarderTest {
+    @SuppressWarnings("unchecked")
+    private static HttpEntity<String> forward(String token, PubSubMessage message) {
+        RestTemplate client = mock(RestTemplate.class);
+        ResponseForwarder forwarder = new ResponseForwarder("http://foo/cluster", token, client);
+        forwarder.respond(message.getId(), message);
+        ArgumentCaptor<HttpEntity> captor = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(client).postForEntity(eq("http://foo/cluster"), captor.capture(), eq(Void.class));
+        return (HttpEntity<String>) captor.getValue();
+    }
+
+    @Test
+    public void testForwardingAsJSON() {
+        PubSubMessage message = new PubSubMessage("b_1", "foo", Metadata.Signal.COMPLETE);
+        HttpEntity<String> entity = forward("secret", message);
+
+        Assert.assertEquals(entity.getHeaders().getContentType(), MediaType.APPLICATION_JSON);
+        Assert.assertEquals(entity.getHeaders().getFirst(ResponseForwarder.TOKEN_HEADER), "secret");
+        PubSubMessage forwarded = PubSubMessage.fromJSON(entity.getBody());
+        Assert.assertEquals(forwarded.getId(), "b_1");
+        Assert.assertEquals(forwarded.getContentAsString(), "foo");
+        Assert.assertEquals(forwarded.getMetadata().getSignal(), Metadata.Signal.COMPLETE);
+    }
+
+    @Test
+    public void testForwardingWithoutAToken() {
+        HttpEntity<String> entity = forward("", new PubSubMessage("b_1", Metadata.Signal.KILL));
+
+        Assert.assertFalse(entity.getHeaders().containsKey(ResponseForwarder.TOKEN_HEADER));
+        PubSubMessage forwarded = PubSubMessage.fromJSON(entity.getBody());
+        Assert.assertFalse(forwarded.hasContent());
+        Assert.assertEquals(forwarded.getMetadata().getSignal(), Metadata.Signal.KILL);
+    }
+
+    @Test(expectedExceptions = RestClientException.class)
+    public void testFailuresAreThrown() {
+        RestTemplate client = mock(RestTemplate.class);
+        doThrow(new RestClientException("Testing")).when(client).postForEntity(anyString(), any(), eq(Void.class));
+        new ResponseForwarder("http://foo/cluster", null, client).respond("b_1", new PubSubMessage("b_1", "foo"));
+    }
+
+    @Test
+    public void testCreatingAClient() {
+        new ResponseForwarder("http://foo/cluster", null, 100).close();
+    }
+}
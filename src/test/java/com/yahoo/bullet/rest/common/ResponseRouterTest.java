@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.pubsub.PubSubResponder;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ResponseRouterTest {
+    private PubSubResponder local;
+    private PubSubResponder peer;
+    private ResponseRouter router;
+
+    @BeforeMethod
+    public void setup() {
+        local = mock(PubSubResponder.class);
+        peer = mock(PubSubResponder.class);
+        router = new ResponseRouter("a", Collections.singletonList(local), Collections.singletonMap("b", peer));
+    }
+
+    @Test
+    public void testRespondingToOwnedQueries() {
+        PubSubMessage owned = new PubSubMessage("a_1", "foo");
+        PubSubMessage untagged = new PubSubMessage("1", "foo");
+        router.respond("a_1", owned);
+        router.respond("1", untagged);
+
+        verify(local).respond("a_1", owned);
+        verify(local).respond("1", untagged);
+        verify(peer, never()).respond(anyString(), any());
+        Map<String, Number> metrics = router.extractMetrics();
+        Assert.assertEquals(metrics.get(ResponseRouter.FORWARDED), 0L);
+        Assert.assertEquals(metrics.get(ResponseRouter.MISROUTED), 0L);
+    }
+
+    @Test
+    public void testForwardingToPeers() {
+        PubSubMessage message = new PubSubMessage("b_1", "foo");
+        router.respond("b_1", message);
+
+        verify(peer).respond("b_1", message);
+        verify(local, never()).respond(anyString(), any());
+        Assert.assertEquals(router.extractMetrics().get(ResponseRouter.FORWARDED), 1L);
+        Assert.assertEquals(router.extractMetrics().get(ResponseRouter.FORWARDED), 0L);
+    }
+
+    @Test
+    public void testDroppingMisroutedResponses() {
+        router.respond("c_1", new PubSubMessage("c_1", "foo"));
+
+        verify(peer, never()).respond(anyString(), any());
+        verify(local, never()).respond(anyString(), any());
+        Assert.assertEquals(router.extractMetrics().get(ResponseRouter.MISROUTED), 1L);
+    }
+
+    @Test
+    public void testRespondingLocally() {
+        PubSubMessage message = new PubSubMessage("a_1", "foo");
+        router.respondLocally("a_1", message);
+
+        verify(local).respond("a_1", message);
+        Assert.assertEquals(router.extractMetrics().get(ResponseRouter.RECEIVED), 1L);
+    }
+
+    @Test
+    public void testExtractingIsolatedMetrics() {
+        IsolatedResponder isolated = new IsolatedResponder("peer", peer, 10, 1000L, 0, 0L);
+        router = new ResponseRouter("a", Collections.singletonList(local), Collections.singletonMap("b", isolated));
+        Assert.assertTrue(router.extractMetrics().containsKey(IsolatedResponder.PREFIX + "peer." + IsolatedResponder.RESPONDED));
+        router.close();
+    }
+
+    @Test
+    public void testClosing() {
+        router.close();
+        verify(local).close();
+        verify(peer).close();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.pubsub.Metadata;
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class ResultStoreTest {
+    private File directory;
+
+    private static PubSubMessage result(String id, String content) {
+        return new PubSubMessage(id, content);
+    }
+
+    private static void assertMetrics(ResultStore store, int memoryQueries, int diskQueries, long spills, long evictions) {
+        Map<String, Number> metrics = store.getMetrics();
+        Assert.assertEquals(metrics.get(ResultStore.MEMORY_QUERIES), memoryQueries);
+        Assert.assertEquals(metrics.get(ResultStore.DISK_QUERIES), diskQueries);
+        Assert.assertEquals(metrics.get(ResultStore.SPILLS), spills);
+        Assert.assertEquals(metrics.get(ResultStore.EVICTIONS), evictions);
+    }
+
+    private int files() {
+        return directory.listFiles((dir, name) -> name.endsWith(ResultStore.SUFFIX)).length;
+    }
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("results").toFile();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testOnlyRegisteredQueriesAreKept() {
+        ResultStore store = new ResultStore(10, 1024L, null, 0L, 60000L);
+        store.respond("foo", result("foo", "bar"));
+        Assert.assertNull(store.get("foo"));
+
+        store.register("foo");
+        ResultStore.Results results = store.get("foo");
+        Assert.assertFalse(results.isDone());
+        Assert.assertEquals(results.getTotal(), 0L);
+        Assert.assertEquals(results.getWindows(), Collections.emptyList());
+        Assert.assertNull(results.getLatest());
+
+        store.respond("foo", result("foo", "bar"));
+        results = store.get("foo");
+        Assert.assertEquals(results.getTotal(), 1L);
+        Assert.assertEquals(results.getLatest(), "bar");
+        assertMetrics(store, 1, 0, 0L, 0L);
+        Assert.assertEquals(store.getMetrics().get(ResultStore.MEMORY_BYTES), 6L);
+    }
+
+    @Test
+    public void testKeepingTheLatestWindows() {
+        ResultStore store = new ResultStore(2, 1024L, null, 0L, 60000L);
+        store.register("foo");
+        store.respond("foo", result("foo", "1"));
+        store.respond("foo", result("foo", "2"));
+        store.respond("foo", new PubSubMessage("foo", Metadata.Signal.ACKNOWLEDGE));
+        store.respond("foo", new PubSubMessage("foo", "3", Metadata.Signal.COMPLETE));
+
+        ResultStore.Results results = store.get("foo");
+        Assert.assertTrue(results.isDone());
+        Assert.assertEquals(results.getTotal(), 3L);
+        Assert.assertEquals(results.getWindows(), Arrays.asList("2", "3"));
+        Assert.assertEquals(results.getLatest(), "3");
+        Assert.assertEquals(store.getMetrics().get(ResultStore.MEMORY_BYTES), 4L);
+    }
+
+    @Test
+    public void testEvictingWithoutADirectory() {
+        ResultStore store = new ResultStore(10, 10L, "", 1024L, 60000L);
+        store.register("foo");
+        store.register("bar");
+        store.respond("foo", result("foo", "abc"));
+        store.respond("bar", result("bar", "abc"));
+
+        Assert.assertNull(store.get("foo"));
+        Assert.assertEquals(store.get("bar").getLatest(), "abc");
+        assertMetrics(store, 1, 0, 0L, 1L);
+    }
+
+    @Test
+    public void testSpillingToDisk() {
+        ResultStore store = new ResultStore(10, 12L, directory.getPath(), 1024L, 60000L);
+        store.register("foo");
+        store.register("bar");
+        store.respond("foo", result("foo", "abc"));
+        store.respond("bar", result("bar", "\u00e9\u00e8\u00ea\u00eb"));
+        assertMetrics(store, 1, 1, 1L, 0L);
+        Assert.assertEquals(files(), 1);
+
+        // Read from disk without moving it back
+        ResultStore.Results results = store.get("foo");
+        Assert.assertEquals(results.getLatest(), "abc");
+        Assert.assertEquals(results.getTotal(), 1L);
+        Assert.assertEquals(files(), 1);
+
+        // Moved back into memory, which spills the other one
+        store.respond("foo", new PubSubMessage("foo", "def", Metadata.Signal.COMPLETE));
+        assertMetrics(store, 1, 1, 2L, 0L);
+        Assert.assertEquals(files(), 1);
+        results = store.get("foo");
+        Assert.assertTrue(results.isDone());
+        Assert.assertEquals(results.getWindows(), Arrays.asList("abc", "def"));
+        Assert.assertEquals(store.get("bar").getLatest(), "\u00e9\u00e8\u00ea\u00eb");
+
+        store.close();
+        Assert.assertEquals(files(), 0);
+        Assert.assertNull(store.get("foo"));
+        assertMetrics(store, 0, 0, 2L, 0L);
+    }
+
+    @Test
+    public void testEvictingFromDisk() {
+        ResultStore store = new ResultStore(10, 0L, directory.getPath(), 30L, 60000L);
+        store.register("foo");
+        store.respond("foo", result("foo", "abc"));
+        store.register("bar");
+        store.respond("bar", result("bar", "abc"));
+
+        // Each file is 29 bytes
+        Assert.assertNull(store.get("foo"));
+        Assert.assertEquals(store.get("bar").getLatest(), "abc");
+        assertMetrics(store, 0, 1, 2L, 1L);
+        Assert.assertEquals(store.getMetrics().get(ResultStore.DISK_BYTES), 29L);
+        Assert.assertEquals(files(), 1);
+    }
+
+    @Test
+    public void testExpiring() throws Exception {
+        ResultStore store = new ResultStore(10, 10L, directory.getPath(), 1024L, 20L);
+        store.register("foo");
+        store.register("bar");
+        store.respond("foo", result("foo", "abc"));
+        store.respond("bar", result("bar", "abc"));
+        assertMetrics(store, 1, 1, 1L, 0L);
+
+        Thread.sleep(50L);
+        Assert.assertNull(store.get("foo"));
+        Assert.assertNull(store.get("bar"));
+        assertMetrics(store, 0, 0, 1L, 2L);
+        Assert.assertEquals(files(), 0);
+
+        // Results for evicted queries are ignored
+        store.respond("foo", result("foo", "abc"));
+        Assert.assertNull(store.get("foo"));
+    }
+
+    @Test
+    public void testOnlyDeletingSpilledFiles() throws Exception {
+        Assert.assertTrue(new File(directory, "foo" + ResultStore.SUFFIX).createNewFile());
+        ResultStore store = new ResultStore(10, 0L, directory.getPath(), 1024L, 60000L);
+        Assert.assertEquals(files(), 1);
+
+        store.register("bar");
+        store.respond("bar", result("bar", "abc"));
+        Assert.assertEquals(files(), 2);
+
+        store.close();
+        Assert.assertEquals(files(), 1);
+        Assert.assertTrue(new File(directory, "foo" + ResultStore.SUFFIX).exists());
+    }
+
+    @Test
+    public void testOnlyTheOwnerGetsTheResults() {
+        ResultStore store = new ResultStore(10, 1024L, null, 0L, 60000L);
+        store.register("foo", "alice");
+        store.respond("foo", result("foo", "abc"));
+
+        Assert.assertEquals(store.get("foo", "alice").getLatest(), "abc");
+        Assert.assertNull(store.get("foo", "bob"));
+        Assert.assertNull(store.get("foo"));
+
+        store.register("bar");
+        store.respond("bar", result("bar", "abc"));
+        Assert.assertEquals(store.get("bar").getLatest(), "abc");
+        Assert.assertNull(store.get("bar", "alice"));
+    }
+
+    @Test
+    public void testRemoving() {
+        ResultStore store = new ResultStore(10, 12L, directory.getPath(), 1024L, 60000L);
+        store.register("foo");
+        store.register("bar");
+        store.respond("foo", result("foo", "abc"));
+        store.respond("bar", result("bar", "\u00e9\u00e8\u00ea\u00eb"));
+        assertMetrics(store, 1, 1, 1L, 0L);
+        Assert.assertEquals(files(), 1);
+
+        store.remove("foo");
+        store.remove("bar");
+        store.remove("baz");
+        assertMetrics(store, 0, 0, 1L, 0L);
+        Assert.assertEquals(files(), 0);
+        Assert.assertNull(store.get("foo"));
+        Assert.assertNull(store.get("bar"));
+
+        // Results that come after the query was removed are not kept
+        store.respond("foo", result("foo", "abc"));
+        Assert.assertNull(store.get("foo"));
+    }
+
+    @Test
+    public void testKeepingTheOwnerWhenSpilled() {
+        ResultStore store = new ResultStore(10, 0L, directory.getPath(), 1024L, 60000L);
+        store.register("foo", "alice");
+        store.respond("foo", result("foo", "abc"));
+        assertMetrics(store, 0, 1, 1L, 0L);
+
+        Assert.assertEquals(store.get("foo", "alice").getLatest(), "abc");
+        Assert.assertNull(store.get("foo", "bob"));
+
+        // Moved back into memory and spilled again
+        store.respond("foo", result("foo", "def"));
+        Assert.assertEquals(store.get("foo", "alice").getWindows(), Arrays.asList("abc", "def"));
+        Assert.assertNull(store.get("foo"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDirectoryThatCannotBeCreated() throws Exception {
+        File file = new File(directory, "file");
+        Assert.assertTrue(file.createNewFile());
+        new ResultStore(10, 10L, new File(file, "results").getPath(), 1024L, 60000L);
+    }
+}
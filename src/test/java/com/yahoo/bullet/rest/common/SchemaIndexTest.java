@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.yahoo.bullet.rest.model.JSONAPIField;
+import com.yahoo.bullet.typesystem.Schema.DetailedField;
+import com.yahoo.bullet.typesystem.Type;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+
+public class SchemaIndexTest {
+    private SchemaIndex index;
+
+    private static List<String> names(JsonArray data) {
+        List<String> names = new ArrayList<>();
+        data.forEach(field -> names.add(field.getAsJsonObject().get("id").getAsString()));
+        return names;
+    }
+
+    @BeforeMethod
+    public void setup() {
+        List<JSONAPIField> fields = Arrays.asList(JSONAPIField.from(new DetailedField("demo_b", Type.LONG, "b")),
+                                                  JSONAPIField.from(new DetailedField("other", Type.STRING, "o")),
+                                                  JSONAPIField.from(new DetailedField("demo_a", Type.STRING, "a")),
+                                                  JSONAPIField.from(new DetailedField("demo", Type.STRING_MAP, "d")),
+                                                  JSONAPIField.from(new DetailedField("dem", Type.DOUBLE, "x")));
+        index = new SchemaIndex(fields, new Gson());
+    }
+
+    @Test
+    public void testSearchingEverything() {
+        SchemaIndex.Result result = index.search(null, null, null, 0, Integer.MAX_VALUE);
+        Assert.assertEquals(index.size(), 5);
+        Assert.assertEquals(result.getTotal(), 5);
+        Assert.assertEquals(names(result.getData()), Arrays.asList("dem", "demo", "demo_a", "demo_b", "other"));
+        JsonObject field = result.getData().get(0).getAsJsonObject();
+        Assert.assertEquals(field.get("type").getAsString(), "column");
+        Assert.assertEquals(field.getAsJsonObject(SchemaIndex.ATTRIBUTES).get("description").getAsString(), "x");
+    }
+
+    @Test
+    public void testSearchingByPrefix() {
+        Assert.assertEquals(names(index.search("demo", null, null, 0, 10).getData()), Arrays.asList("demo", "demo_a", "demo_b"));
+        Assert.assertEquals(names(index.search("demo_", null, null, 0, 10).getData()), Arrays.asList("demo_a", "demo_b"));
+        Assert.assertEquals(names(index.search("o", null, null, 0, 10).getData()), Collections.singletonList("other"));
+        Assert.assertEquals(index.search("z", null, null, 0, 10).getTotal(), 0);
+        Assert.assertEquals(index.search("", null, null, 0, 10).getTotal(), 5);
+    }
+
+    @Test
+    public void testSearchingByType() {
+        SchemaIndex.Result result = index.search("d", EnumSet.of(Type.STRING, Type.LONG), null, 0, 10);
+        Assert.assertEquals(result.getTotal(), 2);
+        Assert.assertEquals(names(result.getData()), Arrays.asList("demo_a", "demo_b"));
+    }
+
+    @Test
+    public void testPaging() {
+        SchemaIndex.Result result = index.search(null, null, null, 1, 2);
+        Assert.assertEquals(result.getTotal(), 5);
+        Assert.assertEquals(names(result.getData()), Arrays.asList("demo", "demo_a"));
+        result = index.search(null, null, null, 4, 2);
+        Assert.assertEquals(names(result.getData()), Collections.singletonList("other"));
+        result = index.search(null, null, null, 10, 2);
+        Assert.assertEquals(result.getTotal(), 5);
+        Assert.assertEquals(result.getData().size(), 0);
+    }
+
+    @Test
+    public void testSparseAttributes() {
+        SchemaIndex.Result result = index.search("other", null, new HashSet<>(Arrays.asList("name", "foo")), 0, 10);
+        JsonObject field = result.getData().get(0).getAsJsonObject();
+        Assert.assertEquals(field.get("id").getAsString(), "other");
+        JsonObject attributes = field.getAsJsonObject(SchemaIndex.ATTRIBUTES);
+        Assert.assertEquals(attributes.entrySet().size(), 1);
+        Assert.assertEquals(attributes.get("name").getAsString(), "other");
+
+        // The index is not modified by the selection
+        field = index.search("other", null, null, 0, 10).getData().get(0).getAsJsonObject();
+        Assert.assertEquals(field.getAsJsonObject(SchemaIndex.ATTRIBUTES).entrySet().size(), 3);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.tcp.FixedIntervalReconnectStrategy;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("unchecked")
+public class StompTcpClientTest {
+    private static final long WAIT_MS = 5000L;
+    private static final String CONNECTED = "CONNECTED\nversion:1.2\nheart-beat:0,0\n\n\0";
+
+    private ServerSocket server;
+    private StompTcpClient client;
+
+    private static String readFrame(InputStream input) throws IOException {
+        StringBuilder frame = new StringBuilder();
+        int read;
+        while ((read = input.read()) > 0) {
+            frame.append((char) read);
+        }
+        return frame.toString();
+    }
+
+    private static void write(Socket socket, String frame) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        output.write(frame.getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    private static Message<byte[]> connectFrame() {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setAcceptVersion("1.2");
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static TcpConnection<byte[]> getConnection(TcpConnectionHandler<byte[]> handler) {
+        ArgumentCaptor<TcpConnection<byte[]>> captor = ArgumentCaptor.forClass(TcpConnection.class);
+        verify(handler, timeout(WAIT_MS)).afterConnected(captor.capture());
+        return captor.getValue();
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        server = new ServerSocket(0);
+        server.setSoTimeout((int) WAIT_MS);
+        client = new StompTcpClient("localhost", server.getLocalPort(), 1000);
+    }
+
+    @AfterMethod
+    public void teardown() throws IOException {
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testExchangingFrames() throws Exception {
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        ListenableFuture<Void> future = client.connect(handler);
+        Socket socket = server.accept();
+        future.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        TcpConnection<byte[]> connection = getConnection(handler);
+
+        connection.send(connectFrame()).get(WAIT_MS, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(readFrame(socket.getInputStream()).startsWith("CONNECT\naccept-version:1.2\n"));
+
+        // Split across writes to check that partial frames are put back together
+        write(socket, CONNECTED.substring(0, 12));
+        write(socket, CONNECTED.substring(12) + "MESSAGE\ndestination:/topic/response\ncontent-length:2\n\n{}\0");
+
+        ArgumentCaptor<Message<byte[]>> captor = ArgumentCaptor.forClass(Message.class);
+        verify(handler, timeout(WAIT_MS).times(2)).handleMessage(captor.capture());
+        Message<byte[]> connected = captor.getAllValues().get(0);
+        Message<byte[]> message = captor.getAllValues().get(1);
+        Assert.assertEquals(StompHeaderAccessor.wrap(connected).getCommand(), StompCommand.CONNECTED);
+        Assert.assertEquals(StompHeaderAccessor.wrap(message).getDestination(), "/topic/response");
+        Assert.assertEquals(new String(message.getPayload(), StandardCharsets.UTF_8), "{}");
+
+        connection.close();
+        verify(handler, timeout(WAIT_MS)).afterConnectionClosed();
+        verify(handler, never()).handleFailure(any());
+        socket.close();
+    }
+
+    @Test
+    public void testReconnectingWhenTheBrokerCloses() throws Exception {
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        client.connect(handler, new FixedIntervalReconnectStrategy(10L));
+        server.accept().close();
+
+        verify(handler, timeout(WAIT_MS)).afterConnectionClosed();
+        Socket socket = server.accept();
+        Assert.assertTrue(socket.isConnected());
+        socket.close();
+    }
+
+    @Test
+    public void testFailingToConnect() throws Exception {
+        server.close();
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        ListenableFuture<Void> future = client.connect(handler);
+
+        try {
+            future.get(WAIT_MS, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        verify(handler).afterConnectFailure(any());
+        verify(handler, never()).afterConnected(any());
+    }
+
+    @Test
+    public void testConnectingAfterShutdown() throws Exception {
+        client.shutdown();
+        ListenableFuture<Void> future = client.connect(mock(TcpConnectionHandler.class));
+        try {
+            future.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testFailingToConnectPastTheMaximumConnections() throws Exception {
+        client.shutdown();
+        client = new StompTcpClient("localhost", server.getLocalPort(), 1000, 1, 1000L);
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        client.connect(handler);
+        Socket socket = server.accept();
+        getConnection(handler);
+
+        TcpConnectionHandler<byte[]> other = mock(TcpConnectionHandler.class);
+        try {
+            client.connect(other).get(WAIT_MS, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        verify(other).afterConnectFailure(any());
+        verify(other, never()).afterConnected(any());
+        socket.close();
+    }
+
+    @Test
+    public void testClosingTheConnectionWhenAWriteTimesOut() throws Exception {
+        client.shutdown();
+        client = new StompTcpClient("localhost", server.getLocalPort(), 1000, 1, 50L);
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        client.connect(handler);
+        // The broker never reads, so a write bigger than the socket buffers blocks
+        Socket socket = server.accept();
+        TcpConnection<byte[]> connection = getConnection(handler);
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination("/topic/query");
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[64 * 1024 * 1024], accessor.getMessageHeaders());
+
+        try {
+            connection.send(message).get(WAIT_MS, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        verify(handler, timeout(WAIT_MS)).afterConnectionClosed();
+        socket.close();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNonPositiveMaximumConnections() {
+        new StompTcpClient("localhost", 61613, 1000, 0, 1000L);
+    }
+
+    @Test
+    public void testInactivityChecks() throws Exception {
+        TcpConnectionHandler<byte[]> handler = mock(TcpConnectionHandler.class);
+        client.connect(handler);
+        Socket socket = server.accept();
+        TcpConnection<byte[]> connection = getConnection(handler);
+        Runnable onRead = mock(Runnable.class);
+        Runnable onWrite = mock(Runnable.class);
+
+        connection.onReadInactivity(onRead, 10L);
+        connection.onWriteInactivity(onWrite, 10L);
+
+        verify(onRead, timeout(WAIT_MS).atLeastOnce()).run();
+        verify(onWrite, timeout(WAIT_MS).atLeastOnce()).run();
+        connection.close();
+        socket.close();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TimeOrderedQueryIDGeneratorTest {
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 20000;
+
+    private static Set<String> generateConcurrently(QueryIDGenerator generator) throws Exception {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Boolean>> ordered = new ArrayList<>();
+        for (int i = 0; i < THREADS; ++i) {
+            ordered.add(executor.submit(() -> {
+                start.await();
+                boolean isOrdered = true;
+                String previous = "";
+                for (int j = 0; j < IDS_PER_THREAD; ++j) {
+                    String id = generator.generate();
+                    isOrdered &= id.compareTo(previous) > 0;
+                    previous = id;
+                    ids.add(id);
+                }
+                return isOrdered;
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        if (generator instanceof TimeOrderedQueryIDGenerator) {
+            for (Future<Boolean> isOrdered : ordered) {
+                Assert.assertTrue(isOrdered.get());
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void testFormat() {
+        String id = new TimeOrderedQueryIDGenerator(() -> 1234567890123L, () -> 42L).generate();
+        Assert.assertEquals(id.length(), TimeOrderedQueryIDGenerator.LENGTH);
+        Assert.assertTrue(id.matches("[0-9A-HJKMNP-TV-Z]+"));
+        Assert.assertEquals(TimeOrderedQueryIDGenerator.getTimestamp(id), 1234567890123L);
+        // The random low bits end the ID
+        Assert.assertTrue(id.endsWith("1A"));
+    }
+
+    @Test
+    public void testOrderedByTime() {
+        AtomicLong clock = new AtomicLong(1000L);
+        TimeOrderedQueryIDGenerator generator = new TimeOrderedQueryIDGenerator(clock::get, () -> -1L);
+        String first = generator.generate();
+        String second = generator.generate();
+        clock.set(2000L);
+        String third = generator.generate();
+
+        Assert.assertTrue(first.compareTo(second) < 0);
+        Assert.assertTrue(second.compareTo(third) < 0);
+        Assert.assertEquals(TimeOrderedQueryIDGenerator.getTimestamp(second), 1000L);
+        Assert.assertEquals(TimeOrderedQueryIDGenerator.getTimestamp(third), 2000L);
+    }
+
+    @Test
+    public void testOrderedWhenTheClockGoesBack() {
+        AtomicLong clock = new AtomicLong(2000L);
+        TimeOrderedQueryIDGenerator generator = new TimeOrderedQueryIDGenerator(clock::get, () -> 0L);
+        String first = generator.generate();
+        clock.set(1000L);
+        String second = generator.generate();
+
+        Assert.assertTrue(first.compareTo(second) < 0);
+        Assert.assertEquals(TimeOrderedQueryIDGenerator.getTimestamp(second), 2000L);
+    }
+
+    @Test
+    public void testRunningAheadWhenTheSequenceRunsOut() {
+        TimeOrderedQueryIDGenerator generator = new TimeOrderedQueryIDGenerator(() -> 1000L, () -> 0L);
+        String previous = "";
+        for (int i = 0; i < 65536; ++i) {
+            String id = generator.generate();
+            Assert.assertTrue(id.compareTo(previous) > 0);
+            previous = id;
+        }
+        Assert.assertEquals(TimeOrderedQueryIDGenerator.getTimestamp(previous), 1000L);
+        String next = generator.generate();
+        Assert.assertTrue(next.compareTo(previous) > 0);
+        Assert.assertEquals(TimeOrderedQueryIDGenerator.getTimestamp(next), 1001L);
+    }
+
+    @Test
+    public void testGeneratorsDoNotCollide() {
+        String first = new TimeOrderedQueryIDGenerator(() -> 1000L, () -> 1L).generate();
+        String second = new TimeOrderedQueryIDGenerator(() -> 1000L, () -> 2L).generate();
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(first.substring(0, 13), second.substring(0, 13));
+    }
+
+    @Test
+    public void testRandomBitsForEachID() {
+        TimeOrderedQueryIDGenerator generator = new TimeOrderedQueryIDGenerator();
+        String first = generator.generate();
+        String second = generator.generate();
+        // The last 12 characters only hold the random low bits
+        Assert.assertNotEquals(first.substring(14), second.substring(14));
+        Assert.assertTrue(first.compareTo(second) < 0);
+    }
+
+    @Test
+    public void testUniqueAcrossThreads() throws Exception {
+        Assert.assertEquals(generateConcurrently(new TimeOrderedQueryIDGenerator()).size(), THREADS * IDS_PER_THREAD);
+        Assert.assertEquals(generateConcurrently(new UUIDQueryIDGenerator()).size(), THREADS * IDS_PER_THREAD);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTimestampOfAnIDWithTheWrongLength() {
+        TimeOrderedQueryIDGenerator.getTimestamp("foo");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTimestampOfAnIDWithTheWrongCharacters() {
+        TimeOrderedQueryIDGenerator.getTimestamp("UUUUUUUUUUUUUUUUUUUUUUUUUU");
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TokenBucketsTest {
+    private AtomicLong clock = new AtomicLong(1000L);
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNonPositiveRate() {
+        new TokenBuckets(0.0, 1, 1000L, 1, true);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptyBurst() {
+        new TokenBuckets(1.0, 0, 1000L, 1, true);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNoStripes() {
+        new TokenBuckets(1.0, 1, 1000L, 0, true);
+    }
+
+    @Test
+    public void testBurstThenRate() {
+        TokenBuckets buckets = new TokenBuckets(2.0, 3, 60000L, 4, true, clock::get);
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertTrue(buckets.tryAcquire("a"));
+        }
+        Assert.assertFalse(buckets.tryAcquire("a"));
+        // Two tokens per second is one every 500 ms
+        clock.addAndGet(499L);
+        Assert.assertFalse(buckets.tryAcquire("a"));
+        clock.addAndGet(1L);
+        Assert.assertTrue(buckets.tryAcquire("a"));
+        Assert.assertFalse(buckets.tryAcquire("a"));
+        // Refilling stops at the burst
+        clock.addAndGet(10000L);
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertTrue(buckets.tryAcquire("a"));
+        }
+        Assert.assertFalse(buckets.tryAcquire("a"));
+    }
+
+    @Test
+    public void testKeysHaveTheirOwnBuckets() {
+        TokenBuckets buckets = new TokenBuckets(1.0, 1, 60000L, 1, true, clock::get);
+        Assert.assertTrue(buckets.tryAcquire("a"));
+        Assert.assertFalse(buckets.tryAcquire("a"));
+        Assert.assertTrue(buckets.tryAcquire("b"));
+        Assert.assertTrue(buckets.tryAcquire("c"));
+        Assert.assertEquals(buckets.size(), 3);
+    }
+
+    @Test
+    public void testExtractingThrottles() {
+        TokenBuckets buckets = new TokenBuckets(1.0, 1, 60000L, 8, true, clock::get);
+        buckets.tryAcquire("a");
+        buckets.tryAcquire("a");
+        buckets.tryAcquire("a");
+        buckets.tryAcquire("b");
+        buckets.tryAcquire("b");
+        buckets.tryAcquire("c");
+
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("a", 2L);
+        expected.put("b", 1L);
+        Assert.assertEquals(buckets.extractThrottled(), expected);
+        Assert.assertEquals(buckets.extractThrottled(), Collections.emptyMap());
+    }
+
+    @Test
+    public void testIdleBucketsAreRemoved() {
+        TokenBuckets buckets = new TokenBuckets(1.0, 1, 10000L, 1, true, clock::get);
+        buckets.tryAcquire("a");
+        buckets.tryAcquire("b");
+        buckets.tryAcquire("b");
+        clock.addAndGet(5000L);
+        buckets.tryAcquire("c");
+        Assert.assertEquals(buckets.size(), 3);
+
+        clock.addAndGet(5000L);
+        buckets.tryAcquire("c");
+        // a is idle but b has a throttle that was not extracted yet
+        Assert.assertEquals(buckets.size(), 2);
+
+        buckets.extractThrottled();
+        clock.addAndGet(10000L);
+        buckets.tryAcquire("d");
+        Assert.assertEquals(buckets.size(), 1);
+    }
+
+    @Test
+    public void testIdleBucketsAreRemovedWithoutCountingThrottles() {
+        TokenBuckets buckets = new TokenBuckets(1.0, 1, 10000L, 1, false, clock::get);
+        buckets.tryAcquire("a");
+        Assert.assertFalse(buckets.tryAcquire("a"));
+        Assert.assertEquals(buckets.extractThrottled(), Collections.emptyMap());
+
+        clock.addAndGet(10000L);
+        buckets.tryAcquire("b");
+        Assert.assertEquals(buckets.size(), 1);
+    }
+
+    @Test
+    public void testIdleTimeoutIsAtLeastTheRefillTime() {
+        // Refilling 10 tokens at 1 per second takes 10 seconds
+        TokenBuckets buckets = new TokenBuckets(1.0, 10, 1000L, 1, true, clock::get);
+        for (int i = 0; i < 10; ++i) {
+            buckets.tryAcquire("a");
+        }
+        clock.addAndGet(5000L);
+        buckets.tryAcquire("b");
+        Assert.assertEquals(buckets.size(), 2);
+        // The bucket of a was not removed so it only has the 5 tokens it got back
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertTrue(buckets.tryAcquire("a"));
+        }
+        Assert.assertFalse(buckets.tryAcquire("a"));
+    }
+}
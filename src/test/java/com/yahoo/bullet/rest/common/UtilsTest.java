@@ -23,6 +23,35 @@ public class UtilsTest {
         Assert.assertEquals(ids.size(), 100);
     }
 
+    @Test
+    public void testTaggedIDs() {
+        Utils.setInstanceTag("host-1");
+        try {
+            String id = Utils.getNewQueryID();
+            Assert.assertTrue(id.startsWith("host-1" + Utils.TAG_SEPARATOR));
+            Assert.assertEquals(Utils.getInstanceTag(id), "host-1");
+        } finally {
+            Utils.setInstanceTag(null);
+        }
+        Assert.assertNull(Utils.getInstanceTag(Utils.getNewQueryID()));
+    }
+
+    @Test
+    public void testSettingTheQueryIDGenerator() {
+        Utils.setQueryIDGenerator(() -> "foo");
+        try {
+            Assert.assertEquals(Utils.getNewQueryID(), "foo");
+        } finally {
+            Utils.setQueryIDGenerator(new TimeOrderedQueryIDGenerator());
+        }
+        Assert.assertEquals(Utils.getNewQueryID().length(), TimeOrderedQueryIDGenerator.LENGTH);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidInstanceTag() {
+        Utils.setInstanceTag("host.example.com");
+    }
+
     @Test
     public void testDonePubSubMessage() {
         Assert.assertFalse(Utils.isDone(new PubSubMessage()));
@@ -0,0 +1,196 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.common;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.storage.StorageManager;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.yahoo.bullet.rest.TestHelpers.mockStorage;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class WriteBehindStorageTest {
+    // Long enough that the flushes only happen when the tests ask for them
+    private static final long WINDOW = 3600000L;
+
+    private StorageManager<PubSubMessage> storage;
+
+    @BeforeMethod
+    public void setup() {
+        storage = mockStorage();
+        doReturn(CompletableFuture.completedFuture(true)).when(storage).putAll(anyMap());
+        doReturn(CompletableFuture.completedFuture(true)).when(storage).clear(anySet());
+    }
+
+    @Test
+    public void testPassThroughWithoutWindow() throws Exception {
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, 0L);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        Assert.assertTrue(buffer.put("id", message).get());
+        verify(storage).put("id", message);
+        Assert.assertNull(buffer.get("id").get());
+        verify(storage).get("id");
+        Assert.assertNull(buffer.remove("id").get());
+        verify(storage).remove("id");
+        buffer.close();
+        verify(storage).close();
+    }
+
+    @Test
+    public void testPutsAndRemovesAreBatched() throws Exception {
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, WINDOW);
+        PubSubMessage messageA = new PubSubMessage("a", "foo");
+        PubSubMessage messageB = new PubSubMessage("b", "bar");
+        CompletableFuture<Boolean> putA = buffer.put("a", messageA);
+        CompletableFuture<Boolean> putB = buffer.put("b", messageB);
+        CompletableFuture<PubSubMessage> removeC = buffer.remove("c");
+        Assert.assertFalse(putA.isDone());
+        Assert.assertFalse(putB.isDone());
+        Assert.assertFalse(removeC.isDone());
+        verify(storage, never()).put(any(), any());
+        verify(storage, never()).remove(any());
+
+        buffer.flush();
+
+        Map<String, PubSubMessage> expected = new HashMap<>();
+        expected.put("a", messageA);
+        expected.put("b", messageB);
+        verify(storage).putAll(expected);
+        verify(storage).clear(Collections.singleton("c"));
+        Assert.assertTrue(putA.get());
+        Assert.assertTrue(putB.get());
+        Assert.assertNull(removeC.get());
+        buffer.close();
+    }
+
+    @Test
+    public void testPutFollowedByRemoveCollapses() throws Exception {
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, WINDOW);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        CompletableFuture<Boolean> put = buffer.put("id", message);
+        CompletableFuture<PubSubMessage> remove = buffer.remove("id");
+        Assert.assertTrue(put.get());
+        Assert.assertSame(remove.get(), message);
+
+        buffer.flush();
+        verifyNoInteractions(storage);
+        buffer.close();
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, WINDOW);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        buffer.put("id", message);
+        Assert.assertSame(buffer.get("id").get(), message);
+        buffer.flush();
+        buffer.remove("id");
+        Assert.assertNull(buffer.get("id").get());
+        verify(storage, never()).get(any());
+        buffer.close();
+    }
+
+    @Test
+    public void testRemoveFollowedByPutIsSuperseded() throws Exception {
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, WINDOW);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        CompletableFuture<PubSubMessage> remove = buffer.remove("id");
+        CompletableFuture<Boolean> put = buffer.put("id", message);
+        Assert.assertNull(remove.get());
+        Assert.assertFalse(put.isDone());
+        buffer.flush();
+        Assert.assertTrue(put.get());
+        verify(storage).putAll(Collections.singletonMap("id", message));
+        verify(storage, never()).clear(anySet());
+        buffer.close();
+    }
+
+    @Test
+    public void testFailedBatchFailsAllOperations() {
+        CompletableFuture<Boolean> fail = new CompletableFuture<>();
+        fail.completeExceptionally(new RuntimeException("Testing"));
+        doReturn(fail).when(storage).putAll(anyMap());
+        doReturn(fail).when(storage).clear(anySet());
+
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, WINDOW);
+        CompletableFuture<Boolean> put = buffer.put("a", new PubSubMessage("a", "foo"));
+        CompletableFuture<PubSubMessage> remove = buffer.remove("b");
+        buffer.flush();
+        Assert.assertTrue(put.isCompletedExceptionally());
+        Assert.assertTrue(remove.isCompletedExceptionally());
+        buffer.close();
+    }
+
+    @Test
+    public void testThrowingStorageFailsAllOperations() throws Exception {
+        doThrow(new RuntimeException("Testing")).when(storage).putAll(anyMap());
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, WINDOW);
+        PubSubMessage message = new PubSubMessage("a", "foo");
+        CompletableFuture<Boolean> put = buffer.put("a", message);
+        CompletableFuture<PubSubMessage> remove = buffer.remove("b");
+        buffer.flush();
+        Assert.assertTrue(put.isCompletedExceptionally());
+        Assert.assertTrue(remove.isCompletedExceptionally());
+
+        // Nothing is left in flight and later flushes still go through
+        doReturn(CompletableFuture.completedFuture(true)).when(storage).putAll(anyMap());
+        Assert.assertNull(buffer.get("a").get());
+        put = buffer.put("a", message);
+        buffer.flush();
+        Assert.assertTrue(put.get());
+        buffer.close();
+    }
+
+    @Test
+    public void testCloseFlushesPending() throws Exception {
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, WINDOW);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        CompletableFuture<Boolean> put = buffer.put("id", message);
+        buffer.close();
+        Assert.assertTrue(put.get());
+        verify(storage).putAll(Collections.singletonMap("id", message));
+        verify(storage).close();
+    }
+
+    @Test
+    public void testFlushesPeriodically() throws Exception {
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, 1L);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        Assert.assertTrue(buffer.put("id", message).get());
+        verify(storage, timeout(1000L)).putAll(Collections.singletonMap("id", message));
+        buffer.close();
+    }
+
+    @Test
+    public void testPartitionsSeePendingWrites() throws Exception {
+        doReturn(2).when(storage).numberOfPartitions();
+        doReturn(CompletableFuture.completedFuture(Collections.emptyMap())).when(storage).getPartition(1);
+        WriteBehindStorage buffer = new WriteBehindStorage(storage, WINDOW);
+        PubSubMessage message = new PubSubMessage("id", "foo");
+        CompletableFuture<Boolean> put = buffer.put("id", message);
+
+        Assert.assertEquals(buffer.numberOfPartitions(), 2);
+        Assert.assertEquals(buffer.getPartition(1).get(), Collections.emptyMap());
+        Assert.assertTrue(put.get());
+        verify(storage).putAll(Collections.singletonMap("id", message));
+        buffer.close();
+    }
+}
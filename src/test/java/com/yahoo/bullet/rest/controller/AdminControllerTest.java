@@ -5,15 +5,20 @@
  */
 package com.yahoo.bullet.rest.controller;
 
-import com.yahoo.bullet.common.metrics.MetricPublisher;
 import com.yahoo.bullet.pubsub.Metadata;
 import com.yahoo.bullet.pubsub.PubSubMessage;
 import com.yahoo.bullet.rest.common.Metric;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.model.ReplayStatus;
 import com.yahoo.bullet.rest.service.QueryService;
+import com.yahoo.bullet.rest.service.ReplayService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -33,7 +38,7 @@ public class AdminControllerTest {
     public void testExceptionOnSendingReplay() throws Exception {
         QueryService queryService = mock(QueryService.class);
         doThrow(new RuntimeException("Testing")).when(queryService).send(anyString(), any(Metadata.Signal.class));
-        AdminController controller = new AdminController(queryService, mock(MetricPublisher.class));
+        AdminController controller = new AdminController(queryService, mock(ReplayService.class), new MetricRegistry());
         Assert.assertEquals(controller.sendReplay().get().getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
@@ -43,16 +48,74 @@ public class AdminControllerTest {
         CompletableFuture<PubSubMessage> fail = new CompletableFuture<>();
         fail.completeExceptionally(new RuntimeException("Testing"));
         doReturn(fail).when(queryService).send(anyString(), any(Metadata.Signal.class));
-        AdminController controller = new AdminController(queryService, mock(MetricPublisher.class));
+        AdminController controller = new AdminController(queryService, mock(ReplayService.class), new MetricRegistry());
         Assert.assertEquals(controller.sendReplay().get().getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @Test
+    public void testAddingCacheMetrics() {
+        QueryService queryService = mock(QueryService.class);
+        Map<String, Number> metrics = Collections.singletonMap("foo", 1L);
+        doReturn(metrics).when(queryService).getCacheMetrics();
+        MetricRegistry registry = new MetricRegistry();
+        new AdminController(queryService, mock(ReplayService.class), registry);
+        Assert.assertEquals(registry.extractMetrics().get("foo"), 1L);
+
+        new AdminController(queryService, mock(ReplayService.class), null);
+        verify(queryService).getCacheMetrics();
+    }
+
+    @Test
+    public void testAddingResponderMetrics() {
+        QueryService queryService = mock(QueryService.class);
+        Map<String, Number> metrics = Collections.singletonMap("async.responder.foo.0.dropped", 1L);
+        doReturn(metrics).when(queryService).getResponderMetrics();
+        MetricRegistry registry = new MetricRegistry();
+        new AdminController(queryService, mock(ReplayService.class), registry);
+        Assert.assertEquals(registry.extractMetrics().get("async.responder.foo.0.dropped"), 1L);
+    }
+
     @Test
     public void testSendingReplay() throws Exception {
         QueryService queryService = mock(QueryService.class);
         doReturn(CompletableFuture.completedFuture(null)).when(queryService).send(anyString(), any(Metadata.Signal.class));
-        AdminController controller = new AdminController(queryService, mock(MetricPublisher.class));
+        AdminController controller = new AdminController(queryService, mock(ReplayService.class), new MetricRegistry());
         Assert.assertEquals(controller.sendReplay().get().getStatusCode(), HttpStatus.OK);
         verify(queryService).send(anyString(), eq(Metadata.Signal.REPLAY));
     }
+
+    @Test
+    public void testReplayingQueries() {
+        ReplayService replayService = mock(ReplayService.class);
+        ReplayStatus status = new ReplayStatus(true, 1, 0, 0L, 0L, 1L, 0L, 0.0);
+        doReturn(true).doReturn(false).when(replayService).replay();
+        doReturn(status).when(replayService).getStatus();
+        AdminController controller = new AdminController(mock(QueryService.class), replayService, new MetricRegistry());
+
+        ResponseEntity<Object> response = controller.replayQueries();
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.OK);
+        Assert.assertSame(response.getBody(), status);
+        Assert.assertEquals(controller.replayQueries().getStatusCode(), HttpStatus.TOO_MANY_REQUESTS);
+        Assert.assertEquals(controller.getMetricRegistry().extractMetrics().get(metric(Metric.TOO_MANY_REQUESTS)), 1L);
+    }
+
+    @Test
+    public void testExceptionWhileReplayingQueries() {
+        ReplayService replayService = mock(ReplayService.class);
+        doThrow(new RuntimeException("Testing")).when(replayService).replay();
+        AdminController controller = new AdminController(mock(QueryService.class), replayService, new MetricRegistry());
+        Assert.assertEquals(controller.replayQueries().getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    @Test
+    public void testGettingReplayStatus() {
+        ReplayService replayService = mock(ReplayService.class);
+        ReplayStatus status = new ReplayStatus(false, 2, 2, 10L, 1L, 1L, 2L, 10.0);
+        doReturn(status).when(replayService).getStatus();
+        AdminController controller = new AdminController(mock(QueryService.class), replayService, new MetricRegistry());
+
+        ResponseEntity<Object> response = controller.getReplayStatus();
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.OK);
+        Assert.assertSame(response.getBody(), status);
+    }
 }
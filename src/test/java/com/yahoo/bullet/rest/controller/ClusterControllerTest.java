@@ -0,0 +1,69 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.controller;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.ClusterConfiguration;
+import com.yahoo.bullet.rest.ClusterConfiguration.Cluster;
+import com.yahoo.bullet.rest.common.Utils;
+import com.yahoo.bullet.rest.service.QueryService;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class ClusterControllerTest {
+    private QueryService queryService;
+
+    private ClusterController controller(String token) {
+        return new ClusterController(queryService, new ClusterConfiguration().cluster("a", token, 100));
+    }
+
+    @BeforeMethod
+    public void setup() {
+        queryService = mock(QueryService.class);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        Utils.setInstanceTag(null);
+    }
+
+    @Test
+    public void testRespondingToForwardedResponses() {
+        PubSubMessage message = new PubSubMessage("a_1", "foo");
+        Assert.assertEquals(controller("secret").respond(message.asJSON(), "secret").getStatusCode(), HttpStatus.NO_CONTENT);
+
+        ArgumentCaptor<PubSubMessage> captor = ArgumentCaptor.forClass(PubSubMessage.class);
+        verify(queryService).respondLocally(eq("a_1"), captor.capture());
+        Assert.assertEquals(captor.getValue().getContentAsString(), "foo");
+    }
+
+    @Test
+    public void testRejectingResponsesWithoutAConfiguredToken() {
+        PubSubMessage message = new PubSubMessage("a_1", "foo");
+        ClusterController controller = new ClusterController(queryService, new Cluster("a", "", 100));
+        Assert.assertEquals(controller.respond(message.asJSON(), null).getStatusCode(), HttpStatus.FORBIDDEN);
+        Assert.assertEquals(controller.respond(message.asJSON(), "").getStatusCode(), HttpStatus.FORBIDDEN);
+        verifyNoInteractions(queryService);
+    }
+
+    @Test
+    public void testRejectingTheWrongToken() {
+        PubSubMessage message = new PubSubMessage("a_1", "foo");
+        ClusterController controller = controller("secret");
+        Assert.assertEquals(controller.respond(message.asJSON(), "wrong").getStatusCode(), HttpStatus.FORBIDDEN);
+        Assert.assertEquals(controller.respond(message.asJSON(), null).getStatusCode(), HttpStatus.FORBIDDEN);
+        verifyNoInteractions(queryService);
+    }
+}
@@ -8,14 +8,22 @@ package com.yahoo.bullet.rest.controller;
 import com.yahoo.bullet.bql.BQLResult;
 import com.yahoo.bullet.common.BulletError;
 import com.yahoo.bullet.common.SerializerDeserializer;
+import com.yahoo.bullet.pubsub.Metadata;
 import com.yahoo.bullet.pubsub.PubSubMessage;
 import com.yahoo.bullet.query.Query;
 import com.yahoo.bullet.query.Window;
+import com.yahoo.bullet.rest.common.CBOREncoder;
+import com.yahoo.bullet.rest.common.ResultStore;
 import com.yahoo.bullet.rest.model.QueryResponse;
 import com.yahoo.bullet.rest.query.HTTPQueryHandler;
+import com.yahoo.bullet.rest.query.MultiplexedSSEQueryHandler;
 import com.yahoo.bullet.rest.query.QueryError;
+import com.yahoo.bullet.rest.query.QueryHandler;
 import com.yahoo.bullet.rest.query.SSEQueryHandler;
+import com.yahoo.bullet.rest.query.ThrottledQueryHandler;
+import com.yahoo.bullet.rest.service.AdmissionService;
 import com.yahoo.bullet.rest.service.BQLService;
+import com.yahoo.bullet.rest.service.DisconnectService;
 import com.yahoo.bullet.rest.service.HandlerService;
 import com.yahoo.bullet.rest.service.QueryService;
 import com.yahoo.bullet.rest.service.StatusService;
@@ -24,38 +32,50 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
 
 import static com.yahoo.bullet.TestHelpers.assertJSONEquals;
-import static com.yahoo.bullet.TestHelpers.assertOnlyMetricEquals;
 import static com.yahoo.bullet.rest.TestHelpers.assertEqualsBql;
 import static com.yahoo.bullet.rest.TestHelpers.assertEqualsQuery;
+import static com.yahoo.bullet.rest.TestHelpers.assertOnlyMetricEquals;
 import static com.yahoo.bullet.rest.TestHelpers.getBQLQuery;
 import static com.yahoo.bullet.rest.TestHelpers.getQuery;
 import static com.yahoo.bullet.rest.TestHelpers.getQueryWithWindow;
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.MockitoAnnotations.openMocks;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
@@ -71,10 +91,15 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
     private HandlerService handlerService;
     @Mock
     private QueryService queryService;
+    @Mock
+    private DisconnectService disconnectService;
+    @Mock
+    private AdmissionService admissionService;
 
     @Autowired
     private WebApplicationContext context;
     private MockMvc mockMVC;
+    private ResultStore resultStore;
 
     private static void assertSSEJSONEquals(MvcResult result, String expected) throws Exception {
         String actual = result.getResponse().getContentAsString();
@@ -97,6 +122,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         doReturn(mockQuery).when(result).getQuery();
         doReturn(mockBql).when(result).getBql();
         doReturn(result).when(mockService).toQuery(anyString());
+        doReturn(result).when(mockService).toQuery(anyString(), anyString(), anyString());
     }
 
     private static void mockInvalidBQLResult(BQLService mockService, BulletError error) {
@@ -104,12 +130,15 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         doReturn(true).when(result).hasErrors();
         doReturn(singletonList(error)).when(result).getErrors();
         doReturn(result).when(mockService).toQuery(anyString());
+        doReturn(result).when(mockService).toQuery(anyString(), anyString(), anyString());
     }
 
     @BeforeMethod
     public void setup() {
         openMocks(this);
         mockMVC = MockMvcBuilders.webAppContextSetup(context).build();
+        resultStore = new ResultStore(2, 1024L, null, 0L, 60000L);
+        ReflectionTestUtils.setField(controller, "resultStore", resultStore);
         doReturn(true).when(statusService).isBackendStatusOK();
         doReturn(false).when(statusService).queryLimitReached();
 
@@ -123,7 +152,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         String expected = "{'records':[],'meta':{'errors':[{'error':'Service temporarily unavailable'," +
                                                            "'resolutions':['Please try again later']}]}}";
         assertJSONEquals(response.get(), expected);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
     }
 
     @Test
@@ -133,7 +162,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         verify(handlerService).addHandler(anyString(), argument.capture());
         argument.getValue().send(new PubSubMessage("", "bar"));
         Assert.assertEquals(response.get(), "bar");
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.CREATED), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
     }
 
     @Test
@@ -143,7 +172,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
 
         CompletableFuture<String> response = controller.submitHTTPQuery("query");
         assertJSONEquals(response.get(), QueryError.UNSUPPORTED_QUERY.toString());
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.BAD_REQUEST), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
     }
 
     @Test
@@ -152,7 +181,17 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         CompletableFuture<String> response = controller.submitHTTPQuery(getBQLQuery());
         String expected = "{'records':[],'meta':{'errors':[{'error':'Too many concurrent queries in the system','resolutions':['Please try again later']}]}}";
         assertJSONEquals(response.get(), expected);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
+    }
+
+    @Test
+    public void testSubmitHTTPQueryWhenTooCostly() throws Exception {
+        doReturn(QueryError.TOO_COSTLY).when(admissionService).admit(anyString(), any(), any());
+        CompletableFuture<String> response = controller.submitHTTPQuery(getBQLQuery());
+        assertJSONEquals(response.get(), QueryError.TOO_COSTLY.toString());
+        verify(handlerService, never()).addHandler(anyString(), any());
+        verify(queryService, never()).submit(anyString(), any(), anyString());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
     }
 
     @Test
@@ -161,7 +200,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         CompletableFuture<String> response = controller.submitHTTPQuery("windowed query");
         String expected = "{'records':[],'meta':{'errors':[{'error':'foo', 'resolutions': ['bar']}]}}";
         assertJSONEquals(response.get(), expected);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.BAD_REQUEST), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
     }
 
     @Test
@@ -172,13 +211,111 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         ArgumentCaptor<HTTPQueryHandler> argument = ArgumentCaptor.forClass(HTTPQueryHandler.class);
         verify(handlerService).addHandler(anyString(), argument.capture());
         verify(queryService).submit(anyString(), queryCaptor.capture(), bqlCaptor.capture());
+        verify(disconnectService).cancelOnDisconnect(anyList());
         argument.getValue().send(new PubSubMessage("", "bar"));
         Assert.assertEquals(response.get(), "bar");
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.CREATED), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
         assertEqualsQuery(queryCaptor.getValue());
         assertEqualsBql(bqlCaptor.getValue());
     }
 
+    @Test
+    public void testSubmitHTTPQueryRetriedWithAKey() throws Exception {
+        CompletableFuture<String> response = controller.submitHTTPQuery(getBQLQuery(), "http-retry");
+        CompletableFuture<String> retry = controller.submitHTTPQuery(getBQLQuery(), "http-retry");
+        ArgumentCaptor<HTTPQueryHandler> argument = ArgumentCaptor.forClass(HTTPQueryHandler.class);
+        verify(handlerService).addHandler(anyString(), argument.capture());
+        verify(queryService).submit(anyString(), any(), anyString());
+        verify(disconnectService, never()).cancelOnDisconnect(anyList());
+        argument.getValue().send(new PubSubMessage("", "bar"));
+        Assert.assertEquals(response.get(), "bar");
+        Assert.assertEquals(retry.get(), "bar");
+    }
+
+    @Test
+    public void testSubmitHTTPQueryRetriedWithAKeyAfterFailing() throws Exception {
+        doReturn(false).doReturn(true).when(statusService).isBackendStatusOK();
+        CompletableFuture<String> response = controller.submitHTTPQuery(getBQLQuery(), "http-retry-after-failing");
+        assertJSONEquals(response.get(), QueryError.SERVICE_UNAVAILABLE.toString());
+        verify(queryService, never()).submit(anyString(), any(), anyString());
+
+        CompletableFuture<String> retry = controller.submitHTTPQuery(getBQLQuery(), "http-retry-after-failing");
+        ArgumentCaptor<HTTPQueryHandler> argument = ArgumentCaptor.forClass(HTTPQueryHandler.class);
+        verify(handlerService).addHandler(anyString(), argument.capture());
+        verify(queryService).submit(anyString(), any(), anyString());
+        argument.getValue().send(new PubSubMessage("", "bar"));
+        Assert.assertEquals(retry.get(), "bar");
+    }
+
+    @Test
+    public void testSubmitHTTPQueryRetriedWithAKeyAfterThrowing() throws Exception {
+        doThrow(new RuntimeException("testing")).doReturn(null).when(queryService).submit(anyString(), any(), anyString());
+        CompletableFuture<String> response = controller.submitHTTPQuery(getBQLQuery(), "http-retry-after-throwing");
+        assertJSONEquals(response.get(), QueryError.SERVICE_UNAVAILABLE.toString());
+        ArgumentCaptor<String> idCaptor = ArgumentCaptor.forClass(String.class);
+        verify(handlerService).addHandler(idCaptor.capture(), any());
+        verify(handlerService).removeHandler(idCaptor.getValue());
+
+        CompletableFuture<String> retry = controller.submitHTTPQuery(getBQLQuery(), "http-retry-after-throwing");
+        ArgumentCaptor<HTTPQueryHandler> argument = ArgumentCaptor.forClass(HTTPQueryHandler.class);
+        verify(handlerService, times(2)).addHandler(anyString(), argument.capture());
+        verify(queryService, times(2)).submit(anyString(), any(), anyString());
+        argument.getValue().send(new PubSubMessage("", "bar"));
+        Assert.assertEquals(retry.get(), "bar");
+    }
+
+    @Test
+    public void testSubmitHTTPQueryForCBOR() throws Exception {
+        CompletableFuture<byte[]> response = controller.submitHTTPQueryForCBOR(getBQLQuery(), null);
+        ArgumentCaptor<HTTPQueryHandler> argument = ArgumentCaptor.forClass(HTTPQueryHandler.class);
+        verify(handlerService).addHandler(anyString(), argument.capture());
+        argument.getValue().send(new PubSubMessage("", "{\"records\":[]}"));
+        Assert.assertEquals(response.get(), CBOREncoder.encode("{\"records\":[]}"));
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    private MockHttpServletResponse submitHTTPQueryAccepting(String accept) throws Exception {
+        doReturn(false).when(statusService).isBackendStatusOK();
+        MockHttpServletRequestBuilder request = post("/http-query").contentType(MediaType.TEXT_PLAIN).content(getBQLQuery());
+        if (accept != null) {
+            request.header(HttpHeaders.ACCEPT, accept);
+        }
+        MvcResult result = mockMVC.perform(request).andReturn();
+        return mockMVC.perform(asyncDispatch(result)).andReturn().getResponse();
+    }
+
+    private static void assertJSONResponse(MockHttpServletResponse response) throws Exception {
+        Assert.assertTrue(MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(response.getContentType())));
+        assertJSONEquals(response.getContentAsString(), QueryError.SERVICE_UNAVAILABLE.toString());
+    }
+
+    @Test
+    public void testSubmitHTTPQueryNegotiatesCBOR() throws Exception {
+        MockHttpServletResponse response = submitHTTPQueryAccepting(CBOREncoder.MEDIA_TYPE_VALUE);
+        Assert.assertEquals(MediaType.parseMediaType(response.getContentType()), CBOREncoder.MEDIA_TYPE);
+        Assert.assertEquals(response.getContentAsByteArray(), CBOREncoder.encode(QueryError.SERVICE_UNAVAILABLE.toString()));
+    }
+
+    @Test
+    public void testSubmitHTTPQueryAcceptingAnythingGetsJSON() throws Exception {
+        assertJSONResponse(submitHTTPQueryAccepting(MediaType.ALL_VALUE));
+    }
+
+    @Test
+    public void testSubmitHTTPQueryWithoutAcceptGetsJSON() throws Exception {
+        assertJSONResponse(submitHTTPQueryAccepting(null));
+    }
+
+    @Test
+    public void testSubmitHTTPQueryAcceptingJSONGetsJSON() throws Exception {
+        assertJSONResponse(submitHTTPQueryAccepting(MediaType.APPLICATION_JSON_VALUE));
+    }
+
+    @Test
+    public void testSubmitHTTPQueryPreferringJSONOverCBORGetsJSON() throws Exception {
+        assertJSONResponse(submitHTTPQueryAccepting(CBOREncoder.MEDIA_TYPE_VALUE + ";q=0.5, " + MediaType.APPLICATION_JSON_VALUE));
+    }
+
     @Test
     public void testSubmitSSEQueryWithBackendDown() throws Exception {
         doReturn(false).when(statusService).isBackendStatusOK();
@@ -186,7 +323,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         MvcResult result = mockMVC.perform(post("/sse-query").contentType(MediaType.TEXT_PLAIN).content(query)).andReturn();
         String expected = "data:{'records':[],'meta':{'errors':[{'error':'Service temporarily unavailable','resolutions':['Please try again later']}]}}\n\n";
         assertSSEJSONEquals(result, expected);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
     }
 
     @Test
@@ -195,7 +332,16 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         MvcResult result = mockMVC.perform(post("/sse-query").contentType(MediaType.TEXT_PLAIN).content(getBQLQuery())).andReturn();
         String expected = "data:{'records':[],'meta':{'errors':[{'error':'Too many concurrent queries in the system','resolutions':['Please try again later']}]}}\n\n";
         assertSSEJSONEquals(result, expected);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
+    }
+
+    @Test
+    public void testSubmitSSEQueryWhenTooCostly() throws Exception {
+        doReturn(QueryError.TOO_COSTLY).when(admissionService).admit(anyString(), any(), any());
+        MvcResult result = mockMVC.perform(post("/sse-query").contentType(MediaType.TEXT_PLAIN).content(getBQLQuery())).andReturn();
+        assertSSEJSONEquals(result, "data:" + QueryError.TOO_COSTLY.toString() + "\n\n");
+        verify(handlerService, never()).addHandler(anyString(), any());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
     }
 
     @Test
@@ -204,19 +350,156 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         MvcResult result = mockMVC.perform(post("/sse-query").contentType(MediaType.TEXT_PLAIN).content("bad query")).andReturn();
         String expected = "data:{'records':[],'meta':{'errors':[{'error':'foo', 'resolutions': ['bar']}]}}\n\n";
         assertSSEJSONEquals(result, expected);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.BAD_REQUEST), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
     }
 
     @Test
     public void testSubmitSSEQuery() throws Exception {
         MvcResult result = mockMVC.perform(post("/sse-query").contentType(MediaType.TEXT_PLAIN).content(getBQLQuery())).andReturn();
+        ArgumentCaptor<String> idCaptor = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<SSEQueryHandler> argument = ArgumentCaptor.forClass(SSEQueryHandler.class);
-        verify(handlerService).addHandler(anyString(), argument.capture());
+        verify(handlerService).addHandler(idCaptor.capture(), argument.capture());
+        verify(disconnectService).cancelOnDisconnect(eq(idCaptor.getValue()), any(SseEmitter.class));
         argument.getValue().send(new PubSubMessage("", "bar"));
         Assert.assertEquals(result.getResponse().getContentAsString(), "data:bar\n\n");
         argument.getValue().send(new PubSubMessage("", "baz"));
         Assert.assertEquals(result.getResponse().getContentAsString(), "data:bar\n\ndata:baz\n\n");
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.CREATED), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    @Test
+    public void testSubmitThrottledSSEQuery() throws Exception {
+        MvcResult result = mockMVC.perform(post("/sse-query").param("throttle", "60000").contentType(MediaType.TEXT_PLAIN).content(getBQLQuery())).andReturn();
+        ArgumentCaptor<QueryHandler> argument = ArgumentCaptor.forClass(QueryHandler.class);
+        verify(handlerService).addHandler(anyString(), argument.capture());
+        Assert.assertTrue(argument.getValue() instanceof ThrottledQueryHandler);
+        ThrottledQueryHandler handler = (ThrottledQueryHandler) argument.getValue();
+        Assert.assertTrue(handler.getHandler() instanceof SSEQueryHandler);
+        handler.send(new PubSubMessage("", "bar"));
+        handler.send(new PubSubMessage("", "baz"));
+        Assert.assertEquals(result.getResponse().getContentAsString(), "");
+        handler.flush();
+        Assert.assertEquals(result.getResponse().getContentAsString(), "data:baz\n\n");
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    @Test
+    public void testSubmitBatchQuery() throws Exception {
+        PubSubMessage sent = new PubSubMessage("", "sent");
+        doReturn(CompletableFuture.completedFuture(asList(sent, sent))).when(queryService).submit(anyList(), anyList(), anyList());
+
+        CompletableFuture<String> response = controller.submitBatchQuery(asList(getBQLQuery(), getBQLQuery()));
+
+        ArgumentCaptor<String> idCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<HTTPQueryHandler> handlerCaptor = ArgumentCaptor.forClass(HTTPQueryHandler.class);
+        verify(handlerService, times(2)).addHandler(idCaptor.capture(), handlerCaptor.capture());
+        verify(queryService).submit(eq(idCaptor.getAllValues()), anyList(), anyList());
+        verify(disconnectService).cancelOnDisconnect(idCaptor.getAllValues());
+        Assert.assertFalse(response.isDone());
+        handlerCaptor.getAllValues().get(1).send(new PubSubMessage("", "{\"b\":2}"));
+        handlerCaptor.getAllValues().get(0).send(new PubSubMessage("", "{\"a\":1}"));
+        assertJSONEquals(response.get(), "[{'a':1},{'b':2}]");
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    @Test
+    public void testSubmitBatchQueryFailsUnsentQueries() throws Exception {
+        PubSubMessage sent = new PubSubMessage("", "sent");
+        doReturn(CompletableFuture.completedFuture(asList(null, sent))).when(queryService).submit(anyList(), anyList(), anyList());
+
+        controller.submitBatchQuery(asList(getBQLQuery(), getBQLQuery()));
+
+        ArgumentCaptor<String> idCaptor = ArgumentCaptor.forClass(String.class);
+        verify(handlerService, times(2)).addHandler(idCaptor.capture(), any());
+        verify(handlerService).failHandler(idCaptor.getAllValues().get(0));
+        verify(handlerService, never()).failHandler(idCaptor.getAllValues().get(1));
+    }
+
+    @Test
+    public void testSubmitBatchQueryWithBadQueries() throws Exception {
+        mockInvalidBQLResult(bqlService, new BulletError("foo", "bar"));
+        CompletableFuture<String> response = controller.submitBatchQuery(asList("bad", "bad"));
+
+        String error = "{'records':[],'meta':{'errors':[{'error':'foo','resolutions':['bar']}]}}";
+        assertJSONEquals(response.get(), "[" + error + "," + error + "]");
+        verify(queryService, never()).submit(anyList(), anyList(), anyList());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
+    }
+
+    @Test
+    public void testSubmitBatchQueryWithWindow() throws Exception {
+        mockValidBQLResult(bqlService, getQueryWithWindow(new Window(1, Window.Unit.RECORD)), getBQLQuery());
+        CompletableFuture<String> response = controller.submitBatchQuery(singletonList(getBQLQuery()));
+
+        assertJSONEquals(response.get(), "[" + QueryError.UNSUPPORTED_QUERY + "]");
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
+    }
+
+    @Test
+    public void testSubmitBatchQueryWhenTooCostly() throws Exception {
+        doReturn(QueryError.TOO_COSTLY).when(admissionService).admit(anyString(), any(), any());
+        CompletableFuture<String> response = controller.submitBatchQuery(singletonList(getBQLQuery()));
+
+        assertJSONEquals(response.get(), "[" + QueryError.TOO_COSTLY + "]");
+        verify(queryService, never()).submit(anyList(), anyList(), anyList());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
+    }
+
+    @Test
+    public void testSubmitBatchQueryPastTheQueryLimit() throws Exception {
+        PubSubMessage sent = new PubSubMessage("", "sent");
+        doReturn(CompletableFuture.completedFuture(singletonList(sent))).when(queryService).submit(anyList(), anyList(), anyList());
+        // There is room for one more query, which is checked once for the batch and once for the first query
+        doReturn(false, false, true).when(statusService).queryLimitReached();
+
+        CompletableFuture<String> response = controller.submitBatchQuery(asList(getBQLQuery(), getBQLQuery()));
+
+        ArgumentCaptor<String> idCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<HTTPQueryHandler> handlerCaptor = ArgumentCaptor.forClass(HTTPQueryHandler.class);
+        verify(handlerService).addHandler(idCaptor.capture(), handlerCaptor.capture());
+        verify(queryService).submit(eq(idCaptor.getAllValues()), anyList(), anyList());
+        handlerCaptor.getValue().send(new PubSubMessage("", "{\"a\":1}"));
+        assertJSONEquals(response.get(), "[{'a':1}," + QueryError.TOO_MANY_QUERIES + "]");
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    @Test
+    public void testSubmitBatchQueryTooLarge() throws Exception {
+        CompletableFuture<String> response = controller.submitBatchQuery(asList("a", "b", "c", "d"));
+
+        assertJSONEquals(response.get(), QueryError.INVALID_BATCH.toString());
+        verifyNoInteractions(queryService, handlerService);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
+    }
+
+    @Test
+    public void testSubmitBatchQueryWithBackendDown() throws Exception {
+        doReturn(false).when(statusService).isBackendStatusOK();
+        CompletableFuture<String> response = controller.submitBatchQuery(singletonList(getBQLQuery()));
+
+        assertJSONEquals(response.get(), QueryError.SERVICE_UNAVAILABLE.toString());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
+    }
+
+    @Test
+    public void testSubmitBatchSSEQuery() throws Exception {
+        PubSubMessage sent = new PubSubMessage("", "sent");
+        doReturn(CompletableFuture.completedFuture(asList(sent, sent))).when(queryService).submit(anyList(), anyList(), anyList());
+        String queries = "[\"" + getBQLQuery() + "\",\"" + getBQLQuery() + "\"]";
+
+        MvcResult result = mockMVC.perform(post("/batch-query").contentType(MediaType.APPLICATION_JSON)
+                                                               .accept(MediaType.TEXT_EVENT_STREAM).content(queries)).andReturn();
+
+        ArgumentCaptor<String> idCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<MultiplexedSSEQueryHandler> handlerCaptor = ArgumentCaptor.forClass(MultiplexedSSEQueryHandler.class);
+        verify(handlerService, times(2)).addHandler(idCaptor.capture(), handlerCaptor.capture());
+        verify(disconnectService).cancelOnDisconnect(eq(idCaptor.getAllValues()), any(SseEmitter.class));
+        handlerCaptor.getAllValues().get(1).send(new PubSubMessage("", "bar"));
+        handlerCaptor.getAllValues().get(0).send(new PubSubMessage("", "foo"));
+        Assert.assertEquals(result.getResponse().getContentAsString(),
+                            "id:" + idCaptor.getAllValues().get(1) + "\nevent:1\ndata:bar\n\n" +
+                            "id:" + idCaptor.getAllValues().get(0) + "\nevent:0\ndata:foo\n\n");
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
     }
 
     @Test
@@ -228,7 +511,19 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         QueryError queryError = (QueryError) response.getBody();
         assertJSONEquals(queryError.toString(), QueryError.SERVICE_UNAVAILABLE.toString());
         verifyNoInteractions(queryService, handlerService);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
+    }
+
+    @Test
+    public void testSubmitAsyncQueryWhenClassIsFull() throws Exception {
+        doReturn(QueryError.TOO_MANY_QUERIES).when(admissionService).admitAsync(anyString(), any(), any());
+        ResponseEntity<Object> response = controller.submitAsyncQuery("query").get();
+        Assert.assertNotNull(response);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.TOO_MANY_REQUESTS);
+        QueryError queryError = (QueryError) response.getBody();
+        assertJSONEquals(queryError.toString(), QueryError.TOO_MANY_QUERIES.toString());
+        verifyNoInteractions(queryService, handlerService);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
     }
 
     @Test
@@ -245,7 +540,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         ArgumentCaptor<String> bqlCaptor = ArgumentCaptor.forClass(String.class);
         verify(queryService).submit(anyString(), queryCaptor.capture(), bqlCaptor.capture());
         verifyNoInteractions(handlerService);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.INTERNAL_SERVER_ERROR), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.INTERNAL_SERVER_ERROR), 1L);
         assertEqualsQuery(queryCaptor.getValue());
         assertEqualsBql(bqlCaptor.getValue());
     }
@@ -266,7 +561,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         ArgumentCaptor<String> bqlCaptor = ArgumentCaptor.forClass(String.class);
         verify(queryService).submit(anyString(), queryCaptor.capture(), bqlCaptor.capture());
         verifyNoInteractions(handlerService);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.INTERNAL_SERVER_ERROR), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.INTERNAL_SERVER_ERROR), 1L);
         assertEqualsQuery(queryCaptor.getValue());
         assertEqualsBql(bqlCaptor.getValue());
     }
@@ -282,7 +577,56 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         String expected = "{'records':[],'meta':{'errors':[{'error':'foo', 'resolutions': ['bar']}]}}";
         assertJSONEquals(response.getBody().toString(), expected);
         verifyNoInteractions(handlerService);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.BAD_REQUEST), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
+    }
+
+    @Test
+    public void testSubmitAsyncQueryRetriedWithAKey() throws Exception {
+        doAnswer(i -> {
+            String id = i.getArgument(0, String.class);
+            Query query = i.getArgument(1, Query.class);
+            return CompletableFuture.completedFuture(new PubSubMessage(id, SerializerDeserializer.toBytes(query)));
+        }).when(queryService).submit(anyString(), any(Query.class), anyString());
+
+        ResponseEntity<Object> response = controller.submitAsyncQuery("query", "async-retry").get();
+        ResponseEntity<Object> retry = controller.submitAsyncQuery("query", "async-retry").get();
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.CREATED);
+        Assert.assertSame(retry, response);
+
+        QueryResponse queryResponse = (QueryResponse) response.getBody();
+        verify(queryService).submit(eq(queryResponse.getId()), any(), anyString());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    @Test
+    public void testSubmitAsyncQueryRetriedWithAKeyAfterFailing() throws Exception {
+        doReturn(false).doReturn(true).when(statusService).isBackendStatusOK();
+        doAnswer(i -> {
+            String id = i.getArgument(0, String.class);
+            Query query = i.getArgument(1, Query.class);
+            return CompletableFuture.completedFuture(new PubSubMessage(id, SerializerDeserializer.toBytes(query)));
+        }).when(queryService).submit(anyString(), any(Query.class), anyString());
+
+        ResponseEntity<Object> response = controller.submitAsyncQuery("query", "async-retry-after-failing").get();
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.SERVICE_UNAVAILABLE);
+        ResponseEntity<Object> retry = controller.submitAsyncQuery("query", "async-retry-after-failing").get();
+        Assert.assertEquals(retry.getStatusCode(), HttpStatus.CREATED);
+        verify(queryService).submit(anyString(), any(), anyString());
+    }
+
+    @Test
+    public void testSubmitAsyncQueryRetriedWithAKeyAfterThrowing() throws Exception {
+        doThrow(new RuntimeException("testing")).doAnswer(i -> {
+            String id = i.getArgument(0, String.class);
+            Query query = i.getArgument(1, Query.class);
+            return CompletableFuture.completedFuture(new PubSubMessage(id, SerializerDeserializer.toBytes(query)));
+        }).when(queryService).submit(anyString(), any(Query.class), anyString());
+
+        ResponseEntity<Object> response = controller.submitAsyncQuery("query", "async-retry-after-throwing").get();
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
+        ResponseEntity<Object> retry = controller.submitAsyncQuery("query", "async-retry-after-throwing").get();
+        Assert.assertEquals(retry.getStatusCode(), HttpStatus.CREATED);
+        verify(queryService, times(2)).submit(anyString(), any(), anyString());
     }
 
     @Test
@@ -309,7 +653,105 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
 
         Assert.assertTrue(queryResponse.getCreateTime() >= start && queryResponse.getCreateTime() <= end);
         verifyNoInteractions(handlerService);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.CREATED), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    @Test
+    public void testSubmitAsyncQueryKeepsItsResults() throws Exception {
+        doAnswer(i -> CompletableFuture.completedFuture(new PubSubMessage(i.getArgument(0, String.class), "")))
+            .when(queryService).submit(anyString(), any(Query.class), anyString());
+
+        ResponseEntity<Object> response = controller.submitAsyncQuery("query").get();
+        String id = ((QueryResponse) response.getBody()).getId();
+        Assert.assertNotNull(resultStore.get(id));
+
+        ResponseEntity<Object> result = controller.getAsyncResult(id);
+        Assert.assertEquals(result.getStatusCode(), HttpStatus.NO_CONTENT);
+        Assert.assertNull(result.getBody());
+
+        resultStore.respond(id, new PubSubMessage(id, "{'records':[]}"));
+        result = controller.getAsyncResult(id);
+        Assert.assertEquals(result.getStatusCode(), HttpStatus.OK);
+        Assert.assertEquals(result.getBody(), "{'records':[]}");
+    }
+
+    @Test
+    public void testSubmitAsyncQueryFailingDropsItsResults() throws Exception {
+        doReturn(CompletableFuture.completedFuture(null)).when(queryService).submit(anyString(), any(Query.class), anyString());
+
+        ResponseEntity<Object> response = controller.submitAsyncQuery("query").get();
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
+        Assert.assertEquals(resultStore.getMetrics().get(ResultStore.MEMORY_QUERIES), 0);
+    }
+
+    @Test
+    public void testGettingUnknownAsyncResults() {
+        ResponseEntity<Object> response = controller.getAsyncResult("id");
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertJSONEquals(response.getBody().toString(), QueryError.RESULT_NOT_FOUND.toString());
+
+        response = controller.getAsyncResults("id", 0, 10);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertJSONEquals(response.getBody().toString(), QueryError.RESULT_NOT_FOUND.toString());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.NOT_FOUND), 2L);
+    }
+
+    @Test
+    public void testGettingAsyncResultsWithoutAStore() {
+        ReflectionTestUtils.setField(controller, "resultStore", null);
+        ResponseEntity<Object> response = controller.getAsyncResult("id");
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void testGettingAnInvalidPageOfAsyncResults() {
+        resultStore.register("id");
+        Assert.assertEquals(controller.getAsyncResults("id", -1, 10).getStatusCode(), HttpStatus.BAD_REQUEST);
+        ResponseEntity<Object> response = controller.getAsyncResults("id", 0, 0);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.BAD_REQUEST);
+        assertJSONEquals(response.getBody().toString(), QueryError.INVALID_PAGE.toString());
+    }
+
+    @Test
+    public void testGettingPagesOfAsyncResults() {
+        resultStore.register("id");
+        resultStore.respond("id", new PubSubMessage("id", "{'records':[1]}"));
+        resultStore.respond("id", new PubSubMessage("id", "{'records':[2]}"));
+        resultStore.respond("id", new PubSubMessage("id", "{'records':[3]}", Metadata.Signal.COMPLETE));
+
+        ResponseEntity<Object> response = controller.getAsyncResults("id", 0, 1);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.OK);
+        assertJSONEquals(response.getBody().toString(),
+                         "{'id':'id','done':true,'total':3,'page':0,'size':1,'windows':[{'records':[2]}]}");
+
+        response = controller.getAsyncResults("id", 1, 1);
+        assertJSONEquals(response.getBody().toString(),
+                         "{'id':'id','done':true,'total':3,'page':1,'size':1,'windows':[{'records':[3]}]}");
+
+        response = controller.getAsyncResults("id", 1, 10);
+        assertJSONEquals(response.getBody().toString(),
+                         "{'id':'id','done':true,'total':3,'page':1,'size':10,'windows':[]}");
+    }
+
+    @Test
+    public void testGettingAsyncResultsOfAnotherPrincipal() {
+        resultStore.register("id", "alice");
+        resultStore.respond("id", new PubSubMessage("id", "{'records':[1]}"));
+
+        ResponseEntity<Object> response = controller.getAsyncResult("id");
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.NOT_FOUND);
+        response = controller.getAsyncResults("id", 0, 1);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void testGettingAsyncResultsOverHTTP() throws Exception {
+        resultStore.register("id");
+        resultStore.respond("id", new PubSubMessage("id", "{'records':[1]}"));
+        MvcResult result = mockMVC.perform(get("/async-query/id/results?size=5")).andReturn();
+        Assert.assertEquals(result.getResponse().getStatus(), HttpStatus.OK.value());
+        assertJSONEquals(result.getResponse().getContentAsString(),
+                         "{'id':'id','done':false,'total':1,'page':0,'size':5,'windows':[{'records':[1]}]}");
     }
 
     @Test
@@ -319,7 +761,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         Assert.assertNotNull(response);
         Assert.assertEquals(response.getStatusCode(), HttpStatus.OK);
         Assert.assertNull((response.getBody()));
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.OK), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.OK), 1L);
     }
 
     @Test
@@ -331,7 +773,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         QueryError queryError = (QueryError) response.getBody();
         assertJSONEquals(queryError.toString(), QueryError.SERVICE_UNAVAILABLE.toString());
         verifyNoInteractions(queryService, handlerService);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
     }
 
     @Test
@@ -344,7 +786,7 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         assertJSONEquals(queryError.toString(), QueryError.SERVICE_UNAVAILABLE.toString());
         verify(queryService).kill(eq("id"));
         verifyNoInteractions(handlerService);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.INTERNAL_SERVER_ERROR), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.INTERNAL_SERVER_ERROR), 1L);
     }
 
     @Test
@@ -360,26 +802,47 @@ public class HTTPQueryControllerTest extends AbstractTestNGSpringContextTests {
         assertJSONEquals(queryError.toString(), QueryError.SERVICE_UNAVAILABLE.toString());
         verify(queryService).kill(eq("id"));
         verifyNoInteractions(handlerService);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.INTERNAL_SERVER_ERROR), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.INTERNAL_SERVER_ERROR), 1L);
     }
 
     @Test
     public void testValidateQueryWithInvalidQuery() {
         BulletError error = BulletError.makeError("foo", "bar");
         mockInvalidBQLResult(bqlService, error);
-        ResponseEntity<Object> response = controller.validateQuery("query");
+        ResponseEntity<Object> response = controller.validateQuery("query", null);
         Assert.assertNotNull(response);
         Assert.assertEquals(response.getStatusCode(), HttpStatus.UNPROCESSABLE_ENTITY);
         assertJSONEquals((String) response.getBody(), new QueryError(singletonList(error)).toString());
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.UNPROCESSABLE_ENTITY), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.UNPROCESSABLE_ENTITY), 1L);
     }
 
     @Test
     public void testValidateQuery() {
-        ResponseEntity<Object> response = controller.validateQuery("good query");
+        ResponseEntity<Object> response = controller.validateQuery("good query", null);
         Assert.assertNotNull(response);
         Assert.assertEquals(response.getStatusCode(), HttpStatus.NO_CONTENT);
         Assert.assertNull(response.getBody());
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.NO_CONTENT), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.NO_CONTENT), 1L);
+    }
+
+    @Test
+    public void testFastValidateQuery() {
+        doReturn(Collections.emptyList()).when(bqlService).validate(anyString());
+        ResponseEntity<Object> response = controller.validateQuery("good query", "FAST");
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.NO_CONTENT);
+        verify(bqlService).validate("good query");
+        verify(bqlService, never()).toQuery(anyString());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.NO_CONTENT), 1L);
+    }
+
+    @Test
+    public void testFastValidateQueryWithInvalidQuery() {
+        BulletError error = BulletError.makeError("1:8: foo", "bar");
+        doReturn(singletonList(error)).when(bqlService).validate(anyString());
+        ResponseEntity<Object> response = controller.validateQuery("query", HTTPQueryController.FAST_MODE);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.UNPROCESSABLE_ENTITY);
+        assertJSONEquals((String) response.getBody(), new QueryError(singletonList(error)).toString());
+        verify(bqlService, never()).toQuery(anyString());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.UNPROCESSABLE_ENTITY), 1L);
     }
 }
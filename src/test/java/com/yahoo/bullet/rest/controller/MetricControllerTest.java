@@ -5,43 +5,45 @@
  */
 package com.yahoo.bullet.rest.controller;
 
-import com.yahoo.bullet.common.metrics.MetricCollector;
-import com.yahoo.bullet.common.metrics.MetricPublisher;
 import com.yahoo.bullet.rest.common.Metric;
+import com.yahoo.bullet.rest.common.MetricRegistry;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
-import static com.yahoo.bullet.TestHelpers.assertOnlyMetricEquals;
-import static java.util.Collections.emptyList;
-import static org.mockito.Mockito.mock;
+import static com.yahoo.bullet.rest.TestHelpers.assertOnlyMetricEquals;
 
 public class MetricControllerTest {
     private static class TestMetricController extends MetricController {
-        private TestMetricController(MetricPublisher metricPublisher, MetricCollector metricCollector) {
-            super(metricPublisher, metricCollector);
+        private TestMetricController(MetricRegistry metricRegistry, String prefix, Metric... metrics) {
+            super(metricRegistry, prefix, metrics);
         }
     }
 
     @Test
     public void testDisablingMetrics() {
-        MetricController controller = new TestMetricController(null, null);
-        controller.incrementMetric("prefix." + Metric.COUNT);
-        controller.incrementMetric("prefix.", Metric.UNAVAILABLE);
-        controller.publishMetrics();
+        MetricController controller = new TestMetricController(null, "prefix.", Metric.COUNT);
+        controller.incrementMetric(Metric.COUNT);
         Assert.assertFalse(controller.isMetricEnabled());
-        Assert.assertNull(controller.getMetricPublisher());
-        Assert.assertNull(controller.getMetricCollector());
+        Assert.assertNull(controller.getMetricRegistry());
     }
 
     @Test
     public void testIncrementingMetric() {
-        MetricCollector collector = new MetricCollector(emptyList());
-        MetricController controller = new TestMetricController(mock(MetricPublisher.class), collector);
-        Assert.assertNotNull(controller.getMetricPublisher());
-        Assert.assertSame(controller.getMetricCollector(), collector);
+        MetricRegistry registry = new MetricRegistry();
+        MetricController controller = new TestMetricController(registry, "prefix.", Metric.COUNT, Metric.UNAVAILABLE);
+        Assert.assertSame(controller.getMetricRegistry(), registry);
         Assert.assertTrue(controller.isMetricEnabled());
-        controller.incrementMetric("prefix.", Metric.COUNT);
-        controller.incrementMetric("prefix." + Metric.COUNT);
-        assertOnlyMetricEquals(collector, "prefix." + Metric.COUNT, 2L);
+        controller.incrementMetric(Metric.COUNT);
+        controller.incrementMetric(Metric.COUNT);
+        assertOnlyMetricEquals(registry, "prefix." + Metric.COUNT, 2L);
+        Assert.assertEquals(registry.extractMetrics().get("prefix." + Metric.UNAVAILABLE), 0L);
+    }
+
+    @Test
+    public void testIgnoringUncountedMetrics() {
+        MetricRegistry registry = new MetricRegistry();
+        MetricController controller = new TestMetricController(registry, "prefix.", Metric.COUNT);
+        controller.incrementMetric(Metric.ERROR);
+        Assert.assertFalse(registry.extractMetrics().containsKey("prefix." + Metric.ERROR));
     }
 }
@@ -0,0 +1,218 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.controller;
+
+import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.PriorityClass;
+import com.yahoo.bullet.rest.query.QueryError;
+import com.yahoo.bullet.rest.query.QueryHandler;
+import com.yahoo.bullet.rest.query.RawWebSocketQueryHandler;
+import com.yahoo.bullet.rest.query.ThrottledQueryHandler;
+import com.yahoo.bullet.rest.service.AdmissionService;
+import com.yahoo.bullet.rest.service.BQLService;
+import com.yahoo.bullet.rest.service.HandlerService;
+import com.yahoo.bullet.rest.service.StatusService;
+import com.yahoo.bullet.rest.service.ThrottleService;
+import com.yahoo.bullet.rest.service.WebSocketService;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.security.Principal;
+
+import static com.yahoo.bullet.TestHelpers.assertNoMetric;
+import static com.yahoo.bullet.rest.TestHelpers.assertEqualsBql;
+import static com.yahoo.bullet.rest.TestHelpers.assertEqualsQuery;
+import static com.yahoo.bullet.rest.TestHelpers.assertOnlyMetricEquals;
+import static com.yahoo.bullet.rest.TestHelpers.getBQLQuery;
+import static com.yahoo.bullet.rest.TestHelpers.getQueryBuilder;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class RawWebSocketControllerTest {
+    private RawWebSocketController controller;
+    private WebSocketService webSocketService;
+    private StatusService statusService;
+    private ThrottleService throttleService;
+    private WebSocketSession session;
+
+    private static String metric(HttpStatus httpStatus) {
+        return RawWebSocketController.STATUS_PREFIX + httpStatus;
+    }
+
+    private String sentFrame() throws Exception {
+        ArgumentCaptor<TextMessage> argument = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session).sendMessage(argument.capture());
+        return argument.getValue().getPayload();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        throttleService.close();
+    }
+
+    @BeforeMethod
+    public void setup() {
+        statusService = mock(StatusService.class);
+        doReturn(true).when(statusService).isBackendStatusOK();
+        doReturn(false).when(statusService).queryLimitReached();
+        webSocketService = mock(WebSocketService.class);
+        session = mock(WebSocketSession.class);
+        doReturn("sessionID").when(session).getId();
+        throttleService = new ThrottleService(mock(HandlerService.class), 100L, 10, 1);
+        controller = new RawWebSocketController(webSocketService, new BQLService(getQueryBuilder()), statusService,
+                                                throttleService, null, new MetricRegistry(), 1024, 10);
+    }
+
+    @Test
+    public void testConnectionLifecycle() {
+        controller.afterConnectionEstablished(session);
+        Assert.assertTrue(controller.getSessions().get("sessionID") instanceof ConcurrentWebSocketSessionDecorator);
+        Assert.assertFalse(controller.supportsPartialMessages());
+
+        controller.handleTransportError(session, new RuntimeException("Testing"));
+        controller.afterConnectionClosed(session, CloseStatus.NORMAL);
+        Assert.assertTrue(controller.getSessions().isEmpty());
+        verify(webSocketService).killQuery("sessionID", null);
+    }
+
+    @Test
+    public void testSubmitNewQuery() {
+        controller.handleMessage(session, new TextMessage("NEW_QUERY " + getBQLQuery()));
+
+        ArgumentCaptor<Query> argument = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<String> bqlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(webSocketService).submitQuery(anyString(), eq("sessionID"), argument.capture(), bqlCaptor.capture(),
+                                             any(RawWebSocketQueryHandler.class));
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+        assertEqualsQuery(argument.getValue());
+        assertEqualsBql(bqlCaptor.getValue());
+    }
+
+    @Test
+    public void testSubmitThrottledQuery() {
+        doReturn(URI.create("ws://localhost/raw-ws-query?throttle=1000")).when(session).getUri();
+        controller.handleMessage(session, new TextMessage("NEW_QUERY " + getBQLQuery()));
+
+        ArgumentCaptor<QueryHandler> argument = ArgumentCaptor.forClass(QueryHandler.class);
+        verify(webSocketService).submitQuery(anyString(), eq("sessionID"), any(), any(), argument.capture());
+        Assert.assertTrue(argument.getValue() instanceof ThrottledQueryHandler);
+        Assert.assertTrue(((ThrottledQueryHandler) argument.getValue()).getHandler() instanceof RawWebSocketQueryHandler);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    @Test
+    public void testSubmitQueryWithInvalidThrottle() throws Exception {
+        doReturn(URI.create("ws://localhost/raw-ws-query?throttle=often")).when(session).getUri();
+        controller.handleMessage(session, new TextMessage("NEW_QUERY " + getBQLQuery()));
+
+        Assert.assertEquals(sentFrame(), "FAIL " + QueryError.INVALID_THROTTLE);
+        verify(webSocketService, never()).submitQuery(any(), any(), any(), any(), any());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
+    }
+
+    @Test
+    public void testSubmitQueryWithBackendDown() throws Exception {
+        doReturn(false).when(statusService).isBackendStatusOK();
+        controller.handleMessage(session, new TextMessage("NEW_QUERY " + getBQLQuery()));
+
+        Assert.assertEquals(sentFrame(), "FAIL " + QueryError.SERVICE_UNAVAILABLE);
+        verify(webSocketService, never()).submitQuery(any(), any(), any(), any(), any());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
+    }
+
+    @Test
+    public void testSubmitQueryTooManyQueries() throws Exception {
+        doReturn(true).when(statusService).queryLimitReached();
+        controller.handleMessage(session, new TextMessage("NEW_QUERY " + getBQLQuery()));
+
+        Assert.assertEquals(sentFrame(), "FAIL " + QueryError.TOO_MANY_QUERIES);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
+    }
+
+    @Test
+    public void testSubmitQueryWithoutContent() throws Exception {
+        controller.handleMessage(session, new TextMessage("NEW_QUERY"));
+
+        Assert.assertEquals(sentFrame(), "FAIL " + QueryError.INVALID_QUERY);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
+    }
+
+    @Test
+    public void testSubmitQueryAdmitted() {
+        Principal principal = mock(Principal.class);
+        doReturn(principal).when(session).getPrincipal();
+        AdmissionService admissionService = mock(AdmissionService.class);
+        doReturn(PriorityClass.BULK).when(admissionService).classify(RawWebSocketQueryHandler.ENDPOINT, principal);
+        controller = new RawWebSocketController(webSocketService, new BQLService(getQueryBuilder()), statusService,
+                                                throttleService, admissionService, new MetricRegistry(), 1024, 10);
+        controller.handleMessage(session, new TextMessage("NEW_QUERY " + getBQLQuery()));
+
+        ArgumentCaptor<String> idCaptor = ArgumentCaptor.forClass(String.class);
+        verify(admissionService).admit(idCaptor.capture(), any(Query.class), eq(PriorityClass.BULK));
+        verify(webSocketService).submitQuery(eq(idCaptor.getValue()), eq("sessionID"), any(), any(), any());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    @Test
+    public void testSubmitQueryTooCostly() throws Exception {
+        AdmissionService admissionService = mock(AdmissionService.class);
+        doReturn(QueryError.TOO_COSTLY).when(admissionService).admit(anyString(), any(), any());
+        controller = new RawWebSocketController(webSocketService, new BQLService(getQueryBuilder()), statusService,
+                                                throttleService, admissionService, new MetricRegistry(), 1024, 10);
+        controller.handleMessage(session, new TextMessage("NEW_QUERY " + getBQLQuery()));
+
+        Assert.assertEquals(sentFrame(), "FAIL " + QueryError.TOO_COSTLY);
+        verify(webSocketService, never()).submitQuery(any(), any(), any(), any(), any());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
+    }
+
+    @Test
+    public void testKillQuery() {
+        controller.handleMessage(session, new TextMessage("KILL_QUERY queryID"));
+        verify(webSocketService).killQuery("sessionID", "queryID");
+
+        controller.handleMessage(session, new TextMessage("KILL_QUERY"));
+        verify(webSocketService).killQuery("sessionID", null);
+        assertNoMetric(controller.getMetricRegistry().extractMetrics());
+    }
+
+    @Test
+    public void testInvalidRequests() throws Exception {
+        controller.handleMessage(session, new TextMessage("new_query " + getBQLQuery()));
+        Assert.assertEquals(sentFrame(), "FAIL " + RawWebSocketController.INVALID_REQUEST);
+
+        session = mock(WebSocketSession.class);
+        doReturn("sessionID").when(session).getId();
+        controller.handleMessage(session, new BinaryMessage(new byte[0]));
+        Assert.assertEquals(sentFrame(), "FAIL " + RawWebSocketController.INVALID_REQUEST);
+
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 2L);
+        verify(webSocketService, never()).deleteSession(any());
+    }
+
+    @Test
+    public void testPongsAreIgnored() throws Exception {
+        controller.handleMessage(session, new PongMessage());
+        verify(session, never()).sendMessage(any());
+    }
+}
@@ -5,22 +5,98 @@
  */
 package com.yahoo.bullet.rest.controller;
 
+import com.yahoo.bullet.rest.model.SchemaRequest;
 import com.yahoo.bullet.rest.service.SchemaService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
 import static com.yahoo.bullet.TestHelpers.assertJSONEquals;
 
 public class SchemaControllerTest {
+    private SchemaService service;
+    private SchemaController controller;
+
+    @BeforeMethod
+    public void setup() {
+        service = new SchemaService("1.2", "test_fields.json");
+        controller = new SchemaController(service);
+    }
+
     @Test
     public void testDefaultResponse() {
-        SchemaService service = new SchemaService("1.2", "test_fields.json");
-        SchemaController controller = new SchemaController(service);
-        String actual = controller.getJSONSchema();
+        ResponseEntity<byte[]> response = controller.getJSONSchema(null, null, null);
+        String actual = new String(response.getBody(), StandardCharsets.UTF_8);
 
         String expected =
             "{'data': [{'id':'test','type':'column'," +
                        "'attributes':{'name':'test','type':'STRING_MAP','description':'foo'}}]," +
              "'meta':{'version':'1.2'}}";
         assertJSONEquals(actual, expected);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.OK);
+        Assert.assertEquals(response.getHeaders().getETag(), service.getPayload().getETag());
+        Assert.assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testGzippedResponse() {
+        ResponseEntity<byte[]> response = controller.getJSONSchema(null, "deflate, gzip;q=0.8", null);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.OK);
+        Assert.assertSame(response.getBody(), service.getPayload().getGzipped());
+        Assert.assertEquals(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), "gzip");
+        Assert.assertEquals(response.getHeaders().getETag(), service.getPayload().getGzippedETag());
+        Assert.assertEquals(response.getHeaders().getFirst(HttpHeaders.VARY), HttpHeaders.ACCEPT_ENCODING);
+
+        response = controller.getJSONSchema(null, "gzip;q=0, identity", null);
+        Assert.assertSame(response.getBody(), service.getPayload().getBytes());
+        response = controller.getJSONSchema(null, "br", null);
+        Assert.assertSame(response.getBody(), service.getPayload().getBytes());
+    }
+
+    @Test
+    public void testNotModifiedResponse() {
+        String eTag = service.getPayload().getETag();
+        ResponseEntity<byte[]> response = controller.getJSONSchema(eTag, null, null);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.NOT_MODIFIED);
+        Assert.assertNull(response.getBody());
+        Assert.assertEquals(response.getHeaders().getETag(), eTag);
+
+        response = controller.getJSONSchema("\"foo\", W/" + eTag, "gzip", null);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.NOT_MODIFIED);
+        Assert.assertEquals(response.getHeaders().getETag(), service.getPayload().getGzippedETag());
+
+        response = controller.getJSONSchema("\"foo\"", null, null);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.OK);
+        Assert.assertNotNull(response.getBody());
+    }
+
+    @Test
+    public void testSearchResponse() {
+        SchemaRequest request = new SchemaRequest();
+        request.setPrefix("te");
+        request.setFields(Collections.singletonList("name"));
+        ResponseEntity<byte[]> response = controller.getJSONSchema(service.getPayload().getETag(), "gzip", request);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.OK);
+        Assert.assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        String expected = "{'data': [{'id':'test','type':'column','attributes':{'name':'test'}}]," +
+                          "'meta':{'version':'1.2','total':1,'offset':0}}";
+        assertJSONEquals(new String(response.getBody(), StandardCharsets.UTF_8), expected);
+
+        Assert.assertEquals(controller.getJSONSchema(null, null, new SchemaRequest()).getBody(), service.getPayload().getBytes());
+    }
+
+    @Test
+    public void testBadSearchResponse() {
+        SchemaRequest request = new SchemaRequest();
+        request.setOffset(-1);
+        ResponseEntity<byte[]> response = controller.getJSONSchema(null, null, request);
+        Assert.assertEquals(response.getStatusCode(), HttpStatus.BAD_REQUEST);
+        Assert.assertTrue(new String(response.getBody(), StandardCharsets.UTF_8).contains("non-negative"));
     }
 }
@@ -0,0 +1,19 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.controller;
+
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ScrapeControllerTest {
+    @Test
+    public void testScraping() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("foo").increment();
+        Assert.assertEquals(new ScrapeController(registry).scrape(), "# TYPE foo counter\nfoo 1\n");
+    }
+}
@@ -5,26 +5,38 @@
  */
 package com.yahoo.bullet.rest.controller;
 
-import com.yahoo.bullet.common.metrics.MetricPublisher;
 import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.rest.common.CBOREncoder;
+import com.yahoo.bullet.rest.common.MeteredTcpClient;
+import com.yahoo.bullet.rest.common.MetricRegistry;
 import com.yahoo.bullet.rest.model.WebSocketRequest;
 import com.yahoo.bullet.rest.model.WebSocketResponse;
 import com.yahoo.bullet.rest.query.QueryError;
+import com.yahoo.bullet.rest.query.QueryHandler;
+import com.yahoo.bullet.rest.query.ThrottledQueryHandler;
+import com.yahoo.bullet.rest.service.AdmissionService;
 import com.yahoo.bullet.rest.service.BQLService;
+import com.yahoo.bullet.rest.service.HandlerService;
 import com.yahoo.bullet.rest.service.StatusService;
+import com.yahoo.bullet.rest.service.ThrottleService;
 import com.yahoo.bullet.rest.service.WebSocketService;
 import org.mockito.ArgumentCaptor;
 import org.springframework.http.HttpStatus;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
 import static com.yahoo.bullet.TestHelpers.assertJSONEquals;
 import static com.yahoo.bullet.TestHelpers.assertNoMetric;
-import static com.yahoo.bullet.TestHelpers.assertOnlyMetricEquals;
 import static com.yahoo.bullet.rest.TestHelpers.assertEqualsBql;
 import static com.yahoo.bullet.rest.TestHelpers.assertEqualsQuery;
+import static com.yahoo.bullet.rest.TestHelpers.assertOnlyMetricEquals;
 import static com.yahoo.bullet.rest.TestHelpers.getInvalidBQLQuery;
 import static com.yahoo.bullet.rest.TestHelpers.getQueryBuilder;
 import static com.yahoo.bullet.rest.TestHelpers.getBQLQuery;
@@ -41,7 +53,7 @@ public class WebSocketControllerTest {
     private WebSocketService webSocketService;
     private StatusService statusService;
     private BQLService bqlService;
-    private MetricPublisher metricPublisher;
+    private MetricRegistry metricRegistry;
 
     private static SimpMessageHeaderAccessor getMockMessageAccessor(String sessionID) {
         SimpMessageHeaderAccessor headerAccessor = mock(SimpMessageHeaderAccessor.class);
@@ -68,8 +80,9 @@ public class WebSocketControllerTest {
 
         webSocketService = mock(WebSocketService.class);
         bqlService = new BQLService(getQueryBuilder());
-        metricPublisher = mock(MetricPublisher.class);
-        controller = new WebSocketController(webSocketService, bqlService, statusService, metricPublisher);
+        metricRegistry = new MetricRegistry();
+        controller = new WebSocketController(webSocketService, bqlService, statusService, null, null, metricRegistry,
+                                             Optional.empty());
     }
 
     @Test
@@ -89,7 +102,38 @@ public class WebSocketControllerTest {
         Assert.assertEquals(response.getType(), WebSocketResponse.Type.FAIL);
         String expected = QueryError.SERVICE_UNAVAILABLE.toString();
         assertJSONEquals(response.getContent(), expected);
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.SERVICE_UNAVAILABLE), 1L);
+    }
+
+    @Test
+    public void testWebSocketQueryAcceptingCBOR() {
+        doReturn(false).when(statusService).isBackendStatusOK();
+
+        String sessionID = "sessionID";
+        WebSocketRequest request = getMockRequest(WebSocketRequest.Type.NEW_QUERY, "{}");
+        SimpMessageHeaderAccessor headerAccessor = getMockMessageAccessor(sessionID);
+        doReturn(CBOREncoder.MEDIA_TYPE_VALUE).when(headerAccessor).getFirstNativeHeader(WebSocketController.ACCEPT_HEADER);
+
+        controller.submitWebsocketQuery(request, headerAccessor);
+
+        ArgumentCaptor<SimpMessageHeaderAccessor> argument = ArgumentCaptor.forClass(SimpMessageHeaderAccessor.class);
+        verify(webSocketService).sendResponse(eq(sessionID), any(), argument.capture());
+        Assert.assertEquals(argument.getValue().getContentType(), CBOREncoder.MEDIA_TYPE);
+    }
+
+    @Test
+    public void testWebSocketQueryDefaultsToJSON() {
+        doReturn(false).when(statusService).isBackendStatusOK();
+
+        String sessionID = "sessionID";
+        WebSocketRequest request = getMockRequest(WebSocketRequest.Type.NEW_QUERY, "{}");
+        SimpMessageHeaderAccessor headerAccessor = getMockMessageAccessor(sessionID);
+
+        controller.submitWebsocketQuery(request, headerAccessor);
+
+        ArgumentCaptor<SimpMessageHeaderAccessor> argument = ArgumentCaptor.forClass(SimpMessageHeaderAccessor.class);
+        verify(webSocketService).sendResponse(eq(sessionID), any(), argument.capture());
+        Assert.assertEquals(argument.getValue().getContentType(), MimeTypeUtils.APPLICATION_JSON);
     }
 
     @Test
@@ -104,7 +148,7 @@ public class WebSocketControllerTest {
 
         verify(webSocketService).submitQuery(anyString(), eq(sessionID), argument.capture(), bqlCaptor.capture(), any());
 
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.CREATED), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
         assertEqualsQuery(argument.getValue());
         assertEqualsBql(bqlCaptor.getValue());
     }
@@ -120,7 +164,7 @@ public class WebSocketControllerTest {
         controller.submitWebsocketQuery(request, headerAccessor);
 
         verify(webSocketService, never()).submitQuery(any(), any(), any(), any(), any());
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
     }
 
     @Test
@@ -132,7 +176,7 @@ public class WebSocketControllerTest {
         controller.submitWebsocketQuery(request, headerAccessor);
 
         verify(webSocketService, never()).submitQuery(any(), any(), any(), any(), any());
-        assertOnlyMetricEquals(controller.getMetricCollector(), metric(HttpStatus.BAD_REQUEST), 1L);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
     }
 
     @Test
@@ -145,6 +189,140 @@ public class WebSocketControllerTest {
         controller.submitWebsocketQuery(request, headerAccessor);
 
         verify(webSocketService).killQuery(eq(sessionID), eq(queryID));
-        assertNoMetric(controller.getMetricCollector().extractMetrics());
+        assertNoMetric(controller.getMetricRegistry().extractMetrics());
+    }
+
+    @Test
+    public void testSubmitResumableQuery() {
+        doReturn("token").when(webSocketService).makeResumable(anyString(), any());
+        WebSocketRequest request = getMockRequest(WebSocketRequest.Type.NEW_QUERY, getBQLQuery());
+        String sessionID = "sessionID";
+        SimpMessageHeaderAccessor headerAccessor = getMockMessageAccessor(sessionID);
+
+        controller.submitWebsocketQuery(request, headerAccessor);
+
+        ArgumentCaptor<WebSocketResponse> argument = ArgumentCaptor.forClass(WebSocketResponse.class);
+        verify(webSocketService).sendResponse(eq(sessionID), argument.capture(), any());
+        Assert.assertEquals(argument.getValue().getType(), WebSocketResponse.Type.RESUME);
+        Assert.assertEquals(argument.getValue().getContent(), "token");
+        verify(webSocketService).submitQuery(anyString(), eq(sessionID), any(), any(), any());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+    }
+
+    @Test
+    public void testSubmitQueryThatCannotBeResumed() {
+        WebSocketRequest request = getMockRequest(WebSocketRequest.Type.NEW_QUERY, getBQLQuery());
+        SimpMessageHeaderAccessor headerAccessor = getMockMessageAccessor("sessionID");
+
+        controller.submitWebsocketQuery(request, headerAccessor);
+
+        verify(webSocketService, never()).sendResponse(any(), any(), any());
+        verify(webSocketService).submitQuery(anyString(), eq("sessionID"), any(), any(), any());
+    }
+
+    @Test
+    public void testResumeQuery() {
+        doReturn(true).when(webSocketService).resumeQuery("token", "sessionID");
+        WebSocketRequest request = getMockRequest(WebSocketRequest.Type.RESUME_QUERY, "token");
+        SimpMessageHeaderAccessor headerAccessor = getMockMessageAccessor("sessionID");
+
+        controller.submitWebsocketQuery(request, headerAccessor);
+
+        verify(webSocketService).resumeQuery("token", "sessionID");
+        verify(webSocketService, never()).sendResponse(any(), any(), any());
+        verify(webSocketService, never()).submitQuery(any(), any(), any(), any(), any());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.OK), 1L);
+    }
+
+    @Test
+    public void testResumeQueryWithInvalidToken() {
+        WebSocketRequest request = getMockRequest(WebSocketRequest.Type.RESUME_QUERY, "token");
+        String sessionID = "sessionID";
+        SimpMessageHeaderAccessor headerAccessor = getMockMessageAccessor(sessionID);
+
+        controller.submitWebsocketQuery(request, headerAccessor);
+
+        ArgumentCaptor<WebSocketResponse> argument = ArgumentCaptor.forClass(WebSocketResponse.class);
+        verify(webSocketService).sendResponse(eq(sessionID), argument.capture(), any());
+        Assert.assertEquals(argument.getValue().getType(), WebSocketResponse.Type.FAIL);
+        assertJSONEquals(argument.getValue().getContent(), QueryError.INVALID_RESUME_TOKEN.toString());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
+    }
+
+    @Test
+    public void testSubmitThrottledQuery() {
+        ThrottleService throttleService = new ThrottleService(mock(HandlerService.class), 100L, 10, 1);
+        controller = new WebSocketController(webSocketService, bqlService, statusService, throttleService, null, metricRegistry,
+                                             Optional.empty());
+        WebSocketRequest request = getMockRequest(WebSocketRequest.Type.NEW_QUERY, getBQLQuery());
+        SimpMessageHeaderAccessor headerAccessor = getMockMessageAccessor("sessionID");
+        doReturn("1000").when(headerAccessor).getFirstNativeHeader(ThrottleService.THROTTLE);
+
+        controller.submitWebsocketQuery(request, headerAccessor);
+
+        ArgumentCaptor<QueryHandler> argument = ArgumentCaptor.forClass(QueryHandler.class);
+        verify(webSocketService).submitQuery(anyString(), eq("sessionID"), any(), any(), argument.capture());
+        Assert.assertTrue(argument.getValue() instanceof ThrottledQueryHandler);
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.CREATED), 1L);
+        throttleService.close();
+    }
+
+    @Test
+    public void testSubmitQueryWithInvalidThrottle() {
+        ThrottleService throttleService = new ThrottleService(mock(HandlerService.class), 100L, 10, 1);
+        controller = new WebSocketController(webSocketService, bqlService, statusService, throttleService, null, metricRegistry,
+                                             Optional.empty());
+        WebSocketRequest request = getMockRequest(WebSocketRequest.Type.NEW_QUERY, getBQLQuery());
+        SimpMessageHeaderAccessor headerAccessor = getMockMessageAccessor("sessionID");
+        doReturn("often").when(headerAccessor).getFirstNativeHeader(ThrottleService.THROTTLE);
+
+        controller.submitWebsocketQuery(request, headerAccessor);
+
+        ArgumentCaptor<WebSocketResponse> argument = ArgumentCaptor.forClass(WebSocketResponse.class);
+        verify(webSocketService).sendResponse(eq("sessionID"), argument.capture(), any());
+        Assert.assertEquals(argument.getValue().getContent(), QueryError.INVALID_THROTTLE.toString());
+        verify(webSocketService, never()).submitQuery(any(), any(), any(), any(), any());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.BAD_REQUEST), 1L);
+        throttleService.close();
+    }
+
+    @Test
+    public void testSubmitQueryTooCostly() {
+        AdmissionService admissionService = mock(AdmissionService.class);
+        doReturn(QueryError.TOO_COSTLY).when(admissionService).admit(anyString(), any(), any());
+        controller = new WebSocketController(webSocketService, bqlService, statusService, null, admissionService, metricRegistry,
+                                             Optional.empty());
+        WebSocketRequest request = getMockRequest(WebSocketRequest.Type.NEW_QUERY, getBQLQuery());
+        SimpMessageHeaderAccessor headerAccessor = getMockMessageAccessor("sessionID");
+
+        controller.submitWebsocketQuery(request, headerAccessor);
+
+        ArgumentCaptor<WebSocketResponse> argument = ArgumentCaptor.forClass(WebSocketResponse.class);
+        verify(webSocketService).sendResponse(eq("sessionID"), argument.capture(), any());
+        Assert.assertEquals(argument.getValue().getContent(), QueryError.TOO_COSTLY.toString());
+        verify(webSocketService, never()).submitQuery(any(), any(), any(), any(), any());
+        assertOnlyMetricEquals(controller.getMetricRegistry(), metric(HttpStatus.TOO_MANY_REQUESTS), 1L);
+    }
+
+    @Test
+    public void testAddingRelayMetrics() {
+        MeteredTcpClient client = mock(MeteredTcpClient.class);
+        Map<String, Number> metrics = Collections.singletonMap("websocket.relay.1.messages.sent", 1L);
+        doReturn(metrics).when(client).extractMetrics();
+        metricRegistry = new MetricRegistry();
+        controller = new WebSocketController(webSocketService, bqlService, statusService, null, null, metricRegistry,
+                                             Optional.of(client));
+
+        Assert.assertEquals(metricRegistry.extractMetrics().get("websocket.relay.1.messages.sent"), 1L);
+        verify(client).extractMetrics();
+    }
+
+    @Test
+    public void testNotAddingRelayMetricsWithoutARegistry() {
+        MeteredTcpClient client = mock(MeteredTcpClient.class);
+        controller = new WebSocketController(webSocketService, bqlService, statusService, null, null, null, Optional.of(client));
+
+        Assert.assertFalse(controller.isMetricEnabled());
+        verify(client, never()).extractMetrics();
     }
 }
@@ -35,6 +35,6 @@ public class WebSocketEventListenerTest {
 
         webSocketEventListener.handleWebSocketDisconnectListener(event);
 
-        verify(webSocketService).killQuery(eq("foo"), eq(null));
+        verify(webSocketService).disconnect(eq("foo"));
     }
 }
@@ -24,4 +24,9 @@ public class MockQueryHandler extends QueryHandler {
     @Override
     public void acknowledge() {
     }
+
+    @Override
+    public String getEndpoint() {
+        return "mock";
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.query;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.service.QueryService;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class MultiplexedSSEQueryHandlerTest {
+    private QueryService queryService;
+    private SseEmitter sseEmitter;
+    private AtomicInteger running;
+
+    private String sentEvent() throws Exception {
+        ArgumentCaptor<SseEmitter.SseEventBuilder> argument = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(sseEmitter).send(argument.capture());
+        return argument.getValue().build().stream().map(ResponseBodyEmitter.DataWithMediaType::getData)
+                       .map(Object::toString).collect(Collectors.joining());
+    }
+
+    @BeforeMethod
+    public void setup() {
+        queryService = mock(QueryService.class);
+        sseEmitter = mock(SseEmitter.class);
+        running = new AtomicInteger(2);
+    }
+
+    @Test
+    public void testSendOnMessage() throws Exception {
+        MultiplexedSSEQueryHandler handler = new MultiplexedSSEQueryHandler("id", 1, sseEmitter, queryService, running);
+        handler.send(new PubSubMessage("id", "foo"));
+
+        Assert.assertEquals(sentEvent(), "id:id\nevent:1\ndata:foo\n\n");
+        Assert.assertFalse(handler.isComplete());
+    }
+
+    @Test
+    public void testSendOnException() throws Exception {
+        doThrow(new IOException()).when(sseEmitter).send(any(SseEmitter.SseEventBuilder.class));
+        MultiplexedSSEQueryHandler handler = new MultiplexedSSEQueryHandler("id", 0, sseEmitter, queryService, running);
+        handler.send(new PubSubMessage("id", "foo"));
+
+        verify(queryService).kill("id");
+        Assert.assertTrue(handler.isComplete());
+        Assert.assertEquals(running.get(), 1);
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        MultiplexedSSEQueryHandler handler = new MultiplexedSSEQueryHandler("id", 0, sseEmitter, queryService, running);
+        handler.fail(QueryError.INVALID_QUERY);
+
+        Assert.assertEquals(sentEvent(), "id:id\nevent:0\ndata:" + QueryError.INVALID_QUERY + "\n\n");
+        Assert.assertTrue(handler.isComplete());
+        verify(sseEmitter, never()).complete();
+
+        // Nothing is sent after failing
+        handler.fail(QueryError.INVALID_QUERY);
+        handler.send(new PubSubMessage("id", "foo"));
+        sentEvent();
+    }
+
+    @Test
+    public void testFailOnException() throws Exception {
+        doThrow(new IOException()).when(sseEmitter).send(any(SseEmitter.SseEventBuilder.class));
+        MultiplexedSSEQueryHandler handler = new MultiplexedSSEQueryHandler("id", 0, sseEmitter, queryService, running);
+        handler.fail(QueryError.INVALID_QUERY);
+
+        verify(queryService).kill("id");
+        Assert.assertTrue(handler.isComplete());
+    }
+
+    @Test
+    public void testStreamCompletesWithTheLastQuery() {
+        MultiplexedSSEQueryHandler first = new MultiplexedSSEQueryHandler("a", 0, sseEmitter, queryService, running);
+        MultiplexedSSEQueryHandler second = new MultiplexedSSEQueryHandler("b", 1, sseEmitter, queryService, running);
+
+        first.complete();
+        first.complete();
+        verify(sseEmitter, never()).complete();
+        Assert.assertEquals(running.get(), 1);
+
+        second.complete();
+        verify(sseEmitter).complete();
+        Assert.assertEquals(running.get(), 0);
+    }
+}
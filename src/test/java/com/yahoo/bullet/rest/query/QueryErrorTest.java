@@ -43,4 +43,11 @@ public class QueryErrorTest {
 
         Assert.assertEquals(queryError.toString(), Clip.of(Meta.of(bulletErrors)).asJSON());
     }
+
+    @Test
+    public void testConstantErrorsArePreSerialized() {
+        Assert.assertSame(QueryError.SERVICE_UNAVAILABLE.toString(), QueryError.SERVICE_UNAVAILABLE.toString());
+        Assert.assertEquals(QueryError.TOO_MANY_QUERIES.toString(),
+                            Clip.of(Meta.of(QueryError.TOO_MANY_QUERIES.getErrors())).asJSON());
+    }
 }
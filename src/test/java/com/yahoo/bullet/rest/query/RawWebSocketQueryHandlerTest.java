@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.query;
+
+import com.yahoo.bullet.pubsub.Metadata;
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.model.WebSocketResponse;
+import com.yahoo.bullet.rest.service.WebSocketService;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class RawWebSocketQueryHandlerTest {
+    private WebSocketService webSocketService;
+    private WebSocketSession session;
+    private RawWebSocketQueryHandler handler;
+
+    private String sentFrame() throws Exception {
+        ArgumentCaptor<TextMessage> argument = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session).sendMessage(argument.capture());
+        return argument.getValue().getPayload();
+    }
+
+    @BeforeMethod
+    public void setup() {
+        webSocketService = mock(WebSocketService.class);
+        session = mock(WebSocketSession.class);
+        doReturn("sessionID").when(session).getId();
+        handler = new RawWebSocketQueryHandler(webSocketService, session, "queryID");
+    }
+
+    @Test
+    public void testFraming() {
+        Assert.assertEquals(RawWebSocketQueryHandler.frame(WebSocketResponse.Type.ACK, "id"), "ACK id");
+        Assert.assertEquals(RawWebSocketQueryHandler.frame(WebSocketResponse.Type.MESSAGE, "{\"a\": 1}"), "MESSAGE {\"a\": 1}");
+        Assert.assertEquals(RawWebSocketQueryHandler.frame(WebSocketResponse.Type.COMPLETE, ""), "COMPLETE ");
+        Assert.assertEquals(RawWebSocketQueryHandler.frame(WebSocketResponse.Type.COMPLETE, null), "COMPLETE");
+    }
+
+    @Test
+    public void testAcknowledge() throws Exception {
+        handler.acknowledge();
+        Assert.assertEquals(sentFrame(), "ACK queryID");
+        Assert.assertFalse(handler.isComplete());
+    }
+
+    @Test
+    public void testSendOnMessage() throws Exception {
+        handler.send(new PubSubMessage("queryID", "{}"));
+        Assert.assertEquals(sentFrame(), "MESSAGE {}");
+        Assert.assertFalse(handler.isComplete());
+    }
+
+    @Test
+    public void testSendOnMessageWithSignals() throws Exception {
+        handler.send(new PubSubMessage("queryID", "foo", new Metadata(Metadata.Signal.FAIL, null)));
+        Assert.assertEquals(sentFrame(), "FAIL foo");
+
+        session = mock(WebSocketSession.class);
+        handler = new RawWebSocketQueryHandler(webSocketService, session, "queryID");
+        handler.send(new PubSubMessage("queryID", "foo", new Metadata(Metadata.Signal.COMPLETE, null)));
+        Assert.assertEquals(sentFrame(), "COMPLETE foo");
+    }
+
+    @Test
+    public void testSendAfterComplete() throws Exception {
+        handler.complete();
+        handler.send(new PubSubMessage("queryID", "foo"));
+        handler.fail(QueryError.SERVICE_UNAVAILABLE);
+        verify(session, never()).sendMessage(any());
+        verify(webSocketService).deleteSession("sessionID");
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        handler.fail(QueryError.TOO_MANY_QUERIES);
+        Assert.assertEquals(sentFrame(), "FAIL " + QueryError.TOO_MANY_QUERIES);
+        Assert.assertTrue(handler.isComplete());
+        verify(webSocketService).deleteSession("sessionID");
+    }
+
+    @Test
+    public void testSendingToClosedSessionKillsQuery() throws Exception {
+        doThrow(new IOException("closed")).when(session).sendMessage(any());
+        handler.send(new PubSubMessage("queryID", "foo"));
+        handler.send(new PubSubMessage("queryID", "bar"));
+        Assert.assertTrue(handler.isComplete());
+        verify(webSocketService).killQuery("sessionID", "queryID");
+        verify(session, times(1)).sendMessage(any());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.query;
+
+import com.yahoo.bullet.pubsub.Metadata;
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static com.yahoo.bullet.TestHelpers.assertJSONEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ThrottledQueryHandlerTest {
+    private QueryHandler handler;
+
+    private List<PubSubMessage> sent(int times) {
+        ArgumentCaptor<PubSubMessage> argument = ArgumentCaptor.forClass(PubSubMessage.class);
+        verify(handler, times(times)).send(argument.capture());
+        return argument.getAllValues();
+    }
+
+    private static PubSubMessage result(String records, String meta) {
+        return new PubSubMessage("id", "{\"records\":[" + records + "],\"meta\":" + meta + "}");
+    }
+
+    @BeforeMethod
+    public void setup() {
+        handler = mock(QueryHandler.class);
+    }
+
+    @Test
+    public void testKeepingTheLatestResult() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, false, 10);
+        Assert.assertSame(throttled.getHandler(), handler);
+
+        throttled.send(new PubSubMessage("id", "foo"));
+        throttled.send(new PubSubMessage("id", "bar"));
+        verify(handler, never()).send(any());
+
+        throttled.flush();
+        Assert.assertEquals(sent(1).get(0).getContentAsString(), "bar");
+
+        // Nothing is held anymore
+        throttled.flush();
+        sent(1);
+    }
+
+    @Test
+    public void testMergingRecords() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, true, 3);
+
+        throttled.send(result("{\"a\":1}", "{\"window\":1}"));
+        throttled.send(result("{\"a\":2},{\"a\":3}", "{\"window\":2}"));
+        throttled.send(result("{\"a\":4}", "{\"window\":3}"));
+        throttled.flush();
+
+        PubSubMessage message = sent(1).get(0);
+        Assert.assertEquals(message.getId(), "id");
+        assertJSONEquals(message.getContentAsString(), "{'records':[{'a':1},{'a':2},{'a':3}],'meta':{'window':3}}");
+
+        throttled.send(result("{\"a\":5}", "{\"window\":4}"));
+        throttled.flush();
+        assertJSONEquals(sent(2).get(1).getContentAsString(), "{'records':[{'a':5}],'meta':{'window':4}}");
+    }
+
+    @Test
+    public void testMergingCapsTheFirstResult() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, true, 1);
+
+        throttled.send(result("{\"a\":1},{\"a\":2}", "{}"));
+        throttled.flush();
+
+        assertJSONEquals(sent(1).get(0).getContentAsString(), "{'records':[{'a':1}],'meta':{}}");
+    }
+
+    @Test
+    public void testMergingResultsWithoutRecords() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, true, 10);
+
+        throttled.send(result("{\"a\":1}", "{}"));
+        throttled.send(new PubSubMessage("id", "not json {"));
+        // The merged records are sent before the result that cannot be merged is held
+        assertJSONEquals(sent(1).get(0).getContentAsString(), "{'records':[{'a':1}],'meta':{}}");
+
+        throttled.flush();
+        Assert.assertEquals(sent(2).get(1).getContentAsString(), "not json {");
+    }
+
+    @Test
+    public void testSignalsAreSentRightAway() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, false, 10);
+        PubSubMessage done = new PubSubMessage("id", "final", Metadata.Signal.COMPLETE);
+
+        throttled.send(new PubSubMessage("id", "window"));
+        throttled.send(done);
+
+        // The held window is replaced by the final result
+        List<PubSubMessage> messages = sent(1);
+        Assert.assertSame(messages.get(0), done);
+        throttled.flush();
+        sent(1);
+    }
+
+    @Test
+    public void testMergedRecordsAreSentBeforeSignals() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, true, 10);
+        PubSubMessage done = new PubSubMessage("id", "{\"records\":[]}", Metadata.Signal.COMPLETE);
+
+        throttled.send(result("{\"a\":1}", "{}"));
+        throttled.send(done);
+
+        List<PubSubMessage> messages = sent(2);
+        assertJSONEquals(messages.get(0).getContentAsString(), "{'records':[{'a':1}],'meta':{}}");
+        Assert.assertSame(messages.get(1), done);
+    }
+
+    @Test
+    public void testCompletion() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, false, 10);
+        throttled.send(new PubSubMessage("id", "foo"));
+
+        throttled.complete();
+
+        Assert.assertTrue(throttled.isComplete());
+        verify(handler).complete();
+        throttled.send(new PubSubMessage("id", "bar"));
+        throttled.flush();
+        verify(handler, never()).send(any());
+    }
+
+    @Test
+    public void testCompletionOfTheHandler() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, false, 10);
+        throttled.send(new PubSubMessage("id", "foo"));
+        doReturn(true).when(handler).isComplete();
+
+        Assert.assertTrue(throttled.isComplete());
+        throttled.flush();
+        verify(handler, never()).send(any());
+    }
+
+    @Test
+    public void testFailing() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, false, 10);
+        throttled.send(new PubSubMessage("id", "foo"));
+
+        throttled.fail(QueryError.SERVICE_UNAVAILABLE);
+        throttled.flush();
+
+        verify(handler).fail(QueryError.SERVICE_UNAVAILABLE);
+        verify(handler, never()).send(any());
+    }
+
+    @Test
+    public void testAcknowledging() {
+        ThrottledQueryHandler throttled = new ThrottledQueryHandler(handler, false, 10);
+
+        throttled.acknowledge();
+
+        verify(handler).acknowledge();
+    }
+}
@@ -7,10 +7,12 @@ package com.yahoo.bullet.rest.query;
 
 import com.yahoo.bullet.pubsub.Metadata;
 import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.common.CBOREncoder;
 import com.yahoo.bullet.rest.model.WebSocketResponse;
 import com.yahoo.bullet.rest.service.WebSocketService;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -45,6 +47,17 @@ public class WebSocketQueryHandlerTest extends AbstractTestNGSpringContextTests
         Assert.assertFalse(webSocketQueryHandler.isComplete());
     }
 
+    @Test
+    public void testSendOnMessageWithContentType() {
+        WebSocketQueryHandler webSocketQueryHandler = new WebSocketQueryHandler(webSocketService, "id", "foo", CBOREncoder.MEDIA_TYPE);
+        webSocketQueryHandler.send(new PubSubMessage("id", "foo"));
+
+        ArgumentCaptor<SimpMessageHeaderAccessor> argument = ArgumentCaptor.forClass(SimpMessageHeaderAccessor.class);
+        verify(webSocketService).sendResponse(eq("id"), any(), argument.capture());
+        Assert.assertEquals(argument.getValue().getContentType(), CBOREncoder.MEDIA_TYPE);
+        Assert.assertEquals(argument.getValue().getSessionId(), "id");
+    }
+
     @Test
     public void testSendOnMessageWithFailSignal() {
         PubSubMessage message = new PubSubMessage("id", "foo", new Metadata(Metadata.Signal.FAIL, null));
@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.query.Projection;
+import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.query.Window;
+import com.yahoo.bullet.query.aggregations.Raw;
+import com.yahoo.bullet.rest.common.CostBudget;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.PriorityClass;
+import com.yahoo.bullet.rest.query.QueryError;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+public class AdmissionServiceTest {
+    // Costs 2 for passing all the fields through
+    private static final Query QUERY = new Query(new Projection(), null, new Raw(1), null, new Window(), 0L);
+
+    private static PriorityService makePriorityService(int interactiveConcurrency, int bulkConcurrency) {
+        return new PriorityService(true, 4, interactiveConcurrency, 1, bulkConcurrency, new String[] { PriorityService.ASYNC },
+                                   new String[0], 10, 1, null);
+    }
+
+    @Test
+    public void testAdmittingWithinTheBudget() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        CostBudget budget = new CostBudget(5.0);
+        AdmissionService service = new AdmissionService(budget, null, metricRegistry);
+
+        Assert.assertNull(service.admit("a", QUERY, PriorityClass.INTERACTIVE));
+        Assert.assertNull(service.admit("b", QUERY, PriorityClass.INTERACTIVE));
+        Assert.assertEquals(service.admit("c", QUERY, PriorityClass.INTERACTIVE), QueryError.TOO_COSTLY);
+        budget.release("a");
+        Assert.assertNull(service.admit("c", QUERY, PriorityClass.INTERACTIVE));
+
+        Map<String, Number> metrics = metricRegistry.extractMetrics();
+        Assert.assertEquals(metrics.get(AdmissionService.REJECTED), 1L);
+        Assert.assertEquals(metrics.get(AdmissionService.USED), 4.0);
+        Assert.assertEquals(metrics.get(AdmissionService.BUDGET), 5.0);
+    }
+
+    @Test
+    public void testAdmittingWithAnUnboundedBudget() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        AdmissionService service = new AdmissionService(new CostBudget(), null, metricRegistry);
+
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertNull(service.admit(String.valueOf(i), QUERY, PriorityClass.INTERACTIVE));
+        }
+        Map<String, Number> metrics = metricRegistry.extractMetrics();
+        Assert.assertEquals(metrics.get(AdmissionService.REJECTED), 0L);
+        Assert.assertEquals(metrics.get(AdmissionService.USED), 200.0);
+        Assert.assertFalse(metrics.containsKey(AdmissionService.BUDGET));
+    }
+
+    @Test
+    public void testAdmittingWithoutMetrics() {
+        AdmissionService service = new AdmissionService(new CostBudget(1.0), null, null);
+        Assert.assertNull(service.admit("a", QUERY, PriorityClass.INTERACTIVE));
+        Assert.assertEquals(service.admit("b", QUERY, PriorityClass.INTERACTIVE), QueryError.TOO_COSTLY);
+    }
+
+    @Test
+    public void testClassifyingWithoutPriorities() {
+        AdmissionService service = new AdmissionService(new CostBudget(), null, null);
+        Assert.assertEquals(service.classify(PriorityService.ASYNC, null), PriorityClass.INTERACTIVE);
+        Assert.assertNull(service.admitAsync("a", QUERY, PriorityClass.BULK));
+    }
+
+    @Test
+    public void testClassifyingWithPriorities() {
+        PriorityService priorityService = makePriorityService(1, 1);
+        AdmissionService service = new AdmissionService(new CostBudget(), priorityService, null);
+        Assert.assertEquals(service.classify(PriorityService.ASYNC, null), PriorityClass.BULK);
+        Assert.assertEquals(service.classify("http", null), PriorityClass.INTERACTIVE);
+        priorityService.close();
+    }
+
+    @Test
+    public void testAdmittingIntoAFullClass() {
+        PriorityService priorityService = makePriorityService(1, 1);
+        AdmissionService service = new AdmissionService(new CostBudget(), priorityService, null);
+
+        Assert.assertNull(service.admit("a", QUERY, PriorityClass.INTERACTIVE));
+        Assert.assertEquals(service.admit("b", QUERY, PriorityClass.INTERACTIVE), QueryError.TOO_MANY_QUERIES);
+        Assert.assertNull(service.admitAsync("c", QUERY, PriorityClass.BULK));
+        Assert.assertEquals(service.admitAsync("d", QUERY, PriorityClass.BULK), QueryError.TOO_MANY_QUERIES);
+
+        priorityService.release("a");
+        Assert.assertNull(service.admit("b", QUERY, PriorityClass.INTERACTIVE));
+        Assert.assertEquals(priorityService.getPriority("b"), PriorityClass.INTERACTIVE);
+        Assert.assertEquals(priorityService.getPriority("c"), PriorityClass.BULK);
+        priorityService.close();
+    }
+
+    @Test
+    public void testTooCostlyQueriesGiveBackTheirClassSlot() {
+        PriorityService priorityService = makePriorityService(2, 1);
+        CostBudget budget = new CostBudget(3.0);
+        AdmissionService service = new AdmissionService(budget, priorityService, null);
+
+        Assert.assertNull(service.admit("a", QUERY, PriorityClass.INTERACTIVE));
+        Assert.assertEquals(service.admit("b", QUERY, PriorityClass.INTERACTIVE), QueryError.TOO_COSTLY);
+        Assert.assertEquals(priorityService.getRunning(PriorityClass.INTERACTIVE), 1);
+        budget.release("a");
+        Assert.assertNull(service.admit("b", QUERY, PriorityClass.INTERACTIVE));
+        priorityService.close();
+    }
+}
@@ -11,6 +11,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.List;
+import java.util.Map;
 
 import static com.yahoo.bullet.rest.TestHelpers.assertEqualsQuery;
 import static com.yahoo.bullet.rest.TestHelpers.getInvalidBQLQuery;
@@ -36,4 +37,33 @@ public class BQLServiceTest {
         Assert.assertNull(result.getErrors());
         assertEqualsQuery(result.getQuery());
     }
+
+    @Test
+    public void testBQLConversionOfASubmittedQuery() {
+        BQLService bqlService = new BQLService(getQueryBuilder());
+        BQLResult result  = bqlService.toQuery("id", "http", getBQLQuery());
+        Assert.assertFalse(result.hasErrors());
+        assertEqualsQuery(result.getQuery());
+    }
+
+    @Test
+    public void testFastValidation() {
+        SchemaService schemaService = new SchemaService("0.1", "sample_fields.json");
+        BQLService bqlService = new BQLService(getQueryBuilder(), schemaService, 10);
+        Assert.assertTrue(bqlService.validate("SELECT a, l.x FROM STREAM(1000, TIME) WHERE b > 1 LIMIT 1").isEmpty());
+        List<BulletError> errors = bqlService.validate("SELECT z FROM STREAM(1000, TIME)");
+        Assert.assertEquals(errors.size(), 1);
+        Assert.assertEquals(errors.get(0).getError(), "1:8: The field z does not exist in the schema");
+
+        Map<String, Number> metrics = bqlService.getMetrics();
+        Assert.assertTrue(metrics.get(BQLService.VALIDATE_LATENCY).doubleValue() >= 0.0);
+        Assert.assertEquals(metrics.get(BQLService.BUILD_LATENCY).doubleValue(), 0.0);
+    }
+
+    @Test
+    public void testFastValidationWithoutSchema() {
+        BQLService bqlService = new BQLService(getQueryBuilder());
+        Assert.assertTrue(bqlService.validate("SELECT z FROM STREAM(1000, TIME)").isEmpty());
+        Assert.assertEquals(bqlService.validate("SELECT z").size(), 1);
+    }
 }
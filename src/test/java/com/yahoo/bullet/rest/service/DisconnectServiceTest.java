@@ -0,0 +1,200 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.query.HTTPQueryHandler;
+import com.yahoo.bullet.rest.query.QueryHandler;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static com.yahoo.bullet.rest.TestHelpers.assertOnlyMetricEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DisconnectServiceTest {
+    private HandlerService handlerService;
+    private QueryService queryService;
+    private MetricRegistry metricRegistry;
+    private DisconnectService service;
+
+    @BeforeMethod
+    public void setup() {
+        handlerService = new HandlerService(null, null);
+        queryService = mock(QueryService.class);
+        doReturn(CompletableFuture.completedFuture(null)).when(queryService).kill(anyString());
+        metricRegistry = new MetricRegistry();
+        service = new DisconnectService(handlerService, queryService, metricRegistry, 60000L);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        RequestContextHolder.resetRequestAttributes();
+        service.close();
+    }
+
+    @Test
+    public void testCancellingARunningQuery() {
+        HTTPQueryHandler handler = new HTTPQueryHandler();
+        handlerService.addHandler("id", handler);
+
+        Assert.assertTrue(service.cancel("id"));
+        Assert.assertTrue(handler.isComplete());
+        Assert.assertFalse(handlerService.hasHandler("id"));
+        verify(queryService).kill("id");
+        assertOnlyMetricEquals(metricRegistry, DisconnectService.RECLAIMED, 1L);
+    }
+
+    @Test
+    public void testNotCancellingAMissingOrCompleteQuery() {
+        QueryHandler handler = new HTTPQueryHandler();
+        handler.send(new PubSubMessage("id", "done"));
+        handlerService.addHandler("id", handler);
+
+        Assert.assertFalse(service.cancel("id"));
+        Assert.assertFalse(service.cancel("missing"));
+        verify(queryService, never()).kill(anyString());
+        assertOnlyMetricEquals(metricRegistry, DisconnectService.RECLAIMED, 0L);
+    }
+
+    @Test
+    public void testCancellingWithoutMetrics() {
+        service = new DisconnectService(handlerService, queryService, null, 0L);
+        handlerService.addHandler("id", new HTTPQueryHandler());
+
+        Assert.assertTrue(service.cancel("id"));
+        verify(queryService).kill("id");
+    }
+
+    @Test
+    public void testCancellingWhenEmitterCompletes() {
+        handlerService.addHandler("a", new HTTPQueryHandler());
+        handlerService.addHandler("b", new HTTPQueryHandler());
+        SseEmitter emitter = mock(SseEmitter.class);
+
+        service.cancelOnDisconnect(Arrays.asList("a", "b"), emitter);
+
+        ArgumentCaptor<Runnable> completion = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Runnable> timeout = ArgumentCaptor.forClass(Runnable.class);
+        verify(emitter).onCompletion(completion.capture());
+        verify(emitter).onTimeout(timeout.capture());
+        verify(queryService, never()).kill(anyString());
+
+        timeout.getValue().run();
+        completion.getValue().run();
+        verify(queryService).kill("a");
+        verify(queryService).kill("b");
+        assertOnlyMetricEquals(metricRegistry, DisconnectService.RECLAIMED, 2L);
+        Assert.assertTrue(service.getEmitters().isEmpty());
+    }
+
+    @Test
+    public void testCancellingWhenHeartbeatFails() throws Exception {
+        handlerService.addHandler("a", new HTTPQueryHandler());
+        handlerService.addHandler("b", new HTTPQueryHandler());
+        SseEmitter emitter = mock(SseEmitter.class);
+        IOException exception = new IOException("Broken pipe");
+        doThrow(exception).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+
+        service.cancelOnDisconnect(Arrays.asList("a", "b"), emitter);
+        service.sendHeartbeats();
+
+        verify(queryService).kill("a");
+        verify(queryService).kill("b");
+        verify(emitter).completeWithError(exception);
+        assertOnlyMetricEquals(metricRegistry, DisconnectService.RECLAIMED, 2L);
+        Assert.assertTrue(service.getEmitters().isEmpty());
+    }
+
+    @Test
+    public void testCancellingWhenHeartbeatIsSentToACompleteEmitter() throws Exception {
+        handlerService.addHandler("id", new HTTPQueryHandler());
+        SseEmitter emitter = mock(SseEmitter.class);
+        doThrow(new IllegalStateException()).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+
+        service.cancelOnDisconnect("id", emitter);
+        service.sendHeartbeats();
+
+        verify(queryService).kill("id");
+        Assert.assertTrue(service.getEmitters().isEmpty());
+    }
+
+    @Test
+    public void testNotCancellingWhenHeartbeatSucceeds() throws Exception {
+        handlerService.addHandler("id", new HTTPQueryHandler());
+        SseEmitter emitter = mock(SseEmitter.class);
+
+        service.cancelOnDisconnect("id", emitter);
+        service.sendHeartbeats();
+        service.sendHeartbeats();
+
+        verify(emitter, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+        verify(emitter, never()).completeWithError(any());
+        verify(queryService, never()).kill(anyString());
+        Assert.assertTrue(handlerService.hasHandler("id"));
+        Assert.assertEquals(service.getEmitters().size(), 1);
+    }
+
+    @Test
+    public void testNoHeartbeatsWhenTurnedOff() throws Exception {
+        service = new DisconnectService(handlerService, queryService, null, 0L);
+        SseEmitter emitter = mock(SseEmitter.class);
+
+        service.cancelOnDisconnect("id", emitter);
+        service.sendHeartbeats();
+
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+        Assert.assertTrue(service.getEmitters().isEmpty());
+    }
+
+    @Test
+    public void testCancellingWhenRequestCompletes() {
+        handlerService.addHandler("id", new HTTPQueryHandler());
+        RequestAttributes attributes = mock(RequestAttributes.class);
+        RequestContextHolder.setRequestAttributes(attributes);
+
+        service.cancelOnDisconnect(Collections.singletonList("id"));
+        ArgumentCaptor<Object> ids = ArgumentCaptor.forClass(Object.class);
+        verify(attributes).setAttribute(eq(DisconnectService.QUERY_IDS), ids.capture(), eq(RequestAttributes.SCOPE_REQUEST));
+        verify(queryService, never()).kill(anyString());
+
+        NativeWebRequest request = mock(NativeWebRequest.class);
+        doReturn(ids.getValue()).when(request).getAttribute(DisconnectService.QUERY_IDS, RequestAttributes.SCOPE_REQUEST);
+        service.afterCompletion(request, null);
+        verify(queryService).kill("id");
+        assertOnlyMetricEquals(metricRegistry, DisconnectService.RECLAIMED, 1L);
+    }
+
+    @Test
+    public void testNotCancellingOutsideOfARequest() {
+        handlerService.addHandler("id", new HTTPQueryHandler());
+
+        service.cancelOnDisconnect(Collections.singletonList("id"));
+        service.afterCompletion(mock(NativeWebRequest.class), null);
+        verify(queryService, never()).kill(anyString());
+        Assert.assertTrue(handlerService.hasHandler("id"));
+    }
+}
@@ -7,12 +7,16 @@ package com.yahoo.bullet.rest.service;
 
 import com.yahoo.bullet.pubsub.Metadata;
 import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.common.ConcurrencyLimiter;
+import com.yahoo.bullet.rest.common.CostBudget;
+import com.yahoo.bullet.rest.query.MockQueryHandler;
 import com.yahoo.bullet.rest.query.QueryHandler;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.UUID;
 
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -25,7 +29,7 @@ public class HandlerServiceTest {
     @Test
     public void testAddRemoveHandler() {
         QueryHandler queryHandler = mock(QueryHandler.class);
-        HandlerService service = new HandlerService();
+        HandlerService service = new HandlerService(null, null);
         String randomID = UUID.randomUUID().toString();
         service.addHandler(randomID, queryHandler);
         Assert.assertTrue(service.hasHandler(randomID));
@@ -42,7 +46,7 @@ public class HandlerServiceTest {
     @Test
     public void testFailHandler() {
         QueryHandler queryHandler = mock(QueryHandler.class);
-        HandlerService service = new HandlerService();
+        HandlerService service = new HandlerService(null, null);
 
         Assert.assertFalse(service.failHandler("id"));
         verifyNoInteractions(queryHandler);
@@ -56,7 +60,7 @@ public class HandlerServiceTest {
     @Test
     public void testQueryCount() {
         QueryHandler queryHandler = mock(QueryHandler.class);
-        HandlerService service = new HandlerService();
+        HandlerService service = new HandlerService(null, null);
 
         Assert.assertEquals(service.count(), 0);
         service.getHandlers().put("id1", queryHandler);
@@ -73,7 +77,7 @@ public class HandlerServiceTest {
     public void testFailingAll() {
         QueryHandler queryHandlerA = mock(QueryHandler.class);
         QueryHandler queryHandlerB = mock(QueryHandler.class);
-        HandlerService service = new HandlerService();
+        HandlerService service = new HandlerService(null, null);
         service.addHandler("A", queryHandlerA);
         service.addHandler("B", queryHandlerB);
         verifyNoInteractions(queryHandlerA, queryHandlerB);
@@ -87,7 +91,7 @@ public class HandlerServiceTest {
     @Test
     public void testClose() {
         QueryHandler queryHandler = mock(QueryHandler.class);
-        HandlerService service = new HandlerService();
+        HandlerService service = new HandlerService(null, null);
         service.addHandler("", queryHandler);
         service.close();
         verify(queryHandler).fail();
@@ -98,7 +102,7 @@ public class HandlerServiceTest {
     public void testRespondingToACompletedHandler() {
         QueryHandler handler = mock(QueryHandler.class);
         doReturn(true).when(handler).isComplete();
-        HandlerService service = new HandlerService();
+        HandlerService service = new HandlerService(null, null);
         service.addHandler("id", handler);
 
         PubSubMessage message = new PubSubMessage("id", Metadata.Signal.FAIL);
@@ -111,7 +115,7 @@ public class HandlerServiceTest {
     public void testRespondingToAIncompleteHandlerWithAMessage() {
         QueryHandler handler = mock(QueryHandler.class);
         doReturn(false).when(handler).isComplete();
-        HandlerService service = new HandlerService();
+        HandlerService service = new HandlerService(null, null);
         service.addHandler("id", handler);
 
         PubSubMessage message = new PubSubMessage("id", "content");
@@ -126,7 +130,7 @@ public class HandlerServiceTest {
     public void testRespondingToMissingHandlerWithAMessage() {
         QueryHandler handler = mock(QueryHandler.class);
         doReturn(false).when(handler).isComplete();
-        HandlerService service = new HandlerService();
+        HandlerService service = new HandlerService(null, null);
         service.addHandler("id", handler);
         PubSubMessage message = new PubSubMessage("id", "content");
         service.respond("id", message);
@@ -143,7 +147,7 @@ public class HandlerServiceTest {
     public void testRespondingToAIncompleteHandlerWithACompleteMessage() {
         QueryHandler handler = mock(QueryHandler.class);
         doReturn(false).doReturn(true).when(handler).isComplete();
-        HandlerService service = new HandlerService();
+        HandlerService service = new HandlerService(null, null);
         service.addHandler("id", handler);
 
         PubSubMessage message = new PubSubMessage("id", Metadata.Signal.FAIL);
@@ -152,4 +156,74 @@ public class HandlerServiceTest {
         verify(handler).complete();
         Assert.assertFalse(service.hasHandler("id"));
     }
+
+    @Test
+    public void testSamplingAcknowledgementsForTheLimiter() {
+        ConcurrencyLimiter limiter = mock(ConcurrencyLimiter.class);
+        HandlerService service = new HandlerService(limiter, null);
+        service.addHandler("a", mock(QueryHandler.class));
+        service.addHandler("b", mock(QueryHandler.class));
+
+        service.respond("a", new PubSubMessage("a", "", Metadata.Signal.ACKNOWLEDGE));
+        verify(limiter).onSample(anyLong(), eq(2), eq(false));
+        service.respond("a", new PubSubMessage("a", "", Metadata.Signal.COMPLETE));
+        service.respond("b", new PubSubMessage("b", "", Metadata.Signal.FAIL));
+        verify(limiter).onSample(anyLong(), eq(2), eq(true));
+        verifyNoMoreInteractions(limiter);
+    }
+
+    @Test
+    public void testNotSamplingDataForTheLimiter() {
+        ConcurrencyLimiter limiter = mock(ConcurrencyLimiter.class);
+        HandlerService service = new HandlerService(limiter, null);
+        service.addHandler("a", mock(QueryHandler.class));
+        service.addHandler("b", mock(QueryHandler.class));
+
+        // The first window of a windowed query and the final result of another
+        service.respond("a", new PubSubMessage("a", "window"));
+        service.respond("b", new PubSubMessage("b", "result", Metadata.Signal.COMPLETE));
+        verifyNoMoreInteractions(limiter);
+
+        service.respond("a", new PubSubMessage("a", "", Metadata.Signal.ACKNOWLEDGE));
+        verify(limiter).onSample(anyLong(), eq(2), eq(false));
+        verifyNoMoreInteractions(limiter);
+    }
+
+    @Test
+    public void testSamplingFailedHandlersForTheLimiter() {
+        ConcurrencyLimiter limiter = mock(ConcurrencyLimiter.class);
+        HandlerService service = new HandlerService(limiter, null);
+        service.addHandler("a", mock(QueryHandler.class));
+        service.addHandler("b", mock(QueryHandler.class));
+        service.addHandler("c", mock(QueryHandler.class));
+
+        service.failHandler("a");
+        verify(limiter).onSample(anyLong(), eq(3), eq(true));
+        service.removeHandler("b");
+        service.respond("b", new PubSubMessage("b", ""));
+        service.failAllHandlers();
+        verify(limiter).onFailure();
+        service.respond("c", new PubSubMessage("c", ""));
+        service.failAllHandlers();
+        verifyNoMoreInteractions(limiter);
+    }
+
+    @Test
+    public void testReleasingCostsOfRemovedQueries() {
+        CostBudget budget = new CostBudget(10.0);
+        HandlerService service = new HandlerService(null, budget);
+        for (String id : new String[] { "a", "b", "c", "d" }) {
+            budget.tryAcquire(id, 2.0);
+            service.addHandler(id, new MockQueryHandler());
+        }
+        Assert.assertEquals(budget.getUsed(), 8.0);
+
+        service.removeHandler("a");
+        service.failHandler("b");
+        Assert.assertEquals(budget.getUsed(), 4.0);
+        service.respond("c", new PubSubMessage("c", "", Metadata.Signal.COMPLETE));
+        Assert.assertEquals(budget.getUsed(), 2.0);
+        service.failAllHandlers();
+        Assert.assertEquals(budget.getUsed(), 0.0);
+    }
 }
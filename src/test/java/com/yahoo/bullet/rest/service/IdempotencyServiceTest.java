@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class IdempotencyServiceTest {
+    private static final Principal SOMEONE = () -> "someone";
+
+    @Test
+    public void testDisabled() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        IdempotencyService service = new IdempotencyService(false, 10, 60000L, metricRegistry);
+        Assert.assertNull(service.attach("http", null, null, "key", "a", new CompletableFuture<>()));
+        Assert.assertNull(service.attach("http", null, null, "key", "b", new CompletableFuture<>()));
+        service.detach("http", null, null, "key", "a");
+        Assert.assertTrue(metricRegistry.extractMetrics().isEmpty());
+    }
+
+    @Test
+    public void testWithoutAKey() {
+        IdempotencyService service = new IdempotencyService(true, 10, 60000L, null);
+        Assert.assertNull(service.attach("http", null, null, null, "a", new CompletableFuture<>()));
+        Assert.assertNull(service.attach("http", null, null, null, "b", new CompletableFuture<>()));
+        service.detach("http", null, null, null, "a");
+    }
+
+    @Test
+    public void testAttachingRetries() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        IdempotencyService service = new IdempotencyService(true, 10, 60000L, metricRegistry);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        Assert.assertNull(service.attach("http", SOMEONE, null, "key", "a", first));
+        Assert.assertSame(service.attach("http", SOMEONE, null, "key", "b", new CompletableFuture<String>()), first);
+        Assert.assertSame(service.attach("http", SOMEONE, null, "key", "c", new CompletableFuture<String>()), first);
+
+        Map<String, Number> metrics = metricRegistry.extractMetrics();
+        Assert.assertEquals(metrics.get(IdempotencyService.HITS), 2L);
+        Assert.assertEquals(metrics.get(IdempotencyService.KEYS), 1);
+    }
+
+    @Test
+    public void testKeysAreSeparatePerEndpointAndPrincipal() {
+        IdempotencyService service = new IdempotencyService(true, 10, 60000L, null);
+        Assert.assertNull(service.attach("http", SOMEONE, null, "key", "a", new CompletableFuture<>()));
+        Assert.assertNull(service.attach("async", SOMEONE, null, "key", "b", new CompletableFuture<>()));
+        Assert.assertNull(service.attach("http", () -> "someone else", null, "key", "c", new CompletableFuture<>()));
+        Assert.assertNull(service.attach("http", null, null, "key", "d", new CompletableFuture<>()));
+    }
+
+    @Test
+    public void testKeysAreSeparatePerAddressWithoutAPrincipal() {
+        IdempotencyService service = new IdempotencyService(true, 10, 60000L, null);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        Assert.assertNull(service.attach("http", null, "10.0.0.1", "key", "a", first));
+        Assert.assertNull(service.attach("http", null, "10.0.0.2", "key", "b", new CompletableFuture<>()));
+        Assert.assertNull(service.attach("http", null, null, "key", "c", new CompletableFuture<>()));
+        Assert.assertSame(service.attach("http", null, "10.0.0.1", "key", "d", new CompletableFuture<String>()), first);
+        // A principal named like an address is not that client
+        Assert.assertNull(service.attach("http", () -> "10.0.0.1", null, "key", "e", new CompletableFuture<>()));
+    }
+
+    @Test
+    public void testAddressIsIgnoredWithAPrincipal() {
+        IdempotencyService service = new IdempotencyService(true, 10, 60000L, null);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        Assert.assertNull(service.attach("http", SOMEONE, "10.0.0.1", "key", "a", first));
+        Assert.assertSame(service.attach("http", SOMEONE, "10.0.0.2", "key", "b", new CompletableFuture<String>()), first);
+        service.detach("http", SOMEONE, "10.0.0.3", "key", "a");
+        Assert.assertNull(service.attach("http", SOMEONE, null, "key", "c", new CompletableFuture<>()));
+    }
+
+    @Test
+    public void testSeparatorsInKeysDoNotCollide() {
+        IdempotencyService service = new IdempotencyService(true, 10, 60000L, null);
+        Assert.assertNull(service.attach("http", () -> "a|b", null, "c", "a", new CompletableFuture<>()));
+        Assert.assertNull(service.attach("http", () -> "a", null, "b|c", "b", new CompletableFuture<>()));
+        Assert.assertNull(service.attach("http", () -> "a\\", null, "b|c", "c", new CompletableFuture<>()));
+        Assert.assertNotNull(service.attach("http", () -> "a|b", null, "c", "d", new CompletableFuture<>()));
+    }
+
+    @Test
+    public void testDetachingLetsARetrySubmitAgain() {
+        IdempotencyService service = new IdempotencyService(true, 10, 60000L, null);
+        Assert.assertNull(service.attach("http", SOMEONE, null, "key", "a", new CompletableFuture<>()));
+        service.detach("http", SOMEONE, null, "key", "b");
+        Assert.assertNotNull(service.attach("http", SOMEONE, null, "key", "b", new CompletableFuture<>()));
+        service.detach("http", SOMEONE, null, "key", "a");
+        Assert.assertNull(service.attach("http", SOMEONE, null, "key", "b", new CompletableFuture<>()));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.common.metrics.MetricPublisher;
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class MetricServiceTest {
+    @Test
+    public void testPublishingOnce() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("foo").increment();
+        registry.gauge("bar", () -> 1);
+        MetricPublisher<?> publisher = mock(MetricPublisher.class);
+        new MetricService(registry, publisher).publishMetrics();
+
+        Map<String, Number> expected = new HashMap<>();
+        expected.put("foo", 1L);
+        expected.put("bar", 1);
+        verify(publisher).fire(expected);
+    }
+
+    @Test
+    public void testNotPublishing() {
+        MetricPublisher<?> publisher = mock(MetricPublisher.class);
+        new MetricService(null, publisher).publishMetrics();
+        verify(publisher, never()).fire(any());
+    }
+
+    @Test
+    public void testExtractingWithoutAPublisher() {
+        MetricRegistry registry = new MetricRegistry();
+        AtomicInteger extracted = new AtomicInteger();
+        registry.source(() -> Collections.singletonMap("foo", extracted.incrementAndGet()));
+        new MetricService(registry, null).publishMetrics();
+
+        // The sources are drained and scraped even though nothing is published
+        Assert.assertEquals(extracted.get(), 1);
+        Assert.assertEquals(registry.scrape(), "# TYPE foo untyped\nfoo 1\n");
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.common.PriorityClass;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class PriorityServiceTest {
+    private static final String INTERACTIVE = PriorityService.PREFIX + "interactive";
+    private static final String BULK = PriorityService.PREFIX + "bulk";
+
+    private PriorityService service;
+
+    private static PriorityService makeService(boolean enabled, int queueSize, MetricRegistry metricRegistry) {
+        return new PriorityService(enabled, 4, 2, 1, 1, new String[] { PriorityService.ASYNC }, new String[] { "cron" },
+                                   queueSize, 1, metricRegistry);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        service = makeService(false, 1, metricRegistry);
+        Assert.assertEquals(service.classify(PriorityService.ASYNC, () -> "cron"), PriorityClass.INTERACTIVE);
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertTrue(service.tryAcquire(String.valueOf(i), PriorityClass.BULK, null));
+        }
+        Thread caller = Thread.currentThread();
+        Assert.assertTrue(service.submit(PriorityClass.BULK, () -> Thread.currentThread() == caller).get());
+        Assert.assertEquals(service.getRunning(PriorityClass.BULK), 0);
+        Assert.assertTrue(metricRegistry.extractMetrics().isEmpty());
+    }
+
+    @Test
+    public void testClassifying() {
+        service = makeService(true, 10, null);
+        Assert.assertEquals(service.classify(PriorityService.ASYNC, null), PriorityClass.BULK);
+        Assert.assertEquals(service.classify("http", null), PriorityClass.INTERACTIVE);
+        Assert.assertEquals(service.classify("http", () -> "cron"), PriorityClass.BULK);
+        Assert.assertEquals(service.classify("websocket", () -> "someone"), PriorityClass.INTERACTIVE);
+    }
+
+    @Test
+    public void testLimitsArePerClass() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        service = makeService(true, 10, metricRegistry);
+        Assert.assertTrue(service.tryAcquire("a", PriorityClass.INTERACTIVE, 1000L));
+        Assert.assertTrue(service.tryAcquire("b", PriorityClass.INTERACTIVE, null));
+        Assert.assertFalse(service.tryAcquire("c", PriorityClass.INTERACTIVE, 1000L));
+        Assert.assertTrue(service.tryAcquire("d", PriorityClass.BULK, 1000L));
+        Assert.assertFalse(service.tryAcquire("e", PriorityClass.BULK, 1000L));
+
+        Assert.assertEquals(service.getPriority("a"), PriorityClass.INTERACTIVE);
+        Assert.assertEquals(service.getPriority("d"), PriorityClass.BULK);
+        Assert.assertEquals(service.getPriority("e"), PriorityClass.INTERACTIVE);
+
+        Map<String, Number> metrics = metricRegistry.extractMetrics();
+        Assert.assertEquals(metrics.get(INTERACTIVE + PriorityService.RUNNING), 2);
+        Assert.assertEquals(metrics.get(INTERACTIVE + PriorityService.REJECTED), 1L);
+        Assert.assertEquals(metrics.get(BULK + PriorityService.RUNNING), 1);
+        Assert.assertEquals(metrics.get(BULK + PriorityService.REJECTED), 1L);
+
+        service.release("a");
+        service.release("a");
+        service.release("unknown");
+        Assert.assertTrue(service.tryAcquire("c", PriorityClass.INTERACTIVE, 1000L));
+        Assert.assertEquals(service.getRunning(PriorityClass.INTERACTIVE), 2);
+    }
+
+    @Test
+    public void testReacquiringAnIDDoesNotLeakASlot() {
+        service = makeService(true, 10, null);
+        Assert.assertTrue(service.tryAcquire("a", PriorityClass.INTERACTIVE, 1000L));
+        Assert.assertTrue(service.tryAcquire("a", PriorityClass.BULK, 1000L));
+        Assert.assertEquals(service.getRunning(PriorityClass.INTERACTIVE), 0);
+        Assert.assertEquals(service.getRunning(PriorityClass.BULK), 1);
+        service.release("a");
+        Assert.assertEquals(service.getRunning(PriorityClass.BULK), 0);
+    }
+
+    @Test
+    public void testPublishingInTheBackground() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        service = makeService(true, 10, metricRegistry);
+        Thread caller = Thread.currentThread();
+        Assert.assertFalse(service.submit(PriorityClass.INTERACTIVE, () -> Thread.currentThread() == caller).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(service.submit(PriorityClass.BULK, () -> "done").get(5, TimeUnit.SECONDS), "done");
+
+        Map<String, Number> metrics = metricRegistry.extractMetrics();
+        Assert.assertEquals(metrics.get(INTERACTIVE + PriorityService.PUBLISHED), 1L);
+        Assert.assertEquals(metrics.get(BULK + PriorityService.PUBLISHED), 1L);
+        Assert.assertEquals(metrics.get(BULK + PriorityService.WAIT), 0L);
+        Assert.assertEquals(metrics.get(BULK + PriorityService.QUEUED), 0);
+    }
+
+    @Test
+    public void testFailingToPublish() throws Exception {
+        service = makeService(true, 10, null);
+        CompletableFuture<Object> result = service.submit(PriorityClass.BULK, () -> {
+            throw new RuntimeException("Testing");
+        });
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals(e.getCause().getMessage(), "Testing");
+        }
+    }
+
+    @Test
+    public void testDroppingWhenTheQueueIsFull() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        service = makeService(true, 1, metricRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CompletableFuture<Boolean> first = service.submit(PriorityClass.BULK, () -> {
+            started.countDown();
+            try {
+                return blocked.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = service.submit(PriorityClass.BULK, () -> "second");
+        CompletableFuture<String> third = service.submit(PriorityClass.BULK, () -> "third");
+
+        Assert.assertTrue(third.isCompletedExceptionally());
+        try {
+            third.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Thread.sleep(10L);
+        Map<String, Number> metrics = metricRegistry.extractMetrics();
+        Assert.assertEquals(metrics.get(BULK + PriorityService.DROPPED), 1L);
+        Assert.assertEquals(metrics.get(BULK + PriorityService.QUEUED), 1);
+        Assert.assertTrue(metrics.get(BULK + PriorityService.WAIT).longValue() >= 10L);
+        Assert.assertEquals(metrics.get(INTERACTIVE + PriorityService.WAIT), 0L);
+
+        blocked.countDown();
+        Assert.assertTrue(first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(second.get(5, TimeUnit.SECONDS), "second");
+    }
+
+    @Test
+    public void testClosingFailsQueuedTasks() throws Exception {
+        service = makeService(true, 10, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        service.submit(PriorityClass.BULK, () -> {
+            started.countDown();
+            try {
+                return blocked.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = service.submit(PriorityClass.INTERACTIVE, () -> "queued");
+
+        service.close();
+
+        for (CompletableFuture<String> result : Arrays.asList(queued, service.submit(PriorityClass.BULK, () -> "late"))) {
+            Assert.assertTrue(result.isCompletedExceptionally());
+            try {
+                result.get();
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+}
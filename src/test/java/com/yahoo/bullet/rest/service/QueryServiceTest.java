@@ -14,15 +14,22 @@ import com.yahoo.bullet.pubsub.Publisher;
 import com.yahoo.bullet.pubsub.Subscriber;
 import com.yahoo.bullet.query.Query;
 import com.yahoo.bullet.rest.TestHelpers.CustomMetadata;
+import com.yahoo.bullet.rest.common.IsolatedResponder;
+import com.yahoo.bullet.rest.common.MessageCache;
+import com.yahoo.bullet.rest.common.PriorityClass;
+import com.yahoo.bullet.rest.common.ResponseRouter;
 import com.yahoo.bullet.storage.StorageManager;
 import org.mockito.ArgumentCaptor;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 import static com.yahoo.bullet.rest.TestHelpers.assertMessageEquals;
 import static com.yahoo.bullet.rest.TestHelpers.emptyStorage;
@@ -34,12 +41,17 @@ import static com.yahoo.bullet.rest.TestHelpers.metadataModifyingPublisher;
 import static com.yahoo.bullet.rest.TestHelpers.mockPublisher;
 import static com.yahoo.bullet.rest.TestHelpers.mockStorage;
 import static com.yahoo.bullet.rest.TestHelpers.unRemovableStorage;
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -86,7 +98,7 @@ public class QueryServiceTest {
     @Test
     public void testClose() {
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
         service.close();
         verify(responder).close();
     }
@@ -94,7 +106,7 @@ public class QueryServiceTest {
     @Test
     public void testSubmissionPersistsQuery() throws Exception {
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage result = service.submit("key", SAMPLE, getBQLQuery()).get();
         PubSubMessage expected = new PubSubMessage("key", SAMPLE, SAMPLE_METADATA);
@@ -103,12 +115,67 @@ public class QueryServiceTest {
         assertMessageSent(publisher, expected);
     }
 
+    @Test
+    public void testSubmissionWithStorageBatchingPersistsQuery() throws Exception {
+        StorageManager storage = mockStorage();
+        doReturn(CompletableFuture.completedFuture(true)).when(storage).putAll(any());
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 1L, 0, null);
+
+        PubSubMessage result = service.submit("key", SAMPLE, getBQLQuery()).get();
+        PubSubMessage expected = new PubSubMessage("key", SAMPLE, SAMPLE_METADATA);
+        assertMessageEquals(result, expected);
+        verify(storage).putAll(singletonMap("key", expected));
+        verify(storage, never()).put(anyString(), any());
+        assertMessageSent(publisher, expected);
+        service.close();
+    }
+
+    @Test
+    public void testBatchSubmissionPersistsQueries() throws Exception {
+        StorageManager storage = mockStorage();
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
+
+        List<PubSubMessage> result = service.submit(asList("a", "b"), asList(SAMPLE, SAMPLE), asList(SAMPLE_BQL, SAMPLE_BQL)).get();
+
+        PubSubMessage expectedA = new PubSubMessage("a", SAMPLE, SAMPLE_METADATA);
+        PubSubMessage expectedB = new PubSubMessage("b", SAMPLE, SAMPLE_METADATA);
+        Assert.assertEquals(result.size(), 2);
+        assertMessageEquals(result.get(0), expectedA);
+        assertMessageEquals(result.get(1), expectedB);
+        verify(storage).put("a", expectedA);
+        verify(storage).put("b", expectedB);
+        verify(publisher, times(2)).send(any());
+    }
+
+    @Test
+    public void testBatchSubmissionDoesNotPersistQueriesThatFailedPublishing() throws Exception {
+        PubSubMessage expectedA = new PubSubMessage("a", SAMPLE, SAMPLE_METADATA);
+        PubSubMessage expectedB = new PubSubMessage("b", SAMPLE, SAMPLE_METADATA);
+        doThrow(new RuntimeException("Testing")).when(publisher).send(expectedA);
+        StorageManager storage = mockStorage();
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
+
+        List<PubSubMessage> result = service.submit(asList("a", "b"), asList(SAMPLE, SAMPLE), asList(SAMPLE_BQL, SAMPLE_BQL)).get();
+
+        Assert.assertNull(result.get(0));
+        assertMessageEquals(result.get(1), expectedB);
+        verify(storage, never()).put(eq("a"), any());
+        verify(storage).put("b", expectedB);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBatchSubmissionNeedsAllParts() {
+        StorageManager storage = mockStorage();
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
+        service.submit(asList("a", "b"), singletonList(SAMPLE), asList(SAMPLE_BQL, SAMPLE_BQL));
+    }
+
     @Test
     public void testSubmissionPersistsModifiedMessage() throws Exception {
         publisher = metadataModifyingPublisher("testMetadata");
         publishers = singletonList(publisher);
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage result = service.submit("key", SAMPLE, SAMPLE_BQL).get();
         // We will answer with a CustomMetadata but the original metadata has nothing anyway
@@ -129,7 +196,7 @@ public class QueryServiceTest {
         publisher = failingPublisher();
         publishers = singletonList(publisher);
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage result = service.submit("key", SAMPLE, SAMPLE_BQL).get();
         Assert.assertNull(result);
@@ -141,7 +208,7 @@ public class QueryServiceTest {
     public void testSubmissionIsKilledIfPersistingFailed() throws Exception {
         PubSubMessage expected = new PubSubMessage("key", SAMPLE, SAMPLE_METADATA);
         StorageManager storage = failingStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage result = service.submit("key", SAMPLE, SAMPLE_BQL).get();
         Assert.assertNull(result);
@@ -169,7 +236,7 @@ public class QueryServiceTest {
         fail.completeExceptionally(new RuntimeException("Testing"));
         doReturn(fail).when(storage).put(eq("key"), any());
 
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage result = service.submit("key", SAMPLE, SAMPLE_BQL).get();
         Assert.assertNull(result);
@@ -181,7 +248,7 @@ public class QueryServiceTest {
     @Test
     public void testKillingAnExistingQuery() throws Exception {
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         service.kill("key").get();
 
@@ -190,10 +257,55 @@ public class QueryServiceTest {
         assertMessageSent(publisher, expected);
     }
 
+    @Test
+    public void testKillingAnExistingQueryGivesBackItsPrioritySlot() throws Exception {
+        StorageManager storage = mockStorage();
+        PriorityService priorityService = mock(PriorityService.class);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, priorityService);
+
+        service.kill("key").get();
+
+        PubSubMessage expected = new PubSubMessage("key", Metadata.Signal.KILL);
+        assertMessageSent(publisher, expected);
+        verify(priorityService).release("key");
+        verify(priorityService, never()).submit(any(), any());
+    }
+
+    @Test
+    public void testQuerySubmissionIsPublishedInItsPriorityClass() throws Exception {
+        StorageManager storage = mockStorage();
+        PriorityService priorityService = mock(PriorityService.class);
+        doReturn(PriorityClass.BULK).when(priorityService).getPriority("key");
+        doAnswer(i -> CompletableFuture.completedFuture(i.getArgument(1, Supplier.class).get())).when(priorityService).submit(any(), any());
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, priorityService);
+
+        PubSubMessage result = service.submit("key", SAMPLE, SAMPLE_BQL).get();
+        PubSubMessage expected = new PubSubMessage("key", SAMPLE, SAMPLE_METADATA);
+        assertMessageEquals(result, expected);
+        assertMessageSent(publisher, expected);
+        verify(priorityService).submit(eq(PriorityClass.BULK), any());
+        verify(priorityService, never()).release(anyString());
+    }
+
+    @Test
+    public void testFailedQuerySubmissionGivesBackItsPrioritySlot() throws Exception {
+        StorageManager storage = mockStorage();
+        PriorityService priorityService = mock(PriorityService.class);
+        doReturn(PriorityClass.BULK).when(priorityService).getPriority("key");
+        CompletableFuture<PubSubMessage> fail = new CompletableFuture<>();
+        fail.completeExceptionally(new RuntimeException("Testing"));
+        doReturn(fail).when(priorityService).submit(any(), any());
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, priorityService);
+
+        PubSubMessage result = service.submit("key", SAMPLE, SAMPLE_BQL).get();
+        Assert.assertNull(result);
+        verify(priorityService).release("key");
+    }
+
     @Test
     public void testSendingASignal() throws Exception {
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         service.send("key", Metadata.Signal.KILL).get();
         PubSubMessage expected = new PubSubMessage("key", Metadata.Signal.KILL);
@@ -204,7 +316,7 @@ public class QueryServiceTest {
     @Test
     public void testSendingAPubSubMessage() throws Exception {
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage expected = new PubSubMessage("key", "test", new Metadata(Metadata.Signal.KILL, new HashMap<>()));
         service.send(expected).get();
@@ -215,7 +327,7 @@ public class QueryServiceTest {
     @Test
     public void testFailingToRemoveFromStorageStillKillsAQuery() throws Exception {
         StorageManager storage = unRemovableStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         service.kill("key").get();
 
@@ -228,7 +340,7 @@ public class QueryServiceTest {
     public void testFailingToSendAKillSignalIsIgnored() throws Exception {
         doThrow(new RuntimeException("Testing")).when(publisher).send(any());
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         service.kill("key").get();
 
@@ -240,7 +352,7 @@ public class QueryServiceTest {
     @Test
     public void testRespondingToADoneSignal() {
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage expected = new PubSubMessage("key", Metadata.Signal.COMPLETE);
         service.respond("key", expected);
@@ -250,7 +362,7 @@ public class QueryServiceTest {
     @Test
     public void testErrorWhileRemovingStillResponds() {
         StorageManager storage = unRemovableStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage expected = new PubSubMessage("key", Metadata.Signal.COMPLETE);
         service.respond("key", expected);
@@ -260,7 +372,7 @@ public class QueryServiceTest {
     @Test
     public void testRespondingToAnything() {
         StorageManager storage = emptyStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage expected = new PubSubMessage("key", "test");
         service.respond("key", expected);
@@ -270,7 +382,7 @@ public class QueryServiceTest {
     @Test
     public void testRetrievingASentQuery() throws Exception {
         StorageManager storage = mockStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage result = service.submit("key", SAMPLE, getBQLQuery()).get();
         PubSubMessage expected = new PubSubMessage("key", SAMPLE, SAMPLE_METADATA);
@@ -283,10 +395,76 @@ public class QueryServiceTest {
         Assert.assertNull(retrieval);
     }
 
+    @Test
+    public void testRetrievingACachedQuery() throws Exception {
+        StorageManager storage = mockStorage();
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 10, null);
+
+        service.submit("key", SAMPLE, getBQLQuery()).get();
+        PubSubMessage expected = new PubSubMessage("key", SAMPLE, SAMPLE_METADATA);
+        assertMessageEquals(service.get("key").get(), expected);
+        verify(storage, never()).get("key");
+        Assert.assertEquals(service.getCacheMetrics().get(MessageCache.HITS), 1L);
+
+        service.respond("key", new PubSubMessage("key", Metadata.Signal.COMPLETE));
+        Assert.assertNull(service.get("key").get());
+        verify(storage).get("key");
+        Assert.assertEquals(service.getCacheMetrics().get(MessageCache.MISSES), 1L);
+
+        service.submit("key", SAMPLE, getBQLQuery()).get();
+        service.kill("key").get();
+        Assert.assertNull(service.get("key").get());
+        Assert.assertEquals(service.getCacheMetrics().get(MessageCache.SIZE), 0);
+    }
+
+    @Test
+    public void testRespondingThroughIsolatedResponders() {
+        StorageManager storage = mockStorage();
+        PubSubResponder slow = mock(PubSubResponder.class);
+        IsolatedResponder isolated = new IsolatedResponder("slow", slow, 10, 60000L, 0, 0L);
+        QueryService service = new QueryService(storage, Arrays.asList(isolated, responder), publishers, subscribers,
+                                                serDe, 1, 0L, 0, null);
+        PubSubMessage response = new PubSubMessage("key", "foo");
+        service.respond("key", response);
+        verify(responder).respond("key", response);
+        service.close();
+        verify(slow).respond("key", response);
+        verify(slow).close();
+        Assert.assertTrue(service.getResponderMetrics().containsKey(IsolatedResponder.PREFIX + "slow." + IsolatedResponder.LATENCY));
+    }
+
+    @Test
+    public void testRespondingLocallyThroughRouters() {
+        StorageManager storage = mockStorage();
+        PubSubResponder peer = mock(PubSubResponder.class);
+        ResponseRouter router = new ResponseRouter("a", singletonList(responder), singletonMap("b", peer));
+        QueryService service = new QueryService(storage, singletonList(router), publishers, subscribers, serDe, 1, 0L, 0, null);
+        PubSubMessage forwarded = new PubSubMessage("b_key", "foo");
+        service.respond("b_key", forwarded);
+        verify(peer).respond("b_key", forwarded);
+
+        PubSubMessage response = new PubSubMessage("a_key", "foo");
+        service.respondLocally("a_key", response);
+        verify(responder).respond("a_key", response);
+        Map<String, Number> metrics = service.getResponderMetrics();
+        Assert.assertEquals(metrics.get(ResponseRouter.FORWARDED), 1L);
+        Assert.assertEquals(metrics.get(ResponseRouter.RECEIVED), 1L);
+        service.close();
+    }
+
+    @Test
+    public void testFailingToPersistDoesNotCache() throws Exception {
+        StorageManager storage = failingStorage();
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 10, null);
+
+        Assert.assertNull(service.submit("key", SAMPLE, SAMPLE_BQL).get());
+        Assert.assertEquals(service.getCacheMetrics().get(MessageCache.SIZE), 0);
+    }
+
     @Test
     public void testErrorWhileRetrievingASentQuery() throws Exception {
         StorageManager storage = unRemovableStorage();
-        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
 
         PubSubMessage result = service.submit("key", SAMPLE, getBQLQuery()).get();
         PubSubMessage expected = new PubSubMessage("key", SAMPLE, SAMPLE_METADATA);
@@ -298,4 +476,21 @@ public class QueryServiceTest {
         verify(storage).get("key");
         Assert.assertNull(retrieval);
     }
+
+    @Test
+    public void testRepublishingAndPagingStoredQueries() throws Exception {
+        StorageManager storage = mockStorage();
+        PubSubMessage stored = new PubSubMessage("key", SAMPLE, SAMPLE_METADATA);
+        doReturn(0).when(storage).numberOfPartitions();
+        doReturn(CompletableFuture.completedFuture(singletonMap("key", stored))).when(storage).getPartition(0);
+        QueryService service = new QueryService(storage, responders, publishers, subscribers, serDe, 1, 0L, 0, null);
+
+        Assert.assertEquals(service.numberOfStoredPages(), 1);
+        Assert.assertEquals(service.getStoredPage(0).get(), singletonMap("key", stored));
+        assertMessageEquals(service.republish(stored).get(), stored);
+        assertMessageSent(publisher, stored);
+
+        doReturn(4).when(storage).numberOfPartitions();
+        Assert.assertEquals(service.numberOfStoredPages(), 4);
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.rest.common.MetricRegistry;
+import com.yahoo.bullet.rest.query.QueryError;
+import org.springframework.http.HttpStatus;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.security.Principal;
+import java.util.Map;
+
+import static com.yahoo.bullet.TestHelpers.assertJSONEquals;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class RateLimitServiceTest {
+    private static HttpServletRequest makeRequest(String method, String address, String user) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        doReturn(method).when(request).getMethod();
+        doReturn(address).when(request).getRemoteAddr();
+        if (user != null) {
+            Principal principal = () -> user;
+            doReturn(principal).when(request).getUserPrincipal();
+        }
+        return request;
+    }
+
+    @Test
+    public void testGettingTheKey() {
+        Assert.assertEquals(RateLimitService.getKey(null, "127.0.0.1"), "127.0.0.1");
+        Assert.assertEquals(RateLimitService.getKey(() -> "someone", "127.0.0.1"), "someone");
+    }
+
+    @Test
+    public void testDisabled() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RateLimitService service = new RateLimitService(false, 1.0, 1, 60000L, 1, 10, metricRegistry);
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertTrue(service.tryAcquire("a"));
+        }
+        Assert.assertTrue(service.extractThrottled().isEmpty());
+        Assert.assertTrue(metricRegistry.extractMetrics().isEmpty());
+    }
+
+    @Test
+    public void testThrottlingWithoutMetrics() {
+        RateLimitService service = new RateLimitService(true, 1.0, 2, 60000L, 4, 10, null);
+        Assert.assertTrue(service.tryAcquire("a"));
+        Assert.assertTrue(service.tryAcquire("a"));
+        Assert.assertFalse(service.tryAcquire("a"));
+        Assert.assertTrue(service.tryAcquire("b"));
+    }
+
+    @Test
+    public void testThrottlingPublishesMetrics() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RateLimitService service = new RateLimitService(true, 1.0, 1, 60000L, 4, 10, metricRegistry);
+        service.tryAcquire("a");
+        service.tryAcquire("a");
+        service.tryAcquire("a");
+        service.tryAcquire("b");
+
+        Map<String, Number> metrics = metricRegistry.extractMetrics();
+        Assert.assertEquals(metrics.get(RateLimitService.THROTTLED), 2L);
+        Assert.assertEquals(metrics.get(RateLimitService.THROTTLED + ".a"), 2L);
+        Assert.assertFalse(metrics.containsKey(RateLimitService.THROTTLED + ".b"));
+        Assert.assertEquals(metrics.get(RateLimitService.BUCKETS), 2);
+    }
+
+    @Test
+    public void testPublishingTheUsersThrottledTheMost() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        RateLimitService service = new RateLimitService(true, 1.0, 1, 60000L, 4, 2, metricRegistry);
+        for (int i = 0; i < 4; ++i) {
+            service.tryAcquire("10.0.0.1");
+        }
+        for (int i = 0; i < 3; ++i) {
+            service.tryAcquire("b");
+        }
+        for (int i = 0; i < 2; ++i) {
+            service.tryAcquire("c");
+        }
+
+        Map<String, Number> metrics = service.extractThrottled();
+        Assert.assertEquals(metrics.size(), 2);
+        Assert.assertEquals(metrics.get(RateLimitService.THROTTLED + ".10_0_0_1"), 3L);
+        Assert.assertEquals(metrics.get(RateLimitService.THROTTLED + ".b"), 2L);
+        Assert.assertTrue(service.extractThrottled().isEmpty());
+    }
+
+    @Test
+    public void testLimitingRequestsByUserOrAddress() throws Exception {
+        RateLimitService service = new RateLimitService(true, 1.0, 1, 60000L, 4, 10, null);
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter body = new StringWriter();
+        doReturn(new PrintWriter(body)).when(response).getWriter();
+
+        Assert.assertTrue(service.preHandle(makeRequest("POST", "10.0.0.1", null), response, null));
+        Assert.assertTrue(service.preHandle(makeRequest("POST", "10.0.0.1", "someone"), response, null));
+        Assert.assertTrue(service.preHandle(makeRequest("POST", "10.0.0.2", null), response, null));
+        verify(response, never()).setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+
+        Assert.assertFalse(service.preHandle(makeRequest("POST", "10.0.0.3", "someone"), response, null));
+        verify(response).setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        assertJSONEquals(body.toString(), QueryError.RATE_LIMITED.toString());
+    }
+
+    @Test
+    public void testOnlyLimitingSubmissions() throws Exception {
+        RateLimitService service = new RateLimitService(true, 1.0, 1, 60000L, 4, 10, null);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        doReturn(new PrintWriter(new StringWriter())).when(response).getWriter();
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertTrue(service.preHandle(makeRequest("OPTIONS", "10.0.0.1", null), response, null));
+        }
+        Assert.assertTrue(service.preHandle(makeRequest("POST", "10.0.0.1", null), response, null));
+        Assert.assertFalse(service.preHandle(makeRequest("POST", "10.0.0.1", null), response, null));
+    }
+}
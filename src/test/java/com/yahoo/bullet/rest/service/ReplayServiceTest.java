@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.rest.model.ReplayStatus;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ReplayServiceTest {
+    private static Map<String, PubSubMessage> page(int start, int count) {
+        Map<String, PubSubMessage> page = new HashMap<>();
+        for (int i = start; i < start + count; ++i) {
+            page.put(String.valueOf(i), new PubSubMessage(String.valueOf(i), "query"));
+        }
+        return page;
+    }
+
+    private static ReplayStatus awaitCompletion(ReplayService service) throws Exception {
+        for (int i = 0; i < 500 && service.getStatus().isRunning(); ++i) {
+            Thread.sleep(10L);
+        }
+        ReplayStatus status = service.getStatus();
+        Assert.assertFalse(status.isRunning());
+        return status;
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNonPositiveConcurrency() {
+        new ReplayService(mock(QueryService.class), 0.0, 0);
+    }
+
+    @Test
+    public void testStatusBeforeReplaying() {
+        ReplayService service = new ReplayService(mock(QueryService.class), 0.0, 1);
+        ReplayStatus status = service.getStatus();
+        Assert.assertFalse(status.isRunning());
+        Assert.assertEquals(status.getQueriesReplayed(), 0L);
+        Assert.assertEquals(status.getQueriesPerSecond(), 0.0);
+        service.close();
+    }
+
+    @Test
+    public void testReplayingAllPages() throws Exception {
+        QueryService queryService = mock(QueryService.class);
+        doReturn(3).when(queryService).numberOfStoredPages();
+        doReturn(CompletableFuture.completedFuture(page(0, 10))).when(queryService).getStoredPage(0);
+        doReturn(CompletableFuture.completedFuture(null)).when(queryService).getStoredPage(1);
+        doReturn(CompletableFuture.completedFuture(page(10, 5))).when(queryService).getStoredPage(2);
+        doAnswer(i -> CompletableFuture.completedFuture(i.getArgument(0))).when(queryService).republish(any());
+
+        ReplayService service = new ReplayService(queryService, 0.0, 4);
+        Assert.assertTrue(service.replay());
+        ReplayStatus status = awaitCompletion(service);
+
+        Assert.assertEquals(status.getPages(), 3);
+        Assert.assertEquals(status.getPagesReplayed(), 3);
+        Assert.assertEquals(status.getQueriesReplayed(), 15L);
+        Assert.assertEquals(status.getQueriesFailed(), 0L);
+        Assert.assertTrue(status.getEndTime() >= status.getStartTime());
+        verify(queryService, times(15)).republish(any());
+        service.close();
+    }
+
+    @Test
+    public void testFailuresAreCounted() throws Exception {
+        QueryService queryService = mock(QueryService.class);
+        doReturn(1).when(queryService).numberOfStoredPages();
+        doReturn(CompletableFuture.completedFuture(page(0, 4))).when(queryService).getStoredPage(0);
+        doReturn(CompletableFuture.completedFuture(null)).when(queryService).republish(any());
+
+        ReplayService service = new ReplayService(queryService, 0.0, 2);
+        service.replay();
+        ReplayStatus status = awaitCompletion(service);
+        Assert.assertEquals(status.getQueriesReplayed(), 0L);
+        Assert.assertEquals(status.getQueriesFailed(), 4L);
+        service.close();
+    }
+
+    @Test
+    public void testErrorReadingAPageEndsTheReplay() throws Exception {
+        QueryService queryService = mock(QueryService.class);
+        CompletableFuture<Map<String, PubSubMessage>> fail = new CompletableFuture<>();
+        fail.completeExceptionally(new RuntimeException("Testing"));
+        doReturn(2).when(queryService).numberOfStoredPages();
+        doReturn(fail).when(queryService).getStoredPage(0);
+
+        ReplayService service = new ReplayService(queryService, 0.0, 2);
+        service.replay();
+        ReplayStatus status = awaitCompletion(service);
+        Assert.assertEquals(status.getPagesReplayed(), 0);
+        verify(queryService, times(0)).getStoredPage(1);
+        service.close();
+    }
+
+    @Test
+    public void testOnlyOneReplayAtATime() throws Exception {
+        QueryService queryService = mock(QueryService.class);
+        CompletableFuture<Map<String, PubSubMessage>> pending = new CompletableFuture<>();
+        doReturn(1).when(queryService).numberOfStoredPages();
+        doReturn(pending).when(queryService).getStoredPage(0);
+
+        ReplayService service = new ReplayService(queryService, 0.0, 1);
+        Assert.assertTrue(service.replay());
+        Assert.assertFalse(service.replay());
+        Assert.assertTrue(service.getStatus().isRunning());
+        pending.complete(page(0, 1));
+        doReturn(CompletableFuture.completedFuture(null)).when(queryService).republish(any());
+        awaitCompletion(service);
+        Assert.assertTrue(service.replay());
+        service.close();
+    }
+}
@@ -7,17 +7,28 @@ package com.yahoo.bullet.rest.service;
 
 import com.google.gson.GsonBuilder;
 import com.yahoo.bullet.rest.model.JSONAPIField;
+import com.yahoo.bullet.rest.model.SchemaRequest;
 import com.yahoo.bullet.typesystem.Schema;
 import com.yahoo.bullet.typesystem.Schema.Field;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static com.yahoo.bullet.TestHelpers.assertJSONEquals;
 
 public class SchemaServiceTest {
+    private static final String FIELDS = "[{\"name\": \"test\", \"type\": \"STRING_MAP\", \"description\": \"foo\"}]";
+
     @Test
     public void testClasspathResource() {
         String expected =
@@ -44,4 +55,112 @@ public class SchemaServiceTest {
         SchemaService testService = new SchemaService("0.1", "sample_fields.json");
         assertJSONEquals(testService.getSchema(), expected);
     }
+
+    @Test
+    public void testPayloadIsPrecomputed() throws Exception {
+        SchemaService service = new SchemaService("1.2", "test_fields.json");
+        SchemaService.Payload payload = service.getPayload();
+        Assert.assertEquals(new String(payload.getBytes(), StandardCharsets.UTF_8), service.getSchema());
+        Assert.assertEquals(gunzip(payload.getGzipped()), service.getSchema());
+        Assert.assertTrue(payload.getETag().matches("\"[0-9a-f]{64}\""));
+        Assert.assertEquals(payload.getGzippedETag(), payload.getETag().substring(0, 65) + SchemaService.GZIP_SUFFIX + "\"");
+        Assert.assertSame(service.getPayload(), payload);
+        Assert.assertEquals(new SchemaService("1.2", "test_fields.json").getPayload().getETag(), payload.getETag());
+        Assert.assertNotEquals(new SchemaService("1.3", "test_fields.json").getPayload().getETag(), payload.getETag());
+    }
+
+    @Test
+    public void testSearching() {
+        SchemaService service = new SchemaService("0.1", "sample_fields.json");
+        SchemaRequest request = new SchemaRequest();
+        request.setTypes(Arrays.asList("long_map_map", "STRING_MAP_MAP"));
+        request.setFields(Collections.singletonList("type"));
+        request.setOffset(1);
+        request.setLimit(1);
+        String expected = "{'data': [{'id':'n','type':'column','attributes':{'type':'LONG_MAP_MAP'}}]," +
+                          "'meta':{'version':'0.1','total':3,'offset':1,'limit':1}}";
+        assertJSONEquals(service.search(request), expected);
+
+        request = new SchemaRequest();
+        request.setPrefix("b");
+        expected = "{'data': [{'id':'b','type':'column','attributes':{'name':'b','type':'INTEGER','description':'This is an integer field'}}]," +
+                   "'meta':{'version':'0.1','total':1,'offset':0}}";
+        assertJSONEquals(service.search(request), expected);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Unknown type foo")
+    public void testSearchingForUnknownTypes() {
+        SchemaRequest request = new SchemaRequest();
+        request.setTypes(Collections.singletonList("foo"));
+        new SchemaService("0.1", "sample_fields.json").search(request);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSearchingWithNegativeLimit() {
+        SchemaRequest request = new SchemaRequest();
+        request.setLimit(-1);
+        new SchemaService("0.1", "sample_fields.json").search(request);
+    }
+
+    @Test
+    public void testReloading() throws Exception {
+        Path file = Files.createTempFile("schema", ".json");
+        try {
+            Files.write(file, FIELDS.getBytes(StandardCharsets.UTF_8));
+            SchemaService service = new SchemaService("1.2", file.toString());
+            SchemaService.Payload payload = service.getPayload();
+
+            Files.write(file, "not json".getBytes(StandardCharsets.UTF_8));
+            Assert.assertFalse(service.reload());
+            Assert.assertSame(service.getPayload(), payload);
+
+            Files.write(file, FIELDS.replace("foo", "bar").getBytes(StandardCharsets.UTF_8));
+            Assert.assertTrue(service.reload());
+            Assert.assertNotEquals(service.getPayload().getETag(), payload.getETag());
+            Assert.assertTrue(service.getSchema().contains("bar"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testWatchingForChanges() throws Exception {
+        Path file = Files.createTempFile("schema", ".json");
+        SchemaService service = null;
+        try {
+            Files.write(file, FIELDS.getBytes(StandardCharsets.UTF_8));
+            service = new SchemaService("1.2", file.toString(), true);
+            Files.write(file, FIELDS.replace("foo", "bar").getBytes(StandardCharsets.UTF_8));
+            // The default watch service on some platforms polls every few seconds
+            long deadline = System.currentTimeMillis() + 30000L;
+            while (!service.getSchema().contains("bar") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            Assert.assertTrue(service.getSchema().contains("bar"));
+        } finally {
+            if (service != null) {
+                service.close();
+            }
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testNotWatchingClasspathResources() {
+        SchemaService service = new SchemaService("1.2", "test_fields.json", true);
+        Assert.assertTrue(service.getSchema().contains("foo"));
+        service.close();
+    }
+
+    private static String gunzip(byte[] bytes) throws Exception {
+        try (GZIPInputStream stream = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -5,6 +5,7 @@
  */
 package com.yahoo.bullet.rest.service;
 
+import com.yahoo.bullet.rest.common.ConcurrencyLimiter;
 import com.yahoo.bullet.rest.query.QueryHandler;
 import com.yahoo.bullet.rest.service.StatusService.TickQueryHandler;
 import org.testng.Assert;
@@ -29,7 +30,7 @@ public class StatusServiceTest {
             return null;
         }).when(handlerService).addHandler(anyString(), any());
 
-        StatusService statusService = new StatusService(queryService, handlerService, 30000L, 10L, false, 500);
+        StatusService statusService = new StatusService(queryService, handlerService, 30000L, 10L, false, new ConcurrencyLimiter(500));
         Assert.assertTrue(statusService.isBackendStatusOK());
 
         // <= 10 fails -> status ok
@@ -92,7 +93,7 @@ public class StatusServiceTest {
         QueryService queryService = mock(QueryService.class);
         HandlerService handlerService = mock(HandlerService.class);
         doReturn(500).when(handlerService).count();
-        StatusService statusService = new StatusService(queryService, handlerService, 30000L, 10L, false, 500);
+        StatusService statusService = new StatusService(queryService, handlerService, 30000L, 10L, false, new ConcurrencyLimiter(500));
         Assert.assertTrue(statusService.queryLimitReached());
     }
 
@@ -101,7 +102,22 @@ public class StatusServiceTest {
         QueryService queryService = mock(QueryService.class);
         HandlerService handlerService = mock(HandlerService.class);
         doReturn(499).when(handlerService).count();
-        StatusService statusService = new StatusService(queryService, handlerService, 30000L, 10L, false, 500);
+        StatusService statusService = new StatusService(queryService, handlerService, 30000L, 10L, false, new ConcurrencyLimiter(500));
         Assert.assertFalse(statusService.queryLimitReached());
     }
+
+    @Test
+    public void testQueryLimitFromTheLimiter() {
+        QueryService queryService = mock(QueryService.class);
+        HandlerService handlerService = mock(HandlerService.class);
+        doReturn(10).when(handlerService).count();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 20, 1000L, 0.5);
+        StatusService statusService = new StatusService(queryService, handlerService, 30000L, 10L, false, limiter);
+        Assert.assertEquals(statusService.getQueryLimit(), 20);
+        Assert.assertFalse(statusService.queryLimitReached());
+
+        limiter.onFailure();
+        Assert.assertEquals(statusService.getQueryLimit(), 10);
+        Assert.assertTrue(statusService.queryLimitReached());
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ *  Copyright 2021, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.rest.service;
+
+import com.yahoo.bullet.pubsub.PubSubMessage;
+import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.query.aggregations.Aggregation;
+import com.yahoo.bullet.query.aggregations.AggregationType;
+import com.yahoo.bullet.rest.query.QueryHandler;
+import com.yahoo.bullet.rest.query.ThrottledQueryHandler;
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static com.yahoo.bullet.TestHelpers.assertJSONEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ThrottleServiceTest {
+    private HandlerService handlerService;
+    private ThrottleService throttleService;
+    private QueryHandler handler;
+
+    private static Query query(AggregationType type) {
+        Aggregation aggregation = mock(Aggregation.class);
+        doReturn(type).when(aggregation).getType();
+        Query query = mock(Query.class);
+        doReturn(aggregation).when(query).getAggregation();
+        return query;
+    }
+
+    @BeforeMethod
+    public void setup() {
+        handlerService = new HandlerService(null, null);
+        throttleService = new ThrottleService(handlerService, 1L, 10, 2);
+        handler = mock(QueryHandler.class);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        throttleService.close();
+    }
+
+    @Test
+    public void testNotThrottling() {
+        Query query = query(AggregationType.GROUP);
+        Assert.assertSame(throttleService.throttle("id", handler, query, null), handler);
+        Assert.assertSame(throttleService.throttle("id", handler, query, 0L), handler);
+        Assert.assertSame(throttleService.throttle("id", handler, query, -1L), handler);
+    }
+
+    @Test
+    public void testThrottling() {
+        QueryHandler throttled = throttleService.throttle("id", handler, query(AggregationType.GROUP), 10L);
+        Assert.assertTrue(throttled instanceof ThrottledQueryHandler);
+        handlerService.addHandler("id", throttled);
+
+        throttled.send(new PubSubMessage("id", "foo"));
+        throttled.send(new PubSubMessage("id", "bar"));
+
+        ArgumentCaptor<PubSubMessage> argument = ArgumentCaptor.forClass(PubSubMessage.class);
+        verify(handler, timeout(5000L)).send(argument.capture());
+        Assert.assertEquals(argument.getValue().getContentAsString(), "bar");
+    }
+
+    @Test
+    public void testBlockingHandlerDoesNotHoldUpOtherQueries() throws Exception {
+        CountDownLatch unblock = new CountDownLatch(1);
+        QueryHandler blocking = mock(QueryHandler.class);
+        doAnswer(i -> {
+            unblock.await();
+            return null;
+        }).when(blocking).send(any());
+        QueryHandler slow = throttleService.throttle("slow", blocking, query(AggregationType.GROUP), 10L);
+        handlerService.addHandler("slow", slow);
+        slow.send(new PubSubMessage("slow", "foo"));
+        verify(blocking, timeout(5000L)).send(any());
+
+        QueryHandler throttled = throttleService.throttle("id", handler, query(AggregationType.GROUP), 10L);
+        handlerService.addHandler("id", throttled);
+        throttled.send(new PubSubMessage("id", "bar"));
+        verify(handler, timeout(5000L)).send(any());
+
+        // The ticks of the blocked query are skipped instead of queueing up on the other threads
+        verify(blocking, after(100L).times(1)).send(any());
+        unblock.countDown();
+    }
+
+    @Test
+    public void testThrottlingRawQueriesMergesRecords() {
+        QueryHandler throttled = throttleService.throttle("id", handler, query(AggregationType.RAW), 60000L);
+        handlerService.addHandler("id", throttled);
+
+        throttled.send(new PubSubMessage("id", "{\"records\":[{\"a\":1}]}"));
+        throttled.send(new PubSubMessage("id", "{\"records\":[{\"a\":2}]}"));
+        ((ThrottledQueryHandler) throttled).flush();
+
+        ArgumentCaptor<PubSubMessage> argument = ArgumentCaptor.forClass(PubSubMessage.class);
+        verify(handler).send(argument.capture());
+        assertJSONEquals(argument.getValue().getContentAsString(), "{'records':[{'a':1},{'a':2}]}");
+    }
+
+    @Test
+    public void testRemovingCompletedHandlers() {
+        QueryHandler throttled = throttleService.throttle("id", handler, query(AggregationType.RAW), 10L);
+        handlerService.addHandler("id", throttled);
+
+        // The query was completed by its handler, like when a client goes away
+        doReturn(true).when(handler).isComplete();
+
+        long start = System.currentTimeMillis();
+        while (handlerService.hasHandler("id") && System.currentTimeMillis() - start < 5000L) {
+            Thread.yield();
+        }
+        Assert.assertFalse(handlerService.hasHandler("id"));
+    }
+
+    @Test
+    public void testStoppingForKilledQueries() {
+        QueryHandler throttled = throttleService.throttle("id", handler, query(AggregationType.GROUP), 10L);
+        handlerService.addHandler("id", throttled);
+        verify(handler, timeout(5000L).atLeastOnce()).isComplete();
+
+        handlerService.removeHandler("id");
+        throttled.send(new PubSubMessage("id", "foo"));
+
+        verify(handler, after(200L).never()).send(any());
+    }
+
+    @Test
+    public void testParsing() {
+        Assert.assertNull(ThrottleService.parse(null));
+        Assert.assertEquals(ThrottleService.parse(" 100 "), (Long) 100L);
+    }
+
+    @Test(expectedExceptions = NumberFormatException.class)
+    public void testParsingBadIntervals() {
+        ThrottleService.parse("often");
+    }
+}
@@ -5,26 +5,38 @@
  */
 package com.yahoo.bullet.rest.service;
 
+import com.yahoo.bullet.pubsub.Metadata;
+import com.yahoo.bullet.pubsub.PubSubMessage;
 import com.yahoo.bullet.query.Query;
+import com.yahoo.bullet.rest.common.CBOREncoder;
 import com.yahoo.bullet.rest.model.WebSocketResponse;
 import com.yahoo.bullet.rest.query.QueryHandler;
 import com.yahoo.bullet.rest.query.WebSocketQueryHandler;
 import org.mockito.ArgumentCaptor;
-import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.yahoo.bullet.rest.TestHelpers.assertEqualsBql;
 import static com.yahoo.bullet.rest.TestHelpers.assertEqualsQuery;
 import static com.yahoo.bullet.rest.TestHelpers.getBQLQuery;
 import static com.yahoo.bullet.rest.TestHelpers.getQuery;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -39,7 +51,7 @@ public class WebSocketServiceTest {
         queryService = mock(QueryService.class);
         handlerService = mock(HandlerService.class);
         simpMessagingTemplate = mock(SimpMessagingTemplate.class);
-        webSocketService = new WebSocketService(queryService, handlerService, simpMessagingTemplate, "/response");
+        webSocketService = new WebSocketService(queryService, handlerService, simpMessagingTemplate, "/response", 0L, 0);
     }
 
     @Test
@@ -104,10 +116,153 @@ public class WebSocketServiceTest {
         SimpMessageHeaderAccessor headerAccessor = mock(SimpMessageHeaderAccessor.class);
         when(headerAccessor.getSessionId()).thenReturn(sessionID);
         when(headerAccessor.getMessageHeaders()).thenReturn(null);
+        when(simpMessagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
 
         WebSocketResponse response = new WebSocketResponse(WebSocketResponse.Type.ACK, "foo");
         webSocketService.sendResponse(sessionID, response, headerAccessor);
 
-        verify(simpMessagingTemplate).convertAndSendToUser("sessionID", "/response", response, (MessageHeaders) null);
+        ArgumentCaptor<Message> argument = ArgumentCaptor.forClass(Message.class);
+        verify(simpMessagingTemplate).send(eq("/user/sessionID/response"), argument.capture());
+        Message<?> message = argument.getValue();
+        Assert.assertEquals(new String((byte[]) message.getPayload(), StandardCharsets.UTF_8), "{\"type\":\"ACK\",\"content\":\"foo\"}");
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        Assert.assertEquals(accessor.getSessionId(), sessionID);
+        Assert.assertEquals(accessor.getContentType(), MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    @Test
+    public void testSendResponseAsCBOR() {
+        String sessionID = "sessionID";
+        SimpMessageHeaderAccessor headerAccessor = mock(SimpMessageHeaderAccessor.class);
+        when(headerAccessor.getSessionId()).thenReturn(sessionID);
+        when(headerAccessor.getContentType()).thenReturn(CBOREncoder.MEDIA_TYPE);
+        when(simpMessagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+
+        WebSocketResponse response = new WebSocketResponse(WebSocketResponse.Type.MESSAGE, "{\"records\":[]}");
+        webSocketService.sendResponse(sessionID, response, headerAccessor);
+
+        ArgumentCaptor<Message> argument = ArgumentCaptor.forClass(Message.class);
+        verify(simpMessagingTemplate).send(eq("/user/sessionID/response"), argument.capture());
+        Message<?> message = argument.getValue();
+        Assert.assertEquals(message.getPayload(), CBOREncoder.encode(response));
+        Assert.assertEquals(SimpMessageHeaderAccessor.wrap(message).getContentType(), CBOREncoder.MEDIA_TYPE);
+    }
+
+    private WebSocketQueryHandler submitResumable(String sessionID, String queryID) {
+        WebSocketQueryHandler handler = new WebSocketQueryHandler(webSocketService, sessionID, queryID);
+        webSocketService.submitQuery(queryID, sessionID, getQuery(), getBQLQuery(), handler);
+        return handler;
+    }
+
+    private List<String> getSent(String sessionID) {
+        ArgumentCaptor<String> destinations = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(simpMessagingTemplate, atLeast(0)).send(destinations.capture(), messages.capture());
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < messages.getAllValues().size(); ++i) {
+            if (destinations.getAllValues().get(i).equals("/user/" + sessionID + "/response")) {
+                sent.add(new String((byte[]) messages.getAllValues().get(i).getPayload(), StandardCharsets.UTF_8));
+            }
+        }
+        return sent;
+    }
+
+    private static String response(WebSocketResponse.Type type, String content) {
+        return "{\"type\":\"" + type + "\",\"content\":\"" + content + "\"}";
+    }
+
+    @Test
+    public void testNotResumableWithoutAGracePeriod() {
+        WebSocketQueryHandler handler = submitResumable("sessionID", "queryID");
+
+        Assert.assertNull(webSocketService.makeResumable("queryID", handler));
+        webSocketService.disconnect("sessionID");
+
+        verify(handlerService).removeHandler("queryID");
+        verify(queryService).kill("queryID");
+        Assert.assertFalse(webSocketService.resumeQuery("queryID.secret", "other"));
+    }
+
+    @Test
+    public void testResumingADisconnectedQuery() {
+        webSocketService = new WebSocketService(queryService, handlerService, simpMessagingTemplate, "/response", 60000L, 2);
+        when(simpMessagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+        WebSocketQueryHandler handler = submitResumable("sessionID", "queryID");
+        String token = webSocketService.makeResumable("queryID", handler);
+        Assert.assertTrue(token.startsWith("queryID" + WebSocketService.TOKEN_SEPARATOR));
+        Assert.assertNotEquals(webSocketService.makeResumable("queryID", handler), token);
+        token = webSocketService.makeResumable("queryID", handler);
+
+        handler.send(new PubSubMessage("queryID", "a"));
+        webSocketService.disconnect("sessionID");
+        Assert.assertFalse(webSocketService.getSessionIDMap().containsKey("sessionID"));
+        handler.send(new PubSubMessage("queryID", "b"));
+        handler.send(new PubSubMessage("queryID", "c"));
+        handler.send(new PubSubMessage("queryID", "d"));
+        Assert.assertEquals(getSent("sessionID"), singletonList(response(WebSocketResponse.Type.MESSAGE, "a")));
+
+        Assert.assertFalse(webSocketService.resumeQuery(token + "x", "newSessionID"));
+        Assert.assertFalse(webSocketService.resumeQuery("unknown", "newSessionID"));
+        Assert.assertTrue(webSocketService.resumeQuery(token, "newSessionID"));
+        Assert.assertFalse(webSocketService.resumeQuery(token, "otherSessionID"));
+
+        // Only the latest results fit in the buffer
+        handler.send(new PubSubMessage("queryID", "e"));
+        Assert.assertEquals(getSent("newSessionID"), asList(response(WebSocketResponse.Type.MESSAGE, "c"),
+                                                            response(WebSocketResponse.Type.MESSAGE, "d"),
+                                                            response(WebSocketResponse.Type.MESSAGE, "e")));
+        Assert.assertEquals(webSocketService.getSessionIDMap().get("newSessionID"), "queryID");
+        verify(handlerService, never()).removeHandler(any());
+        verify(queryService, never()).kill(any());
+        verify(queryService).submit(eq("queryID"), any(), any());
+
+        handler.complete();
+        Assert.assertTrue(webSocketService.getSessionIDMap().isEmpty());
+        Assert.assertTrue(webSocketService.getResumables().isEmpty());
+        webSocketService.close();
+    }
+
+    @Test
+    public void testResumingAQueryThatFinishedWhileDisconnected() {
+        webSocketService = new WebSocketService(queryService, handlerService, simpMessagingTemplate, "/response", 60000L, 10);
+        when(simpMessagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+        WebSocketQueryHandler handler = submitResumable("sessionID", "queryID");
+        String token = webSocketService.makeResumable("queryID", handler);
+
+        webSocketService.disconnect("sessionID");
+        handler.send(new PubSubMessage("queryID", "a", Metadata.Signal.COMPLETE));
+        handler.complete();
+
+        Assert.assertTrue(webSocketService.resumeQuery(token, "newSessionID"));
+        Assert.assertEquals(getSent("newSessionID"), singletonList(response(WebSocketResponse.Type.COMPLETE, "a")));
+        Assert.assertTrue(webSocketService.getSessionIDMap().isEmpty());
+        Assert.assertTrue(webSocketService.getResumables().isEmpty());
+        webSocketService.close();
+    }
+
+    @Test
+    public void testKillingAQueryThatIsNotResumedInTime() throws Exception {
+        webSocketService = new WebSocketService(queryService, handlerService, simpMessagingTemplate, "/response", 10L, 10);
+        WebSocketQueryHandler handler = submitResumable("sessionID", "queryID");
+        String token = webSocketService.makeResumable("queryID", handler);
+
+        webSocketService.disconnect("sessionID");
+        verify(queryService, timeout(5000)).kill("queryID");
+        verify(handlerService).removeHandler("queryID");
+        Assert.assertTrue(webSocketService.getResumables().isEmpty());
+        Assert.assertFalse(webSocketService.resumeQuery(token, "newSessionID"));
+        webSocketService.close();
+    }
+
+    @Test
+    public void testDisconnectingWithoutAResumableQuery() {
+        webSocketService = new WebSocketService(queryService, handlerService, simpMessagingTemplate, "/response", 60000L, 10);
+        webSocketService.getSessionIDMap().put("sessionID", "queryID");
+
+        webSocketService.disconnect("sessionID");
+
+        verify(handlerService).removeHandler("queryID");
+        verify(queryService).kill("queryID");
+        webSocketService.close();
     }
 }